@@ -0,0 +1,33 @@
+package com.sanya.client.core.api;
+
+import com.sanya.crypto.SignedPreKeyBundle;
+
+import java.security.KeyPair;
+import java.util.Map;
+
+/**
+ * Контекст клиента, нужный сетевому уровню: ключ подписи, проверенные пакеты ключей
+ * и необязательные компоненты (история, потоковые ключи, проверка пакетов).
+ *
+ * Назначение:
+ *  - Отвязать {@code ChatConnector} от Swing-приложения: в GUI контекстом служит {@code ApplicationContext},
+ *    в headless-клиенте ({@code ChatClient}) — лёгкая реализация без UI и REPL.
+ *
+ * Использование:
+ *  MessageStore history = ctx.find(MessageStore.class);   // null, если история не подключена
+ */
+public interface ClientContext {
+
+    /** Пара Ed25519 для подписи собственного пакета ключей. */
+    KeyPair getEd25519KeyPair();
+
+    /** Проверенные пакеты ключей собеседников; заполняется сетевым уровнем. */
+    Map<String, SignedPreKeyBundle> getKnownBundles();
+
+    /**
+     * Возвращает зарегистрированный компонент указанного типа.
+     *
+     * @return компонент или null, если он не зарегистрирован
+     */
+    <T> T find(Class<T> type);
+}
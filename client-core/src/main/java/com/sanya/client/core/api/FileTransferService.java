@@ -0,0 +1,99 @@
+package com.sanya.client.core.api;
+
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileResumeRequest;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.files.FileTransferRequest;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Интерфейс для сервиса передачи файлов.
+ * Определяет базовый контракт для отправки и приёма файловых данных между клиентами.
+ *
+ * Назначение:
+ *  - Разделить транспортную и прикладную логику передачи файлов.
+ *  - Упростить замену реализации (локальная передача, через сервер, P2P и т.д.)
+ *  - Обеспечить единый интерфейс для модулей, обрабатывающих FileChunk.
+ *  - Поддержать докачку: получатель запрашивает недостающие диапазоны после разрыва соединения.
+ *
+ * Использование:
+ *  Реализация может использовать EventBus и ChatConnector для пересылки блоков файлов,
+ *  а также уведомлять о прогрессе через события.
+ */
+public interface FileTransferService {
+
+    /**
+     * Отправляет файл получателю по частям.
+     *
+     * @param recipient имя или идентификатор получателя
+     * @param file      файл для отправки
+     * @param sender    функция, выполняющая фактическую отправку объекта (например, через сеть)
+     */
+    void sendFile(String recipient, File file, Consumer<Object> sender);
+
+    /**
+     * Отправляет файл по нескольким потокам параллельно.
+     *
+     * @param recipient имя или идентификатор получателя
+     * @param file      файл для отправки
+     * @param control   поток для объявления и итога передачи
+     * @param streams   потоки для блоков файла (отдельные соединения или одно мультиплексированное)
+     */
+    void sendFile(String recipient, File file, Consumer<Object> control, List<Consumer<Object>> streams);
+
+    /**
+     * Обрабатывает входящий фрагмент файла.
+     *
+     * @param chunk объект FileChunk, содержащий часть файла
+     */
+    void receiveFile(FileChunk chunk);
+
+    /**
+     * Регистрирует входящую передачу, объявленную отправителем.
+     *
+     * @param request объявление передачи
+     */
+    void onTransferRequest(FileTransferRequest request);
+
+    /**
+     * Обрабатывает завершение прохода отправителя: проверяет файл или запрашивает недостающее.
+     *
+     * @param complete итог прохода с SHA-256 файла
+     * @param sender   функция отправки запроса докачки
+     */
+    void onTransferComplete(FileTransferComplete complete, Consumer<Object> sender);
+
+    /**
+     * Обслуживает запрос докачки: отправляет только недостающие диапазоны файла.
+     *
+     * @param request запрос получателя
+     * @param sender  функция отправки блоков
+     */
+    void resume(FileResumeRequest request, Consumer<Object> sender);
+
+    /**
+     * Назначает каталог для принимаемых файлов и восстанавливает незавершённые приёмы из него.
+     *
+     * @param downloadDir каталог загрузок
+     */
+    void setDownloadDir(Path downloadDir);
+
+    /**
+     * Включает сквозное шифрование передач: секрет каждой передачи рассылается собеседникам,
+     * блоки шифруются потоковым AEAD.
+     *
+     * @param keys раздача и поиск секретов потоков
+     */
+    void setStreamKeys(StreamKeys keys);
+
+    /**
+     * Возобновляет незавершённые передачи после восстановления соединения.
+     *
+     * @param sender функция отправки объектов
+     */
+    void onReconnected(Consumer<Object> sender);
+}
@@ -0,0 +1,32 @@
+package com.sanya.client.core.api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Функция отправки объектов, сообщающая о записи в соединение.
+ *
+ * Назначение:
+ *  - Передать отправителю файлов момент фактической записи кадра, а не постановки в очередь:
+ *    по нему подбирается размер блока.
+ *  - Оставаться обычным {@link Consumer}: принимается везде, где ожидается функция отправки.
+ *
+ * Использование:
+ *  FrameSink out = connector::sendObject;
+ *  fileSender.sendFile(peer, file, out);
+ */
+@FunctionalInterface
+public interface FrameSink extends Consumer<Object> {
+
+    /**
+     * Отправляет объект.
+     *
+     * @return завершается после записи кадра в соединение
+     */
+    CompletableFuture<Void> send(Object frame);
+
+    @Override
+    default void accept(Object frame) {
+        send(frame);
+    }
+}
@@ -1,5 +1,7 @@
 package com.sanya.client.core.api;
 
+import com.sanya.client.store.StoredMessage;
+
 import java.util.List;
 
 /**
@@ -14,6 +16,7 @@ import java.util.List;
  * Использование:
  *  Может применяться для хранения зашифрованных сообщений (EncryptedDirectMessage)
  *  до их обработки или доставки получателю.
+ *  Реализация на диске — {@link com.sanya.client.store.LocalMessageStore}.
  */
 public interface MessageStore {
 
@@ -32,4 +35,15 @@ public interface MessageStore {
      * @return список сохранённых сообщений
      */
     List<Object> retrieve(String recipient);
+
+    /**
+     * Возвращает страницу истории беседы, предшествующую указанному seq.
+     * Используется для постраничной подгрузки истории в UI.
+     *
+     * @param conversation идентификатор беседы
+     * @param beforeSeq    граница выборки (не включительно)
+     * @param limit        максимальный размер страницы
+     * @return сообщения от старых к новым
+     */
+    List<StoredMessage> loadBefore(String conversation, long beforeSeq, int limit);
 }
@@ -0,0 +1,46 @@
+package com.sanya.client.core.api;
+
+import com.sanya.crypto.StreamAead;
+import com.sanya.files.BlobReference;
+
+import java.util.function.Consumer;
+
+/**
+ * Интерфейс раздачи ключей потокового шифрования (файлы, голос).
+ *
+ * Назначение:
+ *  - Создать секрет потока и доставить его собеседникам по их сеансовым ключам.
+ *  - Найти секрет входящего потока по его id.
+ *
+ * Использование:
+ *  Реализация — {@link com.sanya.client.security.StreamCrypto}; передаётся в {@link FileTransferService}.
+ */
+public interface StreamKeys {
+
+    /**
+     * Создаёт секрет нового потока и рассылает его собеседникам.
+     *
+     * @param streamId id потока (например, id передачи файла)
+     * @param sender   функция отправки объектов
+     * @return секрет для {@link StreamAead#sealer}
+     */
+    StreamAead.Secret share(String streamId, Consumer<Object> sender);
+
+    /**
+     * Секрет входящего потока.
+     *
+     * @return секрет или null, если ключ ещё не получен
+     */
+    StreamAead.Secret secret(String streamId);
+
+    /** Забывает секрет завершённого потока. */
+    void forget(String streamId);
+
+    /**
+     * Доставляет ссылку на зашифрованный файл в хранилище каждому собеседнику под его сеансовым ключом.
+     *
+     * @param ref    ссылка с ключом файла
+     * @param sender функция отправки объектов
+     */
+    void shareBlob(BlobReference ref, Consumer<Object> sender);
+}
@@ -1,5 +1,7 @@
 package com.sanya.client.core.api;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Базовый интерфейс транспортного уровня.
  * Определяет общий контракт для компонентов, обеспечивающих сетевое взаимодействие.
@@ -22,10 +24,12 @@ public interface Transport {
 
     /**
      * Отправляет произвольное сообщение через активное соединение.
+     * Не должен блокироваться на сети: результат сообщает о записи или её ошибке.
      *
      * @param message объект для отправки
+     * @return завершается после записи в соединение; исключением — при ошибке отправки
      */
-    void send(Object message);
+    CompletableFuture<Void> send(Object message);
 
     /**
      * Закрывает транспорт и освобождает все ресурсы.
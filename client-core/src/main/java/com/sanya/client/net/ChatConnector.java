@@ -0,0 +1,726 @@
+package com.sanya.client.net;
+
+import com.sanya.Message;
+import com.sanya.client.core.api.ClientContext;
+import com.sanya.client.core.api.MessageStore;
+import com.sanya.client.core.api.Transport;
+import com.sanya.client.security.Encryptor;
+import com.sanya.client.security.KeyDirectory;
+import com.sanya.client.security.SenderKeys;
+import com.sanya.client.security.StreamCrypto;
+import com.sanya.client.store.StoredMessage;
+import com.sanya.crypto.BundleVerifier;
+import com.sanya.crypto.Bytes;
+import com.sanya.crypto.Crypto;
+import com.sanya.crypto.KeyUtils;
+import com.sanya.crypto.SignatureUtils;
+import com.sanya.crypto.SignedPreKeyBundle;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.crypto.msg.GroupMessage;
+import com.sanya.crypto.msg.KeyDirectoryUpdate;
+import com.sanya.crypto.msg.KeyHello;
+import com.sanya.events.chat.MessageReceivedEvent;
+import com.sanya.events.chat.UserListUpdatedEvent;
+import com.sanya.events.core.DefaultEventBus;
+import com.sanya.events.file.FileChunkEvent;
+import com.sanya.events.file.FileIncomingEvent;
+import com.sanya.events.system.ConnectionLostEvent;
+import com.sanya.events.system.ConnectionRestoredEvent;
+import com.sanya.events.system.SystemInfoEvent;
+import com.sanya.events.system.SystemMessageEvent;
+import com.sanya.events.voice.VoiceMessageReadyEvent;
+import com.sanya.files.BlobReference;
+import com.sanya.files.BlobToken;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileResumeRequest;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.files.FileTransferRequest;
+import com.sanya.net.Backoff;
+import com.sanya.net.OutboundScheduler;
+import com.sanya.net.Sequenced;
+import com.sanya.net.ServerBusy;
+import com.sanya.net.SessionAck;
+import com.sanya.net.SessionGrant;
+import com.sanya.net.SessionLeave;
+import com.sanya.net.SessionResume;
+import com.sanya.net.SlowDown;
+import com.sanya.net.StreamClass;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.interfaces.XECPublicKey;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ChatConnector — реализация сетевого транспорта и обработчик событий клиента.
+ * Отвечает за соединение с сервером, обмен сообщениями, шифрование и реконнекты.
+ *
+ * Назначение:
+ *  - Инкапсулировать сетевую логику TCP-взаимодействия.
+ *  - Поддерживать E2EE (end-to-end encryption) через X25519 + AES-GCM.
+ *  - Обеспечить стабильное соединение с автопереподключением: задержки со случайным разбросом ({@link Backoff}),
+ *    чтобы после перезапуска сервера клиенты не возвращались одной волной, и не раньше срока из {@link ServerBusy}.
+ *  - Не задерживать чат за блоками файлов: исходящие объекты идут через {@link OutboundScheduler}
+ *    с приоритетами control > chat > voice > bulk и окном на каждый логический поток.
+ *  - Держать много соединений в одной JVM (боты, нагрузочные тесты): запись и реконнект идут в общих
+ *    для всех коннекторов daemon-пулах и занимают поток, только пока есть что отправить.
+ *    Чтение блокирующее ({@link java.io.ObjectInputStream}): каждое открытое соединение держит свой поток чтения,
+ *    поэтому N соединений — это не меньше N потоков.
+ *  - Не блокировать вызывающего (EDT) сетью: шифрование и постановка в очередь выполняются в пуле,
+ *    запись — писателем с одним сбросом буфера на пачку кадров, а итог отправки и переполнение очереди
+ *    сообщаются через {@link CompletableFuture}.
+ *  - Переживать короткие обрывы без повторного входа: после переподключения сеанс продолжается
+ *    по токену сервера ({@link SessionResume}), а пропущенные кадры досылаются по номерам ({@link Sequenced}).
+ *
+ * Использование:
+ *  В GUI создаётся при запуске и регистрируется в DI как singleton; без UI — через {@code ChatClient}.
+ *  Работает через {@link DefaultEventBus}, публикуя и слушая события.
+ */
+public final class ChatConnector implements AutoCloseable, Transport {
+
+    private static final Logger log = Logger.getLogger(ChatConnector.class.getName());
+
+    /** Потоки чтения: по одному на открытое соединение (чтение блокирующее), переиспользуются после закрытия. */
+    private static final ExecutorService readers = Executors.newCachedThreadPool(daemon("ChatConnector-Reader"));
+
+    /**
+     * Разбор очередей отправки всех соединений (см. {@link OutboundScheduler}): задача запускается, только когда
+     * в очереди соединения есть кадры, поэтому простаивающие соединения потоков записи не держат.
+     */
+    private static final ExecutorService writers = Executors.newCachedThreadPool(daemon("ChatConnector-Writer"));
+
+    /** Размер буфера записи сокета: пачка мелких кадров уходит одним системным вызовом при сбросе. */
+    private static final int OUT_BUFFER = 64 * 1024;
+
+    /** Подтверждение получения ({@link SessionAck}) — после каждых стольких кадров сеанса. */
+    private static final int ACK_EVERY = 32;
+
+    /** Таймаут ответа сервера на вход, мс. */
+    private static final int HANDSHAKE_TIMEOUT_MS = 10_000;
+
+    /** Границы задержки переподключения, мс. */
+    private static final long RECONNECT_BASE_MS = 250;
+    private static final long RECONNECT_CAP_MS = 30_000;
+
+    /** Сколько {@link #close()} ждёт отправки {@link SessionLeave}, мс. */
+    private static final long LEAVE_TIMEOUT_MS = 500;
+
+    /** Отложенные переподключения всех коннекторов. */
+    private static final ScheduledExecutorService reconnects =
+            Executors.newSingleThreadScheduledExecutor(daemon("ChatConnector-Reconnect"));
+
+    /** Контекст клиента */
+    private final ClientContext ctx;
+
+    /** Шина событий для публикации системных и пользовательских событий */
+    private final DefaultEventBus bus;
+
+    /** Имя текущего пользователя */
+    private final String username;
+
+    /** TCP-соединение и потоки */
+    private Socket socket;
+    private ObjectOutputStream out;
+    private ObjectInputStream in;
+
+    /** Первый ответ сервера, прочитанный в {@link #open()}; обрабатывается потоком чтения первым */
+    private Object firstFrame;
+
+    /** Планировщик исходящих объектов текущего соединения */
+    private volatile OutboundScheduler writer;
+
+    /**
+     * Хвост цепочки исходящих текстовых сообщений: шифрование идёт в пуле, но по одному и в порядке вызовов.
+     * Звенья не завершаются ошибкой, поэтому сбой одного сообщения не останавливает следующие.
+     */
+    private CompletableFuture<Void> outgoing = CompletableFuture.completedFuture(null);
+
+    /** Токен сеанса сервера (null, пока сервер его не выдал) и учёт полученных кадров сеанса */
+    private volatile String sessionToken;
+    private final SequenceTracker received = new SequenceTracker();
+    private long acked;
+
+    /** Текущее соединение открыто возобновлением сеанса: ключи повторно не отправляются */
+    private volatile boolean resuming;
+
+    /** Флаги и планировщик для реконнекта */
+    private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+    private volatile boolean manualClose = false;
+    private volatile ScheduledFuture<?> reconnectTask;
+    private final Backoff reconnectDelays = new Backoff(RECONNECT_BASE_MS, RECONNECT_CAP_MS);
+
+    /** Срок повтора из последнего {@link ServerBusy} (0 — нет) */
+    private volatile long retryHintMs;
+
+    /** Криптографические зависимости */
+    private final KeyDirectory keyDir;
+    private final Encryptor encryptor;
+    private final StreamCrypto streams;
+    private final SenderKeys senderKeys;
+    private final BundleVerifier bundles;
+
+    /**
+     * Ключи последнего каталога в Base64. Сервер рассылает каталог целиком при каждом входе участника,
+     * поэтому неизменённые записи не декодируются заново. Используется только потоком чтения.
+     */
+    private final Map<String, String> directory = new HashMap<>();
+
+    /** Участники в сети по последнему списку сервера (null, пока список не получен) */
+    private volatile List<String> online;
+
+    /** Параметры подключения */
+    private final String host;
+    private final int port;
+
+    /** Локальная история сообщений (null, если хранилище не подключено) */
+    private final MessageStore history;
+
+    /**
+     * Конструктор коннектора.
+     *
+     * @param ctx       контекст клиента (ключ подписи, необязательные компоненты)
+     * @param host      адрес сервера
+     * @param port      порт сервера
+     * @param username  имя пользователя
+     * @param bus       локальный EventBus
+     * @param keyDir    хранилище ключей
+     * @param encryptor шифратор сообщений
+     */
+    public ChatConnector(ClientContext ctx,
+                         String host, int port,
+                         String username,
+                         DefaultEventBus bus,
+                         KeyDirectory keyDir,
+                         Encryptor encryptor) {
+        this.ctx = ctx;
+        this.host = host;
+        this.port = port;
+        this.bus = bus;
+        this.username = username;
+        this.keyDir = keyDir;
+        this.encryptor = encryptor;
+        this.history = ctx.find(MessageStore.class);
+        StreamCrypto sharedStreams = ctx.find(StreamCrypto.class);
+        this.streams = sharedStreams != null ? sharedStreams : new StreamCrypto(keyDir, encryptor, username);
+        this.senderKeys = new SenderKeys(keyDir, encryptor, username);
+        BundleVerifier verifier = ctx.find(BundleVerifier.class);
+        this.bundles = verifier != null ? verifier : new BundleVerifier();
+        log.config("Initializing ChatConnector for user: " + username + " (" + host + ":" + port + ")");
+    }
+
+    /**
+     * Устанавливает соединение с сервером и выполняет handshake.
+     */
+    @Override
+    public void connect() {
+        log.config("Connecting to server...");
+        try {
+            open();
+            start();
+        } catch (ServerBusyException e) {
+            retryHintMs = e.retryAfterMs();
+            log.info(e.getMessage());
+            bus.publish(new SystemInfoEvent("Server busy, reconnecting later"));
+            onDisconnect(e);
+        } catch (IOException e) {
+            handleSendError(e);
+        }
+    }
+
+    /**
+     * Первая половина подключения: сокет, заголовки потоков объектов и HELLO
+     * (или {@link SessionResume}, если сервер уже выдал токен сеанса).
+     * Первый ответ сервера читается сразу, остальные входящие объекты ждут в буфере сокета до {@link #start()},
+     * поэтому при запуске клиента её можно выполнять параллельно с построением UI и подпиской на события.
+     *
+     * @throws ServerBusyException если сервер перегружен и просит повторить позже
+     * @throws IOException         если сервер недоступен
+     */
+    public void open() throws IOException {
+        socket = new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), OUT_BUFFER));
+            out.flush(); // заголовок потока — до ожидания заголовка сервера
+            in = new ObjectInputStream(socket.getInputStream());
+
+            // Инициализационное сообщение — строго первым, до запуска планировщика
+            String token = sessionToken;
+            resuming = token != null;
+            IOException sendError = null;
+            try {
+                out.writeObject(resuming
+                        ? new SessionResume(username, token, received.contiguous())
+                        : new Message(username, "<<<HELLO>>>"));
+                out.flush();
+            } catch (IOException e) {
+                // Перегруженный сервер мог закрыть соединение, не читая HELLO, — его ответ всё равно в буфере
+                sendError = e;
+            }
+
+            Object first = in.readObject();
+            if (first instanceof ServerBusy busy) throw new ServerBusyException(busy.retryAfterMs());
+            if (sendError != null) throw sendError;
+            socket.setSoTimeout(0);
+            firstFrame = first;
+        } catch (IOException | ClassNotFoundException e) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {}
+            throw e instanceof IOException io ? io : new IOException("Unexpected handshake reply", e);
+        }
+    }
+
+    /**
+     * Вторая половина подключения после {@link #open()}: планировщик отправки, приём и обмен ключами.
+     */
+    public void start() {
+        try {
+            if (writer != null) writer.close();
+            writer = new OutboundScheduler("ChatConnector-" + username, OutboundScheduler.objectSink(out),
+                    this::handleSendError, writers);
+
+            readers.execute(this::listen);
+
+            // При возобновлении сервер помнит ключи; если сеанс не продолжится, они уйдут по SessionGrant
+            if (!resuming) sendKeys();
+
+            bus.publish(new SystemInfoEvent("Connected to server"));
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Handshake failed", e);
+        }
+    }
+
+    /**
+     * Ставит объект в очередь отправки его логического потока.
+     * Блоки файлов блокируют вызывающий поток, пока окно передачи заполнено (так отправитель файла
+     * подстраивается под скорость сети); чат и служебные объекты не блокируются и обгоняют их в очереди.
+     *
+     * @param message объект для отправки
+     * @return завершается после записи в сокет; исключением — при переполнении очереди или обрыве
+     */
+    @Override
+    public CompletableFuture<Void> send(Object message) {
+        OutboundScheduler w = writer;
+        try {
+            if (w == null) throw new IOException("Not connected");
+            return StreamClass.of(message) == StreamClass.BULK ? w.submit(message) : w.offer(message);
+        } catch (IOException e) {
+            handleSendError(e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** Число объектов в очереди отправки текущего соединения. */
+    public int sendQueueDepth() {
+        OutboundScheduler w = writer;
+        return w != null ? w.pending() : 0;
+    }
+
+    /** Оценка неотправленных байт в очереди текущего соединения. */
+    public long sendQueueBytes() {
+        OutboundScheduler w = writer;
+        return w != null ? w.queuedBytes() : 0;
+    }
+
+    /** Отправка публичного ключа (X25519) и подписанного пакета ключей. */
+    private void sendKeys() throws GeneralSecurityException {
+        String pubB64 = Crypto.encodePub(keyDir.myKeyPair().getPublic());
+        send(new KeyHello(username, pubB64));
+        log.info("Sent X25519 KeyHello for " + username);
+        send(signedBundle());
+    }
+
+    /**
+     * Ответ сервера на вход: новый сеанс начинает нумерацию заново; если сервер не смог продолжить
+     * сеанс (перезапуск, истёк период ожидания), вход завершается отправкой ключей.
+     */
+    private void onGrant(SessionGrant grant) throws GeneralSecurityException {
+        sessionToken = grant.token();
+        boolean wasResuming = resuming;
+        resuming = false;
+        if (grant.resumed()) {
+            log.info("Session resumed from " + received.contiguous());
+            return;
+        }
+        received.reset();
+        acked = 0;
+        if (wasResuming) {
+            log.info("Session expired on server, joining again");
+            sendKeys();
+        }
+    }
+
+    /**
+     * Основной цикл приёма данных от сервера.
+     * Обрабатывает все входящие объекты.
+     */
+    private void listen() {
+        try {
+            Object first = firstFrame;
+            firstFrame = null;
+            if (first != null) onMessage(first);
+            while (!socket.isClosed()) {
+                Object obj = in.readObject();
+                onMessage(obj);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            if (!manualClose) onDisconnect(e);
+        }
+    }
+
+    /**
+     * Отправляет текстовое сообщение (с E2EE при наличии ключей), не блокируя вызывающий поток.
+     * Единственному собеседнику — личным сообщением, группе — один раз ключом отправителя
+     * ({@link SenderKeys}); открытым текстом — только если ни у кого из собеседников нет ключа.
+     *
+     * @param text сообщение пользователя
+     * @return завершается после записи сообщения в сокет; исключением — при ошибке шифрования,
+     *         переполнении очереди или обрыве соединения
+     */
+    public CompletableFuture<Void> sendMessage(String text) {
+        if (text == null || text.isBlank()) return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        synchronized (this) {
+            outgoing = outgoing.thenRunAsync(() -> encryptAndSend(text).whenComplete((v, e) -> {
+                if (e == null) sent.complete(null);
+                else sent.completeExceptionally(e);
+            }), writers);
+        }
+        return sent;
+    }
+
+    /** Шифрует и ставит сообщение в очередь; результат — отправка последнего кадра. */
+    private CompletableFuture<Void> encryptAndSend(String text) {
+        try {
+            List<String> peers = peers();
+
+            if (peers.size() == 1) {
+                String to = peers.get(0);
+                var enc = encryptor.encryptFor(to, text.getBytes(StandardCharsets.UTF_8));
+                var dm = new EncryptedDirectMessage(username, to, enc.nonce(), enc.ct(),
+                        EncryptedDirectMessage.TEXT, null, null);
+                CompletableFuture<Void> sent = send(dm);
+                record(StoredMessage.direct(to), new Message(username, text));
+                bus.publish(new MessageReceivedEvent(new Message(username, "[private] " + text)));
+                log.fine("Sent encrypted DM to " + to);
+                return sent;
+            } else if (peers.size() > 1) {
+                senderKeys.distribute(peers).forEach(this::send);
+                CompletableFuture<Void> sent = send(senderKeys.encrypt(text.getBytes(StandardCharsets.UTF_8)));
+                Message own = new Message(username, text);
+                record(StoredMessage.PUBLIC, own);
+                bus.publish(new MessageReceivedEvent(own));
+                log.fine("Sent group message to " + peers.size() + " peers");
+                return sent;
+            } else {
+                return send(new Message(username, text));
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Encryption failed", e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** Собеседники в сети с известными публичными ключами. */
+    private List<String> peers() {
+        List<String> members = online;
+        return keyDir.allPubs().keySet().stream()
+                .filter(p -> !p.equals(username))
+                .filter(p -> members == null || members.contains(p))
+                .sorted()
+                .toList();
+    }
+
+    /** Собственный пакет ключей: X25519 каталога, подписанный Ed25519 контекста. */
+    private SignedPreKeyBundle signedBundle() throws GeneralSecurityException {
+        byte[] x = KeyUtils.x25519Raw((XECPublicKey) keyDir.myKeyPair().getPublic());
+        KeyPair ed = ctx.getEd25519KeyPair();
+        byte[] sig = SignatureUtils.signEd25519(ed.getPrivate(), Bytes.concat(Bytes.utf8(username), x));
+        return new SignedPreKeyBundle(username, x, ed.getPublic().getEncoded(), sig, System.currentTimeMillis());
+    }
+
+    /** Проверяет пакеты ключей; в каталог попадают только прошедшие проверку подписи. */
+    private void onBundles(List<SignedPreKeyBundle> received) {
+        Map<String, PublicKey> keys = new HashMap<>();
+        bundles.verifyAll(received).forEach((user, bundle) -> {
+            if (user.equals(username)) return;
+            try {
+                keys.put(user, KeyUtils.x25519FromRaw(bundle.getX25519Public()));
+                ctx.getKnownBundles().put(user, bundle);
+            } catch (GeneralSecurityException e) {
+                log.fine("Malformed X25519 key in bundle from " + user);
+            }
+        });
+        keyDir.putAll(keys);
+        log.fine("Accepted " + keys.size() + " of " + received.size() + " key bundles");
+    }
+
+    /**
+     * Упрощённая отправка объектов.
+     */
+    public CompletableFuture<Void> sendObject(Object obj) {
+        return send(obj);
+    }
+
+    /**
+     * Обработка входящих сообщений разных типов.
+     */
+    private void onMessage(Object obj) {
+        try {
+            if (obj instanceof SessionGrant grant) {
+                onGrant(grant);
+                return;
+            }
+            if (obj instanceof Sequenced frame) {
+                if (!received.accept(frame.seq())) return; // дослан повторно после возобновления
+                if (received.contiguous() - acked >= ACK_EVERY) {
+                    acked = received.contiguous();
+                    send(new SessionAck(acked));
+                }
+                obj = frame.payload();
+            }
+
+            if (obj instanceof KeyDirectoryUpdate upd) {
+                Map<String, PublicKey> keys = new HashMap<>();
+                upd.userToX25519PubB64().forEach((u, b64) -> {
+                    if (b64.equals(directory.get(u))) return;
+                    try {
+                        keys.put(u, Crypto.decodePub(b64));
+                        directory.put(u, b64);
+                    } catch (Exception ignored) {}
+                });
+                int scheduled = keyDir.putAll(keys);
+                log.info("Updated key directory: " + upd.userToX25519PubB64().size()
+                        + ", precomputing " + scheduled + " session keys");
+                return;
+            }
+
+            if (obj instanceof SignedPreKeyBundle bundle) {
+                // Отдельный пакет рассылается только при новом сеансе собеседника (возобновление его не шлёт):
+                // перезапущенный клиент с сохранённым ключом потерял цепочки и должен получить их заново
+                onBundles(List.of(bundle));
+                senderKeys.onNewSession(bundle.getUsername());
+                return;
+            }
+
+            if (obj instanceof Map<?, ?> map && !map.isEmpty()
+                    && map.values().stream().allMatch(v -> v instanceof SignedPreKeyBundle)) {
+                onBundles(map.values().stream().map(SignedPreKeyBundle.class::cast).toList());
+                return;
+            }
+
+            if (obj instanceof EncryptedDirectMessage dm) {
+                // Сервер возвращает отправителю копию его же DM — она уже отражена при отправке
+                if (dm.from().equals(username)) return;
+                if (EncryptedDirectMessage.STREAM_KEY.equals(dm.mediaType())) {
+                    streams.onKey(dm);
+                    return;
+                }
+                if (EncryptedDirectMessage.SENDER_KEY.equals(dm.mediaType())) {
+                    senderKeys.onKey(dm);
+                    return;
+                }
+                if (EncryptedDirectMessage.BLOB_REF.equals(dm.mediaType())) {
+                    bus.publish(streams.onBlob(dm));
+                    return;
+                }
+                if (EncryptedDirectMessage.AUDIO.equals(dm.mediaType())) {
+                    byte[] pcm = streams.onVoiceChunk(dm);
+                    if (pcm != null) bus.publish(new VoiceMessageReadyEvent(dm.from(), pcm));
+                    return;
+                }
+                byte[] plain = encryptor.decryptFrom(dm.from(), dm.nonce12(), dm.ciphertext());
+                String text = new String(plain, StandardCharsets.UTF_8);
+                record(StoredMessage.direct(dm.from()), new Message(dm.from(), text));
+                bus.publish(new MessageReceivedEvent(new Message(dm.from(), "[private] " + text)));
+                log.fine("Decrypted DM from " + dm.from());
+                return;
+            }
+
+            if (obj instanceof GroupMessage gm) {
+                if (gm.from().equals(username)) return;
+                try {
+                    Message message = new Message(gm.from(), new String(senderKeys.decrypt(gm), StandardCharsets.UTF_8));
+                    record(StoredMessage.PUBLIC, message);
+                    bus.publish(new MessageReceivedEvent(message));
+                } catch (IllegalStateException | javax.crypto.AEADBadTagException e) {
+                    log.warning("Dropping group message from " + gm.from() + ": " + e.getMessage());
+                    bus.publish(new SystemMessageEvent("[E2EE] Message from " + gm.from() + " could not be decrypted"));
+                }
+                return;
+            }
+
+            if (obj instanceof Message message) {
+                if (!"<<<HELLO>>>".equals(message.getText())) {
+                    record(StoredMessage.PUBLIC, message);
+                    bus.publish(new MessageReceivedEvent(message));
+                }
+            } else if (obj instanceof FileTransferRequest req) {
+                bus.publish(new FileIncomingEvent(req));
+            } else if (obj instanceof FileChunk chunk) {
+                bus.publish(new FileChunkEvent(chunk));
+            } else if (obj instanceof FileTransferComplete complete) {
+                bus.publish(complete);
+            } else if (obj instanceof FileResumeRequest resume) {
+                bus.publish(resume);
+            } else if (obj instanceof BlobReference ref) {
+                bus.publish(ref);
+            } else if (obj instanceof BlobToken token) {
+                bus.publish(token);
+            } else if (obj instanceof VoiceMessageReadyEvent voiceMsg) {
+                bus.publish(voiceMsg);
+            } else if (obj instanceof SystemMessageEvent sysMsg) {
+                bus.publish(sysMsg);
+            } else if (obj instanceof SystemInfoEvent info) {
+                bus.publish(info);
+            } else if (obj instanceof SlowDown slow) {
+                // Отброшенные блоки файлов получатель запросит при докачке, ключ отправителя уйдёт заново
+                // со следующим сообщением; об отброшенных сообщениях нужно сказать пользователю
+                log.warning("Server asks to slow down " + slow.streamClass() + " for " + slow.retryAfterMs() + " ms");
+                if (slow.dropped() && slow.streamClass() == StreamClass.CONTROL) {
+                    senderKeys.redeliver();
+                } else if (slow.dropped() && slow.streamClass() != StreamClass.BULK) {
+                    bus.publish(new SystemMessageEvent("Sending too fast: some messages were not delivered, wait "
+                            + slow.retryAfterMs() + " ms"));
+                }
+                bus.publish(slow);
+            } else if (obj instanceof UserListUpdatedEvent users) {
+                online = List.copyOf(users.usernames());
+                senderKeys.onMembers(online);
+                bus.publish(users);
+            }
+
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Error processing message", e);
+        }
+    }
+
+    /**
+     * Сохраняет сообщение в локальную историю, если хранилище подключено.
+     */
+    private void record(String conversation, Message message) {
+        if (history != null) history.save(conversation, message);
+    }
+
+    /**
+     * Обработка разрыва соединения и автопереподключение.
+     */
+    private void onDisconnect(Exception cause) {
+        if (reconnecting.get()) return;
+
+        // Закрываем старый сокет, чтобы isConnected() не считал его живым; очередь старого соединения отбрасывается
+        if (writer != null) writer.close();
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException ignore) {}
+
+        String reason = cause != null ? cause.getMessage() : "Connection closed";
+        bus.publish(new ConnectionLostEvent(reason, true));
+        log.info("Disconnected: " + reason);
+
+        if (manualClose) {
+            log.config("Manual close — skip reconnect");
+            return;
+        }
+
+        scheduleReconnect(1);
+    }
+
+    /**
+     * Планировщик реконнекта: растущая задержка со случайным разбросом, не раньше срока из {@link ServerBusy}.
+     */
+    private void scheduleReconnect(int attempt) {
+        if (manualClose || reconnecting.getAndSet(true)) return;
+        long delay = reconnectDelays.next(retryHintMs);
+        retryHintMs = 0;
+        log.config("Reconnect attempt " + attempt + " after " + delay + " ms");
+
+        reconnectTask = reconnects.schedule(() -> {
+            try {
+                connect();
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Reconnect failed", e);
+            }
+            reconnecting.set(false);
+            if (isConnected()) {
+                reconnectDelays.reset();
+                bus.publish(new SystemInfoEvent("Reconnected"));
+                bus.publish(new ConnectionRestoredEvent(attempt));
+                log.info("Reconnection succeeded");
+            } else {
+                scheduleReconnect(attempt + 1);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Обработка ошибок отправки.
+     */
+    private void handleSendError(IOException e) {
+        log.warning("Send failed: " + e.getMessage());
+        bus.publish(new SystemMessageEvent("Send failed: " + e.getMessage()));
+        onDisconnect(e);
+    }
+
+    /**
+     * Проверяет состояние подключения.
+     *
+     * @return true, если соединение активно
+     */
+    public boolean isConnected() {
+        return socket != null && socket.isConnected() && !socket.isClosed();
+    }
+
+    /**
+     * Закрывает соединение и отменяет запланированный реконнект.
+     * Серверу сообщается о выходе, чтобы он не держал сеанс до истечения периода ожидания.
+     */
+    @Override
+    public void close() {
+        manualClose = true;
+        OutboundScheduler w = writer;
+        if (w != null && sessionToken != null && isConnected()) {
+            try {
+                w.offer(new SessionLeave()).get(LEAVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                log.fine("Leave not delivered: " + e.getMessage());
+            }
+        }
+        if (writer != null) writer.close();
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException ignore) {}
+        ScheduledFuture<?> task = reconnectTask;
+        if (task != null) task.cancel(false);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
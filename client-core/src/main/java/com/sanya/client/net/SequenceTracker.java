@@ -0,0 +1,45 @@
+package com.sanya.client.net;
+
+import java.util.TreeSet;
+
+/**
+ * SequenceTracker — учёт полученных нумерованных кадров сеанса ({@link com.sanya.net.Sequenced}).
+ *
+ * Назначение:
+ *  Планировщик сервера может обогнать чатом служебные кадры, поэтому номера приходят не строго подряд.
+ *  Трекер хранит последний номер, до которого получено всё ({@link #contiguous()}), — с него клиент
+ *  возобновляет сеанс, — и отсекает повторы, которые сервер дошлёт после возобновления.
+ *
+ * Использование:
+ *  if (!tracker.accept(frame.seq())) return;   // повтор
+ *
+ * Потокобезопасность:
+ *  {@link #accept} вызывается только потоком чтения; {@link #contiguous()} можно читать из любого потока.
+ */
+final class SequenceTracker {
+
+    private volatile long contiguous;
+
+    /** Номера, полученные раньше предшествующих. */
+    private final TreeSet<Long> ahead = new TreeSet<>();
+
+    /** Учитывает кадр; false — кадр уже был получен. */
+    boolean accept(long seq) {
+        if (seq <= contiguous || !ahead.add(seq)) return false;
+        long next = contiguous;
+        while (ahead.remove(next + 1)) next++;
+        contiguous = next;
+        return true;
+    }
+
+    /** Номер, до которого получены все кадры. */
+    long contiguous() {
+        return contiguous;
+    }
+
+    /** Новый сеанс: нумерация начинается заново. */
+    void reset() {
+        ahead.clear();
+        contiguous = 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.sanya.client.net;
+
+import java.io.IOException;
+
+/**
+ * Сервер перегружен и отклонил подключение ({@link com.sanya.net.ServerBusy}).
+ * Повторять подключение следует не раньше {@link #retryAfterMs()}.
+ */
+public final class ServerBusyException extends IOException {
+
+    private final long retryAfterMs;
+
+    public ServerBusyException(long retryAfterMs) {
+        super("Server busy, retry after " + retryAfterMs + " ms");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long retryAfterMs() {
+        return retryAfterMs;
+    }
+}
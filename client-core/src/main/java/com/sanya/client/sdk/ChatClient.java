@@ -0,0 +1,310 @@
+package com.sanya.client.sdk;
+
+import com.sanya.Message;
+import com.sanya.client.core.api.ClientContext;
+import com.sanya.client.core.api.EventBus;
+import com.sanya.client.core.api.FrameSink;
+import com.sanya.client.core.api.MessageStore;
+import com.sanya.client.net.ChatConnector;
+import com.sanya.client.security.Encryptor;
+import com.sanya.client.security.IdentityStore;
+import com.sanya.client.security.KeyDirectory;
+import com.sanya.client.security.LocalKeyFile;
+import com.sanya.client.security.StreamCrypto;
+import com.sanya.client.service.files.BlobClient;
+import com.sanya.client.service.files.BlobShareService;
+import com.sanya.client.service.files.FileSender;
+import com.sanya.client.store.LocalMessageStore;
+import com.sanya.crypto.BundleVerifier;
+import com.sanya.crypto.Crypto;
+import com.sanya.crypto.KeyUtils;
+import com.sanya.crypto.SignedPreKeyBundle;
+import com.sanya.events.chat.MessageReceivedEvent;
+import com.sanya.events.core.DefaultEventBus;
+import com.sanya.events.core.EventHandler;
+import com.sanya.events.core.SimpleDefaultEventBus;
+import com.sanya.events.file.FileChunkEvent;
+import com.sanya.events.file.FileIncomingEvent;
+import com.sanya.events.system.ConnectionRestoredEvent;
+import com.sanya.files.BlobProtocol;
+import com.sanya.files.BlobReference;
+import com.sanya.files.BlobToken;
+import com.sanya.files.FileResumeRequest;
+import com.sanya.files.FileTransferComplete;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * ChatClient — встраиваемый headless-клиент чата для ботов, интеграций и нагрузочных тестов.
+ *
+ * Назначение:
+ *  - Тот же протокол, что у Swing-клиента ({@link ChatConnector}): подключение, отправка, подписка на события,
+ *    E2EE личных и групповых сообщений, передача файлов через хранилище сервера и inline.
+ *  - Без AWT/Swing и REPL: модуль client-core зависит только от common, запуск не тянет UI-классы.
+ *  - Много клиентов в одной JVM: пулы записи и реконнекта общие для всех экземпляров, поток записи занят
+ *    только на время отправки, а ключи без профиля ({@link #open(String, int, String)}) живут только в памяти.
+ *    Чтение блокирующее: каждый подключённый клиент держит свой поток чтения (N ботов — около N потоков).
+ *
+ * Использование:
+ *  try (ChatClient bot = ChatClient.open("localhost", 12345, "echo-bot")) {
+ *      bot.onMessage(m -> bot.send("echo: " + m.getText()));
+ *      bot.connect();
+ *      bot.awaitClose();
+ *  }
+ *
+ * Потокобезопасность:
+ *  Методы можно вызывать из любых потоков. Обработчики событий вызываются в потоке чтения соединения —
+ *  долгую работу следует переносить в свой исполнитель.
+ */
+public final class ChatClient implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(ChatClient.class.getName());
+
+    /**
+     * Сеансовые ключи выводятся при первом сообщении собеседнику, без предвычисления по каталогу:
+     * бот обычно пишет немногим, а N клиентов одной JVM с предвычислением выполнили бы N² ECDH.
+     */
+    private static final Executor ON_DEMAND = task -> {};
+
+    /** Проверка пакетов ключей общая: каждый пакет проверяется один раз на JVM, а не каждым клиентом. */
+    private static final BundleVerifier bundles = new BundleVerifier();
+
+    private final String username;
+    private final DefaultEventBus bus = new SimpleDefaultEventBus();
+    private final KeyDirectory keyDir;
+    private final ChatConnector connector;
+    private final FileSender files;
+    private final BlobShareService blobs;
+
+    /** Профиль на диске; null у клиента без профиля. */
+    private final IdentityStore identity;
+    private final LocalMessageStore history;
+
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    private ChatClient(String host, int port, String username, KeyDirectory keyDir, KeyPair ed25519,
+                       IdentityStore identity, LocalMessageStore history, Path downloadDir) {
+        this.username = username;
+        this.keyDir = keyDir;
+        this.identity = identity;
+        this.history = history;
+
+        Encryptor encryptor = new Encryptor(keyDir);
+        StreamCrypto streams = new StreamCrypto(keyDir, encryptor, username);
+        Context ctx = new Context(ed25519);
+        ctx.components.put(StreamCrypto.class, streams);
+        ctx.components.put(BundleVerifier.class, bundles);
+        if (history != null) ctx.components.put(MessageStore.class, history);
+
+        EventBus events = new EventBus() {
+            @Override
+            public <T> void subscribe(Class<T> type, Consumer<? super T> handler) {
+                bus.subscribe(type, handler::accept);
+            }
+
+            @Override
+            public void publish(Object event) {
+                bus.publish(event);
+            }
+        };
+        this.files = new FileSender(events, downloadDir);
+        files.setStreamKeys(streams);
+        this.blobs = new BlobShareService(events, new BlobClient(host, port + BlobProtocol.PORT_OFFSET),
+                files, username, downloadDir);
+        blobs.setStreamKeys(streams);
+        this.connector = new ChatConnector(ctx, host, port, username, bus, keyDir, encryptor);
+
+        // Входящие передачи файлов — без диалогов, сразу в каталог загрузок
+        FrameSink frames = connector::sendObject;
+        bus.subscribe(FileIncomingEvent.class, e -> files.onTransferRequest(e.request()));
+        bus.subscribe(FileChunkEvent.class, e -> files.receiveFile(e.chunk()));
+        bus.subscribe(FileTransferComplete.class, e -> files.onTransferComplete(e, frames));
+        bus.subscribe(FileResumeRequest.class, e -> files.resume(e, frames));
+        bus.subscribe(BlobReference.class, blobs::onReference);
+        bus.subscribe(BlobToken.class, blobs::onToken);
+        bus.subscribe(ConnectionRestoredEvent.class, e -> files.onReconnected(frames));
+    }
+
+    /**
+     * Клиент без профиля: ключи создаются в памяти, история не ведётся, загрузки — во временный каталог.
+     * Подходит для нагрузочных тестов и одноразовых ботов.
+     */
+    public static ChatClient open(String host, int port, String username) {
+        KeyDirectory keyDir = new KeyDirectory(Crypto.genX25519(), KeyDirectory.DEFAULT_CAPACITY, ON_DEMAND);
+        return new ChatClient(host, port, username, keyDir, null, null, null,
+                Path.of(System.getProperty("java.io.tmpdir"), "sanya-" + username));
+    }
+
+    /**
+     * Клиент с профилем в {@code dataDir}: ключи личности и кеш собеседников переживают перезапуск,
+     * история шифруется локальным ключом, загрузки — в {@code dataDir/downloads}.
+     *
+     * @throws IOException если профиль повреждён или недоступен
+     */
+    public static ChatClient open(String host, int port, String username, Path dataDir) throws IOException {
+        SecretKey localKey = LocalKeyFile.loadOrCreate(dataDir.resolve("local.key"));
+        IdentityStore identity = IdentityStore.open(dataDir.resolve("identity.keys"), localKey);
+        KeyDirectory keyDir = new KeyDirectory(identity.x25519(), KeyDirectory.DEFAULT_CAPACITY, ON_DEMAND);
+        identity.restore(keyDir);
+        LocalMessageStore history = LocalMessageStore.open(dataDir.resolve("history"), localKey);
+        return new ChatClient(host, port, username, keyDir, identity.ed25519(), identity, history,
+                dataDir.resolve("downloads"));
+    }
+
+    /**
+     * Подключается к серверу и выполняет обмен ключами.
+     * После обрыва соединение восстанавливается автоматически.
+     *
+     * @throws IOException если сервер недоступен
+     */
+    public void connect() throws IOException {
+        connector.open();
+        connector.start();
+    }
+
+    /**
+     * Отправляет текст: одному собеседнику — личным сообщением, группе — ключом отправителя (E2EE).
+     * Не блокируется: шифрование и запись выполняются в общих пулах.
+     *
+     * @return завершается после записи в сокет; исключением — при переполнении очереди или обрыве
+     */
+    public CompletableFuture<Void> send(String text) {
+        return connector.sendMessage(text);
+    }
+
+    /** Отправляет объект протокола как есть; блоки файлов ждут окна передачи, остальное не блокируется. */
+    public CompletableFuture<Void> sendObject(Object message) {
+        return connector.sendObject(message);
+    }
+
+    /** Число объектов, ожидающих записи в сокет. */
+    public int sendQueueDepth() {
+        return connector.sendQueueDepth();
+    }
+
+    /** Загружает файл в хранилище сервера и рассылает ссылку; без хранилища — передаёт inline. */
+    public void sendFile(Path file) {
+        blobs.share(file.toFile(), connector::sendObject);
+    }
+
+    /** Скачивает файл из полученной ссылки (см. {@link #offers()}) и проверяет его SHA-256. */
+    public Path download(BlobReference ref) throws IOException {
+        return blobs.download(ref, connector::sendObject);
+    }
+
+    /** Полученные предложения файлов. */
+    public List<BlobReference> offers() {
+        return blobs.offers();
+    }
+
+    /**
+     * Подписывает обработчик на события указанного типа (сообщения, список участников, передачи файлов...).
+     *
+     * @return подписка; {@link Subscription#unsubscribe()} снимает обработчик
+     */
+    public <E> Subscription subscribe(Class<E> type, Consumer<? super E> handler) {
+        EventHandler<E> h = handler::accept;
+        bus.subscribe(type, h);
+        return () -> bus.unsubscribe(type, h);
+    }
+
+    /** Подписка на входящие сообщения собеседников (свои отправленные сообщения не приходят). */
+    public Subscription onMessage(Consumer<Message> handler) {
+        return subscribe(MessageReceivedEvent.class, e -> {
+            if (!username.equals(e.message().getFrom())) handler.accept(e.message());
+        });
+    }
+
+    /** Шина событий клиента. */
+    public DefaultEventBus events() {
+        return bus;
+    }
+
+    public String username() {
+        return username;
+    }
+
+    /** Каталог ключей: публичные ключи собеседников и статистика кеша сеансовых ключей. */
+    public KeyDirectory keys() {
+        return keyDir;
+    }
+
+    public boolean isConnected() {
+        return connector.isConnected();
+    }
+
+    /** Блокирует вызывающий поток до {@link #close()} — потоки клиента daemon и JVM сами не удерживают. */
+    public void awaitClose() throws InterruptedException {
+        closed.await();
+    }
+
+    /** Закрывает соединение и сохраняет профиль (если он есть). */
+    @Override
+    public void close() {
+        if (closed.getCount() == 0) return;
+        connector.close();
+        try {
+            if (identity != null) identity.save(keyDir);
+            if (history != null) history.close();
+        } catch (IOException e) {
+            log.warning("Failed to save profile of " + username + ": " + e.getMessage());
+        }
+        closed.countDown();
+    }
+
+    /** Снятие обработчика, подписанного через {@link #subscribe}. */
+    @FunctionalInterface
+    public interface Subscription {
+        void unsubscribe();
+    }
+
+    /** Контекст коннектора без UI: ключ подписи создаётся при первом обращении (только если он не загружен). */
+    private static final class Context implements ClientContext {
+        private final Map<Class<?>, Object> components = new ConcurrentHashMap<>();
+        private final Map<String, SignedPreKeyBundle> knownBundles = new ConcurrentHashMap<>();
+        private volatile KeyPair ed25519;
+
+        Context(KeyPair ed25519) {
+            this.ed25519 = ed25519;
+        }
+
+        @Override
+        public KeyPair getEd25519KeyPair() {
+            KeyPair k = ed25519;
+            if (k == null) {
+                synchronized (this) {
+                    if ((k = ed25519) == null) {
+                        try {
+                            ed25519 = k = KeyUtils.generateEd25519();
+                        } catch (GeneralSecurityException e) {
+                            throw new IllegalStateException("Ed25519 unavailable", e);
+                        }
+                    }
+                }
+            }
+            return k;
+        }
+
+        @Override
+        public Map<String, SignedPreKeyBundle> getKnownBundles() {
+            return knownBundles;
+        }
+
+        @Override
+        public <T> T find(Class<T> type) {
+            return type.cast(components.get(type));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.sanya.client.sdk;
+
+import com.sanya.events.chat.UserListUpdatedEvent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HeadlessClientBenchmark — автономный замер запуска {@link ChatClient} без JUnit.
+ * Подключает к работающему серверу один клиент (холодный запуск: от старта JVM и от вызова open),
+ * второй (тёплая JVM), затем ещё {@code clients} клиентов в той же JVM и печатает время подключения
+ * и число потоков. При входе каждого участника сервер рассылает всем полный список и каталог ключей,
+ * поэтому время на клиента растёт с их числом.
+ *
+ * Запуск:
+ *  java -cp client-core.jar:common.jar com.sanya.client.sdk.HeadlessClientBenchmark [host] [port] [clients]
+ */
+public final class HeadlessClientBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 12345;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        long t0 = System.nanoTime();
+        ChatClient first = ChatClient.open(host, port, "bench-0");
+        CountDownLatch ready = new CountDownLatch(1);
+        first.subscribe(UserListUpdatedEvent.class, e -> ready.countDown());
+        first.connect();
+        long connected = System.nanoTime() - t0;
+        ready.await(10, TimeUnit.SECONDS);
+        long roundTrip = System.nanoTime() - t0;
+        System.out.printf("First client: connected %.1f ms, first server event %.1f ms after open (JVM uptime %d ms)%n",
+                connected / 1e6, roundTrip / 1e6, ManagementFactory.getRuntimeMXBean().getUptime());
+
+        // Второй клиент: JCA и классы уже загружены — собственная цена запуска клиента
+        t0 = System.nanoTime();
+        ChatClient second = ChatClient.open(host, port, "bench-1");
+        second.connect();
+        System.out.printf("Second client (warm JVM): connected %.1f ms after open%n", (System.nanoTime() - t0) / 1e6);
+
+        int threadsBefore = Thread.activeCount();
+        List<ChatClient> all = new ArrayList<>(List.of(first, second));
+        t0 = System.nanoTime();
+        for (int i = 2; i < clients + 2; i++) {
+            ChatClient c = ChatClient.open(host, port, "bench-" + i);
+            c.connect();
+            all.add(c);
+        }
+        long total = System.nanoTime() - t0;
+        System.out.printf("%d more clients: %.2f ms per client, threads %d -> %d%n",
+                clients, total / 1e6 / clients, threadsBefore, Thread.activeCount());
+
+        all.forEach(ChatClient::close);
+        System.exit(0);
+    }
+}
@@ -1,6 +1,7 @@
 package com.sanya.client.security;
 
 import com.sanya.client.core.api.CryptoEngine;
+import com.sanya.crypto.AeadEngine;
 import com.sanya.crypto.Crypto;
 
 import javax.crypto.SecretKey;
@@ -47,8 +48,10 @@ public final class Encryptor implements CryptoEngine {
     public Enc encryptFor(String toUser, byte[] plain) {
         SecretKey k = dir.getOrDeriveSession(toUser);
         if (k == null) throw new IllegalStateException("No pubkey for " + toUser);
-        byte[] n = Crypto.randomNonce12();
-        return new Enc(n, Crypto.encryptGCM(k, n, plain));
+        // Ключ общий для обоих направлений и переживает перезапуск (IdentityStore): счётчик начинался бы
+        // с нуля у каждой стороны и при каждом запуске, поэтому nonce только случайный (96 бит)
+        byte[] n = AeadEngine.randomNonce();
+        return new Enc(n, AeadEngine.seal(k, n, null, plain));
     }
 
     /**
@@ -1,5 +1,8 @@
 package com.sanya.client.security;
 
+import com.sanya.crypto.StreamAead;
+import com.sanya.files.BlobReference;
+
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 
@@ -47,7 +50,35 @@ public final class EncryptorSelfTest {
 
         System.out.println("Encrypt / decrypt test OK");
 
-        // 8. Выводим сессионный ключ в hex
+        // 8. Голосовое сообщение блоками потокового шифрования, в обратном порядке
+        StreamCrypto aliceStreams = new StreamCrypto(aliceKeys, aliceEnc, "alice");
+        StreamCrypto bobStreams = new StreamCrypto(bobKeys, bobEnc, "bob");
+        byte[] pcm = new byte[StreamCrypto.VOICE_CHUNK * 3 + 100];
+        new java.util.Random(1).nextBytes(pcm);
+        var chunks = new java.util.ArrayList<>(aliceStreams.sealVoice("bob", pcm));
+        java.util.Collections.reverse(chunks);
+        byte[] voice = null;
+        try {
+            for (var chunk : chunks) voice = bobStreams.onVoiceChunk(chunk);
+        } catch (javax.crypto.AEADBadTagException e) {
+            throw new AssertionError("Voice chunk rejected", e);
+        }
+        if (!java.util.Arrays.equals(pcm, voice)) {
+            throw new AssertionError("Voice message mismatch");
+        }
+        System.out.println("Stream voice test OK (" + chunks.size() + " chunks)");
+
+        // 9. Ссылка на зашифрованный файл в хранилище: отправитель — владелец сеансового ключа
+        byte[] blobKey = StreamAead.Secret.random().encode();
+        var refs = new java.util.ArrayList<>();
+        aliceStreams.shareBlob(new BlobReference("ab".repeat(32), "mallory", "a.bin", 42, blobKey), refs::add);
+        BlobReference ref = bobStreams.onBlob((com.sanya.crypto.msg.EncryptedDirectMessage) refs.get(0));
+        if (!"alice".equals(ref.sender()) || ref.size() != 42 || !java.util.Arrays.equals(blobKey, ref.key())) {
+            throw new AssertionError("Blob reference mismatch: " + ref);
+        }
+        System.out.println("Blob reference test OK");
+
+        // 10. Выводим сессионный ключ в hex
         System.out.print("Session key: ");
         for (byte b : aliceSession.getEncoded()) {
             System.out.printf("%02X", b);
@@ -0,0 +1,63 @@
+package com.sanya.client.security;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GroupEncryptionBenchmark — автономный замер без JUnit: процессорное время отправки одного
+ * группового сообщения в зависимости от размера группы.
+ *
+ * Сравниваются:
+ *  - попарное шифрование: отдельный AES-GCM для каждого собеседника (O(N) на сообщение);
+ *  - {@link SenderKeys}: один шаг цепочки и один AES-GCM на сообщение независимо от N.
+ *
+ * Запуск:
+ *  java -cp client.jar:common.jar com.sanya.client.security.GroupEncryptionBenchmark [messages]
+ */
+public final class GroupEncryptionBenchmark {
+
+    private static final int[] GROUP_SIZES = {2, 4, 8, 16, 32, 64, 128};
+    private static final ThreadMXBean CPU = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        byte[] text = "A typical chat line of about one hundred bytes, sent to everybody in the room ....".getBytes();
+
+        System.out.println("[GroupEncryptionBenchmark] " + messages + " messages of " + text.length + " bytes, CPU us per send");
+        System.out.printf("%8s %14s %14s %8s%n", "members", "pairwise", "sender-key", "ratio");
+        for (int n : GROUP_SIZES) {
+            KeyDirectory me = new KeyDirectory();
+            Encryptor enc = new Encryptor(me);
+            List<String> peers = new ArrayList<>();
+            for (int i = 1; i < n; i++) {
+                String peer = "peer" + i;
+                me.putPub(peer, new KeyDirectory().myKeyPair().getPublic());
+                me.getOrDeriveSession(peer); // ECDH вне замера: сеансовые ключи кешируются
+                peers.add(peer);
+            }
+            SenderKeys senderKeys = new SenderKeys(me, enc, "me");
+            senderKeys.distribute(peers); // разовая рассылка ключа вне замера
+
+            // Прогрев
+            for (int i = 0; i < 200; i++) {
+                for (String p : peers) enc.encryptFor(p, text);
+                senderKeys.encrypt(text);
+            }
+
+            long t0 = CPU.getCurrentThreadCpuTime();
+            for (int i = 0; i < messages; i++) {
+                for (String p : peers) enc.encryptFor(p, text);
+            }
+            long pairwise = CPU.getCurrentThreadCpuTime() - t0;
+
+            t0 = CPU.getCurrentThreadCpuTime();
+            for (int i = 0; i < messages; i++) senderKeys.encrypt(text);
+            long grouped = CPU.getCurrentThreadCpuTime() - t0;
+
+            System.out.printf("%8d %14.1f %14.1f %7.1fx%n", n,
+                    pairwise / 1000.0 / messages, grouped / 1000.0 / messages, (double) pairwise / Math.max(1, grouped));
+        }
+    }
+}
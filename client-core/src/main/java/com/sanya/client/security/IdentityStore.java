@@ -0,0 +1,196 @@
+package com.sanya.client.security;
+
+import com.sanya.crypto.AeadEngine;
+import com.sanya.crypto.Crypto;
+import com.sanya.crypto.KeyUtils;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * IdentityStore — зашифрованное хранилище ключей личности и кеша собеседников в профиле пользователя.
+ *
+ * Назначение:
+ *  - Сохранять пары X25519 (обмен) и Ed25519 (подпись) между запусками: после перезапуска
+ *    собеседникам не нужно заново получать каталог и выполнять ECDH.
+ *  - Сохранять публичные и выведенные сеансовые ключи собеседников, чтобы сразу после старта
+ *    шифровать сообщения без ожидания {@code KeyDirectoryUpdate}.
+ *  - Файл целиком шифруется AES-256-GCM локальным ключом ({@link LocalKeyFile}),
+ *    пишется во временный файл и атомарно переименовывается.
+ *
+ * Использование:
+ *  IdentityStore ids = IdentityStore.open(dataDir.resolve("identity.keys"), localKey);
+ *  KeyDirectory dir = new KeyDirectory(ids.x25519());
+ *  ids.restore(dir);
+ *  ...
+ *  ids.save(dir);
+ *
+ * Потокобезопасность:
+ *  {@link #save} синхронизирован; ключи личности неизменяемы.
+ */
+public final class IdentityStore {
+
+    private static final Logger log = Logger.getLogger(IdentityStore.class.getName());
+
+    private static final int MAGIC = 0x53494431; // "SID1"
+    private static final byte[] AAD = "sanya-identity-v1".getBytes(StandardCharsets.UTF_8);
+
+    private final Path file;
+    private final SecretKey localKey;
+    private final KeyPair x25519;
+    private final KeyPair ed25519;
+
+    /** Кеш собеседников, прочитанный при открытии. */
+    private final Map<String, KeyDirectory.Session> peers;
+
+    private IdentityStore(Path file, SecretKey localKey, KeyPair x25519, KeyPair ed25519,
+                          Map<String, KeyDirectory.Session> peers) {
+        this.file = file;
+        this.localKey = localKey;
+        this.x25519 = x25519;
+        this.ed25519 = ed25519;
+        this.peers = peers;
+    }
+
+    /**
+     * Загружает ключи из файла или создаёт новые, если файла ещё нет.
+     *
+     * @param file     путь к файлу хранилища
+     * @param localKey локальный ключ шифрования профиля
+     * @throws IOException если файл повреждён, подменён или зашифрован другим ключом
+     */
+    public static IdentityStore open(Path file, SecretKey localKey) throws IOException {
+        if (!Files.exists(file)) {
+            KeyPair ed;
+            try {
+                ed = KeyUtils.generateEd25519();
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Ed25519 unavailable", e);
+            }
+            IdentityStore store = new IdentityStore(file, localKey, Crypto.genX25519(), ed, Map.of());
+            store.write(Map.of());
+            log.info("Created new identity keys: " + file);
+            return store;
+        }
+
+        byte[] raw = Files.readAllBytes(file);
+        if (raw.length < AeadEngine.NONCE_LEN) throw new IOException("Corrupted identity file: " + file);
+        byte[] plain;
+        try {
+            plain = AeadEngine.open(localKey, Arrays.copyOf(raw, AeadEngine.NONCE_LEN), AAD,
+                    Arrays.copyOfRange(raw, AeadEngine.NONCE_LEN, raw.length));
+        } catch (AEADBadTagException e) {
+            throw new IOException("Identity file is corrupted or belongs to another profile: " + file, e);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an identity file: " + file);
+            KeyFactory xdh = KeyFactory.getInstance("XDH");
+            KeyFactory eddsa = KeyFactory.getInstance("Ed25519");
+            KeyPair x = new KeyPair(xdh.generatePublic(new X509EncodedKeySpec(readBytes(in))),
+                    xdh.generatePrivate(new PKCS8EncodedKeySpec(readBytes(in))));
+            KeyPair ed = new KeyPair(eddsa.generatePublic(new X509EncodedKeySpec(readBytes(in))),
+                    eddsa.generatePrivate(new PKCS8EncodedKeySpec(readBytes(in))));
+
+            int n = in.readInt();
+            Map<String, KeyDirectory.Session> peers = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                String user = in.readUTF();
+                PublicKey pub = xdh.generatePublic(new X509EncodedKeySpec(readBytes(in)));
+                peers.put(user, new KeyDirectory.Session(pub, new SecretKeySpec(readBytes(in), "AES")));
+            }
+            log.info("Loaded identity keys and " + n + " cached peers");
+            return new IdentityStore(file, localKey, x, ed, peers);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Malformed key in identity file: " + file, e);
+        }
+    }
+
+    /** Пара X25519 для обмена ключами. */
+    public KeyPair x25519() {
+        return x25519;
+    }
+
+    /** Пара Ed25519 для подписи пакетов ключей. */
+    public KeyPair ed25519() {
+        return ed25519;
+    }
+
+    /** Переносит сохранённых собеседников в каталог (без ECDH). */
+    public void restore(KeyDirectory dir) {
+        peers.forEach(dir::restore);
+    }
+
+    /** Сохраняет ключи личности и текущий кеш сеансовых ключей каталога. */
+    public synchronized void save(KeyDirectory dir) throws IOException {
+        write(dir.sessions());
+    }
+
+    private void write(Map<String, KeyDirectory.Session> sessions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            writeBytes(out, x25519.getPublic().getEncoded());
+            writeBytes(out, x25519.getPrivate().getEncoded());
+            writeBytes(out, ed25519.getPublic().getEncoded());
+            writeBytes(out, ed25519.getPrivate().getEncoded());
+            out.writeInt(sessions.size());
+            for (Map.Entry<String, KeyDirectory.Session> e : sessions.entrySet()) {
+                out.writeUTF(e.getKey());
+                writeBytes(out, e.getValue().pub().getEncoded());
+                writeBytes(out, e.getValue().key().getEncoded());
+            }
+        }
+
+        byte[] nonce = AeadEngine.randomNonce();
+        byte[] ct = AeadEngine.seal(localKey, nonce, AAD, bytes.toByteArray());
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            out.write(nonce);
+            out.write(ct);
+        }
+        try {
+            Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignored) {
+            // Не-POSIX файловая система (Windows) — полагаемся на права профиля пользователя
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > 4096) throw new IOException("Malformed identity file");
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return b;
+    }
+
+    /** Только для логов: закрытые ключи не выводятся. */
+    @Override
+    public String toString() {
+        return "IdentityStore{" + file + ", peers=" + peers.size() + '}';
+    }
+}
@@ -0,0 +1,276 @@
+package com.sanya.client.security;
+
+import com.sanya.crypto.Crypto;
+
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * KeyDirectory — хранилище публичных и сеансовых ключей пользователей.
+ * Используется для организации end-to-end шифрования (E2EE) с помощью X25519 и AES-GCM.
+ *
+ * Назначение:
+ *  - Хранить собственную пару ключей клиента (X25519).
+ *  - Сохранять публичные ключи других пользователей.
+ *  - Вычислять симметричные AES-ключи заранее: при обновлении каталога ({@link #putAll}) ECDH для новых
+ *    и сменивших ключ собеседников выполняется в фоновом пуле, а не в потоке первого сообщения.
+ *  - Держать не больше {@code capacity} сеансовых ключей (LRU); вытесненный ключ вычисляется снова при обращении.
+ *  - Считать попадания, промахи и время вычисления ({@link #stats()}).
+ *
+ * Потокобезопасность:
+ *  Публичные ключи — в {@link ConcurrentHashMap}, кеш сеансовых ключей — под своим монитором.
+ *  ECDH выполняется вне блокировок; параллельные запросы одного ключа ждут одно вычисление.
+ */
+public final class KeyDirectory implements KeyRepository {
+
+    private static final Logger log = Logger.getLogger(KeyDirectory.class.getName());
+
+    /** Размер кеша сеансовых ключей по умолчанию. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** Общий фоновый пул предварительного вычисления ключей. */
+    private static final ExecutorService precomputePool = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1)), r -> {
+                Thread t = new Thread(r, "KeyDirectory-Precompute");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+
+    /** Личная пара ключей X25519 текущего пользователя. */
+    private final KeyPair my;
+
+    /** Публичные ключи других пользователей. */
+    private final Map<String, PublicKey> pub = new ConcurrentHashMap<>();
+
+    /** Кеш сеансовых ключей (AES-GCM) в порядке обращения; ключ привязан к публичному ключу, из которого выведен. */
+    private final LinkedHashMap<String, Session> session;
+
+    /** Идущие вычисления по пользователю. */
+    private final Map<String, CompletableFuture<Session>> pending = new ConcurrentHashMap<>();
+
+    private final Executor executor;
+    private final int capacity;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder precomputed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder derivations = new LongAdder();
+    private final LongAdder deriveNanos = new LongAdder();
+
+    /** Создаёт новую пару ключей X25519. */
+    public KeyDirectory() {
+        this(DEFAULT_CAPACITY, precomputePool);
+    }
+
+    /**
+     * @param capacity максимум хранимых сеансовых ключей
+     * @param executor где выполнять предварительное вычисление
+     */
+    public KeyDirectory(int capacity, Executor executor) {
+        this(Crypto.genX25519(), capacity, executor);
+    }
+
+    /** Использует сохранённую пару ключей (см. {@link IdentityStore}). */
+    public KeyDirectory(KeyPair my) {
+        this(my, DEFAULT_CAPACITY, precomputePool);
+    }
+
+    /**
+     * @param my       собственная пара ключей X25519
+     * @param capacity максимум хранимых сеансовых ключей
+     * @param executor где выполнять предварительное вычисление
+     */
+    public KeyDirectory(KeyPair my, int capacity, Executor executor) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.my = my;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.session = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                if (size() <= capacity) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /** Возвращает собственную пару ключей (X25519). */
+    public KeyPair myKeyPair() {
+        return my;
+    }
+
+    /** Сохраняет публичный ключ пользователя и сбрасывает старый сеансовый ключ. */
+    public void putPub(String user, PublicKey k) {
+        pub.put(user, k);
+        synchronized (session) {
+            session.remove(user);
+        }
+    }
+
+    /**
+     * Применяет обновление каталога: сохраняет ключи и в фоне вычисляет сеансовые ключи
+     * для новых и сменивших ключ пользователей (не больше ёмкости кеша).
+     *
+     * @return число запланированных вычислений
+     */
+    public int putAll(Map<String, PublicKey> keys) {
+        int scheduled = 0;
+        for (Map.Entry<String, PublicKey> e : keys.entrySet()) {
+            if (e.getValue().equals(pub.get(e.getKey()))) continue;
+            putPub(e.getKey(), e.getValue());
+            // Больше ключей, чем вмещает кеш, заранее не вычисляем: они вытеснили бы друг друга
+            if (scheduled >= capacity) continue;
+            String user = e.getKey();
+            executor.execute(() -> {
+                if (derive(user, true) != null) precomputed.increment();
+            });
+            scheduled++;
+        }
+        if (scheduled > 0) log.fine("Precomputing " + scheduled + " session keys");
+        return scheduled;
+    }
+
+    /** Возвращает публичный ключ пользователя. */
+    public PublicKey getPub(String user) {
+        return pub.get(user);
+    }
+
+    /**
+     * Возвращает существующий или вычисляет новый сеансовый ключ AES-GCM.
+     * Ключ вычисляется через ECDH (X25519) по публичному ключу собеседника.
+     */
+    public SecretKey getOrDeriveSession(String user) {
+        PublicKey p = pub.get(user);
+        if (p == null) return null;
+        SecretKey key = cached(user, p);
+        if (key != null) {
+            hits.increment();
+            return key;
+        }
+        misses.increment();
+        return derive(user, false);
+    }
+
+    /** Ключ из кеша, если он выведен из {@code p}; иначе null. */
+    private SecretKey cached(String user, PublicKey p) {
+        synchronized (session) {
+            Session s = session.get(user);
+            return s != null && s.pub.equals(p) ? s.key : null;
+        }
+    }
+
+    /**
+     * Вычисляет ключ вне блокировок; если вычисление для пользователя уже идёт, ждёт его.
+     * Фоновое вычисление ({@code background}) не дублирует уже готовый ключ.
+     */
+    private SecretKey derive(String user, boolean background) {
+        while (true) {
+            PublicKey p = pub.get(user);
+            if (p == null) return null;
+            if (background && cached(user, p) != null) return null;
+
+            CompletableFuture<Session> mine = new CompletableFuture<>();
+            CompletableFuture<Session> running = pending.putIfAbsent(user, mine);
+            if (running != null) {
+                Session s = running.join();
+                if (s != null && s.pub.equals(pub.get(user))) return background ? null : s.key;
+                continue;
+            }
+            try {
+                long start = System.nanoTime();
+                Session s = new Session(p, Crypto.deriveX25519(my.getPrivate(), p));
+                derivations.increment();
+                deriveNanos.add(System.nanoTime() - start);
+                synchronized (session) {
+                    // Ключ мог смениться, пока шёл ECDH: устаревший результат не кешируется
+                    if (p.equals(pub.get(user))) session.put(user, s);
+                }
+                mine.complete(s);
+                return s.key;
+            } catch (RuntimeException e) {
+                mine.complete(null);
+                throw e;
+            } finally {
+                pending.remove(user, mine);
+            }
+        }
+    }
+
+    /** Копия кеша сеансовых ключей, от давно не использованных к недавним. */
+    public Map<String, Session> sessions() {
+        synchronized (session) {
+            return new LinkedHashMap<>(session);
+        }
+    }
+
+    /** Восстанавливает публичный и сеансовый ключ собеседника из сохранённого кеша без ECDH. */
+    public void restore(String user, Session s) {
+        synchronized (session) {
+            pub.put(user, s.pub());
+            session.put(user, s);
+        }
+    }
+
+    /** Возвращает копию всех публичных ключей. */
+    public Map<String, PublicKey> allPubs() {
+        return Map.copyOf(pub);
+    }
+
+    /** Снимок счётчиков кеша сеансовых ключей. */
+    public Stats stats() {
+        int size;
+        synchronized (session) {
+            size = session.size();
+        }
+        long n = derivations.sum();
+        return new Stats(hits.sum(), misses.sum(), precomputed.sum(), evictions.sum(), size,
+                n == 0 ? 0 : deriveNanos.sum() / n / 1000);
+    }
+
+    /** Реализация интерфейса KeyRepository: сохраняет публичный ключ. */
+    @Override
+    public void store(String user, PublicKey k) {
+        putPub(user, k);
+    }
+
+    /** Реализация интерфейса KeyRepository: возвращает публичный ключ. */
+    @Override
+    public PublicKey get(String user) {
+        return getPub(user);
+    }
+
+    /** Сеансовый ключ и публичный ключ собеседника, из которого он выведен. */
+    public record Session(PublicKey pub, SecretKey key) {}
+
+    /**
+     * Счётчики кеша сеансовых ключей.
+     *
+     * @param hits          ключ уже был готов
+     * @param misses        ключ пришлось вычислять (или ждать) в потоке вызова
+     * @param precomputed   ключей вычислено в фоне
+     * @param evictions     ключей вытеснено по LRU
+     * @param size          ключей в кеше
+     * @param avgDeriveMicros среднее время одного ECDH, мкс
+     */
+    public record Stats(long hits, long misses, long precomputed, long evictions, int size, long avgDeriveMicros) {
+
+        /** Доля обращений, для которых ключ был готов. */
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.sanya.client.security;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.logging.Logger;
+
+/**
+ * LocalKeyFile — локальный симметричный ключ для шифрования данных клиента на диске.
+ * Хранится в отдельном файле профиля пользователя с правами только для владельца.
+ *
+ * Назначение:
+ *  - Шифрование истории сообщений и других локальных данных (AES-256-GCM).
+ *  - Ключ создаётся при первом запуске и далее только читается.
+ *
+ * Использование:
+ *  SecretKey key = LocalKeyFile.loadOrCreate(dataDir.resolve("local.key"));
+ */
+public final class LocalKeyFile {
+
+    private static final Logger log = Logger.getLogger(LocalKeyFile.class.getName());
+
+    /** Длина ключа AES-256 в байтах. */
+    private static final int KEY_LEN = 32;
+
+    private LocalKeyFile() {}
+
+    /**
+     * Загружает ключ из файла или создаёт новый, если файла ещё нет.
+     *
+     * @param file путь к файлу ключа
+     * @return AES-ключ
+     * @throws IOException если файл повреждён или недоступен
+     */
+    public static SecretKey loadOrCreate(Path file) throws IOException {
+        if (Files.exists(file)) {
+            byte[] raw = Files.readAllBytes(file);
+            if (raw.length != KEY_LEN) throw new IOException("Corrupted local key file: " + file);
+            return new SecretKeySpec(raw, "AES");
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        byte[] raw = new byte[KEY_LEN];
+        new SecureRandom().nextBytes(raw);
+        Files.write(file, raw);
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignored) {
+            // Не-POSIX файловая система (Windows) — полагаемся на права профиля пользователя
+        }
+        log.info("Created new local key: " + file);
+        return new SecretKeySpec(raw, "AES");
+    }
+}
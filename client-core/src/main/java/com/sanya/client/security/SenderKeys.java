@@ -0,0 +1,254 @@
+package com.sanya.client.security;
+
+import com.sanya.crypto.AesGcm;
+import com.sanya.crypto.HKDF;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.crypto.msg.GroupMessage;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * SenderKeys — групповое шифрование ключами отправителей (sender keys).
+ *
+ * Назначение:
+ *  - Каждый участник держит свою цепочку ключей: цепной ключ и номер сообщения.
+ *    Цепной ключ один раз доставляется каждому собеседнику в {@link EncryptedDirectMessage}
+ *    ({@link EncryptedDirectMessage#SENDER_KEY}) под попарным сеансовым ключом.
+ *  - Каждое групповое сообщение шифруется один раз: ключ сообщения = HMAC(цепной, 0x01),
+ *    следующий цепной = HMAC(цепной, 0x02). Цепочка идёт только вперёд, поэтому утечка текущего
+ *    ключа не раскрывает прошлые сообщения.
+ *  - Когда участник, получивший ключ, покидает чат, цепочка заменяется новой и рассылается заново,
+ *    чтобы он не читал дальнейшие сообщения. Участник, вошедший заново с тем же ключом, получает её повторно.
+ *  - Получатель принимает сообщения не по порядку: ключи пропущенных номеров хранятся (до {@link #MAX_SKIP}).
+ *
+ * Использование:
+ *  senderKeys.distribute(peers).forEach(connector::send);
+ *  connector.send(senderKeys.encrypt(text.getBytes(UTF_8)));
+ *  byte[] plain = senderKeys.decrypt(groupMessage);
+ *
+ * Потокобезопасность:
+ *  Собственная цепочка защищена монитором объекта, цепочки собеседников — каждая своим.
+ */
+public final class SenderKeys {
+
+    private static final Logger log = Logger.getLogger(SenderKeys.class.getName());
+
+    /** Максимум хранимых ключей пропущенных сообщений одной цепочки. */
+    static final int MAX_SKIP = 2000;
+
+    private static final byte[] MESSAGE_KEY = {1};
+    private static final byte[] CHAIN_KEY = {2};
+    private static final SecureRandom RNG = new SecureRandom();
+
+    private final KeyDirectory dir;
+    private final Encryptor encryptor;
+    private final String username;
+
+    /** Собственная цепочка. */
+    private Chain own = Chain.random();
+
+    /** Кому и под каким публичным ключом доставлена собственная цепочка. */
+    private final Map<String, PublicKey> deliveredTo = new HashMap<>();
+
+    /** Цепочки собеседников: отправитель → (id цепочки → цепочка); не больше двух на отправителя. */
+    private final Map<String, Map<Integer, Chain>> chains = new ConcurrentHashMap<>();
+
+    public SenderKeys(KeyDirectory dir, Encryptor encryptor, String username) {
+        this.dir = dir;
+        this.encryptor = encryptor;
+        this.username = username;
+    }
+
+    /**
+     * Сообщения с собственным цепным ключом для собеседников, которые его ещё не получили
+     * (или сменили публичный ключ).
+     */
+    public synchronized List<EncryptedDirectMessage> distribute(Collection<String> peers) {
+        List<EncryptedDirectMessage> out = new ArrayList<>();
+        byte[] payload = null;
+        for (String peer : peers) {
+            PublicKey pub = dir.getPub(peer);
+            if (pub == null || peer.equals(username) || pub.equals(deliveredTo.get(peer))) continue;
+            if (payload == null) payload = own.encode();
+            Encryptor.Enc enc = encryptor.encryptFor(peer, payload);
+            out.add(new EncryptedDirectMessage(username, peer, enc.nonce(), enc.ct(), EncryptedDirectMessage.SENDER_KEY, null, null));
+            deliveredTo.put(peer, pub);
+        }
+        return out;
+    }
+
+    /** Шифрует групповое сообщение следующим ключом собственной цепочки. */
+    public synchronized GroupMessage encrypt(byte[] plain) {
+        int iteration = own.iteration;
+        byte[] messageKey = kdf(own.chainKey, MESSAGE_KEY);
+        own.chainKey = kdf(own.chainKey, CHAIN_KEY);
+        own.iteration++;
+        try {
+            AesGcm.Box box = AesGcm.encrypt(new SecretKeySpec(messageKey, "AES"), plain, aad(username, own.keyId, iteration));
+            return new GroupMessage(username, own.keyId, iteration, box.iv, box.ct);
+        } catch (Exception e) {
+            throw new IllegalStateException("Group encryption failed", e);
+        }
+    }
+
+    /** Заменяет собственную цепочку новой; её получат все при следующем {@link #distribute}. */
+    public synchronized void rotate() {
+        own = Chain.random();
+        deliveredTo.clear();
+        log.info("Rotated sender key, new key id " + own.keyId);
+    }
+
+    /**
+     * Доставка ключа могла потеряться (сервер отбросил служебные кадры сверх лимита):
+     * текущую цепочку получат все при следующем {@link #distribute}.
+     */
+    public synchronized void redeliver() {
+        deliveredTo.clear();
+    }
+
+    /**
+     * Собеседник начал новый сеанс (перезапуск клиента): полученные им цепочки потеряны, даже если
+     * публичный ключ сохранён и не сменился. Текущая цепочка уйдёт ему при следующем {@link #distribute}.
+     */
+    public synchronized void onNewSession(String peer) {
+        deliveredTo.remove(peer);
+    }
+
+    /** Сверяет получателей ключа со списком участников: ушедший участник вызывает ротацию. */
+    public synchronized void onMembers(Collection<String> online) {
+        if (!online.containsAll(deliveredTo.keySet())) rotate();
+    }
+
+    /**
+     * Принимает цепной ключ собеседника. Предыдущая цепочка сохраняется для сообщений в пути;
+     * повторно доставленная цепочка не заменяет уже принятую, иначе пропали бы ключи её ранних сообщений.
+     */
+    public void onKey(EncryptedDirectMessage dm) {
+        Chain chain = Chain.decode(encryptor.decryptFrom(dm.from(), dm.nonce12(), dm.ciphertext()));
+        Map<Integer, Chain> byId = chains.computeIfAbsent(dm.from(), u -> new ConcurrentHashMap<>());
+        synchronized (byId) {
+            if (byId.containsKey(chain.keyId)) return;
+            Integer current = byId.entrySet().stream()
+                    .max(Comparator.comparingLong(e -> e.getValue().received))
+                    .map(Map.Entry::getKey).orElse(null);
+            byId.keySet().removeIf(id -> !id.equals(current));
+            byId.put(chain.keyId, chain);
+        }
+        log.fine("Sender key " + chain.keyId + " from " + dm.from());
+    }
+
+    /**
+     * Расшифровывает групповое сообщение.
+     *
+     * @throws IllegalStateException если ключ отправителя ещё не получен
+     * @throws AEADBadTagException   если сообщение подделано, повторено или слишком старое
+     */
+    public byte[] decrypt(GroupMessage gm) throws AEADBadTagException {
+        Map<Integer, Chain> byId = chains.get(gm.from());
+        Chain chain = byId != null ? byId.get(gm.keyId()) : null;
+        if (chain == null) throw new IllegalStateException("No sender key " + gm.keyId() + " from " + gm.from());
+        return chain.open(gm);
+    }
+
+    /** HMAC-SHA256(key, data): {@link HKDF#extract} с солью-ключом — это ровно HMAC. */
+    private static byte[] kdf(byte[] key, byte[] data) {
+        try {
+            return HKDF.extract(key, data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] aad(String from, int keyId, int iteration) {
+        byte[] name = from.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(name.length + 8).put(name).putInt(keyId).putInt(iteration).array();
+    }
+
+    /** Цепочка ключей: своя (для шифрования) или собеседника (для расшифровки). */
+    private static final class Chain {
+        final int keyId;
+        byte[] chainKey;
+        int iteration;
+        /** Ключи пропущенных сообщений по номеру. */
+        final TreeMap<Integer, byte[]> skipped = new TreeMap<>();
+        final long received = System.nanoTime();
+
+        Chain(int keyId, byte[] chainKey, int iteration) {
+            this.keyId = keyId;
+            this.chainKey = chainKey;
+            this.iteration = iteration;
+        }
+
+        static Chain random() {
+            byte[] key = new byte[32];
+            RNG.nextBytes(key);
+            return new Chain(RNG.nextInt(), key, 0);
+        }
+
+        byte[] encode() {
+            return ByteBuffer.allocate(8 + chainKey.length).putInt(keyId).putInt(iteration).put(chainKey).array();
+        }
+
+        static Chain decode(byte[] data) {
+            if (data.length != 8 + 32) throw new IllegalArgumentException("Malformed sender key");
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            int keyId = buf.getInt();
+            int iteration = buf.getInt();
+            byte[] key = new byte[32];
+            buf.get(key);
+            return new Chain(keyId, key, iteration);
+        }
+
+        /**
+         * Выводит ключ сообщения и расшифровывает его. Состояние цепочки меняется
+         * только после успешной проверки тега, поэтому подделка не сдвигает цепочку.
+         */
+        synchronized byte[] open(GroupMessage gm) throws AEADBadTagException {
+            int n = gm.iteration();
+            byte[] messageKey;
+            byte[] nextChain = chainKey;
+            Map<Integer, byte[]> newlySkipped = new HashMap<>();
+            if (n < iteration) {
+                messageKey = skipped.get(n);
+                if (messageKey == null) throw new AEADBadTagException("Message key already used or expired");
+            } else {
+                if (n - iteration > MAX_SKIP) throw new AEADBadTagException("Too many skipped messages");
+                for (int i = iteration; i < n; i++) {
+                    newlySkipped.put(i, kdf(nextChain, MESSAGE_KEY));
+                    nextChain = kdf(nextChain, CHAIN_KEY);
+                }
+                messageKey = kdf(nextChain, MESSAGE_KEY);
+                nextChain = kdf(nextChain, CHAIN_KEY);
+            }
+
+            byte[] plain;
+            try {
+                plain = AesGcm.decrypt(new SecretKeySpec(messageKey, "AES"), gm.nonce12(), gm.ciphertext(),
+                        aad(gm.from(), gm.keyId(), n));
+            } catch (AEADBadTagException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Group decryption failed", e);
+            }
+
+            if (n < iteration) {
+                skipped.remove(n);
+            } else {
+                skipped.putAll(newlySkipped);
+                chainKey = nextChain;
+                iteration = n + 1;
+                while (skipped.size() > MAX_SKIP) skipped.pollFirstEntry();
+            }
+            return plain;
+        }
+    }
+}
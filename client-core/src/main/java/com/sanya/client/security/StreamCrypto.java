@@ -0,0 +1,233 @@
+package com.sanya.client.security;
+
+import com.sanya.client.core.api.StreamKeys;
+import com.sanya.crypto.AeadEngine;
+import com.sanya.crypto.StreamAead;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.files.BlobReference;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * StreamCrypto — сквозное потоковое шифрование файлов и голосовых сообщений поверх {@link StreamAead}.
+ *
+ * Назначение:
+ *  - Файлы: отправитель создаёт случайный секрет передачи и один раз доставляет его каждому собеседнику
+ *    в {@link EncryptedDirectMessage} ({@link EncryptedDirectMessage#STREAM_KEY}) под сеансовым ключом; блоки шифруются один раз
+ *    и рассылаются сервером всем, сервер видит только шифротекст.
+ *  - Голос: сообщение режется на блоки {@link EncryptedDirectMessage#AUDIO} и отправляется каждому собеседнику лично;
+ *    ключ сообщения выводится через HKDF из сеансового ключа и случайного префикса nonce, который
+ *    передаётся в nonce каждого блока, поэтому отдельной рассылки ключа не требуется.
+ *  - Файлы в хранилище сервера: ссылка вместе с ключом файла уходит каждому собеседнику
+ *    в {@link EncryptedDirectMessage#BLOB_REF}; хранилище видит только шифротекст.
+ *
+ * Использование:
+ *  StreamAead.Secret secret = streamCrypto.share(transferId, connector::send);
+ *  connector.sendVoice: streamCrypto.sealVoice(peer, pcm).forEach(connector::send);
+ *  byte[] pcm = streamCrypto.onVoiceChunk(dm); // null, пока сообщение не собрано
+ *
+ * Потокобезопасность:
+ *  Секреты и незавершённые голосовые сообщения хранятся в {@link ConcurrentHashMap};
+ *  сборка одного сообщения синхронизирована на нём самом.
+ */
+public final class StreamCrypto implements StreamKeys {
+
+    private static final Logger log = Logger.getLogger(StreamCrypto.class.getName());
+
+    /** Размер открытого блока голосового сообщения. */
+    static final int VOICE_CHUNK = 16 * 1024;
+
+    /** Предел числа блоков одного голосового сообщения (16 МБ). */
+    private static final int MAX_VOICE_CHUNKS = 1024;
+
+    /** Незавершённое голосовое сообщение отбрасывается через минуту. */
+    private static final long VOICE_TTL_NANOS = 60_000_000_000L;
+
+    private final KeyDirectory dir;
+    private final Encryptor encryptor;
+    private final String username;
+
+    /** Секреты входящих потоков по id. */
+    private final Map<String, StreamAead.Secret> secrets = new ConcurrentHashMap<>();
+
+    /** Собираемые голосовые сообщения по отправителю и префиксу nonce. */
+    private final Map<String, VoiceAssembly> voice = new ConcurrentHashMap<>();
+
+    public StreamCrypto(KeyDirectory dir, Encryptor encryptor, String username) {
+        this.dir = dir;
+        this.encryptor = encryptor;
+        this.username = username;
+    }
+
+    /** Собеседники, чьи публичные ключи известны. */
+    public List<String> peers() {
+        return dir.allPubs().keySet().stream().filter(u -> !u.equals(username)).sorted().toList();
+    }
+
+    @Override
+    public StreamAead.Secret share(String streamId, Consumer<Object> sender) {
+        StreamAead.Secret secret = StreamAead.Secret.random();
+        byte[] payload = encodeKey(streamId, secret);
+        for (String peer : peers()) {
+            Encryptor.Enc enc = encryptor.encryptFor(peer, payload);
+            sender.accept(new EncryptedDirectMessage(username, peer, enc.nonce(), enc.ct(), EncryptedDirectMessage.STREAM_KEY, null, null));
+        }
+        return secret;
+    }
+
+    @Override
+    public StreamAead.Secret secret(String streamId) {
+        return secrets.get(streamId);
+    }
+
+    @Override
+    public void forget(String streamId) {
+        secrets.remove(streamId);
+    }
+
+    @Override
+    public void shareBlob(BlobReference ref, Consumer<Object> sender) {
+        byte[] payload = encodeBlob(ref);
+        for (String peer : peers()) {
+            Encryptor.Enc enc = encryptor.encryptFor(peer, payload);
+            sender.accept(new EncryptedDirectMessage(username, peer, enc.nonce(), enc.ct(), EncryptedDirectMessage.BLOB_REF, null, null));
+        }
+    }
+
+    /**
+     * Принимает ссылку на зашифрованный файл. Отправитель — тот, чьим сеансовым ключом она зашифрована.
+     */
+    public BlobReference onBlob(EncryptedDirectMessage dm) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                encryptor.decryptFrom(dm.from(), dm.nonce12(), dm.ciphertext())))) {
+            String blobId = in.readUTF();
+            String filename = in.readUTF();
+            long size = in.readLong();
+            byte[] key = in.readAllBytes();
+            StreamAead.Secret.decode(key);
+            return new BlobReference(blobId, dm.from(), filename, size, key);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed blob reference from " + dm.from(), e);
+        }
+    }
+
+    /** Принимает секрет потока от собеседника. */
+    public void onKey(EncryptedDirectMessage dm) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                encryptor.decryptFrom(dm.from(), dm.nonce12(), dm.ciphertext())))) {
+            String streamId = in.readUTF();
+            secrets.put(streamId, StreamAead.Secret.decode(in.readAllBytes()));
+            log.fine("Stream key for " + streamId + " from " + dm.from());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed stream key from " + dm.from(), e);
+        }
+    }
+
+    /**
+     * Шифрует голосовое сообщение для одного собеседника.
+     *
+     * @return блоки в порядке отправки; последний помечен {@code lastChunk}
+     */
+    public List<EncryptedDirectMessage> sealVoice(String to, byte[] pcm) {
+        byte[] prefix = new byte[StreamAead.PREFIX_LEN];
+        AeadEngine.randomBytes(prefix);
+        StreamAead.Sealer sealer = StreamAead.sealer(StreamAead.Secret.from(session(to), prefix), voiceStream(username, to));
+
+        int count = Math.max(1, (pcm.length + VOICE_CHUNK - 1) / VOICE_CHUNK);
+        if (count > MAX_VOICE_CHUNKS) throw new IllegalArgumentException("Voice message too long");
+        List<EncryptedDirectMessage> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean last = i == count - 1;
+            byte[] plain = Arrays.copyOfRange(pcm, i * VOICE_CHUNK, Math.min(pcm.length, (i + 1) * VOICE_CHUNK));
+            out.add(new EncryptedDirectMessage(username, to, sealer.nonce(i, last), sealer.seal(i, last, plain),
+                    EncryptedDirectMessage.AUDIO, i, last));
+        }
+        return out;
+    }
+
+    /**
+     * Принимает блок голосового сообщения.
+     * Блоки могут приходить в любом порядке; номер блока и признак последнего проверяются тегом.
+     *
+     * @return всё сообщение, когда получены все блоки; иначе null
+     * @throws AEADBadTagException если блок подделан или его номер/признак последнего подменён
+     */
+    public byte[] onVoiceChunk(EncryptedDirectMessage dm) throws AEADBadTagException {
+        int index = dm.chunkIndex() != null ? dm.chunkIndex() : 0;
+        boolean last = dm.lastChunk() == null || dm.lastChunk();
+        if (index < 0 || index >= MAX_VOICE_CHUNKS) throw new AEADBadTagException("Voice chunk index out of range");
+
+        long now = System.nanoTime();
+        voice.values().removeIf(a -> now - a.started > VOICE_TTL_NANOS);
+
+        byte[] prefix = StreamAead.prefixOf(dm.nonce12());
+        String key = dm.from() + ":" + HexFormat.of().formatHex(prefix);
+        VoiceAssembly assembly = voice.computeIfAbsent(key, k -> new VoiceAssembly(now,
+                StreamAead.opener(StreamAead.Secret.from(session(dm.from()), prefix), voiceStream(dm.from(), username))));
+
+        byte[] plain = assembly.opener.open(index, last, dm.ciphertext());
+        synchronized (assembly) {
+            assembly.parts.put(index, plain);
+            if (last) assembly.lastIndex = index;
+            if (assembly.lastIndex < 0 || assembly.parts.size() != assembly.lastIndex + 1
+                    || assembly.parts.lastKey() != assembly.lastIndex) return null;
+            voice.remove(key);
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            assembly.parts.values().forEach(all::writeBytes);
+            return all.toByteArray();
+        }
+    }
+
+    private SecretKey session(String peer) {
+        SecretKey k = dir.getOrDeriveSession(peer);
+        if (k == null) throw new IllegalStateException("No pubkey for " + peer);
+        return k;
+    }
+
+    private static String voiceStream(String from, String to) {
+        return "voice:" + from + ">" + to;
+    }
+
+    private static byte[] encodeKey(String streamId, StreamAead.Secret secret) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buf)) {
+            out.writeUTF(streamId);
+            out.write(secret.encode());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buf.toByteArray();
+    }
+
+    private static byte[] encodeBlob(BlobReference ref) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buf)) {
+            out.writeUTF(ref.blobId());
+            out.writeUTF(ref.filename());
+            out.writeLong(ref.size());
+            out.write(ref.key());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buf.toByteArray();
+    }
+
+    /** Собираемое голосовое сообщение. */
+    private static final class VoiceAssembly {
+        final long started;
+        final StreamAead.Opener opener;
+        final SortedMap<Integer, byte[]> parts = new TreeMap<>();
+        int lastIndex = -1;
+
+        VoiceAssembly(long started, StreamAead.Opener opener) {
+            this.started = started;
+            this.opener = opener;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.sanya.client.service.files;
+
+/**
+ * AdaptiveChunkSizer — подбор размера блока файла по измеренной пропускной способности.
+ *
+ * Алгоритм:
+ *  Блоки отмечаются в момент записи в соединение и накапливаются окнами (не меньше 4 МБ и 4 блоков);
+ *  скорость окна — его объём, делённый на время между отметками его границ. Постановка кадра
+ *  в очередь отправки ничего не говорит о сети, поэтому учитывается именно запись.
+ *  Если скорость окна выросла более чем на 10% относительно предыдущего — размер блока удваивается,
+ *  если упала более чем на 30% — уменьшается вдвое. Размер всегда в пределах [{@link #MIN_CHUNK}, {@link #MAX_CHUNK}].
+ *
+ * Потокобезопасность:
+ *  {@link #record(int, long)} синхронизирован: его вызывают потоки записи соединения,
+ *  {@link #chunkSize()} можно читать из потока чтения файла.
+ */
+final class AdaptiveChunkSizer {
+
+    /** Минимальный размер блока. */
+    static final int MIN_CHUNK = 64 * 1024;
+
+    /** Максимальный размер блока. */
+    static final int MAX_CHUNK = 1024 * 1024;
+
+    /** Минимальный объём окна измерения. */
+    private static final long WINDOW_BYTES = 4L * 1024 * 1024;
+
+    private volatile int chunkSize = MIN_CHUNK;
+
+    private long windowBytes;
+    private long windowStart;
+    private double lastRate;
+
+    /**
+     * @param startNanos момент начала передачи ({@link System#nanoTime()}) — левая граница первого окна
+     */
+    AdaptiveChunkSizer(long startNanos) {
+        this.windowStart = startNanos;
+    }
+
+    /** Текущий рекомендуемый размер блока. */
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Учитывает записанный блок.
+     *
+     * @param bytes      размер блока
+     * @param writtenAt  момент завершения записи блока в соединение ({@link System#nanoTime()})
+     */
+    synchronized void record(int bytes, long writtenAt) {
+        windowBytes += bytes;
+        if (windowBytes < Math.max(WINDOW_BYTES, 4L * chunkSize)) return;
+
+        double rate = (double) windowBytes / Math.max(1, writtenAt - windowStart);
+        if (lastRate == 0 || rate > lastRate * 1.1) {
+            chunkSize = Math.min(MAX_CHUNK, chunkSize * 2);
+        } else if (rate < lastRate * 0.7) {
+            chunkSize = Math.max(MIN_CHUNK, chunkSize / 2);
+        }
+        lastRate = rate;
+        windowBytes = 0;
+        windowStart = writtenAt;
+    }
+}
@@ -0,0 +1,125 @@
+package com.sanya.client.service.files;
+
+import com.sanya.crypto.HKDF;
+import com.sanya.crypto.StreamAead;
+
+import javax.crypto.AEADBadTagException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * BlobCipher — шифрование файлов для хранилища сервера.
+ *
+ * Назначение:
+ *  - Ключ выводится из содержимого: секрет = HKDF(SHA-256 открытого файла). Одинаковые файлы дают
+ *    одинаковый шифротекст, поэтому хранилище, как и раньше, пропускает повторную загрузку.
+ *  - Id в хранилище — SHA-256 шифротекста; сам ключ получатели узнают только из ссылки,
+ *    зашифрованной их сеансовыми ключами.
+ *  - Шифротекст — блоки {@link StreamAead} по {@link #CHUNK} байт открытого текста: номер блока и признак
+ *    последнего входят в nonce, поэтому блоки нельзя переставить, а файл — обрезать.
+ *
+ * Ограничения:
+ *  Ключ от содержимого: тот, у кого уже есть такой же файл, может убедиться, что его отправляли.
+ *  Это цена совместной дедупликации.
+ */
+final class BlobCipher {
+
+    /** Размер открытого блока. */
+    static final int CHUNK = 1024 * 1024;
+
+    /** Размер блока шифротекста. */
+    private static final int SEALED_CHUNK = CHUNK + StreamAead.TAG_LEN;
+
+    /** Id потока для {@link StreamAead}: у всех файлов хранилища один, ключи различаются содержимым. */
+    private static final String STREAM = "blob";
+
+    private static final byte[] SALT = "sanya-blob-v1".getBytes(StandardCharsets.US_ASCII);
+
+    private BlobCipher() {}
+
+    /**
+     * Секрет файла по SHA-256 его содержимого.
+     *
+     * @param contentHash SHA-256 открытого файла в hex
+     */
+    static StreamAead.Secret secretFor(String contentHash) {
+        try {
+            byte[] prk = HKDF.extract(SALT, HexFormat.of().parseHex(contentHash));
+            return new StreamAead.Secret(
+                    HKDF.expand(prk, "key".getBytes(StandardCharsets.US_ASCII), StreamAead.SECRET_LEN),
+                    HKDF.expand(prk, "nonce".getBytes(StandardCharsets.US_ASCII), StreamAead.PREFIX_LEN));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Blob key derivation failed", e);
+        }
+    }
+
+    /** Шифрует файл {@code plain} в {@code out}. */
+    static void seal(Path plain, StreamAead.Secret secret, Path out) throws IOException {
+        StreamAead.Sealer sealer = StreamAead.sealer(secret, STREAM);
+        try (FileChannel in = FileChannel.open(plain, StandardOpenOption.READ);
+             FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            int count = chunks(size);
+            byte[] buf = new byte[CHUNK];
+            for (int i = 0; i < count; i++) {
+                int length = (int) Math.min(CHUNK, size - (long) i * CHUNK);
+                readFully(in, buf, length);
+                boolean last = i == count - 1;
+                writeFully(ch, sealer.seal(i, last, Arrays.copyOf(buf, length)));
+            }
+        }
+    }
+
+    /**
+     * Расшифровывает файл {@code sealed} в {@code out}.
+     *
+     * @throws IOException если шифротекст подделан, обрезан или зашифрован другим ключом
+     */
+    static void open(Path sealed, StreamAead.Secret secret, Path out) throws IOException {
+        StreamAead.Opener opener = StreamAead.opener(secret, STREAM);
+        try (FileChannel in = FileChannel.open(sealed, StandardOpenOption.READ);
+             FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            int count = (int) Math.max(1, (size + SEALED_CHUNK - 1) / SEALED_CHUNK);
+            long lastLength = size - (long) (count - 1) * SEALED_CHUNK;
+            if (lastLength < StreamAead.TAG_LEN) throw new IOException("Truncated blob");
+            byte[] buf = new byte[SEALED_CHUNK];
+            for (int i = 0; i < count; i++) {
+                boolean last = i == count - 1;
+                int length = last ? (int) lastLength : SEALED_CHUNK;
+                readFully(in, buf, length);
+                try {
+                    writeFully(ch, opener.open(i, last, Arrays.copyOf(buf, length)));
+                } catch (AEADBadTagException e) {
+                    throw new IOException("Blob chunk " + i + " failed authentication", e);
+                }
+            }
+        }
+    }
+
+    /** Число блоков: у пустого файла один пустой блок, чтобы был помечен последний. */
+    private static int chunks(long plainSize) {
+        return (int) Math.max(1, (plainSize + CHUNK - 1) / CHUNK);
+    }
+
+    private static void readFully(FileChannel in, byte[] buf, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, length);
+        while (bb.hasRemaining()) {
+            if (in.read(bb) < 0) throw new IOException("Unexpected end of file");
+        }
+    }
+
+    private static void writeFully(FileChannel out, byte[] data) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        while (bb.hasRemaining()) out.write(bb);
+    }
+}
@@ -0,0 +1,157 @@
+package com.sanya.client.service.files;
+
+import com.sanya.files.BlobProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.LongConsumer;
+
+/**
+ * BlobClient — клиент порта файлового хранилища сервера ({@link BlobProtocol}).
+ *
+ * Назначение:
+ *  Загружать файл в хранилище один раз (сервер отвечает сразу, если такое содержимое уже есть)
+ *  и скачивать содержимое по id с продолжением с места обрыва.
+ *  Данные идут между файлом и сокетом через {@code transferTo}/{@code transferFrom}.
+ *  Каждое соединение сначала предъявляет токен, выданный сервером чата ({@link com.sanya.files.BlobToken}).
+ *
+ * Использование:
+ *  BlobClient blobs = new BlobClient("localhost", 12346);
+ *  String id = BlobClient.sha256(path);
+ *  blobs.upload(path, id, token, done -> {});
+ *  blobs.download(id, partFile, token, done -> {});
+ *
+ * Потокобезопасность:
+ *  Каждая операция открывает своё соединение; экземпляр можно использовать из разных потоков.
+ */
+public final class BlobClient {
+
+    /** Шаг уведомлений о прогрессе. */
+    private static final long PROGRESS_STEP = 4L * 1024 * 1024;
+
+    private final String host;
+    private final int port;
+
+    public BlobClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /** SHA-256 содержимого файла в hex — id в хранилище. */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buf = DirectBufferPool.SHARED.acquire();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (true) {
+                buf.clear();
+                if (ch.read(buf) < 0) break;
+                sha.update(buf.flip());
+            }
+        } finally {
+            DirectBufferPool.SHARED.release(buf);
+        }
+        return HexFormat.of().formatHex(sha.digest());
+    }
+
+    /**
+     * Загружает файл в хранилище.
+     *
+     * @param file     файл
+     * @param blobId   SHA-256 файла ({@link #sha256})
+     * @param token    токен доступа ({@link com.sanya.files.BlobToken})
+     * @param progress получает число переданных байт
+     * @return {@code true}, если данные передавались; {@code false}, если содержимое уже было на сервере
+     * @throws IOException при ошибке сети или если сервер отклонил данные
+     */
+    public boolean upload(Path file, String blobId, String token, LongConsumer progress) throws IOException {
+        try (FileChannel src = FileChannel.open(file, StandardOpenOption.READ);
+             SocketChannel ch = connect(token)) {
+            long size = src.size();
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_PUT, blobId, size));
+            BlobProtocol.Response r = BlobProtocol.readResponse(ch);
+            if (r.status() == BlobProtocol.OK) return false;
+            if (r.status() == BlobProtocol.QUOTA_EXCEEDED) {
+                throw new IOException("Upload quota exceeded: " + r.value() / (1024 * 1024) + " MB left today");
+            }
+            if (r.status() != BlobProtocol.SEND) throw new IOException("Upload refused: status " + r.status());
+
+            long reported = 0;
+            for (long pos = r.value(); pos < size; ) {
+                pos += src.transferTo(pos, size - pos, ch);
+                if (pos - reported >= PROGRESS_STEP || pos == size) {
+                    progress.accept(pos);
+                    reported = pos;
+                }
+            }
+            if (BlobProtocol.readResponse(ch).status() != BlobProtocol.OK) {
+                throw new IOException("Server rejected upload of " + file.getFileName());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Скачивает содержимое в part-файл, продолжая с его текущего размера.
+     *
+     * @param blobId   id содержимого
+     * @param part     файл для записи
+     * @param token    токен доступа ({@link com.sanya.files.BlobToken})
+     * @param progress получает число полученных байт
+     * @return размер содержимого
+     * @throws IOException при ошибке сети или если содержимого нет на сервере
+     */
+    public long download(String blobId, Path part, String token, LongConsumer progress) throws IOException {
+        try (FileChannel dst = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             SocketChannel ch = connect(token)) {
+            long pos = dst.size();
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_GET, blobId, pos));
+            BlobProtocol.Response r = BlobProtocol.readResponse(ch);
+            if (r.status() != BlobProtocol.OK) throw new IOException("Blob " + blobId + " not available");
+            long size = r.value();
+            if (pos > size) {
+                dst.truncate(0);
+                throw new IOException("Stale partial download of " + blobId + ", retry");
+            }
+            long reported = pos;
+            while (pos < size) {
+                long n = dst.transferFrom(ch, pos, size - pos);
+                if (n <= 0) throw new IOException("Download of " + blobId + " interrupted at " + pos);
+                pos += n;
+                if (pos - reported >= PROGRESS_STEP || pos == size) {
+                    progress.accept(pos);
+                    reported = pos;
+                }
+            }
+            dst.force(false);
+            return size;
+        }
+    }
+
+    /** Подключается и предъявляет токен; перегруженный сервер отвечает сроком повтора вместо допуска. */
+    private SocketChannel connect(String token) throws IOException {
+        SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+        try {
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_AUTH, token, 0));
+            BlobProtocol.Response r = BlobProtocol.readResponse(ch);
+            if (r.status() == BlobProtocol.BUSY) throw new IOException("Blob store busy, retry in " + r.value() + " ms");
+            if (r.status() != BlobProtocol.OK) throw new IOException("Blob store rejected the access token");
+            return ch;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.sanya.client.service.files;
+
+import com.sanya.Message;
+import com.sanya.client.core.api.EventBus;
+import com.sanya.client.core.api.FileTransferService;
+import com.sanya.client.core.api.FrameSink;
+import com.sanya.client.core.api.StreamKeys;
+import com.sanya.crypto.StreamAead;
+import com.sanya.events.chat.MessageReceivedEvent;
+import com.sanya.files.BlobReference;
+import com.sanya.files.BlobToken;
+import com.sanya.files.BlobTokenRequest;
+import com.sanya.files.FileTransferEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BlobShareService — обмен файлами через хранилище сервера.
+ *
+ * Назначение:
+ *  - Отправитель шифрует файл ({@link BlobCipher}), загружает шифротекст в хранилище один раз
+ *    и рассылает только {@link BlobReference} с ключом — каждому собеседнику под его сеансовым ключом
+ *    ({@link StreamKeys#shareBlob}). Ключ выводится из содержимого, поэтому повторная отправка
+ *    того же файла загрузку пропускает.
+ *  - Получатель видит предложение в чате и скачивает файл командой /get, когда захочет.
+ *  - Порт хранилища пускает только с токеном: он запрашивается по соединению чата ({@link BlobTokenRequest})
+ *    и используется, пока не истечёт.
+ *  - Если ключи не подключены или порт хранилища недоступен (старый сервер), файл уходит прежним путём
+ *    через {@link FileTransferService}: открытый файл в хранилище не загружается.
+ *
+ * Использование:
+ *  Регистрируется в DI при запуске клиента:
+ *  ctx.get(BlobShareService.class).share(file, ctx.services().chat()::sendObject);
+ *  bus.subscribe(BlobToken.class, blobs::onToken);
+ *
+ * Потокобезопасность:
+ *  Список предложений — потокобезопасная карта; загрузка и скачивание блокируют вызывающий поток.
+ */
+public final class BlobShareService {
+
+    private static final Logger log = Logger.getLogger(BlobShareService.class.getName());
+
+    /** Сколько ждать токен от сервера чата, мс. */
+    private static final long TOKEN_TIMEOUT_MS = 10_000;
+
+    /** Токен перестаёт использоваться чуть раньше срока: соединение успеет его предъявить. */
+    private static final long TOKEN_MARGIN_MS = 5_000;
+
+    private final EventBus bus;
+    private final BlobClient client;
+    private final FileTransferService fallback;
+    private final String username;
+    private final Path downloadDir;
+
+    /** Раздача ключей собеседникам; без неё файлы идут через {@link #fallback}. */
+    private volatile StreamKeys keys;
+
+    /** Полученные предложения файлов по id содержимого. */
+    private final Map<String, BlobReference> offers = new ConcurrentHashMap<>();
+
+    /** Текущий токен хранилища и момент (System.nanoTime), до которого им пользуемся; под {@code this}. */
+    private String token;
+    private long tokenValidUntil;
+    /** Ответ на уже отправленный запрос токена; null — запроса нет. */
+    private CompletableFuture<String> pendingToken;
+
+    public BlobShareService(EventBus bus, BlobClient client, FileTransferService fallback, String username, Path downloadDir) {
+        this.bus = bus;
+        this.client = client;
+        this.fallback = fallback;
+        this.username = username;
+        this.downloadDir = downloadDir;
+    }
+
+    /** Подключает сквозное шифрование: ссылки с ключами доставляются собеседникам через {@code keys}. */
+    public void setStreamKeys(StreamKeys keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Шифрует файл, загружает шифротекст в хранилище (если его там ещё нет) и рассылает ссылку на него.
+     *
+     * @param file   файл
+     * @param sender функция отправки объектов в чат (сообщает о записи: по ней идёт inline-передача)
+     */
+    public void share(File file, FrameSink sender) {
+        String name = file.getName();
+        StreamKeys keys = this.keys;
+        if (keys == null) {
+            log.warning("No stream keys, sending " + name + " inline");
+            fallback.sendFile(username, file, sender);
+            return;
+        }
+        long size = file.length();
+        Path sealed = null;
+        try {
+            String token = token(sender);
+            bus.publish(new FileTransferEvent(FileTransferEvent.Type.STARTED, name, 0, size, true, null));
+            StreamAead.Secret secret = BlobCipher.secretFor(BlobClient.sha256(file.toPath()));
+            sealed = Files.createTempFile("sanya-blob-", ".sealed");
+            BlobCipher.seal(file.toPath(), secret, sealed);
+            String blobId = BlobClient.sha256(sealed);
+            boolean uploaded = client.upload(sealed, blobId, token, done ->
+                    bus.publish(new FileTransferEvent(FileTransferEvent.Type.PROGRESS, name, done, size, true, null)));
+            log.info((uploaded ? "Uploaded " : "Already stored, skipped upload of ") + name + " as " + blobId);
+            keys.shareBlob(new BlobReference(blobId, username, name, size, secret.encode()), sender);
+            bus.publish(new FileTransferEvent(FileTransferEvent.Type.COMPLETED, name, size, size, true, null));
+        } catch (java.net.ConnectException | TimeoutException e) {
+            log.warning("Blob store unavailable, sending " + name + " inline: " + e.getMessage());
+            fallback.sendFile(username, file, sender);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Share failed: " + name, e);
+            bus.publish(new FileTransferEvent(FileTransferEvent.Type.FAILED, name, 0, size, true, e.getMessage()));
+        } finally {
+            deleteQuietly(sealed);
+        }
+    }
+
+    /** Принимает токен хранилища от сервера чата. */
+    public void onToken(BlobToken t) {
+        CompletableFuture<String> waiting;
+        synchronized (this) {
+            token = t.token();
+            tokenValidUntil = System.nanoTime() + Math.max(0, t.ttlMs() - TOKEN_MARGIN_MS) * 1_000_000;
+            waiting = pendingToken;
+            pendingToken = null;
+        }
+        if (waiting != null) waiting.complete(t.token());
+    }
+
+    /**
+     * Действующий токен хранилища; при необходимости запрашивает новый по соединению чата и ждёт его.
+     *
+     * @throws TimeoutException если сервер не выдал токен (старый сервер без токенов)
+     */
+    private String token(FrameSink sender) throws IOException, TimeoutException {
+        CompletableFuture<String> waiting;
+        boolean request = false;
+        synchronized (this) {
+            if (token != null && System.nanoTime() - tokenValidUntil < 0) return token;
+            if (pendingToken == null) {
+                pendingToken = new CompletableFuture<>();
+                request = true;
+            }
+            waiting = pendingToken;
+        }
+        if (request) sender.accept(new BlobTokenRequest());
+        try {
+            return waiting.get(TOKEN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            synchronized (this) {
+                if (pendingToken == waiting) pendingToken = null;
+            }
+            throw new TimeoutException("No blob store token from server");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for blob store token");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Запоминает входящее предложение и показывает его в чате. */
+    public void onReference(BlobReference ref) {
+        offers.put(ref.blobId(), ref);
+        bus.publish(new MessageReceivedEvent(new Message(ref.sender(),
+                "📎 " + ref.filename() + " (" + ref.size() / 1024 + " KB) — /get " + ref.shortId(), Message.Type.SYSTEM)));
+    }
+
+    /** Все полученные предложения. */
+    public List<BlobReference> offers() {
+        return new ArrayList<>(offers.values());
+    }
+
+    /** Ищет предложение по префиксу id или по имени файла. */
+    public Optional<BlobReference> find(String key) {
+        return offers.values().stream()
+                .filter(r -> r.blobId().startsWith(key) || r.filename().equals(key))
+                .findFirst();
+    }
+
+    /**
+     * Скачивает файл в каталог загрузок. Прерванное скачивание продолжается с места обрыва.
+     * Зашифрованный файл проверяется по SHA-256 шифротекста и расшифровывается ключом из ссылки.
+     *
+     * @param ref    ссылка на файл
+     * @param sender функция отправки объектов в чат (по ней запрашивается токен хранилища)
+     * @return путь к скачанному файлу
+     */
+    public Path download(BlobReference ref, FrameSink sender) throws IOException {
+        Files.createDirectories(downloadDir);
+        Path part = downloadDir.resolve(".blob-" + ref.blobId() + ".part");
+        String name = ref.filename();
+        bus.publish(new FileTransferEvent(FileTransferEvent.Type.STARTED, name, 0, ref.size(), false, null));
+        try {
+            String token;
+            try {
+                token = token(sender);
+            } catch (TimeoutException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            client.download(ref.blobId(), part, token, done ->
+                    bus.publish(new FileTransferEvent(FileTransferEvent.Type.PROGRESS, name, done, ref.size(), false, null)));
+            if (!ref.blobId().equals(BlobClient.sha256(part))) {
+                Files.deleteIfExists(part);
+                throw new IOException("SHA-256 mismatch for " + name);
+            }
+            Path target = FileReceiveEngine.reserveTarget(downloadDir, name);
+            if (ref.encrypted()) {
+                try {
+                    BlobCipher.open(part, StreamAead.Secret.decode(ref.key()), target);
+                } catch (IOException e) {
+                    Files.deleteIfExists(target);
+                    throw e;
+                }
+                Files.delete(part);
+            } else {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            bus.publish(new FileTransferEvent(FileTransferEvent.Type.COMPLETED, name, ref.size(), ref.size(), false, null));
+            log.info("Downloaded " + name + " to " + target);
+            return target;
+        } catch (IOException e) {
+            bus.publish(new FileTransferEvent(FileTransferEvent.Type.FAILED, name, -1, ref.size(), false, e.getMessage()));
+            throw e;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.fine("Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+}
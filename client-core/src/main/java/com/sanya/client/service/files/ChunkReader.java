@@ -0,0 +1,128 @@
+package com.sanya.client.service.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * ChunkReader — фоновое чтение файла блоками в direct-буферы с двойной буферизацией.
+ * Пока отправитель сериализует и пишет в сокет блок N, поток чтения заполняет блок N+1,
+ * так что чтение с диска перекрывается с сетевой записью.
+ *
+ * Читаются только указанные диапазоны файла — весь файл при первой отправке
+ * или недостающие диапазоны при докачке.
+ *
+ * Использование:
+ *  try (ChunkReader reader = new ChunkReader(channel, new long[]{0, size}, sizer, pool)) {
+ *      reader.start();
+ *      for (ChunkReader.Block b; (b = reader.next()) != null; ) { ...; pool.release(b.data()); }
+ *  }
+ *
+ * Потокобезопасность:
+ *  {@link #next()} вызывается одним потоком-потребителем.
+ */
+final class ChunkReader implements AutoCloseable {
+
+    /** Прочитанный блок: смещение в файле и буфер в режиме чтения. */
+    record Block(long offset, ByteBuffer data) {}
+
+    /** Маркер конца файла или ошибки чтения. */
+    private static final Block EOF = new Block(-1, ByteBuffer.allocate(0));
+
+    private final FileChannel channel;
+    private final long[] ranges;
+    private final AdaptiveChunkSizer sizer;
+    private final DirectBufferPool pool;
+
+    /** Прочитанные, но ещё не отправленные блоки (два — двойная буферизация). */
+    private final BlockingQueue<Block> ready = new ArrayBlockingQueue<>(2);
+
+    private final Thread thread;
+    private volatile IOException failure;
+    private boolean finished;
+
+    /**
+     * @param channel файл
+     * @param ranges  читаемые диапазоны парами [start, end) по возрастанию
+     * @param sizer   источник текущего размера блока
+     * @param pool    пул буферов
+     */
+    ChunkReader(FileChannel channel, long[] ranges, AdaptiveChunkSizer sizer, DirectBufferPool pool) {
+        this.channel = channel;
+        this.ranges = ranges;
+        this.sizer = sizer;
+        this.pool = pool;
+        this.thread = new Thread(this::readLoop, "FileSender-Reader");
+        this.thread.setDaemon(true);
+    }
+
+    /** Запускает поток чтения. */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Возвращает следующий блок или null, когда все диапазоны прочитаны.
+     * Буфер блока нужно вернуть в пул после использования.
+     *
+     * @throws IOException если чтение файла завершилось ошибкой
+     */
+    Block next() throws IOException, InterruptedException {
+        if (finished) return null;
+        Block block = ready.take();
+        if (block == EOF) {
+            finished = true;
+            if (failure != null) throw failure;
+            return null;
+        }
+        return block;
+    }
+
+    private void readLoop() {
+        try {
+            for (int r = 0; r + 1 < ranges.length && !Thread.currentThread().isInterrupted(); r += 2) {
+                long position = ranges[r];
+                long end = ranges[r + 1];
+                while (position < end) {
+                    ByteBuffer buf = pool.acquire();
+                    buf.limit((int) Math.min(Math.min(buf.capacity(), sizer.chunkSize()), end - position));
+                    long offset = position;
+                    while (buf.hasRemaining()) {
+                        int n = channel.read(buf, position);
+                        if (n < 0) break;
+                        position += n;
+                    }
+                    if (buf.position() == 0) {
+                        // Файл короче ожидаемого
+                        pool.release(buf);
+                        break;
+                    }
+                    ready.put(new Block(offset, buf.flip()));
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            ready.put(EOF);
+        } catch (InterruptedException ignored) {}
+    }
+
+    /** Останавливает чтение и возвращает непрочитанные буферы в пул. */
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Block block; (block = ready.poll()) != null; ) {
+            if (block != EOF) pool.release(block.data());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.sanya.client.service.files;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * DirectBufferPool — пул direct-буферов фиксированной ёмкости для файлового ввода-вывода.
+ * Direct-буферы дороги в создании и освобождаются только сборщиком мусора,
+ * поэтому переиспользуются между блоками и передачами.
+ *
+ * Потокобезопасность:
+ *  {@link #acquire()} и {@link #release(ByteBuffer)} можно вызывать из любых потоков.
+ */
+public final class DirectBufferPool {
+
+    /** Общий пул для передачи файлов: буферы под максимальный размер блока. */
+    public static final DirectBufferPool SHARED = new DirectBufferPool(AdaptiveChunkSizer.MAX_CHUNK, 16);
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    /**
+     * @param bufferSize ёмкость каждого буфера
+     * @param maxIdle    сколько свободных буферов хранить; лишние отдаются сборщику мусора
+     */
+    public DirectBufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    /** Возвращает очищенный буфер из пула или создаёт новый. */
+    public ByteBuffer acquire() {
+        ByteBuffer buf = free.poll();
+        if (buf == null) buf = ByteBuffer.allocateDirect(bufferSize);
+        return buf.clear();
+    }
+
+    /** Возвращает буфер в пул. */
+    public void release(ByteBuffer buf) {
+        if (buf != null && buf.isDirect() && buf.capacity() == bufferSize) free.offer(buf);
+    }
+
+    /** Ёмкость буферов пула. */
+    public int bufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,407 @@
+package com.sanya.client.service.files;
+
+import com.sanya.client.core.api.EventBus;
+import com.sanya.client.core.api.StreamKeys;
+import com.sanya.crypto.StreamAead;
+import com.sanya.files.*;
+
+import javax.crypto.AEADBadTagException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * FileReceiveEngine — единственный путь приёма файлов, передаваемых блоками {@link FileChunk}.
+ *
+ * Назначение:
+ *  - Вести входящие передачи по id передачи, а не по имени файла.
+ *  - Писать блоки позиционно через {@link FileChannel} в разреженный part-файл в любом порядке.
+ *  - Сбрасывать данные на диск периодически (по объёму или времени), а не после каждого блока,
+ *    и только после этого сохранять {@link TransferManifest} для докачки.
+ *  - Проверять SHA-256 собранного файла в отдельном потоке: поток соединения, принёсший последний блок,
+ *    не ждёт чтения многогигабайтного файла и продолжает доставлять сообщения чата.
+ *  - Класть готовый файл в каталог загрузок под исходным именем, не затирая существующие файлы.
+ *  - Расшифровывать блоки зашифрованных передач ({@link StreamAead}); блоки, пришедшие раньше ключа
+ *    или не прошедшие проверку тега, отбрасываются и будут запрошены при докачке.
+ *
+ * Использование:
+ *  FileReceiveEngine engine = new FileReceiveEngine(bus, downloadDir);
+ *  engine.onTransferRequest(req); engine.receive(chunk); engine.onTransferComplete(done, sender);
+ *
+ * Потокобезопасность:
+ *  Передачи хранятся в {@link ConcurrentHashMap}, замок у каждой передачи свой и держится только
+ *  на время учёта блока; запись данных идёт вне замка, поэтому разные файлы и разные потоки
+ *  одного файла принимаются параллельно без общей блокировки.
+ */
+public final class FileReceiveEngine {
+
+    private static final Logger log = Logger.getLogger(FileReceiveEngine.class.getName());
+
+    /** Объём принятых данных, после которого они сбрасываются на диск вместе с манифестом. */
+    private static final long SYNC_BYTES = 8L * 1024 * 1024;
+
+    /** Максимальный интервал между сбросами при медленном приёме. */
+    private static final long SYNC_INTERVAL_NANOS = 2_000_000_000L;
+
+    /** Потоки проверки и переноса собранных файлов. */
+    private static final ExecutorService verifiers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "FileReceive-Verify");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final EventBus eventBus;
+
+    /** Каталог загрузок: готовые файлы, part-файлы и манифесты. */
+    private final Path downloadDir;
+
+    /** Незавершённые входящие передачи по id. */
+    private final Map<String, IncomingTransfer> incoming = new ConcurrentHashMap<>();
+
+    /** Секреты зашифрованных передач; null — шифрование не подключено. */
+    private volatile StreamKeys keys;
+
+    public FileReceiveEngine(EventBus eventBus, Path downloadDir) {
+        this(eventBus, downloadDir, null);
+    }
+
+    public FileReceiveEngine(EventBus eventBus, Path downloadDir, StreamKeys keys) {
+        this.eventBus = eventBus;
+        this.downloadDir = downloadDir;
+        this.keys = keys;
+        loadManifests();
+    }
+
+    /** Подключает источник секретов зашифрованных передач. */
+    public void setStreamKeys(StreamKeys keys) {
+        this.keys = keys;
+    }
+
+    /** Каталог загрузок. */
+    public Path downloadDir() {
+        return downloadDir;
+    }
+
+    /** Регистрирует входящую передачу; повторное объявление известной передачи игнорируется. */
+    public void onTransferRequest(FileTransferRequest request) {
+        String id = request.getTransferId();
+        if (id == null || incoming.containsKey(id)) return;
+        try {
+            Files.createDirectories(downloadDir);
+            TransferManifest manifest = new TransferManifest(id, request.getSender(),
+                    request.getFilename(), request.getSize());
+            manifest.encrypted = request.isEncrypted();
+            IncomingTransfer transfer = new IncomingTransfer(manifest);
+            transfer.preallocate();
+            transfer.manifest.save(transfer.manifestPath);
+            if (incoming.putIfAbsent(id, transfer) != null) {
+                transfer.close();
+                return;
+            }
+            eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.STARTED, manifest.filename, 0, manifest.size, false, null));
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to start receiving " + request.getFilename(), e);
+        }
+    }
+
+    /**
+     * Записывает входящий блок в позицию {@link FileChunk#getOffset()}.
+     * Повреждённые блоки (несовпадение CRC32C или тега AEAD) отбрасываются и будут запрошены при докачке.
+     * Блоки за пределами объявленного размера файла отбрасываются: иначе отправитель мог бы растить
+     * разреженный файл без ограничений и портить учёт принятых диапазонов.
+     */
+    public void receive(FileChunk chunk) {
+        IncomingTransfer transfer = incoming.get(chunk.getTransferId());
+        if (transfer == null) {
+            log.fine("Chunk for unknown transfer ignored: " + chunk.getFilename());
+            return;
+        }
+        if (!chunk.isIntact()) {
+            log.warning("CRC32C mismatch in " + chunk.getFilename() + " at " + chunk.getOffset() + ", dropping chunk");
+            return;
+        }
+        try {
+            FileChannel ch;
+            StreamAead.Opener opener;
+            synchronized (transfer) {
+                if (transfer.done) return;
+                ch = transfer.channel();
+                opener = transfer.opener();
+            }
+            byte[] plain = chunk.getData();
+            if (transfer.manifest.encrypted) {
+                if (opener == null) {
+                    log.fine("No key yet for " + chunk.getFilename() + ", dropping chunk at " + chunk.getOffset());
+                    return;
+                }
+                try {
+                    plain = opener.open(chunk.getPart(), chunk.isLast(), StreamAead.header(chunk.getOffset()), plain);
+                } catch (AEADBadTagException e) {
+                    log.warning("Authentication failed in " + chunk.getFilename() + " at " + chunk.getOffset() + ", dropping chunk");
+                    return;
+                }
+            }
+            if (chunk.getOffset() < 0 || chunk.getOffset() > transfer.manifest.size - plain.length) {
+                log.warning("Chunk of " + chunk.getFilename() + " outside the announced size (" + chunk.getOffset()
+                        + "+" + plain.length + " > " + transfer.manifest.size + "), dropping chunk");
+                return;
+            }
+            ByteBuffer data = ByteBuffer.wrap(plain);
+            long pos = chunk.getOffset();
+            while (data.hasRemaining()) pos += ch.write(data, pos);
+
+            synchronized (transfer) {
+                if (transfer.done) return;
+                transfer.manifest.received.add(chunk.getOffset(), chunk.getOffset() + plain.length);
+                transfer.unsynced += plain.length;
+                if (transfer.unsynced >= SYNC_BYTES || System.nanoTime() - transfer.lastSync >= SYNC_INTERVAL_NANOS) {
+                    transfer.sync();
+                }
+                if (transfer.manifest.sha256 != null && transfer.manifest.received.isComplete()) {
+                    finish(transfer);
+                }
+            }
+        } catch (Exception e) {
+            synchronized (transfer) {
+                // Повторный блок, чья запись пересеклась с завершением приёма: канал уже закрыт, файл собран
+                if (transfer.done) {
+                    log.fine("Late chunk of completed " + chunk.getFilename() + " dropped: " + e);
+                    return;
+                }
+            }
+            eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.FAILED, chunk.getFilename(), -1, -1, false, e.getMessage()));
+            log.log(Level.WARNING, "File receive failed: " + chunk.getFilename(), e);
+        }
+    }
+
+    /**
+     * Отправитель закончил проход: запоминает SHA-256 и либо завершает приём,
+     * либо запрашивает недостающие диапазоны. SHA-256 зашифрованной передачи открывается ключом потока;
+     * итог, не прошедший проверку, игнорируется.
+     */
+    public void onTransferComplete(FileTransferComplete complete, Consumer<Object> sender) {
+        IncomingTransfer transfer = incoming.get(complete.transferId());
+        if (transfer == null) return;
+        try {
+            synchronized (transfer) {
+                if (transfer.done) return;
+                byte[] digest = complete.sha256();
+                StreamAead.Opener opener = transfer.opener();
+                if (transfer.manifest.encrypted && opener == null) {
+                    // Без ключа не приняты и блоки: запрос докачки повторит весь проход
+                    digest = null;
+                } else if (transfer.manifest.encrypted) {
+                    try {
+                        digest = opener.open(FileSender.DIGEST_PART, true, StreamAead.header(transfer.manifest.size), digest);
+                    } catch (AEADBadTagException e) {
+                        log.warning("Authentication failed for the digest of " + transfer.manifest.filename + ", ignoring");
+                        return;
+                    }
+                }
+                if (digest != null) transfer.manifest.sha256 = digest;
+                if (transfer.manifest.sha256 != null && transfer.manifest.received.isComplete()) {
+                    finish(transfer);
+                    return;
+                }
+                transfer.sync();
+            }
+            requestMissing(transfer, sender);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to update transfer " + complete.transferId(), e);
+        }
+    }
+
+    /** После переподключения запрашивает недостающие диапазоны всех незавершённых передач. */
+    public void onReconnected(Consumer<Object> sender) {
+        for (IncomingTransfer transfer : incoming.values()) {
+            requestMissing(transfer, sender);
+        }
+    }
+
+    /** Число незавершённых входящих передач. */
+    public int activeCount() {
+        return incoming.size();
+    }
+
+    private void requestMissing(IncomingTransfer transfer, Consumer<Object> sender) {
+        long[] missing;
+        synchronized (transfer) {
+            if (transfer.done) return;
+            missing = transfer.manifest.received.missing();
+        }
+        if (missing.length == 0) return;
+        sender.accept(new FileResumeRequest(transfer.manifest.transferId, missing));
+        log.info("Requested resume of " + transfer.manifest.filename + ": " + missing.length / 2 + " ranges");
+    }
+
+    /**
+     * Закрывает собранную передачу и отдаёт её на проверку. Вызывается под замком передачи;
+     * последующие блоки этой передачи отбрасываются.
+     */
+    private void finish(IncomingTransfer transfer) throws IOException {
+        TransferManifest m = transfer.manifest;
+        transfer.done = true;
+        incoming.remove(m.transferId);
+        StreamKeys k = keys;
+        if (k != null) k.forget(m.transferId);
+        transfer.channel(); // пустой файл тоже должен существовать
+        transfer.close();
+        verifiers.execute(() -> {
+            try {
+                verify(transfer);
+            } catch (IOException e) {
+                eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.FAILED, m.filename, m.size, m.size, false, e.getMessage()));
+                log.log(Level.WARNING, "Failed to store received file " + m.filename, e);
+            }
+        });
+    }
+
+    /** Проверяет SHA-256 собранного файла и переносит его в каталог загрузок. */
+    private void verify(IncomingTransfer transfer) throws IOException {
+        TransferManifest m = transfer.manifest;
+        byte[] actual = FileSender.digestOf(transfer.partPath);
+        if (!MessageDigest.isEqual(actual, m.sha256)) {
+            Files.deleteIfExists(transfer.partPath);
+            Files.deleteIfExists(transfer.manifestPath);
+            eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.FAILED, m.filename, m.size, m.size, false, "SHA-256 mismatch"));
+            log.warning("SHA-256 mismatch for " + m.filename + ", file discarded");
+            return;
+        }
+
+        Path target = reserveTarget(downloadDir, m.filename);
+        Files.move(transfer.partPath, target, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(transfer.manifestPath);
+        eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.COMPLETED, target.getFileName().toString(), m.size, m.size, false, null));
+        log.info("File received and verified: " + target);
+    }
+
+    /**
+     * Резервирует в каталоге свободное имя для файла: {@code name.ext}, затем {@code name (1).ext} и т. д.
+     * Имя от отправителя очищается от пути и недопустимых символов. Файл создаётся атомарно,
+     * поэтому параллельные приёмы одноимённых файлов не затрут друг друга.
+     *
+     * @return созданный пустой файл, который можно заменить готовым
+     */
+    public static Path reserveTarget(Path dir, String filename) throws IOException {
+        String name = sanitize(filename);
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        for (int i = 0; ; i++) {
+            Path candidate = dir.resolve(i == 0 ? name : base + " (" + i + ")" + ext);
+            try {
+                return Files.createFile(candidate);
+            } catch (FileAlreadyExistsException e) {
+                // следующее имя
+            }
+        }
+    }
+
+    /** Оставляет от имени отправителя только безопасное имя файла. */
+    static String sanitize(String filename) {
+        String name = filename == null ? "" : filename;
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        name = name.replaceAll("[\\x00-\\x1f<>:\"|?*]", "_").strip();
+        // Скрытые и служебные имена (в том числе наши .recv-*) не принимаются как есть
+        while (name.startsWith(".")) name = name.substring(1);
+        return name.isEmpty() ? "file" : name;
+    }
+
+    /** Восстанавливает незавершённые входящие передачи прошлых запусков. */
+    private void loadManifests() {
+        if (!Files.isDirectory(downloadDir)) return;
+        try (Stream<Path> files = Files.list(downloadDir)) {
+            for (Path p : files.filter(f -> f.getFileName().toString().matches("\\.recv-.+\\.manifest")).toList()) {
+                try {
+                    IncomingTransfer transfer = new IncomingTransfer(TransferManifest.load(p));
+                    incoming.put(transfer.manifest.transferId, transfer);
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Dropping unreadable transfer manifest " + p.getFileName(), e);
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.FINE, "No transfer manifests loaded", e);
+        }
+        if (!incoming.isEmpty()) log.info("Loaded " + incoming.size() + " unfinished incoming transfers");
+    }
+
+    /** Входящая передача: манифест и открытый временный файл. */
+    private final class IncomingTransfer {
+        final TransferManifest manifest;
+        final Path partPath;
+        final Path manifestPath;
+        private FileChannel channel;
+        private StreamAead.Opener opener;
+        long unsynced;
+        long lastSync = System.nanoTime();
+        boolean done;
+
+        IncomingTransfer(TransferManifest manifest) {
+            this.manifest = manifest;
+            this.partPath = downloadDir.resolve(".recv-" + manifest.transferId + ".part");
+            this.manifestPath = downloadDir.resolve(".recv-" + manifest.transferId + ".manifest");
+        }
+
+        FileChannel channel() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+
+        /**
+         * Дешифратор передачи: из секрета в манифесте (после перезапуска) или полученного от отправителя.
+         * Секрет сохраняется в манифест рядом с уже записанными открытыми данными.
+         *
+         * @return null, если передача не зашифрована или ключ ещё не получен
+         */
+        StreamAead.Opener opener() {
+            if (opener != null || !manifest.encrypted) return opener;
+            if (manifest.secret == null) {
+                StreamKeys k = keys;
+                StreamAead.Secret secret = k != null ? k.secret(manifest.transferId) : null;
+                if (secret == null) return null;
+                manifest.secret = secret.encode();
+            }
+            opener = StreamAead.opener(StreamAead.Secret.decode(manifest.secret), manifest.transferId);
+            return opener;
+        }
+
+        /**
+         * Создаёт разреженный файл итогового размера: блоки пишутся по своим смещениям в любом порядке,
+         * а место на диске выделяется только под записанные данные.
+         */
+        void preallocate() throws IOException {
+            Files.deleteIfExists(partPath);
+            channel = FileChannel.open(partPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                    StandardOpenOption.SPARSE);
+            if (manifest.size > 0) channel.write(ByteBuffer.allocate(1), manifest.size - 1);
+        }
+
+        /** Сбрасывает данные на диск и только затем сохраняет манифест, чтобы он не опережал данные. */
+        void sync() throws IOException {
+            if (channel != null) channel.force(false);
+            manifest.save(manifestPath);
+            unsynced = 0;
+            lastSync = System.nanoTime();
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.sanya.client.service.files;
+
+import com.sanya.client.core.api.EventBus;
+import com.sanya.client.core.api.FileTransferService;
+import com.sanya.client.core.api.FrameSink;
+import com.sanya.client.core.api.StreamKeys;
+import com.sanya.crypto.StreamAead;
+import com.sanya.files.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * FileSender — отправка и приём файлов блоками с возможностью докачки.
+ *
+ * Отправка:
+ *  Файл читается через {@link FileChannel} в direct-буферы фоновыми {@link ChunkReader}
+ *  блоками адаптивного размера; крупные файлы делятся на полосы и отправляются
+ *  параллельно несколькими рабочими потоками. Каждый блок несёт id передачи, смещение и CRC32C,
+ *  в конце прохода отправляется {@link FileTransferComplete} с SHA-256 всего файла.
+ *  Если подключены {@link StreamKeys}, секрет передачи рассылается собеседникам перед объявлением,
+ *  а каждый блок шифруется {@link StreamAead} в том же рабочем потоке, что его отправляет:
+ *  чтение, шифрование и запись в сокет идут конвейером, полосы шифруются параллельно.
+ *  SHA-256 зашифрованной передачи тоже запечатан ключом потока: по нему сервер мог бы узнать известный файл.
+ *
+ * Приём:
+ *  Делегируется {@link FileReceiveEngine}: блоки пишутся позиционно в разреженный файл по id передачи,
+ *  после переподключения или при неполном файле получатель отправляет {@link FileResumeRequest},
+ *  и отправитель передаёт только недостающие диапазоны.
+ *
+ * Докачка:
+ *  Исходящая передача обслуживает докачку, пока не простоит {@link #RETAIN_NANOS} после последнего
+ *  прохода. Получатели передачи заранее неизвестны (сервер рассылает её всем), поэтому ждать подтверждения
+ *  от каждого нельзя; устаревшие передачи удаляются при следующей отправке, докачке или переподключении.
+ */
+public class FileSender implements FileTransferService {
+
+    private static final Logger log = Logger.getLogger(FileSender.class.getName());
+
+    /** Максимальное число параллельных потоков одной передачи. */
+    static final int MAX_STREAMS = 4;
+
+    /** Минимальный размер полосы: файлы меньше двух полос идут одним потоком. */
+    static final long STRIPE_MIN_BYTES = 16L * 1024 * 1024;
+
+    /** Сколько завершённая передача обслуживает докачку после последнего прохода. */
+    static final long RETAIN_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    /** Номер блока для запечатанного SHA-256: блоки файла нумеруются с нуля и до него не доходят. */
+    static final int DIGEST_PART = -1;
+
+    /** Пул рабочих потоков передачи (чтение полос, SHA-256, докачка). */
+    private static final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "FileSender-Worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final EventBus eventBus;
+
+    /** Исходящие передачи текущего сеанса по id — для обслуживания докачки, пока не устарели. */
+    private final Map<String, OutgoingTransfer> outgoing = new ConcurrentHashMap<>();
+
+    /** Приём входящих передач; заменяется при смене каталога загрузок. */
+    private volatile FileReceiveEngine receiver;
+
+    /** Ключи потокового шифрования; null — передачи не шифруются. */
+    private volatile StreamKeys keys;
+
+    public FileSender(EventBus eventBus) {
+        this(eventBus, Path.of(""));
+    }
+
+    public FileSender(EventBus eventBus, Path downloadDir) {
+        this.eventBus = eventBus;
+        this.receiver = new FileReceiveEngine(eventBus, downloadDir);
+    }
+
+    /** Назначает каталог загрузок и восстанавливает незавершённые приёмы из него. */
+    @Override
+    public void setDownloadDir(Path downloadDir) {
+        receiver = new FileReceiveEngine(eventBus, downloadDir, keys);
+        log.info("Download directory: " + downloadDir.toAbsolutePath());
+    }
+
+    /** Включает сквозное шифрование исходящих и расшифровку входящих передач. */
+    @Override
+    public void setStreamKeys(StreamKeys keys) {
+        this.keys = keys;
+        receiver.setStreamKeys(keys);
+    }
+
+    /**
+     * Отправляет файл через одно соединение; крупные файлы делятся на полосы,
+     * которые читаются и сериализуются параллельно и мультиплексируются в это соединение.
+     */
+    @Override
+    public void sendFile(String username, File file, Consumer<Object> sender)  {
+        sendFile(username, file, sender, Collections.nCopies(MAX_STREAMS, sender));
+    }
+
+    /**
+     * Отправляет файл блоками адаптивного размера (64 КБ – 1 МБ) по нескольким потокам.
+     * Файл делится на полосы (не меньше {@link #STRIPE_MIN_BYTES}, по одной на поток), каждую полосу
+     * в пуле рабочих потоков читает свой {@link ChunkReader} через {@link FileChannel} в direct-буферы,
+     * поэтому чтение с диска перекрывается с записью в сокеты. Получатель собирает блоки по смещениям
+     * в любом порядке.
+     *
+     * @param control поток для объявления и итога передачи
+     * @param streams потоки для блоков (отдельные соединения или одно и то же соединение)
+     */
+    @Override
+    public void sendFile(String username, File file, Consumer<Object> control, List<Consumer<Object>> streams) {
+        expire(System.nanoTime());
+        long totalBytes = file.length();
+        String id = UUID.randomUUID().toString();
+        StreamKeys k = keys;
+        StreamAead.Sealer sealer = k != null ? StreamAead.sealer(k.share(id, control), id) : null;
+        OutgoingTransfer transfer = new OutgoingTransfer(id, file, totalBytes, sealer);
+        outgoing.put(transfer.id, transfer);
+
+        control.accept(new FileTransferRequest(transfer.id, username, file.getName(), totalBytes, sealer != null));
+        eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.STARTED, file.getName(), 0, totalBytes, true, null));
+
+        int stripes = Math.max(1, Math.min(streams.size(), stripesFor(totalBytes)));
+        log.info("Started sending file: " + file.getName() + " (" + totalBytes + " bytes, id " + transfer.id
+                + ", " + stripes + " streams)");
+
+        long start = System.nanoTime();
+        AtomicLong progress = new AtomicLong();
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            long[][] plan = stripe(totalBytes, stripes);
+            if (stripes == 1) {
+                MessageDigest sha = sha256();
+                sendRanges(transfer, plan[0], sha, streams.get(0), progress, totalBytes);
+                transfer.sha256 = sha.digest();
+            } else {
+                // Полосы идут не по порядку, поэтому SHA-256 считается отдельным последовательным чтением
+                Future<byte[]> digest = workers.submit(() -> digestOf(file.toPath()));
+                tasks.add(digest);
+                for (int i = 0; i < stripes; i++) {
+                    long[] ranges = plan[i];
+                    Consumer<Object> stream = streams.get(i);
+                    tasks.add(workers.submit(() -> sendRanges(transfer, ranges, null, stream, progress, totalBytes)));
+                }
+                for (Future<?> task : tasks) task.get();
+                transfer.sha256 = digest.get();
+            }
+            control.accept(completion(transfer));
+            transfer.lastActive = System.nanoTime();
+
+            eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.COMPLETED, file.getName(), totalBytes, totalBytes, true, null));
+            long ms = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            log.info("File transfer completed: " + file.getName() + " in " + ms + " ms ("
+                    + (totalBytes * 1000 / ms / 1024) + " KB/s)");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tasks.forEach(t -> t.cancel(true));
+            outgoing.remove(transfer.id);
+            eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.FAILED, file.getName(), progress.get(), totalBytes, true, "Interrupted"));
+        } catch (Exception e) {
+            tasks.forEach(t -> t.cancel(true));
+            outgoing.remove(transfer.id);
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.FAILED, file.getName(), progress.get(), totalBytes, true, cause.getMessage()));
+            log.log(Level.SEVERE, "File transfer failed: " + file.getName(), cause);
+        }
+    }
+
+    /** Число полос для файла: по одной на каждые {@link #STRIPE_MIN_BYTES}, не больше {@link #MAX_STREAMS}. */
+    static int stripesFor(long size) {
+        return (int) Math.max(1, Math.min(MAX_STREAMS, size / STRIPE_MIN_BYTES));
+    }
+
+    /** Делит файл на {@code stripes} полос, выровненных по блокам {@link RangeBitmap#BLOCK}. */
+    static long[][] stripe(long size, int stripes) {
+        long len = (size + stripes - 1) / stripes;
+        len = (len + RangeBitmap.BLOCK - 1) / RangeBitmap.BLOCK * RangeBitmap.BLOCK;
+        long[][] plan = new long[stripes][];
+        for (int i = 0; i < stripes; i++) {
+            long from = Math.min(size, i * len);
+            long to = Math.min(size, from + len);
+            plan[i] = new long[]{from, to};
+        }
+        return plan;
+    }
+
+    /**
+     * Передаёт указанные диапазоны файла в один поток.
+     *
+     * @param digest   если не null, обновляется содержимым (только для последовательного прохода по всему файлу)
+     * @param progress общий счётчик отправленных байтов передачи
+     * @param total    объём передачи для событий прогресса
+     * @return число отправленных байтов
+     */
+    private long sendRanges(OutgoingTransfer transfer, long[] ranges, MessageDigest digest, Consumer<Object> sender,
+                            AtomicLong progress, long total) throws IOException, InterruptedException {
+        AdaptiveChunkSizer sizer = new AdaptiveChunkSizer(System.nanoTime());
+        DirectBufferPool pool = DirectBufferPool.SHARED;
+        String name = transfer.file.getName();
+
+        long sentBytes = 0;
+        try (FileChannel channel = FileChannel.open(transfer.file.toPath(), StandardOpenOption.READ);
+             ChunkReader reader = new ChunkReader(channel, ranges, sizer, pool)) {
+            reader.start();
+            ChunkReader.Block block;
+            while ((block = reader.next()) != null) {
+                ByteBuffer buf = block.data();
+                int length = buf.remaining();
+                if (digest != null) digest.update(buf.duplicate());
+
+                // Номер блока уникален в пределах передачи (все полосы и докачки): он входит в nonce
+                int part = transfer.parts.getAndIncrement();
+                boolean last = block.offset() + length >= transfer.size;
+                // Единственная копия: открытый блок или шифротекст пишется из direct-буфера сразу в массив кадра
+                byte[] payload;
+                if (transfer.sealer != null) {
+                    payload = new byte[length + StreamAead.TAG_LEN];
+                    transfer.sealer.seal(part, last, StreamAead.header(block.offset()), buf, ByteBuffer.wrap(payload));
+                } else {
+                    payload = new byte[length];
+                    buf.get(payload);
+                }
+                pool.release(buf);
+
+                FileChunk chunk = new FileChunk(transfer.id, name, block.offset(), payload, part, last);
+                // Размер блока подбирается по записи в соединение; без FrameSink отметкой служит
+                // возврат отправителя — блокирующий отправитель сам ограничен скоростью записи
+                if (sender instanceof FrameSink sink) {
+                    sink.send(chunk).thenRun(() -> sizer.record(length, System.nanoTime()));
+                } else {
+                    sender.accept(chunk);
+                    sizer.record(length, System.nanoTime());
+                }
+                sentBytes += length;
+
+                long done = progress.addAndGet(length);
+                eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.PROGRESS, name, done, total, true, null));
+            }
+        }
+        return sentBytes;
+    }
+
+    /**
+     * Обслуживает запрос докачки: в пуле рабочих потоков отправляет только недостающие диапазоны.
+     * Запросы по чужим и устаревшим передачам игнорируются.
+     */
+    @Override
+    public void resume(FileResumeRequest request, Consumer<Object> sender) {
+        expire(System.nanoTime());
+        OutgoingTransfer transfer = outgoing.get(request.transferId());
+        if (transfer == null) return;
+        transfer.lastActive = System.nanoTime();
+
+        workers.execute(() -> {
+            String name = transfer.file.getName();
+            try {
+                long[] ranges = clamp(request.missingRanges(), transfer.size);
+                long total = 0;
+                for (int i = 1; i < ranges.length; i += 2) total += ranges[i] - ranges[i - 1];
+                long bytes = sendRanges(transfer, ranges, null, sender, new AtomicLong(), total);
+                if (transfer.sha256 == null) transfer.sha256 = digestOf(transfer.file.toPath());
+                sender.accept(completion(transfer));
+                transfer.lastActive = System.nanoTime();
+                log.info("Resumed " + name + ": re-sent " + bytes + " bytes in " + ranges.length / 2 + " ranges");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                eventBus.publish(new FileTransferEvent(FileTransferEvent.Type.FAILED, name, -1, transfer.size, true, e.getMessage()));
+                log.log(Level.WARNING, "File resume failed: " + name, e);
+            }
+        });
+    }
+
+    /** Регистрирует входящую передачу; собственные передачи, разосланные сервером обратно, игнорируются. */
+    @Override
+    public void onTransferRequest(FileTransferRequest request) {
+        if (outgoing.containsKey(request.getTransferId())) return;
+        receiver.onTransferRequest(request);
+    }
+
+    /** Передаёт входящий блок движку приёма. */
+    @Override
+    public void receiveFile(FileChunk chunk) {
+        receiver.receive(chunk);
+    }
+
+    /** Отправитель закончил проход: приём завершается или запрашиваются недостающие диапазоны. */
+    @Override
+    public void onTransferComplete(FileTransferComplete complete, Consumer<Object> sender) {
+        receiver.onTransferComplete(complete, sender);
+    }
+
+    /**
+     * После переподключения: получатель запрашивает недостающие диапазоны всех незавершённых передач,
+     * отправитель повторно объявляет завершённые проходы, чтобы получатели, пропустившие их, докачали файл.
+     */
+    @Override
+    public void onReconnected(Consumer<Object> sender) {
+        receiver.onReconnected(sender);
+        expire(System.nanoTime());
+        for (OutgoingTransfer transfer : outgoing.values()) {
+            if (transfer.sha256 != null) sender.accept(completion(transfer));
+        }
+    }
+
+    /**
+     * Удаляет завершённые передачи, простоявшие дольше {@link #RETAIN_NANOS}.
+     *
+     * @return число удалённых передач
+     */
+    int expire(long now) {
+        int removed = 0;
+        for (Iterator<OutgoingTransfer> it = outgoing.values().iterator(); it.hasNext(); ) {
+            OutgoingTransfer t = it.next();
+            if (t.sha256 != null && now - t.lastActive > RETAIN_NANOS) {
+                it.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) log.fine("Expired " + removed + " outgoing transfers");
+        return removed;
+    }
+
+    /** Число исходящих передач, обслуживающих докачку. */
+    int outgoingCount() {
+        return outgoing.size();
+    }
+
+    /**
+     * Итог прохода. У зашифрованной передачи SHA-256 запечатан ключом потока под номером {@link #DIGEST_PART}
+     * и привязан к размеру файла; повторные итоги дают тот же шифротекст того же открытого текста.
+     */
+    private static FileTransferComplete completion(OutgoingTransfer t) {
+        byte[] digest = t.sealer != null ? t.sealer.seal(DIGEST_PART, true, StreamAead.header(t.size), t.sha256) : t.sha256;
+        return new FileTransferComplete(t.id, t.size, digest);
+    }
+
+    /** Обрезает запрошенные диапазоны по размеру файла. */
+    private static long[] clamp(long[] ranges, long size) {
+        long[] out = new long[ranges.length & ~1];
+        int n = 0;
+        for (int i = 0; i + 1 < ranges.length; i += 2) {
+            long start = Math.max(0, ranges[i]);
+            long end = Math.min(size, ranges[i + 1]);
+            if (start < end) {
+                out[n++] = start;
+                out[n++] = end;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] digestOf(Path file) throws IOException {
+        MessageDigest sha = sha256();
+        ByteBuffer buf = DirectBufferPool.SHARED.acquire();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (ch.read(buf) >= 0) {
+                sha.update(buf.flip());
+                buf.clear();
+            }
+        } finally {
+            DirectBufferPool.SHARED.release(buf);
+        }
+        return sha.digest();
+    }
+
+    /** Исходящая передача текущего сеанса. */
+    private static final class OutgoingTransfer {
+        final String id;
+        final File file;
+        final long size;
+        /** Шифратор блоков; null, если передача не шифруется. */
+        final StreamAead.Sealer sealer;
+        /** Счётчик номеров блоков. */
+        final AtomicInteger parts = new AtomicInteger();
+        volatile byte[] sha256;
+        /** Время начала или окончания последнего прохода (System.nanoTime). */
+        volatile long lastActive = System.nanoTime();
+
+        OutgoingTransfer(String id, File file, long size, StreamAead.Sealer sealer) {
+            this.id = id;
+            this.file = file;
+            this.size = size;
+            this.sealer = sealer;
+        }
+    }
+}
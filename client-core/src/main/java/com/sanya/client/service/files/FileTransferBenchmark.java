@@ -0,0 +1,137 @@
+package com.sanya.client.service.files;
+
+import com.sanya.client.core.api.EventBus;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileTransferRequest;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * FileTransferBenchmark — автономный замер скорости передачи файла через loopback без JUnit.
+ * Передаёт файл по тому же транспорту, что и клиент (ObjectOutputStream поверх сокета, flush на каждый объект),
+ * и сравнивает прежнюю схему (8 КБ, FileInputStream, clone) с {@link FileSender}.
+ *
+ * Запуск:
+ *  java -cp sanya-client.jar com.sanya.client.service.files.FileTransferBenchmark [размер в МБ]
+ */
+public final class FileTransferBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        Path file = Files.createTempFile("sanya-bench", ".bin");
+        try {
+            fill(file, sizeMb * 1024L * 1024);
+            System.out.println("[FileTransferBenchmark] " + sizeMb + " MB over loopback");
+
+            for (int round = 0; round < 2; round++) {
+                report("legacy 8 KB  ", sizeMb, transfer(file, FileTransferBenchmark::sendLegacy));
+                report("FileSender   ", sizeMb, transfer(file, (f, out) -> new FileSender(NO_EVENTS).sendFile("bench", f, out)));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Способ отправки файла в транспорт. */
+    private interface Strategy {
+        void send(File file, Consumer<Object> out) throws Exception;
+    }
+
+    /** Передаёт файл через loopback и возвращает время до приёма последнего блока в наносекундах. */
+    private static long transfer(Path file, Strategy strategy) throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+
+            long[] received = new long[1];
+            Thread receiver = new Thread(() -> {
+                try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(accepted.getInputStream(), 1 << 16))) {
+                    while (true) {
+                        Object obj = in.readObject();
+                        if (obj instanceof FileChunk chunk) {
+                            received[0] += chunk.getData().length;
+                            if (chunk.isLast()) break;
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, "Bench-Receiver");
+            receiver.start();
+
+            ObjectOutputStream out = new ObjectOutputStream(client.getOutputStream());
+            Consumer<Object> sink = obj -> {
+                try {
+                    synchronized (out) {
+                        out.writeObject(obj);
+                        if (obj instanceof FileChunk) out.reset();
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+
+            long start = System.nanoTime();
+            strategy.send(file.toFile(), sink);
+            receiver.join();
+            long elapsed = System.nanoTime() - start;
+            if (received[0] != Files.size(file)) {
+                throw new AssertionError("Received " + received[0] + " of " + Files.size(file) + " bytes");
+            }
+            return elapsed;
+        }
+    }
+
+    /** Прежняя схема отправки: 8 КБ через FileInputStream и clone() всего буфера. */
+    private static void sendLegacy(File file, Consumer<Object> sender) throws IOException {
+        long total = file.length();
+        long sent = 0;
+        byte[] buffer = new byte[8192];
+        sender.accept(new FileTransferRequest("legacy", "bench", file.getName(), total));
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int part = 0;
+            int read;
+            while ((read = fis.read(buffer)) != -1) {
+                boolean last = sent + read >= total;
+                sender.accept(new FileChunk("legacy", file.getName(), sent, java.util.Arrays.copyOf(buffer, read), part++, last));
+                sent += read;
+            }
+        }
+    }
+
+    private static void report(String name, int sizeMb, long nanos) {
+        System.out.printf("%s %8.1f MB/s (%d ms)%n", name, sizeMb / (nanos / 1e9), nanos / 1_000_000);
+    }
+
+    private static void fill(Path file, long size) throws IOException {
+        Random rnd = new Random(1);
+        ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < size; ) {
+                rnd.nextBytes(buf.array());
+                buf.clear().limit((int) Math.min(buf.capacity(), size - written));
+                written += ch.write(buf);
+            }
+        }
+    }
+
+    /** Шина событий, игнорирующая события прогресса. */
+    private static final EventBus NO_EVENTS = new EventBus() {
+        @Override
+        public <T> void subscribe(Class<T> type, Consumer<? super T> handler) {}
+
+        @Override
+        public void publish(Object event) {}
+    };
+}
@@ -0,0 +1,170 @@
+package com.sanya.client.service.files;
+
+import com.sanya.client.core.api.EventBus;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.files.FileTransferRequest;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * ParallelTransferBenchmark — автономный замер выигрыша от параллельной передачи файла без JUnit.
+ * Поднимает K loopback-соединений, каждое ограничено по скорости (имитация канала с лимитом
+ * на одно TCP-соединение), и передаёт файл через {@link FileSender} одним и K потоками.
+ * Приём идёт через настоящий путь получателя: позиционная запись в разреженный файл и битовая карта блоков.
+ *
+ * Запуск:
+ *  java -cp sanya-client.jar com.sanya.client.service.files.ParallelTransferBenchmark [МБ] [МБ/с на поток] [K]
+ */
+public final class ParallelTransferBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+        int perStreamMbps = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int streams = args.length > 2 ? Integer.parseInt(args[2]) : FileSender.MAX_STREAMS;
+
+        Path dir = Files.createTempDirectory("sanya-parallel-bench");
+        Path file = dir.resolve("payload.bin");
+        byte[] block = new byte[1 << 20];
+        Random rnd = new Random(5);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < sizeMb; i++) {
+                rnd.nextBytes(block);
+                out.write(block);
+            }
+        }
+
+        System.out.printf("[ParallelTransferBenchmark] %d MB, %d MB/s per stream%n", sizeMb, perStreamMbps);
+        double single = run(file, 1, perStreamMbps);
+        double parallel = run(file, streams, perStreamMbps);
+        System.out.printf("1 stream : %8.1f MB/s%n", sizeMb / single);
+        System.out.printf("%d streams: %8.1f MB/s (x%.2f)%n", streams, sizeMb / parallel, single / parallel);
+
+        try (var files = Files.walk(dir)) {
+            files.sorted(java.util.Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Передаёт файл через {@code k} ограниченных соединений и возвращает время в секундах. */
+    private static double run(Path file, int k, int perStreamMbps) throws Exception {
+        Path recvDir = Files.createTempDirectory(file.getParent(), "recv");
+        FileSender sender = new FileSender(NO_EVENTS, file.getParent());
+        FileSender receiver = new FileSender(NO_EVENTS, recvDir);
+
+        List<Socket> sockets = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        List<Consumer<Object>> outs = new ArrayList<>();
+        try (ServerSocket server = new ServerSocket(0, k, InetAddress.getLoopbackAddress())) {
+            for (int i = 0; i < k; i++) {
+                Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+                Socket accepted = server.accept();
+                sockets.add(client);
+                sockets.add(accepted);
+
+                ObjectOutputStream out = new ObjectOutputStream(new ThrottledOutputStream(
+                        client.getOutputStream(), perStreamMbps * 1024L * 1024));
+                outs.add(obj -> {
+                    try {
+                        synchronized (out) {
+                            out.writeObject(obj);
+                            out.reset();
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+                Thread reader = new Thread(() -> {
+                    try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(accepted.getInputStream(), 1 << 16))) {
+                        while (true) {
+                            FileChunk chunk = (FileChunk) in.readObject();
+                            receiver.receiveFile(chunk);
+                            if (chunk.isLast()) break;
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }, "Bench-Stream-" + i);
+                reader.start();
+                readers.add(reader);
+            }
+
+            FileTransferComplete[] complete = new FileTransferComplete[1];
+            Consumer<Object> control = obj -> {
+                if (obj instanceof FileTransferRequest r) receiver.onTransferRequest(r);
+                else if (obj instanceof FileTransferComplete c) complete[0] = c;
+            };
+
+            long start = System.nanoTime();
+            sender.sendFile("bench", file.toFile(), control, outs);
+            for (Thread t : readers) t.join();
+            receiver.onTransferComplete(complete[0], obj -> { throw new AssertionError("Unexpected resume: " + obj); });
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Path received = recvDir.resolve(file.getFileName());
+            if (!Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(received))) {
+                throw new AssertionError("Received file differs");
+            }
+            return seconds;
+        } finally {
+            for (Socket s : sockets) s.close();
+        }
+    }
+
+    /** Поток с ограничением скорости записи — имитация лимита на одно соединение. */
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long written;
+
+        ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+            super(out);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, 64 * 1024);
+                out.write(b, off, n);
+                off += n;
+                len -= n;
+                written += n;
+                long dueNanos = written * 1_000_000_000L / bytesPerSecond;
+                long sleepMs = (dueNanos - (System.nanoTime() - start)) / 1_000_000;
+                if (sleepMs > 0) {
+                    try {
+                        Thread.sleep(sleepMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+    }
+
+    private static final EventBus NO_EVENTS = new EventBus() {
+        @Override
+        public <T> void subscribe(Class<T> type, Consumer<? super T> handler) {}
+
+        @Override
+        public void publish(Object event) {}
+    };
+}
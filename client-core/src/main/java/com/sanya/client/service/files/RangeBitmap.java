@@ -0,0 +1,86 @@
+package com.sanya.client.service.files;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * RangeBitmap — учёт полученных частей файла битовой картой блоков по {@link #BLOCK} байт.
+ * Блок считается полученным, только если покрыт целиком (последний блок — до конца файла),
+ * поэтому блоки могут приходить в любом порядке и из разных потоков передачи.
+ *
+ * Отправитель режет файл на блоки, кратные {@link #BLOCK} (размер блока передачи — степень двойки
+ * не меньше 64 КБ, диапазоны докачки выровнены по границам блоков), так что частичных блоков не бывает.
+ *
+ * Потокобезопасность:
+ *  Не потокобезопасен; синхронизируется владельцем.
+ */
+final class RangeBitmap {
+
+    /** Гранулярность учёта. */
+    static final int BLOCK = AdaptiveChunkSizer.MIN_CHUNK;
+
+    private final long size;
+    private final int blocks;
+    private final BitSet done;
+
+    RangeBitmap(long size) {
+        this(size, new BitSet());
+    }
+
+    private RangeBitmap(long size, BitSet done) {
+        this.size = size;
+        this.blocks = (int) ((size + BLOCK - 1) / BLOCK);
+        this.done = done;
+    }
+
+    /** Отмечает полученным диапазон [start, end); частично покрытые блоки не отмечаются. */
+    void add(long start, long end) {
+        end = Math.min(end, size);
+        if (end <= start) return;
+        int first = (int) ((start + BLOCK - 1) / BLOCK);
+        int last = end == size ? blocks : (int) (end / BLOCK);
+        if (first < last) done.set(first, last);
+    }
+
+    /** Объём полученных байтов. */
+    long covered() {
+        int n = done.cardinality();
+        if (n == 0) return 0;
+        long bytes = (long) n * BLOCK;
+        return done.get(blocks - 1) ? bytes - ((long) blocks * BLOCK - size) : bytes;
+    }
+
+    /** Проверяет, что получены все блоки. */
+    boolean isComplete() {
+        return done.nextClearBit(0) >= blocks;
+    }
+
+    /** Недостающие диапазоны парами [start, end), выровненные по границам блоков. */
+    long[] missing() {
+        long[] out = new long[16];
+        int n = 0;
+        for (int from = done.nextClearBit(0); from < blocks; ) {
+            int to = Math.min(blocks, done.nextSetBit(from) < 0 ? blocks : done.nextSetBit(from));
+            if (n + 2 > out.length) out = Arrays.copyOf(out, out.length * 2);
+            out[n++] = (long) from * BLOCK;
+            out[n++] = Math.min(size, (long) to * BLOCK);
+            from = done.nextClearBit(to);
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Сбрасывает все отметки. */
+    void clear() {
+        done.clear();
+    }
+
+    /** Состояние для сохранения. */
+    long[] toLongArray() {
+        return done.toLongArray();
+    }
+
+    /** Восстанавливает карту, сохранённую {@link #toLongArray()}. */
+    static RangeBitmap of(long size, long[] words) {
+        return new RangeBitmap(size, BitSet.valueOf(words));
+    }
+}
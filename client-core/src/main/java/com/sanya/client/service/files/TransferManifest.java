@@ -0,0 +1,97 @@
+package com.sanya.client.service.files;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * TransferManifest — сохраняемое состояние входящей передачи: что за файл и какие блоки уже получены.
+ * Позволяет после переподключения (или перезапуска клиента) запросить у отправителя только недостающее.
+ *
+ * Формат: DataOutput-запись, пишется во временный файл и атомарно переименовывается.
+ */
+final class TransferManifest {
+
+    private static final int MAGIC = 0x53464D33; // "SFM3"
+    private static final int MAGIC_V2 = 0x53464D32; // "SFM2", без шифрования
+
+    final String transferId;
+    final String sender;
+    final String filename;
+    final long size;
+
+    /** SHA-256 файла от отправителя; null, пока не получен {@code FileTransferComplete}. */
+    byte[] sha256;
+
+    /** Блоки зашифрованы отправителем. */
+    boolean encrypted;
+
+    /** Секрет потока ({@code StreamAead.Secret#encode}); null, пока ключ не получен. */
+    byte[] secret;
+
+    /** Полученные и записанные на диск блоки. */
+    final RangeBitmap received;
+
+    TransferManifest(String transferId, String sender, String filename, long size) {
+        this(transferId, sender, filename, size, new RangeBitmap(size));
+    }
+
+    private TransferManifest(String transferId, String sender, String filename, long size, RangeBitmap received) {
+        this.transferId = transferId;
+        this.sender = sender;
+        this.filename = filename;
+        this.size = size;
+        this.received = received;
+    }
+
+    /** Атомарно сохраняет манифест. */
+    void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(transferId);
+            out.writeUTF(sender != null ? sender : "");
+            out.writeUTF(filename);
+            out.writeLong(size);
+            out.writeInt(sha256 != null ? sha256.length : 0);
+            if (sha256 != null) out.write(sha256);
+            out.writeBoolean(encrypted);
+            out.writeInt(secret != null ? secret.length : 0);
+            if (secret != null) out.write(secret);
+            long[] words = received.toLongArray();
+            out.writeInt(words.length);
+            for (long w : words) out.writeLong(w);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Загружает манифест, сохранённый {@link #save(Path)}. */
+    static TransferManifest load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_V2) throw new IOException("Not a transfer manifest: " + file);
+            String transferId = in.readUTF();
+            String sender = in.readUTF();
+            String filename = in.readUTF();
+            long size = in.readLong();
+            byte[] sha = new byte[in.readInt()];
+            in.readFully(sha);
+            boolean encrypted = false;
+            byte[] secret = new byte[0];
+            if (magic == MAGIC) {
+                encrypted = in.readBoolean();
+                secret = new byte[in.readInt()];
+                in.readFully(secret);
+            }
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+
+            TransferManifest m = new TransferManifest(transferId, sender, filename, size, RangeBitmap.of(size, words));
+            if (sha.length > 0) m.sha256 = sha;
+            m.encrypted = encrypted;
+            if (secret.length > 0) m.secret = secret;
+            return m;
+        }
+    }
+}
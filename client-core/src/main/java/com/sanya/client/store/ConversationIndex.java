@@ -0,0 +1,225 @@
+package com.sanya.client.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ConversationIndex — индекс одной беседы в локальном хранилище сообщений.
+ * Файл из записей фиксированной длины (seq, сегмент, смещение), упорядоченных по seq.
+ *
+ * Назначение:
+ *  - Находить положение последних N сообщений беседы без чтения сегментов целиком.
+ *  - Постраничная выборка «до seq» бинарным поиском по отображённому в память файлу.
+ *
+ * Устройство:
+ *  Запись выполняется позиционно через {@link FileChannel}, чтение — через
+ *  {@link MappedByteBuffer}. Отображение переснимается геометрически: когда записей становится
+ *  вдвое больше, чем отображено. Хвост за отображением читается позиционно из канала,
+ *  а seq последней записи хранится в памяти, поэтому добавление с проверкой порядка
+ *  не отображает файл заново. Отображать с запасом за концом файла нельзя: это растянуло бы файл,
+ *  а число записей определяется по его длине.
+ *  Укоротить индекс можно только до первого отображения: отображённый файл на части платформ
+ *  не обрезается. Поэтому хвост при восстановлении проверяется через {@link #read(int)}.
+ *
+ * Потокобезопасность:
+ *  Вызывается под блокировкой {@link LocalMessageStore}.
+ */
+final class ConversationIndex implements AutoCloseable {
+
+    /** Размер записи: long seq + int segment + int offset. */
+    static final int ENTRY_SIZE = 16;
+
+    /** Запись индекса: seq сообщения и его положение в сегментах. */
+    record Entry(long seq, int segment, int offset) {}
+
+    /** Канал файла индекса. */
+    private final FileChannel channel;
+
+    /** Количество записей в индексе. */
+    private int count;
+
+    /** Индексы короче этого читаются только из канала, без отображения. */
+    static final int MIN_MAPPED = 64;
+
+    /** Отображение начала файла (отстаёт от {@link #count} не больше чем вдвое). */
+    private MappedByteBuffer mapped;
+
+    /** Количество записей, покрытых текущим отображением. */
+    private int mappedCount;
+
+    /** Буфер для записи одной позиции. */
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+    /** Сколько раз файл отображался в память. */
+    private int maps;
+
+    /** Последняя прочитанная запись хвоста за отображением. */
+    private final ByteBuffer tail = ByteBuffer.allocate(ENTRY_SIZE);
+
+    /** Номер записи в {@link #tail}; -1 — буфер пуст. */
+    private int tailIndex = -1;
+
+    /** seq последней записи; -1 — индекс пуст. */
+    private long lastSeq = -1;
+
+    ConversationIndex(Path file) throws IOException {
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        this.count = (int) (size / ENTRY_SIZE);
+        if (size % ENTRY_SIZE != 0) {
+            // Обрыв при записи — отбрасываем неполную запись
+            channel.truncate((long) count * ENTRY_SIZE);
+        }
+        if (count > 0) lastSeq = read(count - 1).seq();
+    }
+
+    /** Количество сообщений в беседе. */
+    int size() {
+        return count;
+    }
+
+    /** Добавляет позицию сообщения в конец индекса. */
+    void append(long seq, int segment, int offset) throws IOException {
+        entry.clear();
+        entry.putLong(seq).putInt(segment).putInt(offset).flip();
+        long pos = (long) count * ENTRY_SIZE;
+        while (entry.hasRemaining()) {
+            pos += channel.write(entry, pos);
+        }
+        count++;
+        lastSeq = seq;
+    }
+
+    /**
+     * Читает запись из канала, не отображая файл.
+     *
+     * @param i номер записи
+     * @return запись
+     */
+    Entry read(int i) throws IOException {
+        ByteBuffer b = readTail(i);
+        return new Entry(b.getLong(0), b.getInt(8), b.getInt(12));
+    }
+
+    /**
+     * Отбрасывает записи с номера {@code size} до конца.
+     *
+     * @param size новое число записей
+     * @throws IllegalStateException если файл уже отображён в память
+     */
+    void truncate(int size) throws IOException {
+        if (mapped != null) throw new IllegalStateException("Mapped index cannot be truncated");
+        if (size >= count) return;
+        channel.truncate((long) size * ENTRY_SIZE);
+        count = size;
+        tailIndex = -1;
+        lastSeq = size > 0 ? read(size - 1).seq() : -1;
+    }
+
+    /**
+     * Отбрасывает хвост записей с seq не меньше заданного — ссылки на сообщения, потерянные при сбое.
+     * Хвост проходится с конца через канал: при восстановлении он короткий.
+     *
+     * @param seq первый отбрасываемый seq
+     * @return сколько записей отброшено
+     */
+    int dropFrom(long seq) throws IOException {
+        if (lastSeq < seq) return 0;
+        int keep = count;
+        while (keep > 0 && read(keep - 1).seq() >= seq) keep--;
+        int dropped = count - keep;
+        truncate(keep);
+        return dropped;
+    }
+
+    /** seq последней записи без обращения к файлу; -1 — индекс пуст. */
+    long lastSeq() {
+        return lastSeq;
+    }
+
+    /** Возвращает seq записи по её номеру в индексе. */
+    long seqAt(int i) throws IOException {
+        return view(i).getLong(base(i));
+    }
+
+    /** Возвращает номер сегмента записи по её номеру в индексе. */
+    int segmentAt(int i) throws IOException {
+        return view(i).getInt(base(i) + 8);
+    }
+
+    /** Возвращает смещение записи в сегменте по её номеру в индексе. */
+    int offsetAt(int i) throws IOException {
+        return view(i).getInt(base(i) + 12);
+    }
+
+    /**
+     * Возвращает номер первой записи с seq не меньше заданного (бинарный поиск).
+     *
+     * @param seq искомый seq
+     * @return позиция вставки в диапазоне [0, size]
+     */
+    int lowerBound(long seq) throws IOException {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (seqAt(mid) < seq) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Возвращает буфер с записью {@code i}: отображение или буфер хвоста.
+     * Смещение записи в нём — {@link #base(int)}.
+     */
+    private ByteBuffer view(int i) throws IOException {
+        if (i >= mappedCount && count >= 2 * Math.max(mappedCount, MIN_MAPPED / 2)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * ENTRY_SIZE);
+            mappedCount = count;
+            maps++;
+        }
+        if (i < mappedCount) return mapped;
+        return readTail(i);
+    }
+
+    /** Читает запись {@code i} из канала в буфер хвоста (смещение в буфере — 0). */
+    private ByteBuffer readTail(int i) throws IOException {
+        if (tailIndex != i) {
+            tail.clear();
+            long pos = (long) i * ENTRY_SIZE;
+            while (tail.hasRemaining()) {
+                int n = channel.read(tail, pos + tail.position());
+                if (n < 0) throw new EOFException("Index entry " + i + " beyond end of file");
+            }
+            tailIndex = i;
+        }
+        return tail;
+    }
+
+    /** Смещение записи {@code i} в буфере, который вернул {@link #view(int)}. */
+    private int base(int i) {
+        return i < mappedCount ? i * ENTRY_SIZE : 0;
+    }
+
+    /** Сколько раз файл отображался в память: растёт логарифмически от числа записей. */
+    int maps() {
+        return maps;
+    }
+
+    /** Сбрасывает индекс на диск. */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+}
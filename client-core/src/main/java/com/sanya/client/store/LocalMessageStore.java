@@ -0,0 +1,502 @@
+package com.sanya.client.store;
+
+import com.sanya.Message;
+import com.sanya.client.core.api.MessageStore;
+import com.sanya.crypto.AeadEngine;
+import com.sanya.crypto.Crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * LocalMessageStore — постоянное локальное хранилище истории сообщений клиента.
+ * Реализует {@link MessageStore}: сохраняет отправленные и полученные сообщения,
+ * включая расшифрованные личные, в зашифрованном виде на диске.
+ *
+ * Назначение:
+ *  - Сохранять историю между запусками клиента.
+ *  - Быстро показывать последний экран истории при старте, не читая файлы целиком.
+ *  - Отдавать историю страницами «назад» для виртуализированного списка сообщений.
+ *
+ * Формат на диске:
+ *  - {@code segments/seg-NNNNNN.log} — append-only сегменты; запись = длина + nonce + AES-GCM(сообщение).
+ *    Номер сегмента и смещение записи входят в AAD: перенесённая или подставленная на чужое место
+ *    запись не расшифруется.
+ *  - {@code index/<hmac>.idx} — индекс беседы ({@link ConversationIndex}), имя файла —
+ *    HMAC от имени беседы, чтобы не раскрывать собеседников на диске.
+ *  - Общий индекс {@link #ALL} содержит все сообщения в порядке записи.
+ *
+ * Восстановление:
+ *  При открытии хвост последнего сегмента, не попавший в индекс, перечитывается,
+ *  а оборванная запись (длина за концом файла или нулевая) отбрасывается.
+ *  Индекс мог дойти до диска раньше сегмента: записи общего индекса, указывающие за конец
+ *  сегментов, отбрасываются с конца, и сегменты перечитываются с последней целой записи.
+ *  Из индексов бесед такие ссылки удаляются при открытии, чтобы не указывать на seq,
+ *  выданные заново.
+ *  Целая запись, не прошедшая проверку, не обрезается: так выглядит и чужой ключ, а обрезка
+ *  стёрла бы всю историю. Хранилище тогда не открывается.
+ *
+ * Использование:
+ *  LocalMessageStore store = LocalMessageStore.open(dir, LocalKeyFile.loadOrCreate(dir.resolve("local.key")));
+ *  store.save(StoredMessage.PUBLIC, message);
+ *  List<StoredMessage> page = store.loadBefore(LocalMessageStore.ALL, Long.MAX_VALUE, 50);
+ */
+public final class LocalMessageStore implements MessageStore, AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(LocalMessageStore.class.getName());
+
+    /** Псевдо-беседа, индекс которой содержит все сообщения. */
+    public static final String ALL = "*";
+
+    /** Максимальный размер сегмента, после которого начинается новый. */
+    private static final long SEGMENT_LIMIT = 64L << 20;
+
+    /** Длина nonce AES-GCM. */
+    private static final int NONCE_LEN = 12;
+
+    /** Длина AAD записи: номер сегмента + смещение. */
+    private static final int AAD_LEN = 12;
+
+    private final Path segmentsDir;
+    private final Path indexDir;
+    private final SecretKey key;
+
+    /** Открытые сегменты; номер сегмента равен позиции в списке. */
+    private final List<FileChannel> segments = new ArrayList<>();
+
+    /** Открытые индексы бесед. */
+    private final Map<String, ConversationIndex> indexes = new HashMap<>();
+
+    /** Слушатели новых сообщений (например, полнотекстовый индекс). */
+    private final List<Consumer<StoredMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    /** Каталог хранилища. */
+    private final Path dir;
+
+    /** HMAC для имён файлов индексов. */
+    private final Mac nameMac;
+
+    /** Следующий seq. */
+    private long nextSeq;
+
+    /**
+     * Первый seq текущего запуска — граница между историей и новыми сообщениями.
+     * До конца восстановления — {@link Long#MAX_VALUE}.
+     */
+    private long sessionStartSeq = Long.MAX_VALUE;
+
+    private LocalMessageStore(Path dir, SecretKey key) throws IOException {
+        this.dir = dir;
+        this.segmentsDir = dir.resolve("segments");
+        this.indexDir = dir.resolve("index");
+        this.key = key;
+        Files.createDirectories(segmentsDir);
+        Files.createDirectories(indexDir);
+
+        try {
+            nameMac = Mac.getInstance("HmacSHA256");
+            nameMac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("HMAC unavailable", e);
+        }
+
+        try {
+            openSegments();
+            recover();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        this.sessionStartSeq = nextSeq;
+    }
+
+    /**
+     * Открывает (или создаёт) хранилище в указанном каталоге.
+     *
+     * @param dir каталог хранилища
+     * @param key локальный ключ шифрования
+     * @return открытое хранилище
+     * @throws IOException при ошибке ввода-вывода
+     */
+    public static LocalMessageStore open(Path dir, SecretKey key) throws IOException {
+        long start = System.nanoTime();
+        LocalMessageStore store = new LocalMessageStore(dir, key);
+        log.info("Message store opened: " + store.nextSeq + " messages in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return store;
+    }
+
+    /**
+     * Добавляет сообщение в историю.
+     *
+     * @param conversation ключ беседы ({@link StoredMessage#PUBLIC} или {@link StoredMessage#direct(String)})
+     * @param from         отправитель
+     * @param text         текст
+     * @param system       признак системного сообщения
+     * @return сохранённое сообщение с присвоенным seq
+     */
+    public StoredMessage append(String conversation, String from, String text, boolean system) {
+        StoredMessage stored;
+        try {
+            stored = appendLocked(conversation, from, text, system);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to store message", e);
+            return null;
+        }
+        for (Consumer<StoredMessage> l : listeners) {
+            try {
+                l.accept(stored);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Message store listener failed", e);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Сохраняет сообщение в беседу {@code recipient}.
+     * Поддерживаются {@link Message} и {@link StoredMessage}.
+     */
+    @Override
+    public void save(String recipient, Object message) {
+        if (message instanceof Message m) {
+            append(recipient, m.getFrom(), m.getText(), m.getType() == Message.Type.SYSTEM);
+        } else if (message instanceof StoredMessage m) {
+            append(recipient, m.from(), m.text(), m.system());
+        } else if (message != null) {
+            log.fine("Unsupported message type for store: " + message.getClass().getName());
+        }
+    }
+
+    /** Возвращает всю историю беседы {@code recipient}. */
+    @Override
+    public List<Object> retrieve(String recipient) {
+        return new ArrayList<>(loadBefore(recipient, Long.MAX_VALUE, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Возвращает страницу сообщений беседы, предшествующих {@code beforeSeq}.
+     *
+     * @param conversation ключ беседы или {@link #ALL}
+     * @param beforeSeq    граница (не включительно)
+     * @param limit        максимальный размер страницы
+     * @return сообщения от старых к новым
+     */
+    @Override
+    public synchronized List<StoredMessage> loadBefore(String conversation, long beforeSeq, int limit) {
+        try {
+            ConversationIndex idx = indexFor(conversation, false);
+            if (idx == null || idx.size() == 0) return List.of();
+
+            int end = beforeSeq == Long.MAX_VALUE ? idx.size() : idx.lowerBound(beforeSeq);
+            int start = Math.max(0, end - limit);
+            List<StoredMessage> page = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                page.add(readRecord(idx.segmentAt(i), idx.offsetAt(i)).message());
+            }
+            return page;
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to read message history", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Возвращает сообщения по возрастанию seq, начиная с {@code fromSeq}.
+     * Используется для дочитывания истории в производные индексы.
+     *
+     * @param fromSeq первый seq (включительно)
+     * @param limit   максимальное количество сообщений
+     * @return сообщения от старых к новым
+     */
+    public synchronized List<StoredMessage> loadRange(long fromSeq, int limit) {
+        try {
+            ConversationIndex all = indexFor(ALL, true);
+            int start = all.lowerBound(fromSeq);
+            int end = (int) Math.min(all.size(), (long) start + limit);
+            List<StoredMessage> page = new ArrayList<>(Math.max(0, end - start));
+            for (int i = start; i < end; i++) {
+                page.add(readRecord(all.segmentAt(i), all.offsetAt(i)).message());
+            }
+            return page;
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to read message history", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Возвращает сообщение по seq или null, если такого нет.
+     */
+    public synchronized StoredMessage get(long seq) {
+        List<StoredMessage> one = loadRange(seq, 1);
+        return one.isEmpty() || one.get(0).seq() != seq ? null : one.get(0);
+    }
+
+    /** Первый seq текущего запуска: всё, что меньше, — история прошлых сессий. */
+    public long sessionStartSeq() {
+        return sessionStartSeq;
+    }
+
+    /** Количество сообщений в хранилище. */
+    public synchronized long size() {
+        return nextSeq;
+    }
+
+    /** Возвращает каталог хранилища (рядом размещаются производные индексы). */
+    public Path directory() {
+        return dir;
+    }
+
+    /** Возвращает локальный ключ шифрования хранилища. */
+    public SecretKey key() {
+        return key;
+    }
+
+    /** Подписывает слушателя на новые сообщения. */
+    public void addListener(Consumer<StoredMessage> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public synchronized void close() {
+        for (ConversationIndex idx : indexes.values()) {
+            try {
+                idx.force();
+                idx.close();
+            } catch (IOException ignored) {}
+        }
+        indexes.clear();
+        for (FileChannel ch : segments) {
+            try {
+                if (ch.isOpen()) {
+                    ch.force(false);
+                    ch.close();
+                }
+            } catch (IOException ignored) {}
+        }
+        segments.clear();
+        log.info("Message store closed");
+    }
+
+    // === Запись ===
+
+    private synchronized StoredMessage appendLocked(String conversation, String from, String text, boolean system)
+            throws IOException {
+        StoredMessage msg = new StoredMessage(nextSeq, System.currentTimeMillis(), conversation, from, text, system);
+
+        FileChannel seg = writableSegment();
+        int segNo = segments.size() - 1;
+        int offset = (int) seg.size();
+
+        ByteBuffer record = encode(msg, segNo, offset);
+        long pos = offset;
+        while (record.hasRemaining()) {
+            pos += seg.write(record, pos);
+        }
+
+        index(msg, segNo, offset);
+        nextSeq++;
+        return msg;
+    }
+
+    /** Добавляет сообщение в индекс беседы и в общий индекс. */
+    private void index(StoredMessage msg, int segNo, int offset) throws IOException {
+        ConversationIndex conv = indexFor(msg.conversation(), true);
+        // Беседа пишется раньше общего индекса, поэтому при восстановлении может уже содержать запись
+        if (conv.lastSeq() < msg.seq()) {
+            conv.append(msg.seq(), segNo, offset);
+        }
+        indexFor(ALL, true).append(msg.seq(), segNo, offset);
+    }
+
+    private FileChannel writableSegment() throws IOException {
+        FileChannel last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null || last.size() >= SEGMENT_LIMIT) {
+            last = FileChannel.open(segmentPath(segments.size()),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.add(last);
+        }
+        return last;
+    }
+
+    private ByteBuffer encode(StoredMessage msg, int segNo, long offset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(msg.seq());
+        out.writeLong(msg.timestamp());
+        out.writeUTF(msg.conversation());
+        out.writeUTF(msg.from() != null ? msg.from() : "");
+        out.writeBoolean(msg.system());
+        byte[] text = (msg.text() != null ? msg.text() : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(text.length);
+        out.write(text);
+
+        byte[] nonce = Crypto.randomNonce12();
+        byte[] ct = AeadEngine.seal(key, nonce, aad(segNo, offset), bytes.toByteArray());
+
+        ByteBuffer record = ByteBuffer.allocate(4 + NONCE_LEN + ct.length);
+        record.putInt(NONCE_LEN + ct.length).put(nonce).put(ct).flip();
+        return record;
+    }
+
+    /** AAD записи: её положение в сегментах. */
+    private static byte[] aad(int segNo, long offset) {
+        return ByteBuffer.allocate(AAD_LEN).putInt(segNo).putLong(offset).array();
+    }
+
+    // === Чтение ===
+
+    /** Прочитанная запись и её полная длина в сегменте. */
+    private record Record(StoredMessage message, int length) {}
+
+    private Record readRecord(int segNo, long offset) throws IOException {
+        FileChannel seg = segments.get(segNo);
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(seg, header, offset);
+        int len = header.flip().getInt();
+        if (len <= NONCE_LEN || offset + 4 + len > seg.size()) {
+            throw new EOFException("Truncated record at " + segNo + ":" + offset);
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(len);
+        readFully(seg, body, offset + 4);
+        byte[] raw = body.array();
+        byte[] nonce = Arrays.copyOfRange(raw, 0, NONCE_LEN);
+        byte[] ct = Arrays.copyOfRange(raw, NONCE_LEN, len);
+
+        byte[] plain;
+        try {
+            plain = AeadEngine.open(key, nonce, aad(segNo, offset), ct);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            throw new IOException("Corrupted record at " + segNo + ":" + offset, e);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+        long seq = in.readLong();
+        long ts = in.readLong();
+        String conv = in.readUTF();
+        String from = in.readUTF();
+        boolean system = in.readBoolean();
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        return new Record(new StoredMessage(seq, ts, conv, from, new String(text, StandardCharsets.UTF_8), system),
+                4 + len);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, pos);
+            if (n < 0) throw new EOFException();
+            pos += n;
+        }
+    }
+
+    // === Открытие и восстановление ===
+
+    private void openSegments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.list(segmentsDir)) {
+            files = s.filter(p -> p.getFileName().toString().startsWith("seg-")).sorted().toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            if (!files.get(i).equals(segmentPath(i))) {
+                throw new IOException("Missing message segment: " + segmentPath(i));
+            }
+            segments.add(FileChannel.open(files.get(i), StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+    }
+
+    /** Дочитывает в индекс записи, которые были записаны в сегменты, но не попали в общий индекс. */
+    private void recover() throws IOException {
+        ConversationIndex all = indexFor(ALL, true);
+        int segNo = 0;
+        long pos = 0;
+
+        // Последняя запись индекса может указывать за конец сегмента: индекс дошёл до диска, а сегмент нет.
+        // Такие записи отбрасываются с конца; ошибка расшифровки не обрезает ничего (см. описание класса)
+        int kept = all.size();
+        while (kept > 0) {
+            ConversationIndex.Entry e = all.read(kept - 1);
+            try {
+                if (e.segment() < segments.size()) {
+                    Record r = readRecord(e.segment(), e.offset());
+                    if (r.message().seq() == e.seq()) {
+                        segNo = e.segment();
+                        pos = e.offset() + r.length();
+                        nextSeq = e.seq() + 1;
+                        break;
+                    }
+                }
+            } catch (EOFException torn) {
+                // запись не дошла до диска
+            }
+            kept--;
+        }
+        if (kept < all.size()) {
+            log.warning("Message index points past the end of segments, dropping "
+                    + (all.size() - kept) + " entries and rescanning");
+            all.truncate(kept);
+        }
+
+        int recovered = 0;
+        for (; segNo < segments.size(); segNo++, pos = 0) {
+            FileChannel seg = segments.get(segNo);
+            while (pos < seg.size()) {
+                Record r;
+                try {
+                    r = readRecord(segNo, pos);
+                } catch (EOFException e) {
+                    log.warning("Dropping torn tail of segment " + segNo + " at " + pos + ": " + e.getMessage());
+                    seg.truncate(pos);
+                    break;
+                }
+                index(r.message(), segNo, (int) pos);
+                nextSeq = r.message().seq() + 1;
+                pos += r.length();
+                recovered++;
+            }
+        }
+        if (recovered > 0) log.info("Recovered " + recovered + " unindexed messages");
+    }
+
+    private ConversationIndex indexFor(String conversation, boolean create) throws IOException {
+        ConversationIndex idx = indexes.get(conversation);
+        if (idx != null) return idx;
+
+        Path file = indexDir.resolve(indexName(conversation) + ".idx");
+        if (!create && !Files.exists(file)) return null;
+        idx = new ConversationIndex(file);
+        indexes.put(conversation, idx);
+        // Беседа открывается впервые: записи начиная с seq, выданного после восстановления, — потерянные при сбое
+        if (!conversation.equals(ALL)) {
+            int dropped = idx.dropFrom(Math.min(nextSeq, sessionStartSeq));
+            if (dropped > 0) log.warning("Dropped " + dropped + " stale entries from a conversation index");
+        }
+        return idx;
+    }
+
+    private String indexName(String conversation) {
+        byte[] h = nameMac.doFinal(conversation.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(h, 0, 16);
+    }
+
+    private Path segmentPath(int segNo) {
+        return segmentsDir.resolve(String.format("seg-%06d.log", segNo));
+    }
+}
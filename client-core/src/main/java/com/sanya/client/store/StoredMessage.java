@@ -0,0 +1,29 @@
+package com.sanya.client.store;
+
+/**
+ * StoredMessage — сообщение из локальной истории клиента.
+ *
+ * Назначение:
+ *  - Единый формат хранения публичных, системных и расшифрованных личных сообщений.
+ *  - {@code seq} — сквозной номер записи в хранилище, используется как курсор постраничной выборки.
+ *
+ * Беседы:
+ *  - {@link #PUBLIC} — общий чат;
+ *  - {@code "@" + имя} — личная переписка с пользователем (см. {@link #direct(String)}).
+ */
+public record StoredMessage(long seq, long timestamp, String conversation,
+                            String from, String text, boolean system) {
+
+    /** Беседа общего чата. */
+    public static final String PUBLIC = "#general";
+
+    /** Возвращает ключ беседы личной переписки с пользователем. */
+    public static String direct(String peer) {
+        return "@" + peer;
+    }
+
+    /** Проверяет, относится ли сообщение к личной переписке. */
+    public boolean isDirect() {
+        return conversation.startsWith("@");
+    }
+}
@@ -0,0 +1,172 @@
+package com.sanya.client.store.search;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * FrozenSegment — неизменяемый сегмент индекса с отсортированным словарём термов.
+ * Поиск терма — бинарный поиск, префиксный поиск — диапазон словаря.
+ * Сегменты со смежными диапазонами seq сливаются в фоне ({@link #merge(FrozenSegment, FrozenSegment)}).
+ */
+final class FrozenSegment implements IndexSegment {
+
+    /** Версия формата файла сегмента. */
+    private static final int FORMAT = 1;
+
+    private final long baseSeq;
+    private final int docCount;
+    private final String[] terms;
+    private final int[][] docs;
+    private final int[][] posOffsets;
+    private final int[][] positions;
+
+    FrozenSegment(long baseSeq, int docCount, String[] terms, int[][] docs, int[][] posOffsets, int[][] positions) {
+        this.baseSeq = baseSeq;
+        this.docCount = docCount;
+        this.terms = terms;
+        this.docs = docs;
+        this.posOffsets = posOffsets;
+        this.positions = positions;
+    }
+
+    @Override
+    public long baseSeq() {
+        return baseSeq;
+    }
+
+    @Override
+    public int docCount() {
+        return docCount;
+    }
+
+    /** Первый seq после диапазона сегмента. */
+    long endSeq() {
+        return baseSeq + docCount;
+    }
+
+    @Override
+    public Postings postings(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        return i < 0 ? null : postingsAt(i);
+    }
+
+    private Postings postingsAt(int i) {
+        return new Postings(docs[i], docs[i].length, posOffsets[i], positions[i], positions[i].length);
+    }
+
+    @Override
+    public void forEachTermWithPrefix(String prefix, Consumer<String> action) {
+        int i = Arrays.binarySearch(terms, prefix);
+        if (i < 0) i = -i - 1;
+        for (; i < terms.length && terms[i].startsWith(prefix); i++) {
+            action.accept(terms[i]);
+        }
+    }
+
+    /**
+     * Сливает два сегмента со смежными диапазонами seq ({@code older.endSeq() == newer.baseSeq()}).
+     */
+    static FrozenSegment merge(FrozenSegment older, FrozenSegment newer) {
+        if (older.endSeq() != newer.baseSeq()) {
+            throw new IllegalArgumentException("Segments are not adjacent");
+        }
+        int shift = older.docCount;
+        List<String> names = new ArrayList<>();
+        List<int[]> mDocs = new ArrayList<>();
+        List<int[]> mOffsets = new ArrayList<>();
+        List<int[]> mPositions = new ArrayList<>();
+
+        int a = 0, b = 0;
+        while (a < older.terms.length || b < newer.terms.length) {
+            int cmp = a == older.terms.length ? 1
+                    : b == newer.terms.length ? -1
+                    : older.terms[a].compareTo(newer.terms[b]);
+            if (cmp < 0) {
+                names.add(older.terms[a]);
+                mDocs.add(older.docs[a]);
+                mOffsets.add(older.posOffsets[a]);
+                mPositions.add(older.positions[a]);
+                a++;
+            } else if (cmp > 0) {
+                names.add(newer.terms[b]);
+                mDocs.add(shifted(newer.docs[b], shift));
+                mOffsets.add(newer.posOffsets[b]);
+                mPositions.add(newer.positions[b]);
+                b++;
+            } else {
+                names.add(older.terms[a]);
+                int[] d1 = older.docs[a], d2 = newer.docs[b];
+                int[] p1 = older.positions[a], p2 = newer.positions[b];
+                int[] docs = Arrays.copyOf(d1, d1.length + d2.length);
+                int[] offsets = Arrays.copyOf(older.posOffsets[a], d1.length + d2.length);
+                int[] pos = Arrays.copyOf(p1, p1.length + p2.length);
+                for (int j = 0; j < d2.length; j++) {
+                    docs[d1.length + j] = d2[j] + shift;
+                    offsets[d1.length + j] = newer.posOffsets[b][j] + p1.length;
+                }
+                System.arraycopy(p2, 0, pos, p1.length, p2.length);
+                mDocs.add(docs);
+                mOffsets.add(offsets);
+                mPositions.add(pos);
+                a++;
+                b++;
+            }
+        }
+        return new FrozenSegment(older.baseSeq, older.docCount + newer.docCount,
+                names.toArray(String[]::new),
+                mDocs.toArray(int[][]::new),
+                mOffsets.toArray(int[][]::new),
+                mPositions.toArray(int[][]::new));
+    }
+
+    private static int[] shifted(int[] docs, int shift) {
+        int[] out = new int[docs.length];
+        for (int i = 0; i < docs.length; i++) out[i] = docs[i] + shift;
+        return out;
+    }
+
+    /** Сериализует сегмент. */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT);
+        out.writeLong(baseSeq);
+        out.writeInt(docCount);
+        out.writeInt(terms.length);
+        for (int i = 0; i < terms.length; i++) {
+            out.writeUTF(terms[i]);
+            writeInts(out, docs[i]);
+            writeInts(out, posOffsets[i]);
+            writeInts(out, positions[i]);
+        }
+    }
+
+    /** Читает сегмент, записанный {@link #writeTo(DataOutputStream)}. */
+    static FrozenSegment readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT) throw new IOException("Unsupported search segment format");
+        long base = in.readLong();
+        int count = in.readInt();
+        int n = in.readInt();
+        String[] terms = new String[n];
+        int[][] docs = new int[n][], offsets = new int[n][], positions = new int[n][];
+        for (int i = 0; i < n; i++) {
+            terms[i] = in.readUTF();
+            docs[i] = readInts(in);
+            offsets[i] = readInts(in);
+            positions[i] = readInts(in);
+        }
+        return new FrozenSegment(base, count, terms, docs, offsets, positions);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int v : a) out.writeInt(v);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] a = new int[in.readInt()];
+        for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+        return a;
+    }
+}
@@ -0,0 +1,39 @@
+package com.sanya.client.store.search;
+
+import java.util.function.Consumer;
+
+/**
+ * IndexSegment — сегмент инвертированного индекса, покрывающий непрерывный диапазон seq.
+ * Документ сегмента адресуется локальным номером {@code seq - baseSeq()}.
+ */
+interface IndexSegment {
+
+    /** Первый seq сегмента. */
+    long baseSeq();
+
+    /** Количество документов (длина диапазона seq). */
+    int docCount();
+
+    /** Возвращает список вхождений терма или null, если терма нет. */
+    Postings postings(String term);
+
+    /** Перебирает термы с указанным префиксом в лексикографическом порядке. */
+    void forEachTermWithPrefix(String prefix, Consumer<String> action);
+
+    /**
+     * Список вхождений терма: отсортированные номера документов и позиции терма в каждом из них.
+     * Позиции документа {@code docs[j]} лежат в {@code positions[posStart(j) .. posStart(j + 1))}.
+     */
+    record Postings(int[] docs, int docLen, int[] posOffsets, int[] positions, int positionsLen) {
+
+        /** Начало позиций j-го документа. */
+        int posStart(int j) {
+            return j < docLen ? posOffsets[j] : positionsLen;
+        }
+
+        /** Номер документа в списке вхождений или отрицательное значение, если его нет. */
+        int find(int doc) {
+            return java.util.Arrays.binarySearch(docs, 0, docLen, doc);
+        }
+    }
+}
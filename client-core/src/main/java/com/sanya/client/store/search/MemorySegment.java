@@ -0,0 +1,98 @@
+package com.sanya.client.store.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * MemorySegment — изменяемый сегмент индекса, в который добавляются новые сообщения.
+ * По достижении порога замораживается в {@link FrozenSegment}.
+ *
+ * Потокобезопасность:
+ *  Доступ синхронизирован на уровне {@link SearchIndex}.
+ */
+final class MemorySegment implements IndexSegment {
+
+    private final long baseSeq;
+    private int docCount;
+    private final TreeMap<String, TermBuilder> terms = new TreeMap<>();
+
+    MemorySegment(long baseSeq) {
+        this.baseSeq = baseSeq;
+    }
+
+    /** Добавляет документ; seq должен быть не меньше уже добавленных. */
+    void add(long seq, List<String> tokens) {
+        int doc = (int) (seq - baseSeq);
+        for (int pos = 0; pos < tokens.size(); pos++) {
+            terms.computeIfAbsent(tokens.get(pos), t -> new TermBuilder()).add(doc, pos);
+        }
+        docCount = Math.max(docCount, doc + 1);
+    }
+
+    @Override
+    public long baseSeq() {
+        return baseSeq;
+    }
+
+    @Override
+    public int docCount() {
+        return docCount;
+    }
+
+    @Override
+    public Postings postings(String term) {
+        TermBuilder b = terms.get(term);
+        return b == null ? null : new Postings(b.docs, b.docLen, b.posOffsets, b.positions, b.positionsLen);
+    }
+
+    @Override
+    public void forEachTermWithPrefix(String prefix, Consumer<String> action) {
+        for (String t : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+            action.accept(t);
+        }
+    }
+
+    /** Создаёт неизменяемую копию сегмента с плотными массивами. */
+    FrozenSegment freeze() {
+        String[] names = new String[terms.size()];
+        int[][] docs = new int[names.length][];
+        int[][] posOffsets = new int[names.length][];
+        int[][] positions = new int[names.length][];
+        int i = 0;
+        for (Map.Entry<String, TermBuilder> e : terms.entrySet()) {
+            TermBuilder b = e.getValue();
+            names[i] = e.getKey();
+            docs[i] = Arrays.copyOf(b.docs, b.docLen);
+            posOffsets[i] = Arrays.copyOf(b.posOffsets, b.docLen);
+            positions[i] = Arrays.copyOf(b.positions, b.positionsLen);
+            i++;
+        }
+        return new FrozenSegment(baseSeq, docCount, names, docs, posOffsets, positions);
+    }
+
+    /** Растущий список вхождений одного терма. */
+    private static final class TermBuilder {
+        int[] docs = new int[2];
+        int[] posOffsets = new int[2];
+        int docLen;
+        int[] positions = new int[2];
+        int positionsLen;
+
+        void add(int doc, int pos) {
+            if (docLen == 0 || docs[docLen - 1] != doc) {
+                if (docLen == docs.length) {
+                    docs = Arrays.copyOf(docs, docLen * 2);
+                    posOffsets = Arrays.copyOf(posOffsets, docLen * 2);
+                }
+                docs[docLen] = doc;
+                posOffsets[docLen] = positionsLen;
+                docLen++;
+            }
+            if (positionsLen == positions.length) positions = Arrays.copyOf(positions, positionsLen * 2);
+            positions[positionsLen++] = pos;
+        }
+    }
+}
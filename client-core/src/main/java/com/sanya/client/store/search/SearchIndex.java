@@ -0,0 +1,439 @@
+package com.sanya.client.store.search;
+
+import com.sanya.client.store.LocalMessageStore;
+import com.sanya.client.store.StoredMessage;
+import com.sanya.crypto.Crypto;
+
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * SearchIndex — инкрементальный полнотекстовый индекс локальной истории сообщений.
+ * Личные сообщения шифруются end-to-end, поэтому искать по ним можно только на клиенте:
+ * индекс строится по уже расшифрованному тексту из {@link LocalMessageStore}.
+ *
+ * Назначение:
+ *  - Индексировать сообщения по мере их записи в хранилище.
+ *  - Отвечать на запросы по термам, префиксам и фразам ({@link SearchQuery}).
+ *
+ * Архитектура:
+ *  - Новые сообщения попадают в изменяемый {@link MemorySegment}.
+ *  - По достижении {@link #FREEZE_THRESHOLD} документов сегмент замораживается в {@link FrozenSegment},
+ *    сохраняется на диск (AES-GCM, ключ хранилища) и сливается с соседними по схеме двоичного счётчика,
+ *    поэтому число сегментов растёт логарифмически.
+ *  - Индексация, заморозка и слияние выполняются в одном фоновом потоке «SearchIndex-Writer»,
+ *    вне EDT и сетевого потока.
+ *  - При открытии загружаются сохранённые сегменты, а хвост хранилища дочитывается в фоне.
+ *
+ * Потокобезопасность:
+ *  Изменяет индекс только фоновый поток; запросы выполняются из любого потока под read-lock.
+ *
+ * Использование:
+ *  SearchIndex index = SearchIndex.open(store);
+ *  store.addListener(index::add);
+ *  List<StoredMessage> hits = index.search("\"hello world\" fil*", 50);
+ */
+public final class SearchIndex implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(SearchIndex.class.getName());
+
+    /** Размер изменяемого сегмента, после которого он замораживается. */
+    static final int FREEZE_THRESHOLD = 50_000;
+
+    /** Максимальное число термов, в которые раскрывается префикс в одном сегменте. */
+    static final int MAX_PREFIX_EXPANSION = 1024;
+
+    /** Размер пачки при дочитывании хранилища. */
+    private static final int REPLAY_BATCH = 10_000;
+
+    /** Длина nonce AES-GCM. */
+    private static final int NONCE_LEN = 12;
+
+    private final LocalMessageStore store;
+    private final Path dir;
+    private final SecretKey key;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Замороженные сегменты по возрастанию baseSeq; диапазоны смежные. */
+    private final List<FrozenSegment> frozen = new ArrayList<>();
+
+    /** Текущий изменяемый сегмент. */
+    private MemorySegment memory;
+
+    /** Следующий ожидаемый seq; изменяется только фоновым потоком. */
+    private long nextSeq;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "SearchIndex-Writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private SearchIndex(LocalMessageStore store) {
+        this.store = store;
+        this.dir = store.directory().resolve("search");
+        this.key = store.key();
+    }
+
+    /**
+     * Открывает индекс рядом с хранилищем и запускает фоновое дочитывание.
+     *
+     * @param store локальное хранилище сообщений
+     * @return открытый индекс
+     * @throws IOException если каталог индекса недоступен
+     */
+    public static SearchIndex open(LocalMessageStore store) throws IOException {
+        SearchIndex index = new SearchIndex(store);
+        Files.createDirectories(index.dir);
+        index.loadSegments();
+        index.writer.execute(index::replay);
+        return index;
+    }
+
+    /**
+     * Ставит сообщение в очередь на индексацию.
+     * Вызывается слушателем хранилища; порядок вызовов не важен — пропуски дочитываются из хранилища.
+     */
+    public void add(StoredMessage message) {
+        if (writer.isShutdown()) return;
+        writer.execute(() -> {
+            try {
+                catchUp(message.seq());
+                if (message.seq() == nextSeq) index(message);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Failed to index message " + message.seq(), e);
+            }
+        });
+    }
+
+    /**
+     * Ищет сообщения по строке запроса.
+     *
+     * @param query строка запроса (см. {@link SearchQuery})
+     * @param limit максимальное число результатов
+     * @return найденные сообщения от новых к старым
+     */
+    public List<StoredMessage> search(String query, int limit) {
+        List<StoredMessage> result = new ArrayList<>();
+        for (long seq : searchSeqs(SearchQuery.parse(query), limit)) {
+            StoredMessage m = store.get(seq);
+            if (m != null) result.add(m);
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает seq сообщений, удовлетворяющих запросу, от новых к старым.
+     */
+    public long[] searchSeqs(SearchQuery query, int limit) {
+        if (query.isEmpty() || limit <= 0) return new long[0];
+
+        long[] hits = new long[limit];
+        int found = 0;
+        lock.readLock().lock();
+        try {
+            List<IndexSegment> segments = new ArrayList<>(frozen.size() + 1);
+            segments.addAll(frozen);
+            segments.add(memory);
+            for (int s = segments.size() - 1; s >= 0 && found < limit; s--) {
+                IndexSegment seg = segments.get(s);
+                BitSet match = evaluate(seg, query);
+                for (int doc = match.previousSetBit(seg.docCount() - 1);
+                     doc >= 0 && found < limit;
+                     doc = match.previousSetBit(doc - 1)) {
+                    hits[found++] = seg.baseSeq() + doc;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Arrays.copyOf(hits, found);
+    }
+
+    /** Количество проиндексированных сообщений. */
+    public long indexedCount() {
+        lock.readLock().lock();
+        try {
+            return memory.baseSeq() + memory.docCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Количество замороженных сегментов. */
+    int frozenSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return frozen.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Дожидается обработки всех поставленных в очередь сообщений. */
+    public void awaitIndexed() throws InterruptedException {
+        try {
+            writer.submit(() -> catchUp(store.size())).get();
+        } catch (ExecutionException e) {
+            log.log(Level.WARNING, "Search index catch-up failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) writer.shutdownNow();
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("Search index closed");
+    }
+
+    // === Выполнение запроса ===
+
+    static BitSet evaluate(IndexSegment seg, SearchQuery query) {
+        BitSet result = null;
+        for (SearchQuery.Clause clause : query.clauses()) {
+            BitSet docs = switch (clause.kind()) {
+                case TERM -> termDocs(seg, clause.terms().get(0));
+                case PREFIX -> prefixDocs(seg, clause.terms().get(0));
+                case PHRASE -> phraseDocs(seg, clause.terms());
+            };
+            if (result == null) result = docs;
+            else result.and(docs);
+            if (result.isEmpty()) break;
+        }
+        return result != null ? result : new BitSet();
+    }
+
+    private static BitSet termDocs(IndexSegment seg, String term) {
+        BitSet bits = new BitSet();
+        setDocs(bits, seg.postings(term));
+        return bits;
+    }
+
+    private static BitSet prefixDocs(IndexSegment seg, String prefix) {
+        BitSet bits = new BitSet();
+        int[] expanded = {0};
+        seg.forEachTermWithPrefix(prefix, term -> {
+            if (expanded[0]++ < MAX_PREFIX_EXPANSION) setDocs(bits, seg.postings(term));
+        });
+        return bits;
+    }
+
+    private static void setDocs(BitSet bits, IndexSegment.Postings p) {
+        if (p == null) return;
+        for (int j = 0; j < p.docLen(); j++) bits.set(p.docs()[j]);
+    }
+
+    /**
+     * Документы, в которых термы фразы идут подряд.
+     * Перебор ведётся по самому редкому терму фразы, остальные проверяются бинарным поиском.
+     */
+    private static BitSet phraseDocs(IndexSegment seg, List<String> terms) {
+        BitSet bits = new BitSet();
+        IndexSegment.Postings[] lists = new IndexSegment.Postings[terms.size()];
+        int driver = 0;
+        for (int k = 0; k < lists.length; k++) {
+            lists[k] = seg.postings(terms.get(k));
+            if (lists[k] == null) return bits;
+            if (lists[k].docLen() < lists[driver].docLen()) driver = k;
+        }
+
+        IndexSegment.Postings first = lists[driver];
+        int[] at = new int[lists.length];
+        docs:
+        for (int j = 0; j < first.docLen(); j++) {
+            int doc = first.docs()[j];
+            for (int k = 0; k < lists.length; k++) {
+                if (k == driver) continue;
+                at[k] = lists[k].find(doc);
+                if (at[k] < 0) continue docs;
+            }
+            for (int p = first.posStart(j); p < first.posStart(j + 1); p++) {
+                int start = first.positions()[p] - driver;
+                boolean all = start >= 0;
+                for (int k = 0; k < lists.length && all; k++) {
+                    if (k == driver) continue;
+                    IndexSegment.Postings l = lists[k];
+                    all = Arrays.binarySearch(l.positions(), l.posStart(at[k]), l.posStart(at[k] + 1), start + k) >= 0;
+                }
+                if (all) {
+                    bits.set(doc);
+                    break;
+                }
+            }
+        }
+        return bits;
+    }
+
+    // === Индексация (фоновый поток) ===
+
+    /** Дочитывает из хранилища сообщения до {@code untilSeq} (не включительно). */
+    private void catchUp(long untilSeq) {
+        while (nextSeq < untilSeq) {
+            List<StoredMessage> batch = store.loadRange(nextSeq, (int) Math.min(REPLAY_BATCH, untilSeq - nextSeq));
+            if (batch.isEmpty()) return;
+            for (StoredMessage m : batch) index(m);
+        }
+    }
+
+    private void replay() {
+        long start = System.nanoTime();
+        long from = nextSeq;
+        catchUp(store.size());
+        if (nextSeq > from) {
+            log.info("Search index replayed " + (nextSeq - from) + " messages in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    private void index(StoredMessage m) {
+        List<String> tokens = m.system() ? List.of() : Tokenizer.tokenize(m.text());
+        lock.writeLock().lock();
+        try {
+            memory.add(m.seq(), tokens);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        nextSeq = m.seq() + 1;
+        if (memory.docCount() >= FREEZE_THRESHOLD) freezeMemory();
+    }
+
+    /** Замораживает текущий сегмент, сохраняет его и сливает хвост сегментов. */
+    private void freezeMemory() {
+        FrozenSegment segment = memory.freeze();
+        lock.writeLock().lock();
+        try {
+            frozen.add(segment);
+            memory = new MemorySegment(segment.endSeq());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        persist(segment);
+        mergeTail();
+    }
+
+    /** Сливает два последних сегмента, пока предыдущий не превышает последний более чем вдвое. */
+    private void mergeTail() {
+        while (true) {
+            FrozenSegment older, newer;
+            lock.readLock().lock();
+            try {
+                int n = frozen.size();
+                if (n < 2) return;
+                older = frozen.get(n - 2);
+                newer = frozen.get(n - 1);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (older.docCount() > 2L * newer.docCount()) return;
+
+            long start = System.nanoTime();
+            FrozenSegment merged = FrozenSegment.merge(older, newer);
+            lock.writeLock().lock();
+            try {
+                int n = frozen.size();
+                frozen.set(n - 2, merged);
+                frozen.remove(n - 1);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            persist(merged);
+            deleteFile(older);
+            deleteFile(newer);
+            log.fine("Merged search segments into " + merged.docCount() + " docs in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    // === Хранение сегментов ===
+
+    private Path fileFor(FrozenSegment seg) {
+        return dir.resolve(String.format("seg-%012d-%09d.fts", seg.baseSeq(), seg.docCount()));
+    }
+
+    private void persist(FrozenSegment seg) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+            seg.writeTo(new DataOutputStream(bytes));
+            byte[] nonce = Crypto.randomNonce12();
+            byte[] ct = Crypto.encryptGCM(key, nonce, bytes.toByteArray());
+
+            Path target = fileFor(seg);
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                out.write(nonce);
+                out.write(ct);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.WARNING, "Failed to persist search segment", e);
+        }
+    }
+
+    private void deleteFile(FrozenSegment seg) {
+        try {
+            Files.deleteIfExists(fileFor(seg));
+        } catch (IOException e) {
+            log.log(Level.FINE, "Failed to delete search segment", e);
+        }
+    }
+
+    /**
+     * Загружает сохранённые сегменты, выбирая непрерывную цепочку от seq 0.
+     * Остатки прерванного слияния (перекрывающиеся файлы) удаляются.
+     */
+    private void loadSegments() throws IOException {
+        List<FrozenSegment> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".fts")).toList()) {
+                try {
+                    loaded.add(read(file));
+                } catch (IOException | RuntimeException e) {
+                    log.log(Level.WARNING, "Dropping unreadable search segment " + file.getFileName(), e);
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        loaded.sort(Comparator.comparingLong(FrozenSegment::baseSeq)
+                .thenComparing(Comparator.comparingInt(FrozenSegment::docCount).reversed()));
+
+        long expected = 0;
+        long storeSize = store.size();
+        for (FrozenSegment seg : loaded) {
+            if (seg.baseSeq() == expected && seg.endSeq() <= storeSize) {
+                frozen.add(seg);
+                expected = seg.endSeq();
+            } else {
+                deleteFile(seg);
+            }
+        }
+        memory = new MemorySegment(expected);
+        nextSeq = expected;
+        log.info("Search index loaded: " + frozen.size() + " segments, " + expected + " messages");
+    }
+
+    private FrozenSegment read(Path file) throws IOException {
+        byte[] raw = Files.readAllBytes(file);
+        if (raw.length <= NONCE_LEN) throw new EOFException("Truncated search segment");
+        byte[] plain = Crypto.decryptGCM(key,
+                Arrays.copyOfRange(raw, 0, NONCE_LEN), Arrays.copyOfRange(raw, NONCE_LEN, raw.length));
+        return FrozenSegment.readFrom(new DataInputStream(new ByteArrayInputStream(plain)));
+    }
+}
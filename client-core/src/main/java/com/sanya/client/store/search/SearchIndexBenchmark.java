@@ -0,0 +1,80 @@
+package com.sanya.client.store.search;
+
+import com.sanya.client.store.LocalMessageStore;
+import com.sanya.client.store.StoredMessage;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * SearchIndexBenchmark — автономный замер скорости поиска без JUnit.
+ * Заполняет временное хранилище синтетическими сообщениями (по умолчанию 1 000 000),
+ * дожидается индексации и печатает задержки запросов по термам, префиксам и фразам.
+ *
+ * Запуск:
+ *  java -cp sanya-client.jar com.sanya.client.store.search.SearchIndexBenchmark [messages]
+ */
+public final class SearchIndexBenchmark {
+
+    private static final String[] QUERIES = {
+            "w17", "w4000", "w12*", "w1*", "\"w3 w5\"", "w2 w9 w30", "\"w1 w2 w3\" w4*"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory("sanya-search-bench");
+        System.out.println("[SearchIndexBenchmark] " + messages + " messages in " + dir);
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, new SecretKeySpec(new byte[32], "AES"));
+             SearchIndex index = SearchIndex.open(store)) {
+            store.addListener(index::add);
+
+            // Словарь с распределением, близким к закону Ципфа
+            Random rnd = new Random(42);
+            long start = System.nanoTime();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < messages; i++) {
+                sb.setLength(0);
+                int words = 3 + rnd.nextInt(13);
+                for (int w = 0; w < words; w++) {
+                    int rank = (int) Math.min(9_999, Math.exp(rnd.nextDouble() * Math.log(10_000)));
+                    sb.append('w').append(rank).append(' ');
+                }
+                store.append(StoredMessage.PUBLIC, "user" + (i % 50), sb.toString(), false);
+            }
+            System.out.printf("Store fill:  %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+            start = System.nanoTime();
+            index.awaitIndexed();
+            System.out.printf("Index drain: %d ms (%d segments)%n",
+                    (System.nanoTime() - start) / 1_000_000, index.frozenSegmentCount());
+
+            for (String q : QUERIES) {
+                SearchQuery query = SearchQuery.parse(q);
+                for (int i = 0; i < 20; i++) index.searchSeqs(query, 50);
+
+                int runs = 200;
+                long[] samples = new long[runs];
+                int hits = 0;
+                for (int i = 0; i < runs; i++) {
+                    long t = System.nanoTime();
+                    hits = index.searchSeqs(query, 50).length;
+                    samples[i] = System.nanoTime() - t;
+                }
+                Arrays.sort(samples);
+                long t = System.nanoTime();
+                index.search(q, 50);
+                long full = System.nanoTime() - t;
+                System.out.printf("%-22s hits=%-3d p50=%6.2f ms  p99=%6.2f ms  with fetch=%6.2f ms%n",
+                        q, hits, samples[runs / 2] / 1e6, samples[runs * 99 / 100] / 1e6, full / 1e6);
+            }
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(java.util.Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
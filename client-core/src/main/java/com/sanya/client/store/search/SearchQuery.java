@@ -0,0 +1,72 @@
+package com.sanya.client.store.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SearchQuery — разобранный поисковый запрос.
+ * Все условия объединяются по «И».
+ *
+ * Синтаксис:
+ *  - {@code слово} — точное совпадение терма;
+ *  - {@code нач*} — префиксный поиск;
+ *  - {@code "несколько слов"} — фразовый поиск (термы подряд).
+ *
+ * Использование:
+ *  SearchQuery q = SearchQuery.parse("\"hello world\" fil*");
+ */
+public record SearchQuery(List<Clause> clauses) {
+
+    /** Тип условия запроса. */
+    public enum Kind {
+        TERM,
+        PREFIX,
+        PHRASE
+    }
+
+    /** Одно условие запроса: терм, префикс или последовательность термов фразы. */
+    public record Clause(Kind kind, List<String> terms) {}
+
+    /** Проверяет, что в запросе нет ни одного условия. */
+    public boolean isEmpty() {
+        return clauses.isEmpty();
+    }
+
+    /**
+     * Разбирает строку запроса.
+     *
+     * @param text текст запроса
+     * @return запрос; пустой, если в тексте нет термов
+     */
+    public static SearchQuery parse(String text) {
+        List<Clause> clauses = new ArrayList<>();
+        if (text == null) return new SearchQuery(clauses);
+
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) end = text.length();
+                List<String> terms = Tokenizer.tokenize(text.substring(i + 1, end));
+                if (terms.size() == 1) clauses.add(new Clause(Kind.TERM, terms));
+                else if (!terms.isEmpty()) clauses.add(new Clause(Kind.PHRASE, terms));
+                i = end + 1;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '"') end++;
+                String word = text.substring(i, end);
+                boolean prefix = word.endsWith("*");
+                List<String> terms = Tokenizer.tokenize(word);
+                for (int t = 0; t < terms.size(); t++) {
+                    boolean last = t == terms.size() - 1;
+                    clauses.add(new Clause(prefix && last ? Kind.PREFIX : Kind.TERM, List.of(terms.get(t))));
+                }
+                i = end;
+            }
+        }
+        return new SearchQuery(clauses);
+    }
+}
@@ -0,0 +1,36 @@
+package com.sanya.client.store.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tokenizer — разбиение текста на термы для полнотекстового индекса.
+ * Терм — непрерывная последовательность букв и цифр (любой алфавит), приведённая к нижнему регистру.
+ */
+final class Tokenizer {
+
+    /** Максимальная длина терма; более длинные слова обрезаются. */
+    static final int MAX_TERM_LENGTH = 64;
+
+    private Tokenizer() {}
+
+    /** Возвращает термы текста в порядке следования (позиция терма = индекс в списке). */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                int end = Math.min(i, start + MAX_TERM_LENGTH);
+                terms.add(text.substring(start, end).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+}
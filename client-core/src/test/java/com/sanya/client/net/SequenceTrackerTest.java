@@ -0,0 +1,77 @@
+package com.sanya.client.net;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SequenceTrackerTest {
+
+    @Test
+    void testOutOfOrderFramesAdvanceOnlyContiguousPrefix() {
+        SequenceTracker t = new SequenceTracker();
+        assertTrue(t.accept(1));
+        assertTrue(t.accept(3)); // чат обогнал служебный кадр 2
+        assertEquals(1, t.contiguous());
+        assertTrue(t.accept(2));
+        assertEquals(3, t.contiguous());
+    }
+
+    @Test
+    void testReplayedFramesAreDroppedOnce() {
+        SequenceTracker t = new SequenceTracker();
+        for (long s = 1; s <= 4; s++) t.accept(s);
+        t.accept(6);
+        // Сервер досылает всё после contiguous() = 4: кадр 6 уже получен
+        assertTrue(t.accept(5));
+        assertFalse(t.accept(6));
+        assertFalse(t.accept(3));
+        assertEquals(6, t.contiguous());
+
+        t.reset();
+        assertTrue(t.accept(1));
+        assertEquals(1, t.contiguous());
+    }
+
+    @Test
+    void testResetForgetsFramesAheadOfTheGap() {
+        SequenceTracker t = new SequenceTracker();
+        t.accept(1);
+        t.accept(3);
+        t.accept(4);
+
+        // Сервер не смог продолжить сеанс: номера нового сеанса совпадают со старыми, но это другие кадры
+        t.reset();
+        assertEquals(0, t.contiguous());
+        assertTrue(t.accept(3));
+        assertTrue(t.accept(1));
+        assertTrue(t.accept(2));
+        assertEquals(3, t.contiguous());
+        assertTrue(t.accept(4));
+        assertEquals(4, t.contiguous());
+    }
+
+    @Test
+    void testLongReorderedBurstCollapsesWhenTheGapFills() {
+        SequenceTracker t = new SequenceTracker();
+        int n = 10_000;
+        for (long s = n; s >= 2; s--) assertTrue(t.accept(s));
+        assertEquals(0, t.contiguous());
+
+        assertTrue(t.accept(1));
+        assertEquals(n, t.contiguous());
+        assertFalse(t.accept(n / 2));
+        assertFalse(t.accept(n));
+        assertTrue(t.accept(n + 1));
+        assertEquals(n + 1, t.contiguous());
+    }
+
+    @Test
+    void testNumbersBeforeTheFirstFrameAreRejected() {
+        SequenceTracker t = new SequenceTracker();
+        // Сервер нумерует кадры с 1
+        assertFalse(t.accept(0));
+        assertFalse(t.accept(-1));
+        assertEquals(0, t.contiguous());
+        assertTrue(t.accept(1));
+    }
+}
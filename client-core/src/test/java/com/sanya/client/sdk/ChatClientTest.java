@@ -0,0 +1,229 @@
+package com.sanya.client.sdk;
+
+import com.sanya.Message;
+import com.sanya.client.net.ServerBusyException;
+import com.sanya.client.security.Encryptor;
+import com.sanya.client.security.KeyDirectory;
+import com.sanya.crypto.Crypto;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.crypto.msg.KeyDirectoryUpdate;
+import com.sanya.crypto.msg.KeyHello;
+import com.sanya.events.chat.UserListUpdatedEvent;
+import com.sanya.net.ServerBusy;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatClientTest {
+
+    /** Сервер-собеседник "bob": раздаёт свой ключ и список участников, остальное складывает в очередь. */
+    private static final class Bob implements AutoCloseable {
+        final ServerSocket server = new ServerSocket(0);
+        final KeyDirectory keys = new KeyDirectory();
+        final BlockingQueue<Object> received = new ArrayBlockingQueue<>(1024);
+        volatile ObjectOutputStream out;
+
+        Bob() throws IOException {
+            Thread t = new Thread(this::serve, "Bob");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        void serve() {
+            try {
+                while (true) {
+                    Socket s = server.accept();
+                    Thread t = new Thread(() -> session(s), "Bob-Session");
+                    t.setDaemon(true);
+                    t.start();
+                }
+            } catch (IOException ignored) {}
+        }
+
+        void session(Socket s) {
+            try (s) {
+                ObjectOutputStream o = new ObjectOutputStream(s.getOutputStream());
+                o.flush();
+                ObjectInputStream in = new ObjectInputStream(s.getInputStream());
+                Message hello = (Message) in.readObject();
+                o.writeObject(new KeyDirectoryUpdate(Map.of("bob", Crypto.encodePub(keys.myKeyPair().getPublic()))));
+                o.writeObject(new UserListUpdatedEvent(List.of(hello.getFrom(), "bob")));
+                o.flush();
+                out = o;
+                while (true) received.add(in.readObject());
+            } catch (IOException | ClassNotFoundException ignored) {}
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+
+    @Test
+    void testDirectMessagesAreEncryptedBothWays() throws Exception {
+        try (Bob bob = new Bob();
+             ChatClient bot = ChatClient.open("localhost", bob.server.getLocalPort(), "bot")) {
+            BlockingQueue<Message> inbox = new ArrayBlockingQueue<>(16);
+            bot.onMessage(inbox::add);
+            bot.connect();
+
+            KeyHello hello = null;
+            while (hello == null) {
+                Object o = bob.received.poll(5, TimeUnit.SECONDS);
+                assertNotNull(o, "KeyHello expected");
+                if (o instanceof KeyHello h) hello = h;
+            }
+            bob.keys.putPub("bot", Crypto.decodePub(hello.x25519PublicKeyB64()));
+            Encryptor bobCrypto = new Encryptor(bob.keys);
+
+            var enc = bobCrypto.encryptFor("bot", "hi bot".getBytes(StandardCharsets.UTF_8));
+            bob.out.writeObject(new EncryptedDirectMessage("bob", "bot", enc.nonce(), enc.ct(),
+                    EncryptedDirectMessage.TEXT, null, null));
+            bob.out.flush();
+            Message in = inbox.poll(5, TimeUnit.SECONDS);
+            assertNotNull(in);
+            assertEquals("bob", in.getFrom());
+            assertTrue(in.getText().endsWith("hi bot"));
+
+            // Единственный собеседник с ключом — ответ уходит личным зашифрованным сообщением
+            bot.send("hi bob");
+            EncryptedDirectMessage dm = null;
+            while (dm == null) {
+                Object o = bob.received.poll(5, TimeUnit.SECONDS);
+                assertNotNull(o, "Encrypted DM expected");
+                if (o instanceof EncryptedDirectMessage m) dm = m;
+            }
+            assertEquals("bob", dm.to());
+            assertEquals("hi bob", new String(bobCrypto.decryptFrom("bot", dm.nonce12(), dm.ciphertext()), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testManyClientsShareWriterThreads() throws Exception {
+        int n = 40;
+        try (Bob bob = new Bob()) {
+            int before = Thread.activeCount();
+            List<ChatClient> clients = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                ChatClient c = ChatClient.open("localhost", bob.server.getLocalPort(), "load-" + i);
+                c.connect();
+                clients.add(c);
+            }
+            for (ChatClient c : clients) c.sendObject(new Message(c.username(), "ping"));
+            long deadline = System.currentTimeMillis() + 10_000;
+            long pings = 0;
+            while (pings < n && System.currentTimeMillis() < deadline) {
+                Object o = bob.received.poll(100, TimeUnit.MILLISECONDS);
+                if (o instanceof Message m && "ping".equals(m.getText())) pings++;
+            }
+            assertEquals(n, pings);
+
+            // По потоку чтения у клиента и по сеансу у сервера-заглушки; писатели и реконнект — общие
+            int grown = Thread.activeCount() - before;
+            assertTrue(grown < 2 * n + n / 2, "threads grew by " + grown);
+            clients.forEach(ChatClient::close);
+        }
+    }
+
+    @Test
+    void testProfileKeepsIdentityAndPeerKeysAcrossRestart() throws Exception {
+        Path dataDir = Files.createTempDirectory("sanya-bot");
+        try (Bob bob = new Bob()) {
+            ChatClient bot = ChatClient.open("localhost", bob.server.getLocalPort(), "bot", dataDir);
+            bot.connect();
+            // Сеансовый ключ с bob выводится при первом личном сообщении
+            for (int i = 0; i < 100 && bot.keys().getPub("bob") == null; i++) Thread.sleep(20);
+            bot.send("hi bob").get(5, TimeUnit.SECONDS);
+            var session = bot.keys().sessions().get("bob");
+            assertNotNull(session);
+            bot.close();
+            bot.close();
+
+            // Перезапуск без сети: тот же ключ личности, ключ с bob готов без ECDH
+            try (ChatClient again = ChatClient.open("localhost", bob.server.getLocalPort(), "bot", dataDir)) {
+                assertEquals(bot.keys().myKeyPair().getPublic(), again.keys().myKeyPair().getPublic());
+                assertEquals(session, again.keys().sessions().get("bob"));
+                assertArrayEquals(session.key().getEncoded(), again.keys().getOrDeriveSession("bob").getEncoded());
+                assertEquals(0, again.keys().stats().misses());
+            }
+        }
+    }
+
+    @Test
+    void testDamagedProfileIsNotReplacedWithNewKeys() throws Exception {
+        Path dataDir = Files.createTempDirectory("sanya-bot");
+        ChatClient.open("localhost", 1, "bot", dataDir).close();
+        Path identity = dataDir.resolve("identity.keys");
+        byte[] saved = Files.readAllBytes(identity);
+        byte[] damaged = saved.clone();
+        damaged[damaged.length - 1] ^= 1;
+        Files.write(identity, damaged);
+
+        // Новые ключи подменили бы личность для собеседников: открытие отказывает, файл не трогается
+        assertThrows(IOException.class, () -> ChatClient.open("localhost", 1, "bot", dataDir));
+        assertArrayEquals(damaged, Files.readAllBytes(identity));
+    }
+
+    @Test
+    void testOwnAndUnsubscribedMessagesAreNotDelivered() throws Exception {
+        try (Bob bob = new Bob();
+             ChatClient bot = ChatClient.open("localhost", bob.server.getLocalPort(), "bot")) {
+            BlockingQueue<Message> first = new ArrayBlockingQueue<>(16);
+            BlockingQueue<Message> second = new ArrayBlockingQueue<>(16);
+            ChatClient.Subscription sub = bot.onMessage(first::add);
+            bot.onMessage(second::add);
+            bot.connect();
+            for (int i = 0; i < 100 && bob.out == null; i++) Thread.sleep(20);
+
+            bob.out.writeObject(new Message("bot", "echo of my own"));
+            bob.out.writeObject(new Message("bob", "one"));
+            bob.out.flush();
+            assertEquals("one", second.poll(5, TimeUnit.SECONDS).getText());
+            assertEquals("one", first.poll(5, TimeUnit.SECONDS).getText());
+
+            sub.unsubscribe();
+            bob.out.writeObject(new Message("bob", "two"));
+            bob.out.flush();
+            assertEquals("two", second.poll(5, TimeUnit.SECONDS).getText());
+            assertTrue(first.isEmpty());
+            assertTrue(second.isEmpty());
+        }
+    }
+
+    @Test
+    void testBusyServerRefusalSurfacesRetryDelay() throws Exception {
+        try (ServerSocket busy = new ServerSocket(0)) {
+            Thread t = new Thread(() -> {
+                try (Socket s = busy.accept()) {
+                    ObjectOutputStream o = new ObjectOutputStream(s.getOutputStream());
+                    o.writeObject(new ServerBusy(1500));
+                    o.flush();
+                } catch (IOException ignored) {}
+            }, "Busy");
+            t.setDaemon(true);
+            t.start();
+
+            try (ChatClient bot = ChatClient.open("localhost", busy.getLocalPort(), "bot")) {
+                ServerBusyException e = assertThrows(ServerBusyException.class, bot::connect);
+                assertEquals(1500, e.retryAfterMs());
+                assertFalse(bot.isConnected());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.sanya.client.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdentityStoreTest {
+
+    @Test
+    void testRestartKeepsIdentityAndSessionKeys() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-id");
+        SecretKey local = LocalKeyFile.loadOrCreate(dir.resolve("local.key"));
+        Path file = dir.resolve("identity.keys");
+
+        IdentityStore first = IdentityStore.open(file, local);
+        KeyDirectory alice = new KeyDirectory(first.x25519());
+        KeyDirectory bob = new KeyDirectory();
+        alice.putPub("bob", bob.myKeyPair().getPublic());
+        SecretKey session = alice.getOrDeriveSession("bob");
+        first.save(alice);
+
+        // Перезапуск: те же ключи личности, сеансовый ключ без ECDH
+        IdentityStore second = IdentityStore.open(file, local);
+        assertEquals(first.x25519().getPublic(), second.x25519().getPublic());
+        assertEquals(first.ed25519().getPublic(), second.ed25519().getPublic());
+        KeyDirectory restarted = new KeyDirectory(second.x25519());
+        second.restore(restarted);
+        assertArrayEquals(session.getEncoded(), restarted.getOrDeriveSession("bob").getEncoded());
+        assertEquals(1, restarted.stats().hits());
+        assertEquals(0, restarted.stats().misses());
+
+        // Encryptor собеседника понимает сообщение после перезапуска
+        bob.putPub("alice", second.x25519().getPublic());
+        var enc = new Encryptor(restarted).encryptFor("bob", new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, new Encryptor(bob).decryptFrom("alice", enc.nonce(), enc.ct()));
+    }
+
+    @Test
+    void testForeignLocalKeyIsRejected() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-id");
+        Path file = dir.resolve("identity.keys");
+        IdentityStore.open(file, LocalKeyFile.loadOrCreate(dir.resolve("a.key")));
+        SecretKey other = LocalKeyFile.loadOrCreate(dir.resolve("b.key"));
+        assertThrows(IOException.class, () -> IdentityStore.open(file, other));
+    }
+
+    @Test
+    void testDamagedOrTruncatedFileIsAnIOExceptionAndLeftAsIs() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-id");
+        SecretKey local = LocalKeyFile.loadOrCreate(dir.resolve("local.key"));
+        Path file = dir.resolve("identity.keys");
+        IdentityStore.open(file, local);
+        byte[] saved = Files.readAllBytes(file);
+
+        // Бит в середине, обрыв на теге, обрыв внутри nonce и пустой файл; испорченный файл не перезаписывается
+        byte[] flipped = saved.clone();
+        flipped[saved.length / 2] ^= 1;
+        for (byte[] damaged : new byte[][]{flipped, Arrays.copyOf(saved, 20), Arrays.copyOf(saved, 5), new byte[0]}) {
+            Files.write(file, damaged);
+            assertThrows(IOException.class, () -> IdentityStore.open(file, local));
+            assertArrayEquals(damaged, Files.readAllBytes(file));
+        }
+    }
+
+    @Test
+    void testSaveReplacesLeftoverTempFileAndKeepsFilePrivate() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-id");
+        SecretKey local = LocalKeyFile.loadOrCreate(dir.resolve("local.key"));
+        Path file = dir.resolve("profile").resolve("identity.keys");
+        IdentityStore store = IdentityStore.open(file, local);
+
+        // Обрыв прошлой записи оставил временный файл: он не мешает ни чтению, ни новой записи
+        Path tmp = file.resolveSibling("identity.keys.tmp");
+        Files.write(tmp, new byte[]{1, 2, 3});
+        KeyDirectory keys = new KeyDirectory(store.x25519());
+        keys.putPub("боб", new KeyDirectory().myKeyPair().getPublic());
+        keys.getOrDeriveSession("боб");
+        store.save(keys);
+        assertFalse(Files.exists(tmp));
+
+        KeyDirectory restored = new KeyDirectory(IdentityStore.open(file, local).x25519());
+        IdentityStore.open(file, local).restore(restored);
+        assertEquals(keys.sessions().get("боб"), restored.sessions().get("боб"));
+        if (Files.getFileStore(file).supportsFileAttributeView("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+        }
+    }
+}
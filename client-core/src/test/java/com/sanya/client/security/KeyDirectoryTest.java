@@ -0,0 +1,139 @@
+package com.sanya.client.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyDirectoryTest {
+
+    @Test
+    void testUpdatePrecomputesOnlyNewOrChangedKeys() {
+        List<Runnable> queued = new ArrayList<>();
+        KeyDirectory me = new KeyDirectory(16, queued::add);
+        KeyDirectory bob = new KeyDirectory();
+        KeyDirectory carol = new KeyDirectory();
+
+        assertEquals(2, me.putAll(Map.of("bob", bob.myKeyPair().getPublic(), "carol", carol.myKeyPair().getPublic())));
+        queued.forEach(Runnable::run);
+        assertEquals(2, me.stats().precomputed());
+
+        // Готовый ключ совпадает с вычисленным собеседником и выдаётся без ECDH
+        SecretKey session = me.getOrDeriveSession("bob");
+        bob.putPub("me", me.myKeyPair().getPublic());
+        assertArrayEquals(bob.getOrDeriveSession("me").getEncoded(), session.getEncoded());
+        assertEquals(1, me.stats().hits());
+        assertEquals(0, me.stats().misses());
+
+        // Повтор того же каталога ничего не планирует; смена ключа — пересчёт
+        assertEquals(0, me.putAll(Map.of("bob", bob.myKeyPair().getPublic())));
+        KeyDirectory bob2 = new KeyDirectory();
+        assertEquals(1, me.putAll(Map.of("bob", bob2.myKeyPair().getPublic())));
+        assertNotEquals(session, me.getOrDeriveSession("bob"));
+        assertEquals(1, me.stats().misses());
+    }
+
+    @Test
+    void testSessionCacheIsBoundedLru() {
+        KeyDirectory me = new KeyDirectory(2, r -> {});
+        Map<String, PublicKey> peers = new LinkedHashMap<>();
+        for (String name : List.of("a", "b", "c")) peers.put(name, new KeyDirectory().myKeyPair().getPublic());
+        peers.forEach(me::putPub);
+
+        me.getOrDeriveSession("a");
+        me.getOrDeriveSession("b");
+        me.getOrDeriveSession("a");
+        me.getOrDeriveSession("c"); // вытесняет b
+
+        KeyDirectory.Stats stats = me.stats();
+        assertEquals(2, stats.size());
+        assertEquals(1, stats.evictions());
+        me.getOrDeriveSession("a");
+        me.getOrDeriveSession("b");
+        stats = me.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(4, stats.misses());
+        assertEquals(2.0 / 6, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    void testPrecomputeIsLimitedToCapacity() {
+        List<Runnable> queued = new ArrayList<>();
+        KeyDirectory me = new KeyDirectory(2, queued::add);
+        Map<String, PublicKey> peers = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) peers.put("p" + i, new KeyDirectory().myKeyPair().getPublic());
+
+        // Больше ключей, чем вмещает кеш, заранее не считаются: остальные вычисляются при обращении
+        assertEquals(2, me.putAll(peers));
+        assertEquals(5, me.allPubs().size());
+        queued.forEach(Runnable::run);
+        assertEquals(2, me.stats().size());
+        assertEquals(0, me.stats().evictions());
+        assertNotNull(me.getOrDeriveSession("p4"));
+    }
+
+    @Test
+    void testRestoredCacheKeepsRecentSessionsAndDropsChangedKeys() {
+        KeyDirectory me = new KeyDirectory(4, r -> {});
+        for (String name : List.of("a", "b", "c")) me.putPub(name, new KeyDirectory().myKeyPair().getPublic());
+        SecretKey a = me.getOrDeriveSession("a");
+        me.getOrDeriveSession("b");
+        me.getOrDeriveSession("c");
+        me.getOrDeriveSession("a");
+        assertEquals(List.of("b", "c", "a"), new ArrayList<>(me.sessions().keySet()));
+
+        // Перезапуск с кешем меньшего размера: остаются недавно использованные, ECDH не нужен
+        KeyDirectory restarted = new KeyDirectory(me.myKeyPair(), 2, r -> {});
+        me.sessions().forEach(restarted::restore);
+        assertEquals(List.of("c", "a"), new ArrayList<>(restarted.sessions().keySet()));
+        assertArrayEquals(a.getEncoded(), restarted.getOrDeriveSession("a").getEncoded());
+        assertEquals(1, restarted.stats().hits());
+
+        // Собеседник сменил ключ: восстановленный сеансовый ключ больше не выдаётся
+        restarted.putPub("a", new KeyDirectory().myKeyPair().getPublic());
+        assertFalse(Arrays.equals(a.getEncoded(), restarted.getOrDeriveSession("a").getEncoded()));
+        assertEquals(1, restarted.stats().misses());
+    }
+
+    @Test
+    void testConcurrentLookupsNeverKeepAStaleKey() throws Exception {
+        KeyDirectory me = new KeyDirectory(16, r -> {});
+        KeyDirectory bob = new KeyDirectory();
+        me.putPub("bob", bob.myKeyPair().getPublic());
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                readers.add(pool.submit(() -> {
+                    while (running.get()) assertNotNull(me.getOrDeriveSession("bob"));
+                }));
+            }
+            // Ключ меняется, пока другие потоки его вычисляют
+            for (int i = 0; i < 50; i++) {
+                bob = new KeyDirectory();
+                me.putPub("bob", bob.myKeyPair().getPublic());
+                Thread.sleep(1);
+            }
+            running.set(false);
+            for (Future<?> r : readers) r.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        bob.putPub("me", me.myKeyPair().getPublic());
+        assertArrayEquals(bob.getOrDeriveSession("me").getEncoded(), me.getOrDeriveSession("bob").getEncoded());
+        assertEquals(bob.myKeyPair().getPublic(), me.sessions().get("bob").pub());
+    }
+}
@@ -0,0 +1,188 @@
+package com.sanya.client.security;
+
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.crypto.msg.GroupMessage;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SenderKeysTest {
+
+    /** Участник: каталог ключей и sender keys. */
+    private record Member(String name, KeyDirectory dir, SenderKeys keys) {
+        static Member of(String name) {
+            KeyDirectory dir = new KeyDirectory();
+            return new Member(name, dir, new SenderKeys(dir, new Encryptor(dir), name));
+        }
+    }
+
+    private static void introduce(Member... members) {
+        for (Member a : members)
+            for (Member b : members)
+                if (a != b) a.dir().putPub(b.name(), b.dir().myKeyPair().getPublic());
+    }
+
+    private static void deliver(List<EncryptedDirectMessage> keys, Map<String, Member> to) {
+        keys.forEach(dm -> to.get(dm.to()).keys().onKey(dm));
+    }
+
+    @Test
+    void testGroupMessagesDecryptOutOfOrderOnceEach() throws Exception {
+        Member alice = Member.of("alice"), bob = Member.of("bob"), carol = Member.of("carol");
+        introduce(alice, bob, carol);
+        Map<String, Member> all = Map.of("bob", bob, "carol", carol);
+
+        deliver(alice.keys().distribute(List.of("bob", "carol")), all);
+        assertTrue(alice.keys().distribute(List.of("bob", "carol")).isEmpty());
+
+        GroupMessage m0 = alice.keys().encrypt("zero".getBytes());
+        GroupMessage m1 = alice.keys().encrypt("one".getBytes());
+        GroupMessage m2 = alice.keys().encrypt("two".getBytes());
+
+        assertEquals("two", new String(carol.keys().decrypt(m2)));
+        assertEquals("zero", new String(carol.keys().decrypt(m0)));
+        assertEquals("one", new String(carol.keys().decrypt(m1)));
+        assertEquals("one", new String(bob.keys().decrypt(m1)));
+        // Повтор и подделка отклоняются, подделка не сдвигает цепочку
+        assertThrows(AEADBadTagException.class, () -> carol.keys().decrypt(m1));
+        m0.ciphertext()[0] ^= 1;
+        assertThrows(AEADBadTagException.class, () -> bob.keys().decrypt(m0));
+        assertEquals("two", new String(bob.keys().decrypt(m2)));
+    }
+
+    @Test
+    void testDepartedMemberCannotReadAfterRotation() throws Exception {
+        Member alice = Member.of("alice"), bob = Member.of("bob"), carol = Member.of("carol");
+        introduce(alice, bob, carol);
+        Map<String, Member> all = Map.of("bob", bob, "carol", carol);
+        deliver(alice.keys().distribute(List.of("bob", "carol")), all);
+        GroupMessage inFlight = alice.keys().encrypt("before".getBytes());
+
+        alice.keys().onMembers(List.of("alice", "bob"));
+        List<EncryptedDirectMessage> rekey = alice.keys().distribute(List.of("bob"));
+        assertEquals(1, rekey.size());
+        deliver(rekey, all);
+        GroupMessage after = alice.keys().encrypt("after".getBytes());
+
+        assertNotEquals(inFlight.keyId(), after.keyId());
+        assertEquals("after", new String(bob.keys().decrypt(after)));
+        assertEquals("before", new String(bob.keys().decrypt(inFlight)));
+        assertThrows(IllegalStateException.class, () -> carol.keys().decrypt(after));
+    }
+
+    @Test
+    void testKeyDroppedByServerIsRedeliveredWithoutRotation() throws Exception {
+        Member alice = Member.of("alice"), bob = Member.of("bob"), carol = Member.of("carol");
+        introduce(alice, bob, carol);
+        // Сервер отбросил ключ для bob сверх лимита; carol его получила
+        List<EncryptedDirectMessage> first = alice.keys().distribute(List.of("bob", "carol"));
+        deliver(first.stream().filter(dm -> dm.to().equals("carol")).toList(), Map.of("carol", carol));
+        GroupMessage lost = alice.keys().encrypt("lost".getBytes());
+        assertThrows(IllegalStateException.class, () -> bob.keys().decrypt(lost));
+        assertTrue(alice.keys().distribute(List.of("bob", "carol")).isEmpty());
+
+        alice.keys().redeliver();
+        List<EncryptedDirectMessage> again = alice.keys().distribute(List.of("bob", "carol"));
+        assertEquals(2, again.size());
+        deliver(again, Map.of("bob", bob, "carol", carol));
+        GroupMessage next = alice.keys().encrypt("next".getBytes());
+
+        // Цепочка та же: carol не теряет позицию, bob читает со следующего сообщения
+        assertEquals(lost.keyId(), next.keyId());
+        assertEquals("lost", new String(carol.keys().decrypt(lost)));
+        assertEquals("next", new String(carol.keys().decrypt(next)));
+        assertEquals("next", new String(bob.keys().decrypt(next)));
+    }
+
+    @Test
+    void testRestartedPeerWithPersistedKeyGetsChainAgain() throws Exception {
+        Member alice = Member.of("alice"), bob = Member.of("bob");
+        introduce(alice, bob);
+        deliver(alice.keys().distribute(List.of("bob")), Map.of("bob", bob));
+        alice.keys().encrypt("before restart".getBytes());
+
+        // bob перезапустился с тем же ключом X25519 и вошёл до истечения периода ожидания
+        KeyDirectory restartedDir = new KeyDirectory(bob.dir().myKeyPair());
+        Member restarted = new Member("bob", restartedDir, new SenderKeys(restartedDir, new Encryptor(restartedDir), "bob"));
+        restartedDir.putPub("alice", alice.dir().myKeyPair().getPublic());
+        alice.keys().onMembers(List.of("alice", "bob"));
+        assertTrue(alice.keys().distribute(List.of("bob")).isEmpty(), "same key, same members: nothing to resend");
+
+        alice.keys().onNewSession("bob");
+        List<EncryptedDirectMessage> again = alice.keys().distribute(List.of("bob"));
+        assertEquals(1, again.size());
+        deliver(again, Map.of("bob", restarted));
+        assertEquals("after restart", new String(restarted.keys().decrypt(alice.keys().encrypt("after restart".getBytes()))));
+    }
+
+    @Test
+    void testSkipWindowIsBoundedAndForgedIterationDoesNotAdvance() throws Exception {
+        Member alice = Member.of("alice"), bob = Member.of("bob");
+        introduce(alice, bob);
+        deliver(alice.keys().distribute(List.of("bob")), Map.of("bob", bob));
+
+        GroupMessage first = alice.keys().encrypt("first".getBytes());
+        for (int i = 1; i < SenderKeys.MAX_SKIP; i++) alice.keys().encrypt(new byte[1]);
+        GroupMessage edge = alice.keys().encrypt("edge".getBytes());
+        GroupMessage beyond = alice.keys().encrypt("beyond".getBytes());
+        alice.keys().encrypt(new byte[1]);
+        GroupMessage last = alice.keys().encrypt("last".getBytes());
+
+        // Дальше MAX_SKIP вперёд не заглядываем; ровно MAX_SKIP пропусков допустимо
+        assertThrows(AEADBadTagException.class, () -> bob.keys().decrypt(beyond));
+        // Номер сообщения входит в AAD: подменённый номер не проходит и не сдвигает цепочку
+        GroupMessage forged = new GroupMessage(edge.from(), edge.keyId(), edge.iteration() - 1, edge.nonce12(), edge.ciphertext());
+        assertThrows(AEADBadTagException.class, () -> bob.keys().decrypt(forged));
+        assertEquals("edge", new String(bob.keys().decrypt(edge)));
+        assertEquals("beyond", new String(bob.keys().decrypt(beyond)));
+
+        // Хранится не больше MAX_SKIP ключей пропущенных сообщений: ещё один пропуск вытесняет самый старый
+        assertEquals("last", new String(bob.keys().decrypt(last)));
+        assertThrows(AEADBadTagException.class, () -> bob.keys().decrypt(first));
+    }
+
+    @Test
+    void testOnlyCurrentAndPreviousChainsAreKept() throws Exception {
+        Member alice = Member.of("alice"), bob = Member.of("bob");
+        introduce(alice, bob);
+        Map<String, Member> to = Map.of("bob", bob);
+
+        deliver(alice.keys().distribute(List.of("bob")), to);
+        GroupMessage oldest = alice.keys().encrypt("1".getBytes());
+        alice.keys().rotate();
+        deliver(alice.keys().distribute(List.of("bob")), to);
+        GroupMessage previous = alice.keys().encrypt("2".getBytes());
+        alice.keys().rotate();
+        deliver(alice.keys().distribute(List.of("bob")), to);
+        GroupMessage current = alice.keys().encrypt("3".getBytes());
+
+        assertEquals("3", new String(bob.keys().decrypt(current)));
+        assertEquals("2", new String(bob.keys().decrypt(previous)));
+        assertThrows(IllegalStateException.class, () -> bob.keys().decrypt(oldest));
+    }
+
+    @Test
+    void testKeyDeliveredMidChainDoesNotOpenEarlierMessages() throws Exception {
+        Member alice = Member.of("alice"), bob = Member.of("bob"), carol = Member.of("carol");
+        introduce(alice, bob, carol);
+        deliver(alice.keys().distribute(List.of("bob")), Map.of("bob", bob));
+        GroupMessage early = alice.keys().encrypt("early".getBytes());
+
+        // carol получает цепочку с текущего номера: прошлые сообщения ей недоступны
+        deliver(alice.keys().distribute(List.of("bob", "carol")), Map.of("carol", carol));
+        GroupMessage late = alice.keys().encrypt("late".getBytes());
+        assertThrows(AEADBadTagException.class, () -> carol.keys().decrypt(early));
+        assertEquals("late", new String(carol.keys().decrypt(late)));
+
+        // Ключ неверной длины отклоняется и ничего не заменяет
+        Encryptor.Enc bad = new Encryptor(alice.dir()).encryptFor("carol", new byte[12]);
+        EncryptedDirectMessage malformed = new EncryptedDirectMessage("alice", "carol", bad.nonce(), bad.ct(),
+                EncryptedDirectMessage.SENDER_KEY, null, null);
+        assertThrows(IllegalArgumentException.class, () -> carol.keys().onKey(malformed));
+        assertEquals("next", new String(carol.keys().decrypt(alice.keys().encrypt("next".getBytes()))));
+    }
+}
@@ -0,0 +1,95 @@
+package com.sanya.client.service.files;
+
+import com.sanya.client.core.api.EventBus;
+import com.sanya.client.core.api.FrameSink;
+import com.sanya.files.FileChunk;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveChunkSizerTest {
+
+    private static final EventBus NO_EVENTS = new EventBus() {
+        @Override
+        public <T> void subscribe(Class<T> type, Consumer<? super T> handler) {}
+
+        @Override
+        public void publish(Object event) {}
+    };
+
+    private static final long MS = 1_000_000L;
+
+    /** Записывает окна по 4 МБ блоками текущего размера со скоростью bytesPerMs. */
+    private static long feed(AdaptiveChunkSizer sizer, long now, int windows, long bytesPerMs) {
+        for (int w = 0; w < windows; w++) {
+            long left = Math.max(4L * 1024 * 1024, 4L * sizer.chunkSize());
+            while (left > 0) {
+                int chunk = sizer.chunkSize();
+                now += chunk * MS / bytesPerMs;
+                sizer.record(chunk, now);
+                left -= chunk;
+            }
+        }
+        return now;
+    }
+
+    @Test
+    void testSteadyLinkKeepsChunkSize() {
+        AdaptiveChunkSizer sizer = new AdaptiveChunkSizer(0);
+        feed(sizer, 0, 1, 10_000);
+        int settled = sizer.chunkSize();
+
+        feed(sizer, 0, 8, 10_000);
+        assertEquals(settled, sizer.chunkSize());
+        assertTrue(settled < AdaptiveChunkSizer.MAX_CHUNK);
+    }
+
+    @Test
+    void testFasterWritesGrowAndSlowerShrink() {
+        AdaptiveChunkSizer sizer = new AdaptiveChunkSizer(0);
+        long now = feed(sizer, 0, 1, 10_000);
+        int first = sizer.chunkSize();
+
+        now = feed(sizer, now, 1, 20_000);
+        int grown = sizer.chunkSize();
+        assertEquals(first * 2, grown);
+
+        feed(sizer, now, 1, 5_000);
+        assertEquals(grown / 2, sizer.chunkSize());
+    }
+
+    @Test
+    void testSizeStaysInBounds() {
+        AdaptiveChunkSizer sizer = new AdaptiveChunkSizer(0);
+        long now = 0;
+        for (long rate = 1_000; rate < 100_000_000; rate *= 2) now = feed(sizer, now, 1, rate);
+        assertEquals(AdaptiveChunkSizer.MAX_CHUNK, sizer.chunkSize());
+
+        for (long rate = 100_000_000; rate > 1; rate /= 2) now = feed(sizer, now, 1, rate);
+        assertEquals(AdaptiveChunkSizer.MIN_CHUNK, sizer.chunkSize());
+    }
+
+    @Test
+    void testEnqueuedButUnwrittenChunksDoNotGrowSize() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-sizer");
+        Path source = Files.write(dir.resolve("data.bin"), new byte[16 * 1024 * 1024]);
+
+        // Кадры мгновенно встают в очередь, но запись в соединение так и не завершается
+        List<Integer> sizes = new ArrayList<>();
+        FrameSink stalled = obj -> {
+            if (obj instanceof FileChunk c) sizes.add(c.getData().length);
+            return new CompletableFuture<>();
+        };
+        new FileSender(NO_EVENTS, dir).sendFile("alice", source.toFile(), stalled);
+
+        assertFalse(sizes.isEmpty());
+        for (int size : sizes) assertTrue(size <= AdaptiveChunkSizer.MIN_CHUNK, "chunk of " + size);
+    }
+}
@@ -0,0 +1,78 @@
+package com.sanya.client.service.files;
+
+import com.sanya.crypto.StreamAead;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlobCipherTest {
+
+    @Test
+    void testSealOpenRoundTrip() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-blob");
+        for (int size : new int[]{0, 1, BlobCipher.CHUNK, 2 * BlobCipher.CHUNK + 123}) {
+            byte[] content = new byte[size];
+            new Random(size).nextBytes(content);
+            Path plain = Files.write(dir.resolve("plain-" + size), content);
+            StreamAead.Secret secret = BlobCipher.secretFor(BlobClient.sha256(plain));
+
+            Path sealed = dir.resolve("sealed-" + size);
+            BlobCipher.seal(plain, secret, sealed);
+            assertFalse(size > 0 && Arrays.equals(content, Arrays.copyOf(Files.readAllBytes(sealed), size)),
+                    "ciphertext must differ from plaintext");
+
+            Path opened = dir.resolve("opened-" + size);
+            BlobCipher.open(sealed, secret, opened);
+            assertArrayEquals(content, Files.readAllBytes(opened));
+        }
+    }
+
+    @Test
+    void testSameContentGivesSameBlob() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-blob");
+        byte[] content = new byte[BlobCipher.CHUNK + 5];
+        new Random(1).nextBytes(content);
+        Path a = Files.write(dir.resolve("a"), content);
+        Path b = Files.write(dir.resolve("b"), content);
+
+        Path sealedA = dir.resolve("a.sealed");
+        Path sealedB = dir.resolve("b.sealed");
+        BlobCipher.seal(a, BlobCipher.secretFor(BlobClient.sha256(a)), sealedA);
+        BlobCipher.seal(b, BlobCipher.secretFor(BlobClient.sha256(b)), sealedB);
+
+        // Одинаковый шифротекст — одинаковый id в хранилище: повторная загрузка пропускается
+        assertEquals(BlobClient.sha256(sealedA), BlobClient.sha256(sealedB));
+        assertNotEquals(BlobClient.sha256(a), BlobClient.sha256(sealedA));
+    }
+
+    @Test
+    void testTamperedOrTruncatedBlobIsRejected() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-blob");
+        byte[] content = new byte[2 * BlobCipher.CHUNK + 10];
+        new Random(2).nextBytes(content);
+        Path plain = Files.write(dir.resolve("plain"), content);
+        StreamAead.Secret secret = BlobCipher.secretFor(BlobClient.sha256(plain));
+        Path sealed = dir.resolve("sealed");
+        BlobCipher.seal(plain, secret, sealed);
+        byte[] ct = Files.readAllBytes(sealed);
+
+        byte[] flipped = ct.clone();
+        flipped[BlobCipher.CHUNK + 100] ^= 1;
+        Path tampered = Files.write(dir.resolve("tampered"), flipped);
+        assertThrows(IOException.class, () -> BlobCipher.open(tampered, secret, dir.resolve("out1")));
+
+        // Обрезка по границе блока: бывший предпоследний блок не помечен последним
+        Path truncated = Files.write(dir.resolve("truncated"),
+                Arrays.copyOf(ct, 2 * (BlobCipher.CHUNK + StreamAead.TAG_LEN)));
+        assertThrows(IOException.class, () -> BlobCipher.open(truncated, secret, dir.resolve("out2")));
+
+        StreamAead.Secret other = StreamAead.Secret.random();
+        assertThrows(IOException.class, () -> BlobCipher.open(sealed, other, dir.resolve("out3")));
+    }
+}
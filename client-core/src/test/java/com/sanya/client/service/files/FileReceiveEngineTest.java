@@ -0,0 +1,128 @@
+package com.sanya.client.service.files;
+
+import com.sanya.client.core.api.EventBus;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileResumeRequest;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.files.FileTransferEvent;
+import com.sanya.files.FileTransferRequest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileReceiveEngineTest {
+
+    /** Шина, запоминающая события передач. */
+    private static class Events implements EventBus {
+        final List<FileTransferEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public <T> void subscribe(Class<T> type, Consumer<? super T> handler) {}
+
+        @Override
+        public void publish(Object event) {
+            if (event instanceof FileTransferEvent e) events.add(e);
+        }
+
+        long count(FileTransferEvent.Type type) {
+            return events.stream().filter(e -> e.type() == type).count();
+        }
+    }
+
+    @Test
+    void testChunksOutsideAnnouncedSizeAreRejected() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-recv");
+        Events bus = new Events();
+        FileReceiveEngine engine = new FileReceiveEngine(bus, dir);
+        byte[] content = new byte[1000];
+        new Random(1).nextBytes(content);
+        engine.onTransferRequest(new FileTransferRequest("t1", "bob", "a.bin", content.length));
+        Path part = dir.resolve(".recv-t1.part");
+
+        engine.receive(new FileChunk("t1", "a.bin", 900, new byte[200], 0, false));
+        engine.receive(new FileChunk("t1", "a.bin", 1L << 40, new byte[10], 1, false));
+        engine.receive(new FileChunk("t1", "a.bin", Long.MAX_VALUE - 4, new byte[10], 2, false));
+        engine.receive(new FileChunk("t1", "a.bin", -10, new byte[10], 3, false));
+        assertEquals(content.length, Files.size(part), "sparse file not grown");
+
+        // Отброшенные блоки не засчитаны: итог запрашивает весь файл заново
+        Object[] resume = new Object[1];
+        engine.onTransferComplete(new FileTransferComplete("t1", content.length, sha256(content)), r -> resume[0] = r);
+        assertArrayEquals(new long[]{0, content.length}, ((FileResumeRequest) resume[0]).missingRanges());
+
+        engine.receive(new FileChunk("t1", "a.bin", 0, content, 4, true));
+        Path done = dir.resolve("a.bin");
+        awaitFile(done, content.length);
+        assertArrayEquals(content, Files.readAllBytes(done));
+        assertEquals(0, bus.count(FileTransferEvent.Type.FAILED));
+    }
+
+    @Test
+    void testVerificationRunsOffTheReaderThreadAndLateDuplicatesAreIgnored() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-recv");
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Events bus = new Events() {
+            @Override
+            public void publish(Object event) {
+                super.publish(event);
+                if (event instanceof FileTransferEvent e && e.type() == FileTransferEvent.Type.COMPLETED) {
+                    threads.add(Thread.currentThread().getName());
+                }
+            }
+        };
+        FileReceiveEngine engine = new FileReceiveEngine(bus, dir);
+        byte[] content = new byte[5000];
+        new Random(2).nextBytes(content);
+        FileChunk chunk = new FileChunk("t2", "b.bin", 0, content, 0, true);
+
+        engine.onTransferRequest(new FileTransferRequest("t2", "bob", "b.bin", content.length));
+        engine.receive(chunk);
+        engine.onTransferComplete(new FileTransferComplete("t2", content.length, sha256(content)), r -> fail("nothing missing"));
+        assertEquals(0, engine.activeCount());
+
+        // Повтор блока и итога после завершения — не ошибка и не второй файл
+        engine.receive(chunk);
+        engine.onTransferComplete(new FileTransferComplete("t2", content.length, sha256(content)), r -> fail("not resumed"));
+
+        Path done = dir.resolve("b.bin");
+        awaitFile(done, content.length);
+        for (int i = 0; i < 100 && threads.isEmpty(); i++) Thread.sleep(20);
+        assertArrayEquals(content, Files.readAllBytes(done));
+        assertEquals(List.of("FileReceive-Verify"), threads);
+        assertEquals(0, bus.count(FileTransferEvent.Type.FAILED));
+        assertFalse(Files.exists(dir.resolve("b (1).bin")));
+    }
+
+    @Test
+    void testHashMismatchDiscardsFileOnVerifier() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-recv");
+        Events bus = new Events();
+        FileReceiveEngine engine = new FileReceiveEngine(bus, dir);
+        byte[] content = new byte[3000];
+        engine.onTransferRequest(new FileTransferRequest("t3", "bob", "c.bin", content.length));
+        engine.receive(new FileChunk("t3", "c.bin", 0, content, 0, true));
+        engine.onTransferComplete(new FileTransferComplete("t3", content.length, new byte[32]), r -> {});
+
+        for (int i = 0; i < 100 && bus.count(FileTransferEvent.Type.FAILED) == 0; i++) Thread.sleep(20);
+        assertEquals(1, bus.count(FileTransferEvent.Type.FAILED));
+        assertFalse(Files.exists(dir.resolve(".recv-t3.part")));
+        assertFalse(Files.exists(dir.resolve(".recv-t3.manifest")));
+    }
+
+    private static byte[] sha256(byte[] data) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    /** Ждёт готовый файл: имя резервируется пустым файлом до переноса собранного. */
+    static void awaitFile(Path file, long size) throws Exception {
+        for (int i = 0; i < 100 && !(Files.exists(file) && Files.size(file) == size); i++) Thread.sleep(50);
+    }
+}
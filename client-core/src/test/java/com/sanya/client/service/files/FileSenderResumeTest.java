@@ -0,0 +1,292 @@
+package com.sanya.client.service.files;
+
+import com.sanya.client.core.api.EventBus;
+import com.sanya.client.core.api.StreamKeys;
+import com.sanya.crypto.StreamAead;
+import com.sanya.files.BlobReference;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileResumeRequest;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.files.FileTransferRequest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileSenderResumeTest {
+
+    private static final EventBus NO_EVENTS = new EventBus() {
+        @Override
+        public <T> void subscribe(Class<T> type, Consumer<? super T> handler) {}
+
+        @Override
+        public void publish(Object event) {}
+    };
+
+    @Test
+    void testResumeSendsOnlyMissingRanges() throws Exception {
+        Path senderDir = Files.createTempDirectory("sanya-send");
+        Path recvDir = Files.createTempDirectory("sanya-recv");
+        byte[] content = new byte[3 * 1024 * 1024 + 123];
+        new Random(7).nextBytes(content);
+        Path source = Files.write(senderDir.resolve("data.bin"), content);
+
+        FileSender sender = new FileSender(NO_EVENTS, senderDir);
+        FileSender receiver = new FileSender(NO_EVENTS, recvDir);
+
+        AtomicInteger chunks = new AtomicInteger();
+        AtomicInteger resentBytes = new AtomicInteger();
+        Consumer<Object>[] toSender = new Consumer[1];
+
+        // Второй проход (докачка) доставляется без потерь
+        Consumer<Object> reliable = obj -> {
+            if (obj instanceof FileChunk c) {
+                resentBytes.addAndGet(c.getData().length);
+                receiver.receiveFile(c);
+            } else if (obj instanceof FileTransferComplete c) {
+                receiver.onTransferComplete(c, toSender[0]);
+            }
+        };
+        toSender[0] = obj -> sender.resume((FileResumeRequest) obj, reliable);
+
+        // Первый проход теряет каждый третий блок
+        Consumer<Object> lossy = obj -> {
+            if (obj instanceof FileTransferRequest r) {
+                receiver.onTransferRequest(r);
+            } else if (obj instanceof FileChunk c) {
+                if (chunks.incrementAndGet() % 3 != 0) receiver.receiveFile(c);
+            } else if (obj instanceof FileTransferComplete c) {
+                receiver.onTransferComplete(c, toSender[0]);
+            }
+        };
+
+        sender.sendFile("alice", source.toFile(), lossy);
+
+        Path received = recvDir.resolve("data.bin");
+        awaitFile(received, content.length);
+
+        assertTrue(Files.exists(received));
+        assertArrayEquals(content, Files.readAllBytes(received));
+        assertTrue(resentBytes.get() > 0 && resentBytes.get() < content.length / 2);
+    }
+
+    @Test
+    void testOutOfOrderChunksAcrossStripesReassemble() throws Exception {
+        Path senderDir = Files.createTempDirectory("sanya-send");
+        Path recvDir = Files.createTempDirectory("sanya-recv");
+        byte[] content = new byte[2 * 1024 * 1024 + 5000];
+        new Random(11).nextBytes(content);
+        Path source = Files.write(senderDir.resolve("shuffled.bin"), content);
+
+        FileSender sender = new FileSender(NO_EVENTS, senderDir);
+        FileSender receiver = new FileSender(NO_EVENTS, recvDir);
+
+        List<Object> control = new ArrayList<>();
+        List<FileChunk> chunks = new ArrayList<>();
+        sender.sendFile("alice", source.toFile(), control::add, List.of(c -> chunks.add((FileChunk) c)));
+
+        // Блоки приходят в произвольном порядке, итог — раньше последних блоков
+        receiver.onTransferRequest((FileTransferRequest) control.get(0));
+        Collections.shuffle(chunks, new Random(3));
+        FileChunk held = chunks.remove(chunks.size() - 1);
+        chunks.forEach(receiver::receiveFile);
+        List<Object> resumeRequests = new ArrayList<>();
+        receiver.onTransferComplete((FileTransferComplete) control.get(1), resumeRequests::add);
+        assertEquals(1, resumeRequests.size());
+        receiver.receiveFile(held);
+
+        Path received = recvDir.resolve("shuffled.bin");
+        awaitFile(received, content.length);
+        assertArrayEquals(content, Files.readAllBytes(received));
+    }
+
+    /** Ждёт готовый файл: имя резервируется пустым файлом до переноса собранного. */
+    private static void awaitFile(Path file, long size) throws Exception {
+        for (int i = 0; i < 100 && !(Files.exists(file) && Files.size(file) == size); i++) Thread.sleep(50);
+    }
+
+    /** Раздача ключей без сети: общая карта секретов. */
+    private static final class SharedKeys implements StreamKeys {
+        final Map<String, StreamAead.Secret> secrets = new ConcurrentHashMap<>();
+
+        @Override
+        public StreamAead.Secret share(String streamId, Consumer<Object> sender) {
+            StreamAead.Secret secret = StreamAead.Secret.random();
+            secrets.put(streamId, secret);
+            return secret;
+        }
+
+        @Override
+        public StreamAead.Secret secret(String streamId) {
+            return secrets.get(streamId);
+        }
+
+        @Override
+        public void forget(String streamId) {
+            secrets.remove(streamId);
+        }
+
+        @Override
+        public void shareBlob(BlobReference ref, Consumer<Object> sender) {
+            sender.accept(ref);
+        }
+    }
+
+    @Test
+    void testEncryptedTransferDropsTamperedChunksAndResumes() throws Exception {
+        Path senderDir = Files.createTempDirectory("sanya-send");
+        Path recvDir = Files.createTempDirectory("sanya-recv");
+        byte[] content = new byte[1024 * 1024 + 77];
+        new Random(5).nextBytes(content);
+        Path source = Files.write(senderDir.resolve("secret.bin"), content);
+
+        SharedKeys keys = new SharedKeys();
+        FileSender sender = new FileSender(NO_EVENTS, senderDir);
+        FileSender receiver = new FileSender(NO_EVENTS, recvDir);
+        sender.setStreamKeys(keys);
+        receiver.setStreamKeys(keys);
+
+        List<Object> control = new ArrayList<>();
+        List<FileChunk> chunks = new ArrayList<>();
+        sender.sendFile("alice", source.toFile(), control::add, List.of(c -> chunks.add((FileChunk) c)));
+        FileTransferRequest request = (FileTransferRequest) control.get(0);
+        assertTrue(request.isEncrypted());
+        assertFalse(Arrays.equals(Arrays.copyOf(content, 64), Arrays.copyOf(chunks.get(0).getData(), 64)));
+
+        // Блок, переставленный на чужое смещение, не проходит проверку и запрашивается заново
+        receiver.onTransferRequest(request);
+        FileChunk first = chunks.get(0);
+        FileChunk second = chunks.get(1);
+        receiver.receiveFile(new FileChunk(first.getTransferId(), first.getFilename(), second.getOffset(),
+                first.getData(), first.getPart(), first.isLast()));
+        chunks.subList(1, chunks.size()).forEach(receiver::receiveFile);
+        receiver.onTransferComplete((FileTransferComplete) control.get(1),
+                obj -> sender.resume((FileResumeRequest) obj, c -> {
+                    if (c instanceof FileChunk chunk) receiver.receiveFile(chunk);
+                    else receiver.onTransferComplete((FileTransferComplete) c, r -> {});
+                }));
+
+        Path received = recvDir.resolve("secret.bin");
+        awaitFile(received, content.length);
+        assertArrayEquals(content, Files.readAllBytes(received));
+        assertNull(keys.secret(request.getTransferId()));
+    }
+
+    @Test
+    void testEncryptedTransferSealsTheDigest() throws Exception {
+        Path senderDir = Files.createTempDirectory("sanya-send");
+        Path recvDir = Files.createTempDirectory("sanya-recv");
+        byte[] content = new byte[70_000];
+        new Random(9).nextBytes(content);
+        Path source = Files.write(senderDir.resolve("known.bin"), content);
+
+        SharedKeys keys = new SharedKeys();
+        FileSender sender = new FileSender(NO_EVENTS, senderDir);
+        FileSender receiver = new FileSender(NO_EVENTS, recvDir);
+        sender.setStreamKeys(keys);
+        receiver.setStreamKeys(keys);
+
+        List<Object> control = new ArrayList<>();
+        List<FileChunk> chunks = new ArrayList<>();
+        sender.sendFile("alice", source.toFile(), control::add, List.of(c -> chunks.add((FileChunk) c)));
+        FileTransferComplete complete = (FileTransferComplete) control.get(1);
+
+        // Сервер видит только шифротекст: по SHA-256 известный файл не опознать
+        byte[] plainDigest = FileSender.digestOf(source);
+        assertEquals(plainDigest.length + StreamAead.TAG_LEN, complete.sha256().length);
+        assertFalse(Arrays.equals(plainDigest, Arrays.copyOf(complete.sha256(), plainDigest.length)));
+
+        // Подменённый итог не принимается: файл не собирается, пока не придёт подлинный
+        receiver.onTransferRequest((FileTransferRequest) control.get(0));
+        chunks.forEach(receiver::receiveFile);
+        byte[] forged = complete.sha256().clone();
+        forged[0] ^= 1;
+        receiver.onTransferComplete(new FileTransferComplete(complete.transferId(), complete.size(), forged), r -> fail("nothing missing"));
+        receiver.onTransferComplete(new FileTransferComplete(complete.transferId(), complete.size(), plainDigest), r -> fail("nothing missing"));
+        Path received = recvDir.resolve("known.bin");
+        Thread.sleep(200);
+        assertFalse(Files.exists(received) && Files.size(received) == content.length);
+
+        receiver.onTransferComplete(complete, r -> fail("nothing missing"));
+        awaitFile(received, content.length);
+        assertArrayEquals(content, Files.readAllBytes(received));
+    }
+
+    @Test
+    void testFinishedTransfersExpireAndFailedOnesAreDropped() throws Exception {
+        Path senderDir = Files.createTempDirectory("sanya-send");
+        Path a = Files.write(senderDir.resolve("a.bin"), new byte[1000]);
+        Path b = Files.write(senderDir.resolve("b.bin"), new byte[2000]);
+        FileSender sender = new FileSender(NO_EVENTS, senderDir);
+
+        List<Object> sent = new ArrayList<>();
+        sender.sendFile("alice", a.toFile(), sent::add);
+        sender.sendFile("alice", b.toFile(), sent::add);
+        assertEquals(2, sender.outgoingCount());
+
+        // Отправка, оборвавшаяся на блоке, не остаётся в списке докачки
+        sender.sendFile("alice", a.toFile(), obj -> {
+            if (obj instanceof FileChunk) throw new IllegalStateException("socket closed");
+        });
+        assertEquals(2, sender.outgoingCount());
+
+        List<Object> announced = new ArrayList<>();
+        sender.onReconnected(announced::add);
+        assertEquals(2, announced.size());
+
+        // Свежие передачи не устаревают; простоявшие дольше срока удаляются и больше не объявляются
+        assertEquals(0, sender.expire(System.nanoTime()));
+        assertEquals(2, sender.expire(System.nanoTime() + FileSender.RETAIN_NANOS + 1));
+        announced.clear();
+        sender.onReconnected(announced::add);
+        assertTrue(announced.isEmpty());
+
+        // Докачка устаревшей передачи не обслуживается
+        String id = ((FileTransferRequest) sent.get(0)).getTransferId();
+        List<Object> resent = new ArrayList<>();
+        sender.resume(new FileResumeRequest(id, new long[]{0, 1000}), resent::add);
+        Thread.sleep(100);
+        assertTrue(resent.isEmpty());
+    }
+
+    @Test
+    void testReceivedNamesAreSanitizedAndDoNotCollide() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-recv");
+        assertEquals("passwd", FileReceiveEngine.sanitize("../../etc/passwd"));
+        assertEquals("evil.txt", FileReceiveEngine.sanitize("C:\\temp\\.evil.txt"));
+        assertEquals("file", FileReceiveEngine.sanitize(".."));
+
+        assertEquals(dir.resolve("report.pdf"), FileReceiveEngine.reserveTarget(dir, "report.pdf"));
+        assertEquals(dir.resolve("report (1).pdf"), FileReceiveEngine.reserveTarget(dir, "report.pdf"));
+        assertEquals(dir.resolve("report (2).pdf"), FileReceiveEngine.reserveTarget(dir, "sub/report.pdf"));
+    }
+
+    @Test
+    void testRangeBitmapTracksBlocks() {
+        int b = RangeBitmap.BLOCK;
+        RangeBitmap map = new RangeBitmap(4L * b + 10);
+        map.add(b, 2L * b);
+        map.add(4L * b, 4L * b + 10);
+        map.add(0, b / 2); // частичный блок не считается
+        assertEquals(b + 10, map.covered());
+        assertArrayEquals(new long[]{0, b, 2L * b, 4L * b}, map.missing());
+        map.add(0, 4L * b);
+        assertTrue(map.isComplete());
+
+        long[][] plan = FileSender.stripe(10L * b + 1, 3);
+        assertEquals(0, plan[0][0]);
+        assertEquals(0, plan[1][0] % b);
+        assertEquals(10L * b + 1, plan[2][1]);
+    }
+}
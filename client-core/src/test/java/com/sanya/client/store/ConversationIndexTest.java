@@ -0,0 +1,97 @@
+package com.sanya.client.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversationIndexTest {
+
+    @Test
+    void testAppendThenReadRemapsOnlyGeometrically() throws Exception {
+        Path file = Files.createTempDirectory("sanya-idx").resolve("a.idx");
+        int n = 10_000;
+        try (ConversationIndex idx = new ConversationIndex(file)) {
+            for (int i = 0; i < n; i++) {
+                idx.append(2L * i, i / 1000, i * 7);
+                // Как при добавлении в хранилище: каждая запись сразу читается обратно
+                assertEquals(2L * i, idx.seqAt(i));
+                assertEquals(i * 7, idx.offsetAt(i));
+                assertEquals(2L * i, idx.lastSeq());
+            }
+            assertTrue(idx.maps() <= 9, "maps: " + idx.maps());
+            assertEquals(n * ConversationIndex.ENTRY_SIZE, Files.size(file));
+
+            // Бинарный поиск через отображённую часть и хвост
+            assertEquals(0, idx.lowerBound(-5));
+            assertEquals(1234, idx.lowerBound(2468));
+            assertEquals(1235, idx.lowerBound(2469));
+            assertEquals(n - 1, idx.lowerBound(2L * (n - 1)));
+            assertEquals(n, idx.lowerBound(Long.MAX_VALUE));
+            assertEquals(9, idx.segmentAt(n - 1));
+        }
+    }
+
+    @Test
+    void testSmallIndexIsNeverMapped() throws Exception {
+        Path file = Files.createTempDirectory("sanya-idx").resolve("a.idx");
+        try (ConversationIndex idx = new ConversationIndex(file)) {
+            assertEquals(-1, idx.lastSeq());
+            for (int i = 0; i < ConversationIndex.MIN_MAPPED - 1; i++) {
+                idx.append(i, 0, i);
+                assertEquals(i, idx.lowerBound(i));
+            }
+            assertEquals(0, idx.maps());
+        }
+    }
+
+    @Test
+    void testReopenDropsTornEntryAndRestoresLastSeq() throws Exception {
+        Path file = Files.createTempDirectory("sanya-idx").resolve("a.idx");
+        try (ConversationIndex idx = new ConversationIndex(file)) {
+            for (int i = 0; i < 100; i++) idx.append(10 + i, 0, i);
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}), ch.size());
+        }
+
+        try (ConversationIndex idx = new ConversationIndex(file)) {
+            assertEquals(100, idx.size());
+            assertEquals(109, idx.lastSeq());
+            assertEquals(100 * ConversationIndex.ENTRY_SIZE, Files.size(file));
+
+            // Дозапись после обрыва продолжает ровно с границы записи
+            idx.append(500, 1, 0);
+            assertEquals(500, idx.seqAt(100));
+            assertEquals(109, idx.seqAt(99));
+            assertEquals(100, idx.lowerBound(110));
+        }
+    }
+
+    @Test
+    void testDropFromCutsTailWithoutMapping() throws Exception {
+        Path file = Files.createTempDirectory("sanya-idx").resolve("a.idx");
+        try (ConversationIndex idx = new ConversationIndex(file)) {
+            for (int i = 0; i < 1000; i++) idx.append(2L * i, 0, i);
+        }
+
+        try (ConversationIndex idx = new ConversationIndex(file)) {
+            assertEquals(0, idx.dropFrom(5000));
+            assertEquals(3, idx.dropFrom(1993));
+            assertEquals(0, idx.maps());
+            assertEquals(997, idx.size());
+            assertEquals(1992, idx.lastSeq());
+            assertEquals(new ConversationIndex.Entry(1992, 0, 996), idx.read(996));
+            assertEquals(997 * ConversationIndex.ENTRY_SIZE, Files.size(file));
+
+            idx.append(1994, 1, 0);
+            assertEquals(997, idx.lowerBound(1993));
+            assertThrows(IllegalStateException.class, () -> idx.truncate(10));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.sanya.client.store;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalMessageStoreTest {
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+
+    @Test
+    void testPagingAcrossReopen() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            for (int i = 0; i < 10; i++) {
+                store.append(StoredMessage.PUBLIC, "Bob", "public " + i, false);
+                store.append(StoredMessage.direct("Alice"), "Alice", "secret " + i, false);
+            }
+        }
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            assertEquals(20, store.size());
+            assertEquals(20, store.sessionStartSeq());
+
+            // последние 3 личных сообщения
+            List<StoredMessage> last = store.loadBefore(StoredMessage.direct("Alice"), Long.MAX_VALUE, 3);
+            assertEquals(3, last.size());
+            assertEquals("secret 9", last.get(2).text());
+            assertTrue(last.get(0).isDirect());
+
+            // страница перед ними
+            List<StoredMessage> before = store.loadBefore(StoredMessage.direct("Alice"), last.get(0).seq(), 100);
+            assertEquals(7, before.size());
+            assertEquals("secret 0", before.get(0).text());
+
+            // общий таймлайн
+            assertEquals(20, store.loadBefore(LocalMessageStore.ALL, Long.MAX_VALUE, 100).size());
+        }
+
+        // текст не хранится на диске в открытом виде
+        try (var files = Files.walk(dir.resolve("segments"))) {
+            for (Path p : files.filter(Files::isRegularFile).toList()) {
+                assertFalse(new String(Files.readAllBytes(p)).contains("secret"));
+            }
+        }
+    }
+
+    @Test
+    void testRecoversUnindexedAndTruncatedTail() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            for (int i = 0; i < 5; i++) store.append(StoredMessage.PUBLIC, "Bob", "m" + i, false);
+        }
+
+        // теряем общий индекс и дописываем оборванную запись в сегмент
+        try (var files = Files.list(dir.resolve("index"))) {
+            for (Path p : files.toList()) Files.write(p, new byte[0]);
+        }
+        try (FileChannel seg = FileChannel.open(dir.resolve("segments/seg-000000.log"), StandardOpenOption.WRITE)) {
+            seg.write(ByteBuffer.wrap(new byte[]{0, 0, 1, 0, 42}), seg.size());
+        }
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            assertEquals(5, store.size());
+            List<StoredMessage> all = store.loadBefore(StoredMessage.PUBLIC, Long.MAX_VALUE, 100);
+            assertEquals(5, all.size());
+            assertEquals("m4", all.get(4).text());
+
+            store.append(StoredMessage.PUBLIC, "Bob", "after", false);
+            assertEquals("after", store.loadBefore(LocalMessageStore.ALL, Long.MAX_VALUE, 1).get(0).text());
+        }
+    }
+
+    /** Файл индекса беседы: имя — HMAC от имени беседы, как в хранилище. */
+    private Path indexFile(Path dir, String conversation) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+        byte[] h = mac.doFinal(conversation.getBytes(StandardCharsets.UTF_8));
+        return dir.resolve("index").resolve(HexFormat.of().formatHex(h, 0, 16) + ".idx");
+    }
+
+    @Test
+    void testTornTailIsCutAtTheLastWholeRecord() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+        Path segment = dir.resolve("segments/seg-000000.log");
+        long third;
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            store.append(StoredMessage.PUBLIC, "Bob", "m0", false);
+            store.append(StoredMessage.PUBLIC, "Bob", "m1", false);
+            third = Files.size(segment);
+            for (int i = 2; i < 5; i++) store.append(StoredMessage.PUBLIC, "Bob", "m" + i, false);
+        }
+        // Индекс потерян, третья запись оборвана посередине
+        Files.write(indexFile(dir, LocalMessageStore.ALL), new byte[0]);
+        Files.write(indexFile(dir, StoredMessage.PUBLIC), new byte[0]);
+        try (FileChannel seg = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            seg.truncate(third + 10);
+        }
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            assertEquals(2, store.size());
+            assertEquals(third, Files.size(segment));
+            // Новая запись получает следующий seq и пишется ровно с границы обрезки
+            StoredMessage next = store.append(StoredMessage.PUBLIC, "Bob", "next", false);
+            assertEquals(2, next.seq());
+        }
+
+        // Хвост, заполненный нулями (размер файла сохранён раньше данных), — тоже обрыв
+        long end = Files.size(segment);
+        try (FileChannel seg = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            seg.write(ByteBuffer.allocate(4096), end);
+        }
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            assertEquals(end, Files.size(segment));
+            List<StoredMessage> all = store.loadBefore(StoredMessage.PUBLIC, Long.MAX_VALUE, 10);
+            assertEquals(List.of("m0", "m1", "next"), all.stream().map(StoredMessage::text).toList());
+        }
+    }
+
+    @Test
+    void testCorruptedWholeRecordIsNotTruncated() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+        Path segment = dir.resolve("segments/seg-000000.log");
+        long second;
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            store.append(StoredMessage.PUBLIC, "Bob", "m0", false);
+            second = Files.size(segment);
+            for (int i = 1; i < 4; i++) store.append(StoredMessage.PUBLIC, "Bob", "m" + i, false);
+        }
+        Files.write(indexFile(dir, LocalMessageStore.ALL), new byte[0]);
+        long size = Files.size(segment);
+        try (FileChannel seg = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            seg.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), second + 20);
+        }
+
+        // Повреждённая запись посреди сегмента не повод стирать всё после неё
+        assertThrows(IOException.class, () -> LocalMessageStore.open(dir, key));
+        assertEquals(size, Files.size(segment));
+    }
+
+    @Test
+    void testConversationIndexAheadOfGlobalIndexIsNotDuplicated() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            store.append(StoredMessage.direct("Alice"), "Alice", "a0", false);
+            store.append(StoredMessage.direct("Alice"), "Alice", "a1", false);
+        }
+        // Обрыв между записью в индекс беседы и в общий индекс: последней записи нет только в общем
+        Path all = indexFile(dir, LocalMessageStore.ALL);
+        try (FileChannel ch = FileChannel.open(all, StandardOpenOption.WRITE)) {
+            ch.truncate(ConversationIndex.ENTRY_SIZE);
+        }
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            assertEquals(2, store.size());
+            List<StoredMessage> dm = store.loadBefore(StoredMessage.direct("Alice"), Long.MAX_VALUE, 10);
+            assertEquals(List.of("a0", "a1"), dm.stream().map(StoredMessage::text).toList());
+            assertEquals(2, store.loadBefore(LocalMessageStore.ALL, Long.MAX_VALUE, 10).size());
+            assertEquals("a1", store.get(1).text());
+        }
+    }
+
+    @Test
+    void testIndexAheadOfSegmentIsRolledBack() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+        Path segment = dir.resolve("segments/seg-000000.log");
+        long cut;
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            store.append(StoredMessage.PUBLIC, "Bob", "m0", false);
+            store.append(StoredMessage.direct("Alice"), "Alice", "a1", false);
+            store.append(StoredMessage.PUBLIC, "Bob", "m2", false);
+            cut = Files.size(segment);
+            store.append(StoredMessage.direct("Alice"), "Alice", "a3", false);
+            store.append(StoredMessage.PUBLIC, "Bob", "m4", false);
+        }
+        // Индексы дошли до диска, а конец сегмента — нет
+        try (FileChannel seg = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            seg.truncate(cut);
+        }
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            assertEquals(3, store.size());
+            // seq 3 выдаётся заново: старая ссылка из беседы Alice не должна на него указывать
+            assertEquals(3, store.append(StoredMessage.direct("Carol"), "Carol", "c3", false).seq());
+            assertEquals(List.of("a1"), store.loadBefore(StoredMessage.direct("Alice"), Long.MAX_VALUE, 10)
+                    .stream().map(StoredMessage::text).toList());
+            assertEquals(List.of("m0", "m2"), store.loadBefore(StoredMessage.PUBLIC, Long.MAX_VALUE, 10)
+                    .stream().map(StoredMessage::text).toList());
+        }
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            assertEquals(4, store.size());
+            assertEquals("c3", store.get(3).text());
+        }
+    }
+
+    @Test
+    void testRecordIsBoundToItsPosition() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+        Path segment = dir.resolve("segments/seg-000000.log");
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            store.append(StoredMessage.PUBLIC, "Bob", "m0", false);
+            store.append(StoredMessage.PUBLIC, "Bob", "m1", false);
+        }
+        // Записи одной длины меняются местами: каждая цела, но лежит не на своём месте
+        byte[] raw = Files.readAllBytes(segment);
+        int half = raw.length / 2;
+        byte[] swapped = new byte[raw.length];
+        System.arraycopy(raw, half, swapped, 0, half);
+        System.arraycopy(raw, 0, swapped, half, half);
+        Files.write(segment, swapped);
+
+        assertThrows(IOException.class, () -> LocalMessageStore.open(dir, key));
+        assertEquals(raw.length, Files.size(segment));
+    }
+
+    @Test
+    void testWrongKeyFailsToOpenWithoutTouchingHistory() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            for (int i = 0; i < 3; i++) store.append(StoredMessage.PUBLIC, "Bob", "m" + i, false);
+        }
+        long segmentSize = Files.size(dir.resolve("segments/seg-000000.log"));
+
+        SecretKey other = new SecretKeySpec(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+                1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, "AES");
+        assertThrows(IOException.class, () -> LocalMessageStore.open(dir, other));
+        assertEquals(segmentSize, Files.size(dir.resolve("segments/seg-000000.log")));
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            assertEquals(3, store.size());
+        }
+    }
+
+    @Test
+    void testMissingSegmentIsReportedNotSkipped() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-store");
+        try (LocalMessageStore store = LocalMessageStore.open(dir, key)) {
+            store.append(StoredMessage.PUBLIC, "Bob", "m0", false);
+        }
+        Files.move(dir.resolve("segments/seg-000000.log"), dir.resolve("segments/seg-000001.log"));
+        IOException e = assertThrows(IOException.class, () -> LocalMessageStore.open(dir, key));
+        assertTrue(e.getMessage().contains("seg-000000"), e.getMessage());
+    }
+}
@@ -0,0 +1,161 @@
+package com.sanya.client.store.search;
+
+import com.sanya.client.store.LocalMessageStore;
+import com.sanya.client.store.StoredMessage;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchIndexTest {
+
+    @Test
+    void testTermPrefixAndPhraseQueries() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-search");
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, new SecretKeySpec(new byte[32], "AES"));
+             SearchIndex index = SearchIndex.open(store)) {
+            store.addListener(index::add);
+            store.append(StoredMessage.PUBLIC, "Bob", "Hello world, files attached", false);
+            store.append(StoredMessage.direct("Alice"), "Alice", "world hello again", false);
+            store.append(StoredMessage.PUBLIC, "Bob", "Привет, мир", false);
+            index.awaitIndexed();
+
+            assertArrayEquals(new long[]{1, 0}, index.searchSeqs(SearchQuery.parse("HELLO"), 10));
+            assertArrayEquals(new long[]{0}, index.searchSeqs(SearchQuery.parse("fil*"), 10));
+            assertArrayEquals(new long[]{0}, index.searchSeqs(SearchQuery.parse("\"hello world\""), 10));
+            assertArrayEquals(new long[]{1}, index.searchSeqs(SearchQuery.parse("\"world hello\""), 10));
+            assertArrayEquals(new long[]{2}, index.searchSeqs(SearchQuery.parse("мир"), 10));
+            assertEquals(0, index.searchSeqs(SearchQuery.parse("hello missing"), 10).length);
+
+            List<StoredMessage> hits = index.search("again", 10);
+            assertEquals(1, hits.size());
+            assertEquals("Alice", hits.get(0).from());
+        }
+    }
+
+    @Test
+    void testMergedSegmentMatchesSources() {
+        MemorySegment a = new MemorySegment(0);
+        a.add(0, List.of("red", "fox"));
+        a.add(1, List.of("blue", "fox"));
+        MemorySegment b = new MemorySegment(2);
+        b.add(2, List.of("red", "fox", "runs"));
+
+        FrozenSegment merged = FrozenSegment.merge(a.freeze(), b.freeze());
+        assertEquals(3, merged.docCount());
+        assertArrayEquals(new int[]{0, 1, 2}, java.util.Arrays.copyOf(merged.postings("fox").docs(), 3));
+
+        IndexSegment.Postings red = merged.postings("red");
+        assertEquals(2, red.docLen());
+        assertEquals(2, red.docs()[1]);
+        assertEquals(0, red.positions()[red.posStart(1)]);
+
+        List<String> prefixed = new java.util.ArrayList<>();
+        merged.forEachTermWithPrefix("r", prefixed::add);
+        assertEquals(List.of("red", "runs"), prefixed);
+    }
+
+    @Test
+    void testPrefixExpansionIsCappedPerSegment() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-search");
+        int terms = SearchIndex.MAX_PREFIX_EXPANSION + 6;
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, new SecretKeySpec(new byte[32], "AES"));
+             SearchIndex index = SearchIndex.open(store)) {
+            store.addListener(index::add);
+            for (int i = 0; i < terms; i++) store.append(StoredMessage.PUBLIC, "Bob", String.format("t%04d", i), false);
+            index.awaitIndexed();
+
+            // Раскрываются только первые по порядку термы; остальные документы не находятся, ошибки нет
+            long[] hits = index.searchSeqs(SearchQuery.parse("t*"), terms);
+            assertEquals(SearchIndex.MAX_PREFIX_EXPANSION, hits.length);
+            assertEquals(SearchIndex.MAX_PREFIX_EXPANSION - 1, hits[0]);
+            assertEquals(0, hits[hits.length - 1]);
+
+            // Более узкий префикс находит то, что отсекло ограничение
+            assertArrayEquals(new long[]{terms - 1}, index.searchSeqs(SearchQuery.parse("t" + (terms - 1) + "*"), 10));
+            assertArrayEquals(new long[]{terms - 1}, index.searchSeqs(SearchQuery.parse("t" + (terms - 1)), 10));
+        }
+    }
+
+    @Test
+    void testLongWordsLimitAndSystemMessages() throws Exception {
+        Path dir = Files.createTempDirectory("sanya-search");
+        String stem = "a".repeat(Tokenizer.MAX_TERM_LENGTH);
+
+        try (LocalMessageStore store = LocalMessageStore.open(dir, new SecretKeySpec(new byte[32], "AES"));
+             SearchIndex index = SearchIndex.open(store)) {
+            store.addListener(index::add);
+            store.append(StoredMessage.PUBLIC, "Bob", stem + "tail", false);
+            store.append(StoredMessage.PUBLIC, "", "Bob joined", true);
+            store.append(StoredMessage.PUBLIC, "Bob", "bob again", false);
+            store.append(StoredMessage.PUBLIC, "Bob", "bob and more", false);
+            index.awaitIndexed();
+
+            // Слово обрезается до MAX_TERM_LENGTH и в тексте, и в запросе
+            assertArrayEquals(new long[]{0}, index.searchSeqs(SearchQuery.parse(stem), 10));
+            assertArrayEquals(new long[]{0}, index.searchSeqs(SearchQuery.parse(stem + "other"), 10));
+            assertEquals(0, index.searchSeqs(SearchQuery.parse(stem.substring(1)), 10).length);
+
+            // Системные сообщения не индексируются, но занимают seq
+            assertArrayEquals(new long[]{3, 2}, index.searchSeqs(SearchQuery.parse("bob"), 10));
+            assertEquals(4, index.indexedCount());
+
+            // Лимит оставляет самые новые; пустой запрос и нулевой лимит ничего не находят
+            assertArrayEquals(new long[]{3}, index.searchSeqs(SearchQuery.parse("bob"), 1));
+            assertEquals(0, index.searchSeqs(SearchQuery.parse("bob"), 0).length);
+            assertEquals(0, index.searchSeqs(SearchQuery.parse("* \"\" ,"), 10).length);
+        }
+    }
+
+    @Test
+    void testPhraseNeedsAdjacentTermsInOrder() {
+        MemorySegment seg = new MemorySegment(0);
+        seg.add(0, Tokenizer.tokenize("rare word common"));
+        seg.add(1, Tokenizer.tokenize("common rare"));
+        seg.add(2, Tokenizer.tokenize("common x rare common"));
+        seg.add(3, Tokenizer.tokenize("la di la"));
+        seg.add(4, Tokenizer.tokenize("la la"));
+        for (IndexSegment s : List.of(seg, seg.freeze())) {
+            // Самый редкий терм фразы стоит в начале документа: позиция начала фразы отрицательна
+            assertEquals(List.of(1), phrase(s, "\"common rare\""));
+            assertEquals(List.of(0), phrase(s, "\"rare word\""));
+            assertEquals(List.of(2), phrase(s, "\"rare common\""));
+            assertEquals(List.of(), phrase(s, "\"word rare\""));
+            // Повтор терма во фразе требует двух соседних вхождений
+            assertEquals(List.of(4), phrase(s, "\"la la\""));
+            // Незакрытая кавычка — фраза до конца строки
+            assertEquals(List.of(3), phrase(s, "\"di la"));
+        }
+    }
+
+    @Test
+    void testMergeKeepsPhrasePositionsAndRejectsGaps() {
+        MemorySegment a = new MemorySegment(0);
+        a.add(0, List.of("new", "york"));
+        MemorySegment b = new MemorySegment(1);
+        b.add(1, List.of("york", "new"));
+        b.add(2, List.of("new", "new", "york"));
+        FrozenSegment merged = FrozenSegment.merge(a.freeze(), b.freeze());
+        assertEquals(List.of(0, 2), phrase(merged, "\"new york\""));
+
+        MemorySegment far = new MemorySegment(5);
+        far.add(5, List.of("new"));
+        assertThrows(IllegalArgumentException.class, () -> FrozenSegment.merge(merged, far.freeze()));
+    }
+
+    /** Номера документов сегмента, найденные запросом, по возрастанию. */
+    private static List<Integer> phrase(IndexSegment seg, String query) {
+        List<Integer> docs = new ArrayList<>();
+        BitSet match = SearchIndex.evaluate(seg, SearchQuery.parse(query));
+        for (int doc = match.nextSetBit(0); doc >= 0; doc = match.nextSetBit(doc + 1)) docs.add(doc);
+        return docs;
+    }
+}
@@ -2,17 +2,35 @@ package com.sanya.client;
 
 import com.ancevt.replines.core.argument.Arguments;
 import com.sanya.client.core.EventSubscriptionsManager;
+import com.sanya.client.core.StartupOrchestrator;
+import com.sanya.client.core.api.MessageStore;
 import com.sanya.client.facade.UIFacade;
 import com.sanya.client.facade.swing.SwingUIFacade;
 import com.sanya.client.net.ChatConnector;
 import com.sanya.client.security.Encryptor;
+import com.sanya.client.security.IdentityStore;
 import com.sanya.client.security.KeyDirectory;
+import com.sanya.client.security.LocalKeyFile;
+import com.sanya.client.security.StreamCrypto;
+import com.sanya.client.service.files.BlobClient;
+import com.sanya.client.service.files.BlobShareService;
 import com.sanya.client.settings.NetworkSettings;
+import com.sanya.client.store.LocalMessageStore;
+import com.sanya.client.store.search.SearchIndex;
 import com.sanya.client.ui.ChatClientUI;
+import com.sanya.client.ui.history.MessageStoreHistorySource;
+import com.sanya.crypto.BundleVerifier;
 import com.sanya.events.system.ConnectionLostEvent;
+import com.sanya.files.BlobProtocol;
 
+import javax.crypto.SecretKey;
 import javax.swing.*;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -25,13 +43,14 @@ import java.util.logging.Logger;
  * - Настроить среду клиента (DI, EventBus, шифрование, UI, соединение).
  * - Запустить основной цикл приложения и отреагировать на сетевые события.
  *
- * Архитектура запуска:
- * 1. Чтение аргументов командной строки.
- * 2. Инициализация контекста и криптографии.
- * 3. Создание UI и регистрация сервисов.
- * 4. Подключение к серверу через {@link ChatConnector}.
- * 5. Управление событиями через {@link EventSubscriptionsManager}.
+ * Архитектура запуска (этапы {@link StartupOrchestrator}, независимые идут параллельно):
+ * 1. Чтение аргументов командной строки, имя пользователя.
+ * 2. Ключи личности; затем параллельно история, файлы и открытие соединения.
+ * 3. Окно — в EDT сразу после имени пользователя, параллельно с п. 2 (веха first-frame).
+ * 4. Связывание UI и {@link ChatConnector}, подписки {@link EventSubscriptionsManager}.
+ * 5. Приём и обмен ключами (веха connected).
  * 6. Безопасное завершение с очисткой ресурсов.
+ * Сервисы {@link com.sanya.client.core.ServiceRegistry} создаются при первом обращении.
  *
  * Пример запуска:
  * java -jar sanya-client.jar --host localhost --port 12345 --username Alice
@@ -46,7 +65,9 @@ public final class Application {
      * @param args аргументы командной строки, поддерживает:
      *             --host, -h (адрес сервера),
      *             --port, -p (порт),
-     *             --username, -u (имя пользователя)
+     *             --username, -u (имя пользователя),
+     *             --data-dir (каталог локальных данных, по умолчанию ~/.sanya),
+     *             --download-dir (каталог принятых файлов, по умолчанию downloads в каталоге данных)
      */
     public void start(Arguments args) {
         // Настройка сети
@@ -58,84 +79,185 @@ public final class Application {
         // Имя пользователя
         String usernameFromCli = args.get(String.class, new String[]{"--username", "-u"}, "");
 
+        // Каталог локальных данных
+        String dataDirFromCli = args.get(String.class, new String[]{"--data-dir"}, "");
+
+        // Каталог загрузок
+        String downloadDirFromCli = args.get(String.class, new String[]{"--download-dir"}, "");
+
         // Создание контекста
         ApplicationContext ctx = new ApplicationContext(networkSettings);
+        if (!dataDirFromCli.isEmpty()) ctx.getUserSettings().setBaseDataDir(Path.of(dataDirFromCli));
+        if (!downloadDirFromCli.isEmpty()) ctx.getUserSettings().setDownloadDir(Path.of(downloadDirFromCli));
+
+        ctx.di().registerSingleton(BundleVerifier.class, BundleVerifier::new);
+
+        StartupOrchestrator startup = new StartupOrchestrator();
+        Executor edt = SwingUtilities::invokeLater;
+
+        // Имя пользователя: из командной строки или диалогом в EDT
+        CompletableFuture<String> name = startup.stage("username", usernameFromCli.isEmpty() ? edt : Runnable::run, () -> {
+            String username = usernameFromCli.isEmpty()
+                    ? JOptionPane.showInputDialog("Enter your Name:")
+                    : usernameFromCli;
+            if (username == null || username.isBlank()) username = "Anonymous";
+            ctx.getUserSettings().setName(username);
+            return username;
+        });
 
-        // Инициализация криптографии
-        var keyDir = new KeyDirectory();
-        var encryptor = new Encryptor(keyDir);
+        // Ключи личности и кеш собеседников — из зашифрованного хранилища профиля
+        CompletableFuture<Keys> keys = startup.stage("keystore", () -> {
+            Path dataDir = ctx.getUserSettings().getDataDir();
+            SecretKey localKey = LocalKeyFile.loadOrCreate(dataDir.resolve("local.key"));
+            IdentityStore identity = IdentityStore.open(dataDir.resolve("identity.keys"), localKey);
+            ctx.setIdentity(identity.x25519(), identity.ed25519());
+            var keyDir = new KeyDirectory(identity.x25519());
+            identity.restore(keyDir);
+            var encryptor = new Encryptor(keyDir);
+            ctx.di().registerSingleton(IdentityStore.class, () -> identity);
+            ctx.di().registerSingleton(KeyDirectory.class, () -> keyDir);
+            ctx.di().registerSingleton(Encryptor.class, () -> encryptor);
+            return new Keys(localKey, identity, keyDir, encryptor);
+        }, name);
 
-        ctx.di().registerSingleton(KeyDirectory.class, () -> keyDir);
-        ctx.di().registerSingleton(Encryptor.class, () -> encryptor);
+        // Локальная история сообщений и полнотекстовый индекс (индексация и слияние сегментов — в фоне)
+        CompletableFuture<History> history = startup.stage("history", () -> {
+            LocalMessageStore store = LocalMessageStore.open(
+                    ctx.getUserSettings().getDataDir().resolve("history"), keys.join().localKey());
+            ctx.di().registerSingleton(MessageStore.class, () -> store);
+            ctx.di().registerSingleton(LocalMessageStore.class, () -> store);
+            SearchIndex searchIndex = SearchIndex.open(store);
+            store.addListener(searchIndex::add);
+            ctx.di().registerSingleton(SearchIndex.class, () -> searchIndex);
+            return new History(store, searchIndex);
+        }, keys);
 
-        // Запуск UI в EDT
-        SwingUtilities.invokeLater(() -> {
+        // Файлы: каталог загрузок (с восстановлением незавершённых приёмов) и сквозное шифрование
+        CompletableFuture<Void> files = startup.stage("files", () -> {
+            Keys k = keys.join();
+            String username = name.join();
+            Path downloadDir = ctx.getUserSettings().getDownloadDir();
+            ctx.services().fileSender().setDownloadDir(downloadDir);
+
+            StreamCrypto streamCrypto = new StreamCrypto(k.keyDir(), k.encryptor(), username);
+            ctx.di().registerSingleton(StreamCrypto.class, () -> streamCrypto);
+            ctx.services().fileSender().setStreamKeys(streamCrypto);
+
+            // Обмен файлами через хранилище сервера (порт чата + 1)
+            BlobShareService blobs = new BlobShareService(
+                    ctx.core().eventBus(),
+                    new BlobClient(networkSettings.getHost(), networkSettings.getPort() + BlobProtocol.PORT_OFFSET),
+                    ctx.services().fileSender(),
+                    username,
+                    downloadDir);
+            blobs.setStreamKeys(streamCrypto);
+            ctx.di().registerSingleton(BlobShareService.class, () -> blobs);
+            return null;
+        }, keys);
+
+        // Сокет и HELLO — параллельно с построением UI; приём начнётся после подписки на события
+        CompletableFuture<Connection> connection = startup.stage("connect", () -> {
+            Keys k = keys.join();
+            ChatConnector connector = new ChatConnector(
+                    ctx,
+                    networkSettings.getHost(),
+                    networkSettings.getPort(),
+                    name.join(),
+                    ctx.getEventBus(),
+                    k.keyDir(),
+                    k.encryptor()
+            );
+            ctx.di().registerSingleton(ChatConnector.class, () -> connector);
             try {
-                // Имя пользователя
-                String username = usernameFromCli.isEmpty()
-                        ? JOptionPane.showInputDialog("Enter your Name:")
-                        : usernameFromCli;
-
-                if (username == null || username.isBlank()) username = "Anonymous";
-                ctx.getUserSettings().setName(username);
-
-                // Инициализация UI
-                ChatClientUI ui = new ChatClientUI(ctx);
-                UIFacade facade = new SwingUIFacade(ctx, ui.getMainPanel());
-                ctx.setUIFacade(facade);
-
-                // Создание сетевого коннектора
-                ChatConnector connector = new ChatConnector(
-                        ctx,
-                        networkSettings.getHost(),
-                        networkSettings.getPort(),
-                        ctx.getUserSettings().getName(),
-                        ctx.getEventBus(),
-                        keyDir,
-                        encryptor
-                );
-                ctx.di().registerSingleton(ChatConnector.class, () -> connector);
-
-                // Подключение чата к транспортному уровню
-                ctx.services().chat().attachOutputSupplier(connector::isConnected, connector::sendObject);
-
-                // Регистрация подписок на события
-                EventSubscriptionsManager subscriptionsManager = new EventSubscriptionsManager(ctx, facade, connector);
-                ctx.setEventSubscriptionsManager(subscriptionsManager);
-                subscriptionsManager.registerAllSubscriptions();
-
-                // Реакция на потерю соединения
-                ctx.getEventBus().subscribe(ConnectionLostEvent.class, e ->
-                        ctx.getUIFacade().showWarning("[NETWORK] " + e.reason() +
-                                (e.willReconnect() ? " (reconnecting...)" : "")));
-
-                // Контроллер UI
-                new ChatClientController(ctx);
-
-                // Подключение к серверу
-                connector.connect();
-
-                ui.setVisible(true);
-
-                // Безопасное завершение
-                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                    log.info("Shutdown hook executed");
-                    if (ctx.getEventSubscriptionsManager() != null)
-                        ctx.getEventSubscriptionsManager().unsubscribeAll();
-                    connector.close();
-                }));
-
-            } catch (Exception e) {
+                connector.open();
+                return new Connection(connector, true);
+            } catch (IOException e) {
+                log.warning("Initial connect failed: " + e.getMessage());
+                return new Connection(connector, false);
+            }
+        }, history, files);
+
+        // Окно — как только известно имя пользователя
+        CompletableFuture<ChatClientUI> window = startup.stage("ui", edt, () -> {
+            ChatClientUI ui = new ChatClientUI(ctx);
+            ctx.setUIFacade(new SwingUIFacade(ctx, ui.getMainPanel()));
+            ui.setVisible(true);
+            startup.milestone("first-frame");
+            return ui;
+        }, name);
+
+        // Связывание UI, истории и коннектора; подписки — до начала приёма
+        CompletableFuture<ChatConnector> wired = startup.stage("wire", edt, () -> {
+            ChatClientUI ui = window.join();
+            Keys k = keys.join();
+            History h = history.join();
+            ChatConnector connector = connection.join().connector();
+            UIFacade facade = ctx.getUIFacade();
+            ui.getMainPanel().setHistorySource(new MessageStoreHistorySource(h.store(), name.join()));
+
+            // Подключение чата к транспортному уровню
+            ctx.services().chat().attachOutputSupplier(connector::isConnected, connector::sendObject);
+
+            // Регистрация подписок на события
+            EventSubscriptionsManager subscriptionsManager = new EventSubscriptionsManager(ctx, facade, connector);
+            ctx.setEventSubscriptionsManager(subscriptionsManager);
+            subscriptionsManager.registerAllSubscriptions();
+
+            // Реакция на потерю соединения
+            ctx.getEventBus().subscribe(ConnectionLostEvent.class, e ->
+                    ctx.getUIFacade().showWarning("[NETWORK] " + e.reason() +
+                            (e.willReconnect() ? " (reconnecting...)" : "")));
+
+            // Контроллер UI
+            new ChatClientController(ctx);
+
+            // Безопасное завершение
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                log.info("Shutdown hook executed");
+                if (ctx.getEventSubscriptionsManager() != null)
+                    ctx.getEventSubscriptionsManager().unsubscribeAll();
+                connector.close();
+                try {
+                    k.identity().save(k.keyDir());
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Failed to save identity keys", e);
+                }
+                h.searchIndex().close();
+                h.store().close();
+            }));
+            return connector;
+        }, window, history, connection);
+
+        // Приём, обмен ключами; при неудачном первом подключении — обычный connect с переподключением
+        startup.stage("handshake", () -> {
+            ChatConnector connector = wired.join();
+            if (connection.join().opened()) connector.start();
+            else connector.connect();
+            if (connector.isConnected()) startup.milestone("connected");
+            return null;
+        }, wired).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.log(Level.SEVERE, "Startup failed", cause);
+            SwingUtilities.invokeLater(() -> {
                 JOptionPane.showMessageDialog(null,
-                        "Failed to start application: " + e.getMessage(),
+                        "Failed to start application: " + cause.getMessage(),
                         "Error",
                         JOptionPane.ERROR_MESSAGE);
-                log.log(Level.SEVERE, "Startup failed", e);
                 System.exit(1);
-            }
+            });
+            return null;
         });
     }
 
+    /** Результат этапа ключей. */
+    private record Keys(SecretKey localKey, IdentityStore identity, KeyDirectory keyDir, Encryptor encryptor) {}
+
+    /** Результат этапа истории. */
+    private record History(LocalMessageStore store, SearchIndex searchIndex) {}
+
+    /** Коннектор и результат первой попытки подключения. */
+    private record Connection(ChatConnector connector, boolean opened) {}
+
     /**
      * Главная точка входа программы.
      * Выполняет настройку логирования и инициализирует запуск клиента.
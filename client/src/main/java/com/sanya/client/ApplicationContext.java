@@ -1,6 +1,7 @@
 package com.sanya.client;
 
 import com.sanya.client.core.*;
+import com.sanya.client.core.api.ClientContext;
 import com.sanya.client.facade.UIFacade;
 import com.sanya.client.service.ChatService;
 import com.sanya.client.service.audio.VoiceService;
@@ -35,7 +36,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * Потокобезопасность:
  * Использует ConcurrentHashMap для хранения известных криптографических пакетов.
  */
-public final class ApplicationContext {
+public final class ApplicationContext implements ClientContext {
 
     /** Контейнер зависимостей. */
     private final DependencyContainer di = new DependencyContainer();
@@ -64,9 +65,12 @@ public final class ApplicationContext {
     /** Менеджер подписок на события. */
     private EventSubscriptionsManager eventSubscriptionsManager;
 
-    /** Криптографические пары ключей (X25519 — обмен, Ed25519 — подпись). */
-    private KeyPair x25519KeyPair;
-    private KeyPair ed25519KeyPair;
+    /**
+     * Криптографические пары ключей (X25519 — обмен, Ed25519 — подпись).
+     * Обычно загружаются из {@code IdentityStore}; без него создаются при первом обращении.
+     */
+    private volatile KeyPair x25519KeyPair;
+    private volatile KeyPair ed25519KeyPair;
 
     /** Известные публичные ключи других пользователей (pre-key bundles). */
     private final Map<String, SignedPreKeyBundle> knownBundles = new ConcurrentHashMap<>();
@@ -79,13 +83,6 @@ public final class ApplicationContext {
     public ApplicationContext(NetworkSettings networkSettings) {
         this.networkSettings = networkSettings;
 
-        try {
-            this.x25519KeyPair = KeyUtils.generateX25519();
-            this.ed25519KeyPair = KeyUtils.generateEd25519();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to init crypto keys", e);
-        }
-
         // Регистрация основных компонентов в DI-контейнере
         di.registerSingleton(DefaultEventBus.class, () -> defaultEventBus);
         di.registerSingleton(ApplicationContext.class, () -> this);
@@ -99,6 +96,12 @@ public final class ApplicationContext {
         return di.get(type);
     }
 
+    /** Возвращает зарегистрированный компонент или null (для сетевого уровня). */
+    @Override
+    public <T> T find(Class<T> type) {
+        return di.isRegistered(type) ? di.get(type) : null;
+    }
+
     public DependencyContainer di() { return di; }
     public DefaultEventBus getEventBus() { return defaultEventBus; }
     public NetworkSettings getNetworkSettings() { return networkSettings; }
@@ -133,12 +136,35 @@ public final class ApplicationContext {
         this.eventSubscriptionsManager = eventSubscriptionsManager;
     }
 
+    /** Устанавливает сохранённые ключи личности. */
+    public void setIdentity(KeyPair x25519, KeyPair ed25519) {
+        this.x25519KeyPair = x25519;
+        this.ed25519KeyPair = ed25519;
+    }
+
     /** Возвращает пару ключей X25519 для обмена. */
-    public KeyPair getX25519KeyPair() { return x25519KeyPair; }
+    public KeyPair getX25519KeyPair() {
+        if (x25519KeyPair == null) initKeys();
+        return x25519KeyPair;
+    }
 
     /** Возвращает пару ключей Ed25519 для подписей. */
-    public KeyPair getEd25519KeyPair() { return ed25519KeyPair; }
+    @Override
+    public KeyPair getEd25519KeyPair() {
+        if (ed25519KeyPair == null) initKeys();
+        return ed25519KeyPair;
+    }
+
+    private synchronized void initKeys() {
+        try {
+            if (x25519KeyPair == null) x25519KeyPair = KeyUtils.generateX25519();
+            if (ed25519KeyPair == null) ed25519KeyPair = KeyUtils.generateEd25519();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to init crypto keys", e);
+        }
+    }
 
     /** Возвращает известные криптографические пакеты других пользователей. */
+    @Override
     public Map<String, SignedPreKeyBundle> getKnownBundles() { return knownBundles; }
 }
@@ -1,6 +1,7 @@
 package com.sanya.client;
 
 import com.sanya.client.facade.UIFacade;
+import com.sanya.client.service.files.BlobShareService;
 import com.sanya.events.chat.MessageSendEvent;
 import com.sanya.events.system.SystemMessageEvent;
 
@@ -98,7 +99,7 @@ public final class ChatClientController {
     }
 
     /**
-     * Отправляет выбранный файл на сервер в отдельном потоке.
+     * Загружает выбранный файл в хранилище сервера и рассылает ссылку на него в отдельном потоке.
      *
      * @param file файл для передачи
      */
@@ -107,11 +108,7 @@ public final class ChatClientController {
 
         new Thread(() -> {
             try {
-                context.services().fileSender().sendFile(
-                        context.getUserSettings().getName(),
-                        file,
-                        context.services().chat()::sendObject
-                );
+                context.get(BlobShareService.class).share(file, context.services().chat()::sendObject);
             } catch (Exception ex) {
                 context.getEventBus().publish(
                         new SystemMessageEvent("[ERROR] Отправка файла: " + ex.getMessage())
@@ -0,0 +1,130 @@
+package com.sanya.client;
+
+import com.sanya.Message;
+import com.sanya.client.core.api.MessageStore;
+import com.sanya.client.net.ChatConnector;
+import com.sanya.client.security.Encryptor;
+import com.sanya.client.security.IdentityStore;
+import com.sanya.client.security.KeyDirectory;
+import com.sanya.client.security.LocalKeyFile;
+import com.sanya.client.settings.NetworkSettings;
+import com.sanya.client.store.LocalMessageStore;
+import com.sanya.client.store.search.SearchIndex;
+import com.sanya.client.ui.main.ChatMainPanel;
+import com.sanya.crypto.Crypto;
+import com.sanya.crypto.msg.KeyDirectoryUpdate;
+import com.sanya.events.chat.UserListUpdatedEvent;
+
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * ClientTraining — headless-прогон запуска клиента: ключи, история, индекс, подключение, отправка, панели UI.
+ *
+ * Назначение:
+ *  - Обучающая нагрузка профиля {@code appcds}: под {@code -XX:ArchiveClassesAtExit} загружает те же классы,
+ *    что и обычный запуск (JCA, сериализация, Swing-компоненты без окна), и пишет их в архив AppCDS.
+ *  - Замер для {@code StartupBenchmark}: с адресом сервера печатает {@code connected-ms=<uptime JVM>}
+ *    сразу после подключения.
+ *  Без адреса сервера собеседником служит встроенный loopback-сервер на свободном порту.
+ *  Окно не создаётся: без дисплея верхнеуровневые окна недоступны.
+ *
+ * Запуск:
+ *  java -XX:ArchiveClassesAtExit=client.jsa -cp client.jar com.sanya.client.ClientTraining
+ *  java -XX:SharedArchiveFile=client.jsa -cp client.jar com.sanya.client.ClientTraining localhost 12345
+ */
+public final class ClientTraining {
+
+    private ClientTraining() {}
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+        Path dataDir = Files.createTempDirectory("sanya-training");
+
+        String host = "localhost";
+        int port;
+        ServerSocket loopback = null;
+        if (args.length >= 2) {
+            host = args[0];
+            port = Integer.parseInt(args[1]);
+        } else {
+            loopback = new ServerSocket(0);
+            port = loopback.getLocalPort();
+            ServerSocket server = loopback;
+            Thread peer = new Thread(() -> servePeer(server), "Training-Peer");
+            peer.setDaemon(true);
+            peer.start();
+        }
+
+        String username = "training-" + ProcessHandle.current().pid();
+        ApplicationContext ctx = new ApplicationContext(new NetworkSettings(host, port));
+        ctx.getUserSettings().setBaseDataDir(dataDir);
+        ctx.getUserSettings().setName(username);
+
+        SecretKey localKey = LocalKeyFile.loadOrCreate(ctx.getUserSettings().getDataDir().resolve("local.key"));
+        IdentityStore identity = IdentityStore.open(ctx.getUserSettings().getDataDir().resolve("identity.keys"), localKey);
+        ctx.setIdentity(identity.x25519(), identity.ed25519());
+        KeyDirectory keyDir = new KeyDirectory(identity.x25519());
+        Encryptor encryptor = new Encryptor(keyDir);
+
+        LocalMessageStore store = LocalMessageStore.open(ctx.getUserSettings().getDataDir().resolve("history"), localKey);
+        ctx.di().registerSingleton(MessageStore.class, () -> store);
+        SearchIndex index = SearchIndex.open(store);
+        store.addListener(index::add);
+
+        ChatConnector connector = new ChatConnector(ctx, host, port, username, ctx.getEventBus(), keyDir, encryptor);
+        connector.connect();
+        if (!connector.isConnected()) {
+            System.err.println("Training client could not connect to " + host + ":" + port);
+            System.exit(2);
+        }
+        System.out.println("connected-ms=" + ManagementFactory.getRuntimeMXBean().getUptime());
+        System.out.flush();
+
+        connector.sendMessage("training message");
+        try {
+            new ChatMainPanel(ctx);
+        } catch (RuntimeException | Error e) {
+            // Часть Swing недоступна без дисплея — загруженных классов достаточно
+        }
+        Thread.sleep(500);
+
+        connector.close();
+        identity.save(keyDir);
+        index.close();
+        store.close();
+        if (loopback != null) loopback.close();
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+        System.exit(0);
+    }
+
+    /** Минимальный собеседник: отвечает каталогом ключей, списком участников и сообщением, остальное читает. */
+    private static void servePeer(ServerSocket server) {
+        try (Socket s = server.accept()) {
+            ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream());
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(s.getInputStream());
+            in.readObject(); // HELLO
+
+            KeyDirectory peer = new KeyDirectory();
+            out.writeObject(new KeyDirectoryUpdate(Map.of("peer", Crypto.encodePub(peer.myKeyPair().getPublic()))));
+            out.writeObject(new UserListUpdatedEvent(List.of("peer")));
+            out.writeObject(new Message("peer", "hello"));
+            out.flush();
+            while (true) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            // Клиент закрыл соединение
+        }
+    }
+}
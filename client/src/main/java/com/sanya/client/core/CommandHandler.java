@@ -4,9 +4,16 @@ import com.ancevt.replines.core.argument.Arguments;
 import com.ancevt.replines.core.repl.ReplRunner;
 import com.ancevt.replines.core.repl.annotation.ReplCommand;
 import com.sanya.client.ApplicationContext;
+import com.sanya.client.service.files.BlobShareService;
+import com.sanya.client.store.StoredMessage;
+import com.sanya.client.store.search.SearchIndex;
+import com.sanya.files.BlobReference;
 
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,7 +23,7 @@ import java.util.logging.Logger;
  *
  * Назначение:
  *  - Предоставить пользователю возможность управлять клиентом через консоль.
- *  - Реализовать базовые команды (help, clear, exit).
+ *  - Реализовать базовые команды (help, clear, exit, search, get).
  *  - Вести логирование всех вызовов для отладки.
  *
  * Использование:
@@ -60,6 +67,10 @@ public class CommandHandler {
     public static class CommandDefinitions {
 
         private static final Logger log = Logger.getLogger(CommandDefinitions.class.getName());
+
+        /** Максимальное число результатов /search. */
+        private static final int SEARCH_LIMIT = 20;
+
         private final ApplicationContext ctx;
 
         public CommandDefinitions(ApplicationContext ctx) {
@@ -103,5 +114,64 @@ public class CommandHandler {
                 repl.println("[ERROR] Не удалось очистить чат: " + e.getMessage());
             }
         }
+
+        /**
+         * Ищет по локальной истории, включая расшифрованные личные сообщения.
+         * Команда: /search слово нач* "точная фраза"
+         */
+        @ReplCommand(name = "/search", description = "Search local history: /search word pre* \"exact phrase\"")
+        public void search(ReplRunner repl, Arguments args) {
+            String query = args.getSource().replaceFirst("^\\s*/search\\s*", "");
+            log.info("Received command /search");
+            if (query.isBlank()) {
+                repl.println("[SYSTEM] Использование: /search слово нач* \"точная фраза\"");
+                return;
+            }
+            if (!ctx.di().isRegistered(SearchIndex.class)) {
+                repl.println("[ERROR] Поиск недоступен: локальная история не открыта");
+                return;
+            }
+
+            long start = System.nanoTime();
+            List<StoredMessage> hits = ctx.get(SearchIndex.class).search(query, SEARCH_LIMIT);
+            long ms = (System.nanoTime() - start) / 1_000_000;
+
+            SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+            for (StoredMessage m : hits) {
+                repl.println(fmt.format(new Date(m.timestamp())) + " "
+                        + (m.isDirect() ? "[private] " : "") + m.from() + ": " + m.text());
+            }
+            repl.println("[SYSTEM] Найдено: " + hits.size() + " (" + ms + " мс)");
+        }
+
+        /**
+         * Скачивает файл из хранилища сервера; без аргумента показывает полученные предложения.
+         * Команда: /get [id или имя файла]
+         */
+        @ReplCommand(name = "/get", description = "Download a shared file: /get <id prefix | filename>")
+        public void get(ReplRunner repl, Arguments args) {
+            String key = args.getSource().replaceFirst("^\\s*/get\\s*", "").trim();
+            log.info("Received command /get");
+            BlobShareService blobs = ctx.get(BlobShareService.class);
+            if (key.isEmpty()) {
+                for (BlobReference ref : blobs.offers()) {
+                    repl.println(ref.shortId() + "  " + ref.filename() + " (" + ref.size() + " bytes) от " + ref.sender());
+                }
+                return;
+            }
+            BlobReference ref = blobs.find(key).orElse(null);
+            if (ref == null) {
+                repl.println("[ERROR] Файл не найден: " + key);
+                return;
+            }
+            new Thread(() -> {
+                try {
+                    repl.println("[SYSTEM] Сохранён: " + blobs.download(ref, ctx.services().chat()::sendObject));
+                } catch (Exception e) {
+                    log.log(Level.WARNING, "Download failed via /get", e);
+                    repl.println("[ERROR] Не удалось скачать " + ref.filename() + ": " + e.getMessage());
+                }
+            }, "BlobDownloadThread").start();
+        }
     }
 }
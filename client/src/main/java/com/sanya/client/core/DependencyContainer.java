@@ -1,7 +1,7 @@
 package com.sanya.client.core;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 /**
@@ -16,14 +16,16 @@ import java.util.function.Supplier;
  * Использование:
  *  ctx.di().registerSingleton(ChatConnector.class, () -> new ChatConnector(...));
  *  ChatConnector connector = ctx.di().get(ChatConnector.class);
+ *
+ * Потокобезопасность:
+ *  Регистрация и получение безопасны из разных потоков (этапы запуска идут параллельно).
+ *  Singleton создаётся ровно один раз под монитором своей регистрации; повторная регистрация типа
+ *  заменяет и фабрику, и созданный экземпляр.
  */
 public class DependencyContainer {
 
     /** Провайдеры зависимостей (создают экземпляры по запросу) */
-    private final Map<Class<?>, Supplier<?>> providers = new HashMap<>();
-
-    /** Кеш экземпляров для Singleton-зависимостей */
-    private final Map<Class<?>, Object> singletons = new HashMap<>();
+    private final Map<Class<?>, Supplier<?>> providers = new ConcurrentHashMap<>();
 
     /**
      * Регистрирует зависимость как Singleton.
@@ -34,7 +36,7 @@ public class DependencyContainer {
      * @param <T>      тип возвращаемого объекта
      */
     public <T> void registerSingleton(Class<T> type, Supplier<T> supplier) {
-        providers.put(type, () -> singletons.computeIfAbsent(type, k -> supplier.get()));
+        providers.put(type, new Singleton<>(supplier));
     }
 
     /**
@@ -76,4 +78,26 @@ public class DependencyContainer {
     public boolean isRegistered(Class<?> type) {
         return providers.containsKey(type);
     }
+
+    /** Ленивый singleton одной регистрации. */
+    private static final class Singleton<T> implements Supplier<T> {
+        private final Supplier<T> factory;
+        private volatile T instance;
+
+        Singleton(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public T get() {
+            T v = instance;
+            if (v == null) {
+                synchronized (this) {
+                    v = instance;
+                    if (v == null) instance = v = factory.get();
+                }
+            }
+            return v;
+        }
+    }
 }
@@ -1,16 +1,24 @@
 package com.sanya.client.core;
 
 import com.sanya.client.ApplicationContext;
+import com.sanya.client.core.api.FrameSink;
 import com.sanya.client.net.ChatConnector;
 import com.sanya.client.facade.UIFacade;
+import com.sanya.client.service.files.BlobShareService;
 import com.sanya.client.ui.dialog.ChatVoiceDialog;
 import com.sanya.events.chat.*;
 import com.sanya.events.core.EventHandler;
+import com.sanya.events.file.FileChunkEvent;
 import com.sanya.events.file.FileIncomingEvent;
+import com.sanya.events.system.ConnectionRestoredEvent;
 import com.sanya.events.system.SystemMessageEvent;
 import com.sanya.events.system.ThemeChangedEvent;
 import com.sanya.events.ui.ClearChatEvent;
 import com.sanya.events.voice.*;
+import com.sanya.files.BlobReference;
+import com.sanya.files.BlobToken;
+import com.sanya.files.FileResumeRequest;
+import com.sanya.files.FileTransferComplete;
 import com.sanya.files.FileTransferEvent;
 
 import javax.swing.*;
@@ -88,10 +96,16 @@ public class EventSubscriptionsManager {
 
     /** === Подписки на сообщения === */
     private void registerMessageSubscriptions() {
-        // Отправка сообщений (UI -> сеть)
+        // Отправка сообщений (UI -> сеть): шифрование и запись идут вне EDT
         subscribe(MessageSendEvent.class, e -> {
             if (connector != null) {
-                connector.sendMessage(e.text());
+                connector.sendMessage(e.text()).exceptionally(err -> {
+                    // Об обрыве уже сообщил коннектор; здесь — переполненная очередь и ошибки шифрования
+                    if (connector.isConnected()) {
+                        context.getEventBus().publish(new SystemMessageEvent("Message not sent: " + err.getMessage()));
+                    }
+                    return null;
+                });
             }
         });
 
@@ -147,6 +161,9 @@ public class EventSubscriptionsManager {
 
     /** === Подписки на события передачи файлов === */
     private void registerFileTransferSubscriptions() {
+        // Отправителю файлов нужен момент записи блока в соединение, а не постановки в очередь
+        FrameSink frames = connector::sendObject;
+
         subscribe(FileTransferEvent.class, e -> {
             switch (e.type()) {
                 case STARTED -> ui.showFileTransferProgress(e.filename(), 0, e.outgoing());
@@ -159,8 +176,26 @@ public class EventSubscriptionsManager {
             }
         });
 
-        subscribe(FileIncomingEvent.class, e ->
-                log.info("File incoming: " + e.request()));
+        subscribe(FileIncomingEvent.class, e -> {
+            log.info("File incoming: " + e.request());
+            context.services().fileSender().onTransferRequest(e.request());
+        });
+
+        subscribe(FileChunkEvent.class, e -> context.services().fileSender().receiveFile(e.chunk()));
+
+        subscribe(FileTransferComplete.class, e ->
+                context.services().fileSender().onTransferComplete(e, frames));
+
+        subscribe(FileResumeRequest.class, e ->
+                context.services().fileSender().resume(e, frames));
+
+        // Предложения файлов из хранилища сервера
+        subscribe(BlobReference.class, e -> context.get(BlobShareService.class).onReference(e));
+        subscribe(BlobToken.class, e -> context.get(BlobShareService.class).onToken(e));
+
+        // Докачка незавершённых передач после переподключения
+        subscribe(ConnectionRestoredEvent.class, e ->
+                context.services().fileSender().onReconnected(frames));
     }
 
     /** === Подписки на системные и UI события === */
@@ -18,74 +18,67 @@ import com.sanya.client.ui.theme.ThemeManager;
  *  - Инкапсулирует создание всех сервисов и их зависимости.
  *  - Упрощает тестирование и масштабирование архитектуры.
  *  - Поддерживает согласованность через единый EventBus.
+ *  - Создаёт сервисы лениво, при первом обращении: запуск клиента не ждёт голоса, файлов и тем,
+ *    пока они не понадобились.
  *
  * Использование:
  *  Создаётся внутри {@link com.sanya.client.core.AppCore} и доступен через {@link ApplicationContext}.
  *  Пример: ctx.services().voice().startRecording();
+ *
+ * Потокобезопасность:
+ *  Каждый сервис создаётся один раз, даже при одновременном первом обращении из разных потоков.
  */
 public final class ServiceRegistry {
 
-    /** Сервис текстового чата (сообщения, очистка, отправка объектов) */
-    private final ChatService chatService;
-
-    /** Сервис записи и воспроизведения голосовых сообщений */
-    private final VoiceService voiceService;
-
-    /** Менеджер тем оформления */
-    private final ThemeManager themeManager;
-
-    /** Сервис передачи файлов */
-    private final FileTransferService fileSender;
-
-    /** Сервис отправки аудиопотоков */
-    private final AudioSender voiceSender;
+    /** Ленивые фабрики сервисов */
+    private final DependencyContainer services = new DependencyContainer();
 
     /**
-     * Конструктор реестра сервисов.
+     * Конструктор реестра сервисов. Сами сервисы создаются при первом обращении.
      *
      * @param ctx контекст приложения
      * @param bus клиентская шина событий
      */
     public ServiceRegistry(ApplicationContext ctx, EventBus bus) {
-        this.chatService = new ChatService(bus);
-        this.voiceService = new VoiceService(ctx);
-        this.themeManager = new ThemeManager(ctx, bus);
-        this.fileSender = new FileSender(bus);
-        this.voiceSender = new VoiceSender(this.chatService);
+        services.registerSingleton(ChatService.class, () -> new ChatService(bus));
+        services.registerSingleton(VoiceService.class, () -> new VoiceService(ctx));
+        services.registerSingleton(ThemeManager.class, () -> new ThemeManager(ctx, bus));
+        services.registerSingleton(FileTransferService.class, () -> new FileSender(bus));
+        services.registerSingleton(AudioSender.class, () -> new VoiceSender(chat()));
     }
 
     /**
      * Возвращает сервис чата.
      */
     public ChatService chat() {
-        return chatService;
+        return services.get(ChatService.class);
     }
 
     /**
      * Возвращает сервис голосовых сообщений.
      */
     public VoiceService voice() {
-        return voiceService;
+        return services.get(VoiceService.class);
     }
 
     /**
      * Возвращает менеджер тем оформления.
      */
     public ThemeManager theme() {
-        return themeManager;
+        return services.get(ThemeManager.class);
     }
 
     /**
      * Возвращает сервис передачи файлов.
      */
     public FileTransferService fileSender() {
-        return fileSender;
+        return services.get(FileTransferService.class);
     }
 
     /**
      * Возвращает отправитель аудиопотоков.
      */
     public AudioSender voiceSender() {
-        return voiceSender;
+        return services.get(AudioSender.class);
     }
 }
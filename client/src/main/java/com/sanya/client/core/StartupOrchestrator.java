@@ -0,0 +1,97 @@
+package com.sanya.client.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * StartupOrchestrator — запуск клиента этапами: независимые этапы идут параллельно,
+ * зависимые ждут только свои предпосылки.
+ *
+ * Назначение:
+ *  - Выполнять этапы (загрузка ключей, открытие истории, подключение к серверу, построение UI)
+ *    в пуле или в указанном исполнителе (например, в EDT).
+ *  - Записывать в лог длительность каждого этапа и момент его завершения от начала запуска,
+ *    а также вехи ({@link #milestone}): первый кадр, подключение.
+ *
+ * Использование:
+ *  StartupOrchestrator startup = new StartupOrchestrator();
+ *  var keys = startup.stage("keystore", () -> loadKeys());
+ *  var ui = startup.stage("ui", SwingUtilities::invokeLater, () -> buildUi());
+ *  startup.stage("wire", SwingUtilities::invokeLater, () -> wire(keys.join(), ui.join()), keys, ui);
+ *
+ * Потокобезопасность:
+ *  Потокобезопасен; этапы можно добавлять из любых потоков, в том числе из других этапов.
+ */
+public final class StartupOrchestrator {
+
+    private static final Logger log = Logger.getLogger(StartupOrchestrator.class.getName());
+
+    /** Рабочие потоки этапов; простаивающие завершаются сами. */
+    private static final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "Startup-Stage");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final long start = System.nanoTime();
+
+    /** Этап или веха → миллисекунды от начала запуска до завершения. */
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** Этап в пуле запуска после завершения {@code after}. */
+    public <T> CompletableFuture<T> stage(String name, Callable<T> work, CompletableFuture<?>... after) {
+        return stage(name, pool, work, after);
+    }
+
+    /**
+     * Этап в исполнителе {@code executor} после завершения {@code after}.
+     * Ошибка предпосылки или этапа завершает возвращённый future исключением.
+     */
+    public <T> CompletableFuture<T> stage(String name, Executor executor, Callable<T> work, CompletableFuture<?>... after) {
+        return CompletableFuture.allOf(after).thenApplyAsync(v -> run(name, work), executor);
+    }
+
+    /** Отмечает веху (например, "first-frame", "connected") и пишет её в лог. */
+    public void milestone(String name) {
+        long at = sinceStart();
+        timings.put(name, at);
+        log.info(String.format("Startup milestone %s at %d ms (JVM uptime %d ms)",
+                name, at, ManagementFactory.getRuntimeMXBean().getUptime()));
+    }
+
+    /** Снимок времён завершения этапов и вех в порядке завершения. */
+    public Map<String, Long> timings() {
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    private <T> T run(String name, Callable<T> work) {
+        long t0 = System.nanoTime();
+        try {
+            T result = work.call();
+            long took = (System.nanoTime() - t0) / 1_000_000;
+            long at = sinceStart();
+            timings.put(name, at);
+            log.info(String.format("Startup stage %s took %d ms (done at %d ms) on %s",
+                    name, took, at, Thread.currentThread().getName()));
+            return result;
+        } catch (Exception e) {
+            log.warning("Startup stage " + name + " failed: " + e);
+            throw new CompletionException(e);
+        }
+    }
+
+    private long sinceStart() {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
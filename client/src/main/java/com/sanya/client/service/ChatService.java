@@ -1,12 +1,13 @@
 package com.sanya.client.service;
 
 import com.sanya.client.core.api.EventBus;
+import com.sanya.client.core.api.FrameSink;
 import com.sanya.events.chat.MessageSendEvent;
 import com.sanya.events.system.SystemMessageEvent;
 import com.sanya.events.ui.ClearChatEvent;
 import com.sanya.messages.VoiceMessage;
 
-import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,7 +32,7 @@ public final class ChatService {
 
     private final EventBus bus;
     private Supplier<Boolean> isConnectedSupplier;
-    private Consumer<Object> objectSender;
+    private FrameSink objectSender;
 
     public ChatService(EventBus bus) {
         this.bus = bus;
@@ -43,7 +44,7 @@ public final class ChatService {
      * @param isConnectedSupplier функция проверки соединения
      * @param objectSender        функция отправки объекта
      */
-    public void attachOutputSupplier(Supplier<Boolean> isConnectedSupplier, Consumer<Object> objectSender) {
+    public void attachOutputSupplier(Supplier<Boolean> isConnectedSupplier, FrameSink objectSender) {
         this.isConnectedSupplier = isConnectedSupplier;
         this.objectSender = objectSender;
         log.info("ChatService transport attached");
@@ -71,27 +72,31 @@ public final class ChatService {
     /**
      * Отправляет объект через подключённый транспорт.
      * При ошибке публикует {@link SystemMessageEvent}.
+     *
+     * @return завершается после записи объекта в соединение; исключением — если отправка не удалась
      */
-    public void sendObject(Object obj) {
+    public CompletableFuture<Void> sendObject(Object obj) {
         if (objectSender == null) {
             log.warning("Attempt to send object with no active transport");
             bus.publish(new SystemMessageEvent("[ERROR] Transport not attached"));
-            return;
+            return CompletableFuture.failedFuture(new IllegalStateException("Transport not attached"));
         }
 
         try {
-            objectSender.accept(obj);
+            CompletableFuture<Void> written = objectSender.send(obj);
             log.fine("Object sent: " + obj.getClass().getSimpleName());
 
             // Отражение приватного сообщения в UI при шифрованной отправке
-            if (obj instanceof com.sanya.crypto.msg.EncryptedDirectMessage dm) {
+            if (obj instanceof com.sanya.crypto.msg.EncryptedDirectMessage dm && dm.isText()) {
                 var m = new com.sanya.Message(dm.from(), "[private] [you]");
                 bus.publish(new com.sanya.events.chat.MessageReceivedEvent(m));
             }
+            return written;
 
         } catch (Exception e) {
             log.log(Level.SEVERE, "Send failed", e);
             bus.publish(new SystemMessageEvent("[ERROR] Send failed: " + e.getMessage()));
+            return CompletableFuture.failedFuture(e);
         }
     }
 
@@ -1,10 +1,12 @@
 package com.sanya.client.service.audio;
 
 import com.sanya.client.ApplicationContext;
+import com.sanya.client.security.StreamCrypto;
 import com.sanya.events.system.SystemMessageEvent;
 import com.sanya.events.voice.VoiceMessageReadyEvent;
 import com.sanya.events.voice.VoiceRecordingEvent;
 
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,7 +17,8 @@ import java.util.logging.Logger;
  * Назначение:
  *  - Контролировать жизненный цикл записи через {@link VoiceRecorder}.
  *  - Воспроизводить локальные записи через {@link VoicePlayer}.
- *  - Отправлять готовые голосовые сообщения на сервер.
+ *  - Отправлять готовые голосовые сообщения на сервер: каждому собеседнику с известным ключом —
+ *    блоками с потоковым шифрованием ({@link StreamCrypto}), иначе — открыто, как раньше.
  *  - Предотвращать повторную отправку во время активной операции.
  *
  * Использование:
@@ -83,8 +86,16 @@ public final class VoiceService {
 
         try {
             var username = ctx.getUserSettings().getName();
-            ctx.services().chat().sendObject(new VoiceMessageReadyEvent(username, data));
-            log.info("Voice message sent by user: " + username);
+            StreamCrypto streams = ctx.di().isRegistered(StreamCrypto.class) ? ctx.get(StreamCrypto.class) : null;
+            List<String> peers = streams != null ? streams.peers() : List.of();
+            if (peers.isEmpty()) {
+                ctx.services().chat().sendObject(new VoiceMessageReadyEvent(username, data));
+            } else {
+                for (String peer : peers) {
+                    streams.sealVoice(peer, data).forEach(ctx.services().chat()::sendObject);
+                }
+            }
+            log.info("Voice message sent by user: " + username + (peers.isEmpty() ? "" : " (encrypted for " + peers.size() + " peers)"));
         } catch (Exception e) {
             log.log(Level.SEVERE, "Failed to send voice message", e);
             ctx.getEventBus().publish(new SystemMessageEvent(
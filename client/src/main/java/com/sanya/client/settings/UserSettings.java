@@ -1,8 +1,11 @@
 package com.sanya.client.settings;
 
+import java.nio.file.Path;
+
 /**
  * UserSettings — класс для хранения персональных настроек пользователя.
- * Содержит имя, используемое при подключении и отображении в чате.
+ * Содержит имя, используемое при подключении и отображении в чате,
+ * расположение локальных данных пользователя (история, ключи) и каталог загрузок.
  *
  * Назначение:
  *  - Инкапсулировать пользовательские данные.
@@ -18,6 +21,12 @@ public final class UserSettings {
     /** Имя пользователя, отображаемое в чате. */
     private String name;
 
+    /** Корневой каталог локальных данных всех профилей. */
+    private Path baseDataDir = Path.of(System.getProperty("user.home"), ".sanya");
+
+    /** Каталог загрузок, если задан явно. */
+    private Path downloadDir;
+
     /** Возвращает имя пользователя. */
     public String getName() {
         return name;
@@ -31,6 +40,29 @@ public final class UserSettings {
         this.name = name;
     }
 
+    /** Устанавливает корневой каталог локальных данных. */
+    public void setBaseDataDir(Path baseDataDir) {
+        if (baseDataDir == null) throw new IllegalArgumentException("Data dir cannot be null");
+        this.baseDataDir = baseDataDir;
+    }
+
+    /** Возвращает каталог локальных данных текущего пользователя. */
+    public Path getDataDir() {
+        if (name == null) throw new IllegalStateException("Username is not set");
+        return baseDataDir.resolve(name);
+    }
+
+    /** Устанавливает каталог для принятых файлов. */
+    public void setDownloadDir(Path downloadDir) {
+        if (downloadDir == null) throw new IllegalArgumentException("Download dir cannot be null");
+        this.downloadDir = downloadDir;
+    }
+
+    /** Возвращает каталог для принятых файлов (по умолчанию — downloads в каталоге данных пользователя). */
+    public Path getDownloadDir() {
+        return downloadDir != null ? downloadDir : getDataDir().resolve("downloads");
+    }
+
     @Override
     public String toString() {
         return "UserSettings{" +
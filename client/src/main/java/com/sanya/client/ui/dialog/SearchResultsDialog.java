@@ -0,0 +1,92 @@
+package com.sanya.client.ui.dialog;
+
+import com.sanya.client.store.StoredMessage;
+import com.sanya.client.store.search.SearchIndex;
+
+import javax.swing.*;
+import java.awt.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * SearchResultsDialog — немодальное окно результатов поиска по локальной истории.
+ *
+ * Назначение:
+ *  Выполняет запрос к {@link SearchIndex} в фоне через {@link SwingWorker} и показывает найденные
+ *  сообщения от новых к старым.
+ *
+ * Потоковая модель:
+ *  Поиск и чтение сообщений из хранилища выполняются вне EDT, обновление списка — в EDT.
+ *
+ * Пример:
+ *  SearchResultsDialog.show(parent, index, "\"hello world\"");
+ */
+public final class SearchResultsDialog extends JDialog {
+
+    private static final Logger log = Logger.getLogger(SearchResultsDialog.class.getName());
+
+    /** Максимальное число показываемых результатов. */
+    private static final int LIMIT = 200;
+
+    /** Модель списка результатов. */
+    private final DefaultListModel<String> resultsModel = new DefaultListModel<>();
+
+    /** Строка состояния (количество результатов и время поиска). */
+    private final JLabel statusLabel = new JLabel("Поиск...");
+
+    private SearchResultsDialog(Window parent, String query) {
+        super(parent, "Поиск: " + query, ModalityType.MODELESS);
+        setSize(560, 420);
+        setLocationRelativeTo(parent);
+        setLayout(new BorderLayout(5, 5));
+
+        JList<String> list = new JList<>(resultsModel);
+        list.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        add(new JScrollPane(list), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    /**
+     * Открывает окно и запускает поиск.
+     *
+     * @param parent родительский компонент
+     * @param index  полнотекстовый индекс
+     * @param query  строка запроса
+     */
+    public static void show(Component parent, SearchIndex index, String query) {
+        SearchResultsDialog dialog = new SearchResultsDialog(SwingUtilities.getWindowAncestor(parent), query);
+        dialog.setVisible(true);
+        dialog.run(index, query);
+    }
+
+    private void run(SearchIndex index, String query) {
+        long start = System.nanoTime();
+        new SwingWorker<List<StoredMessage>, Void>() {
+            @Override
+            protected List<StoredMessage> doInBackground() {
+                return index.search(query, LIMIT);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    List<StoredMessage> hits = get();
+                    SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+                    for (StoredMessage m : hits) {
+                        resultsModel.addElement(fmt.format(new Date(m.timestamp())) + "  "
+                                + (m.isDirect() ? "[private] " : "") + m.from() + ": " + m.text());
+                    }
+                    statusLabel.setText("Найдено: " + hits.size()
+                            + " (" + (System.nanoTime() - start) / 1_000_000 + " мс)");
+                } catch (Exception e) {
+                    log.log(Level.WARNING, "Search failed", e);
+                    statusLabel.setText("Ошибка поиска: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+}
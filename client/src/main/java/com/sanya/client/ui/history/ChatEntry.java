@@ -0,0 +1,42 @@
+package com.sanya.client.ui.history;
+
+/**
+ * ChatEntry — одна строка истории чата.
+ * Лёгкий неизменяемый объект: модель хранит только такие записи,
+ * а Swing-компоненты создаются лишь для видимых строк через рендерер.
+ *
+ * Назначение:
+ * - Описать текстовое, системное или голосовое сообщение в едином формате.
+ * - Хранить курсор {@code seq} для постраничной подгрузки истории из хранилища.
+ *
+ * Использование:
+ * model.append(ChatEntry.chat("Bob: hi"));
+ * model.append(ChatEntry.voice("Bob", data));
+ */
+public record ChatEntry(Kind kind, String author, String text, byte[] voiceData, long seq) {
+
+    /** Значение {@code seq} для записей, которые не были сохранены в хранилище. */
+    public static final long NO_SEQ = -1L;
+
+    /** Тип строки истории. */
+    public enum Kind {
+        CHAT,
+        SYSTEM,
+        VOICE
+    }
+
+    /** Создаёт обычное текстовое сообщение. */
+    public static ChatEntry chat(String text) {
+        return new ChatEntry(Kind.CHAT, null, text, null, NO_SEQ);
+    }
+
+    /** Создаёт системное сообщение. */
+    public static ChatEntry system(String text) {
+        return new ChatEntry(Kind.SYSTEM, null, text, null, NO_SEQ);
+    }
+
+    /** Создаёт голосовое сообщение, воспроизводимое по клику. */
+    public static ChatEntry voice(String author, byte[] data) {
+        return new ChatEntry(Kind.VOICE, author, "▶ " + author, data, NO_SEQ);
+    }
+}
@@ -0,0 +1,154 @@
+package com.sanya.client.ui.history;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * ChatEntryRenderer — рендерер строк истории чата.
+ * Один и тот же компонент переиспользуется для всех видимых строк, поэтому
+ * смена темы сводится к замене цветов и перерисовке видимой области.
+ *
+ * Назначение:
+ * - Отрисовывать текстовые, системные и голосовые сообщения с переносом по словам:
+ *   высота строки зависит от длины текста и ширины списка.
+ * - Кэшировать высоту каждой записи для текущей ширины. Разметка текста (setText + setSize)
+ *   выполняется только для записи, которой нет в кэше.
+ * - Оценивать высоту без разметки — по ширине текста в одну строку. {@link ChatHistoryListUI}
+ *   берёт оценку для невидимых строк, а точно меряет только отрисовываемые.
+ */
+public final class ChatEntryRenderer extends JTextArea implements ListCellRenderer<ChatEntry> {
+
+    /** Цвет обычного текста. */
+    private Color textColor = Color.WHITE;
+
+    /** Цвет системных сообщений. */
+    private Color systemColor = new Color(150, 150, 150);
+
+    /** Цвет голосовых сообщений. */
+    private Color voiceColor = new Color(90, 160, 255);
+
+    /** Высоты записей при ширине {@link #width}; запись удаляется вместе с выгруженной строкой. */
+    private final Map<ChatEntry, Integer> heights = new WeakHashMap<>();
+
+    /** Ширина абзацев записи в одну строку: от ширины списка не зависит и переживает её изменение. */
+    private final Map<ChatEntry, int[]> paragraphWidths = new WeakHashMap<>();
+
+    /** Ширина списка, для которой посчитаны высоты. */
+    private int width = -1;
+
+    /** Запись, которую сейчас отрисовывает компонент. */
+    private ChatEntry current;
+
+    /** Сколько раз текст размечался для измерения высоты. */
+    private int measures;
+
+    public ChatEntryRenderer(Font font) {
+        setOpaque(true);
+        setFont(font);
+        setLineWrap(true);
+        setWrapStyleWord(true);
+        setEditable(false);
+        setBorder(BorderFactory.createEmptyBorder(1, 6, 1, 6));
+    }
+
+    /**
+     * Устанавливает цвета текста для текущей темы.
+     *
+     * @param text   цвет обычных сообщений
+     * @param system цвет системных сообщений
+     * @param voice  цвет голосовых сообщений
+     */
+    public void setColors(Color text, Color system, Color voice) {
+        this.textColor = text;
+        this.systemColor = system;
+        this.voiceColor = voice;
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<? extends ChatEntry> list, ChatEntry entry,
+                                                  int index, boolean selected, boolean focused) {
+        syncWidth(list.getWidth());
+        current = entry;
+        setText(entry.text());
+        // Перенос считается по текущей ширине компонента; для известной высоты разметка не нужна
+        if (width > 0 && !heights.containsKey(entry)) setSize(width, Short.MAX_VALUE);
+        setToolTipText(entry.kind() == ChatEntry.Kind.VOICE ? "Click to play" : null);
+        setBackground(selected ? list.getSelectionBackground() : list.getBackground());
+        setForeground(switch (entry.kind()) {
+            case CHAT -> textColor;
+            case SYSTEM -> systemColor;
+            case VOICE -> voiceColor;
+        });
+        return this;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (current == null || width <= 0) return super.getPreferredSize();
+        Integer height = heights.get(current);
+        if (height == null) {
+            height = super.getPreferredSize().height;
+            heights.put(current, height);
+            measures++;
+        }
+        return new Dimension(width, height);
+    }
+
+    /** Сбрасывает кэш высот, если изменилась ширина списка. */
+    void syncWidth(int listWidth) {
+        if (listWidth != width) {
+            heights.clear();
+            width = listWidth;
+        }
+    }
+
+    /**
+     * Высота записи из кэша.
+     *
+     * @return высота или -1, если запись при текущей ширине ещё не измерялась
+     */
+    int cachedHeight(ChatEntry entry) {
+        Integer height = heights.get(entry);
+        return height != null ? height : -1;
+    }
+
+    /**
+     * Точная высота записи при ширине, заданной {@link #syncWidth(int)}: из кэша или разметкой текста.
+     */
+    int heightOf(ChatEntry entry) {
+        int cached = cachedHeight(entry);
+        if (cached >= 0) return cached;
+        current = entry;
+        setText(entry.text());
+        if (width > 0) setSize(width, Short.MAX_VALUE);
+        return getPreferredSize().height;
+    }
+
+    /**
+     * Оценка высоты без разметки: каждый абзац занимает столько строк, во сколько раз он шире списка.
+     * Перенос по словам может добавить строку — точная высота появится при отрисовке.
+     */
+    int estimateHeight(ChatEntry entry) {
+        FontMetrics fm = getFontMetrics(getFont());
+        int[] widths = paragraphWidths.computeIfAbsent(entry, e -> {
+            String[] paragraphs = e.text().split("\n", -1);
+            int[] w = new int[paragraphs.length];
+            for (int i = 0; i < w.length; i++) w[i] = fm.stringWidth(paragraphs[i]);
+            return w;
+        });
+        Insets insets = getInsets();
+        int usable = width - insets.left - insets.right;
+        int lines = 0;
+        for (int w : widths) {
+            lines += usable > 0 ? Math.max(1, (w + usable - 1) / usable) : 1;
+        }
+        return lines * fm.getHeight() + insets.top + insets.bottom;
+    }
+
+    /** Сколько раз текст размечался для измерения: растёт с числом отрисованных, а не всех строк. */
+    int measures() {
+        return measures;
+    }
+}
@@ -0,0 +1,98 @@
+package com.sanya.client.ui.history;
+
+import javax.swing.*;
+import javax.swing.plaf.basic.BasicListUI;
+import java.awt.*;
+import java.util.BitSet;
+
+/**
+ * ChatHistoryListUI — раскладка списка истории по кэшированным высотам строк.
+ *
+ * Назначение:
+ * - {@link BasicListUI} при каждом изменении модели (добавление сообщения, подгрузка страницы,
+ *   смена ширины) заново вызывает рендерер для всех строк. Здесь высоты берутся из кэша
+ *   {@link ChatEntryRenderer}, а для неизмеренных строк — его оценкой без разметки текста.
+ * - Перед отрисовкой оценённые строки в области отрисовки измеряются точно; если высота
+ *   разошлась с оценкой, список перераскладывается. Размечается только то, что видно.
+ *
+ * Ограничения:
+ * - Полоса прокрутки по оценённым строкам приблизительна и уточняется по мере прокрутки.
+ * - С другим рендерером работает как обычный {@link BasicListUI}.
+ *
+ * Потоковая модель:
+ * Только EDT.
+ */
+public final class ChatHistoryListUI extends BasicListUI {
+
+    /** Строки, высота которых в {@link #cellHeights} оценена, а не измерена. */
+    private final BitSet estimated = new BitSet();
+
+    @Override
+    protected void updateLayoutState() {
+        ChatEntryRenderer renderer = historyRenderer();
+        if (renderer == null) {
+            estimated.clear();
+            super.updateLayoutState();
+            return;
+        }
+        ListModel<Object> model = list.getModel();
+        int size = model.getSize();
+        renderer.syncWidth(list.getWidth());
+
+        cellHeight = -1;
+        cellWidth = Math.max(0, list.getWidth());
+        cellHeights = new int[size];
+        estimated.clear();
+        for (int i = 0; i < size; i++) {
+            ChatEntry entry = (ChatEntry) model.getElementAt(i);
+            int height = renderer.cachedHeight(entry);
+            if (height < 0) {
+                height = renderer.estimateHeight(entry);
+                estimated.set(i);
+            }
+            cellHeights[i] = height;
+        }
+    }
+
+    @Override
+    public void paint(Graphics g, JComponent c) {
+        maybeUpdateLayoutState();
+        ChatEntryRenderer renderer = historyRenderer();
+        if (renderer != null && !estimated.isEmpty()) {
+            measureRows(renderer, g.getClipBounds() != null ? g.getClipBounds() : list.getVisibleRect());
+        }
+        super.paint(g, c);
+    }
+
+    /** Рендерер истории или null, если у списка другой рендерер или фиксированная высота строк. */
+    private ChatEntryRenderer historyRenderer() {
+        Object renderer = list.getCellRenderer();
+        return renderer instanceof ChatEntryRenderer r && list.getFixedCellHeight() == -1 ? r : null;
+    }
+
+    /**
+     * Измеряет оценённые строки, попадающие в область. Строки ниже сдвигаются вслед
+     * за исправленной высотой, поэтому область проходится по уже исправленным высотам.
+     */
+    private void measureRows(ChatEntryRenderer renderer, Rectangle area) {
+        int size = list.getModel().getSize();
+        int row = convertYToRow(area.y);
+        if (row < 0) return;
+        int y = convertRowToY(row);
+        int bottom = area.y + area.height;
+        boolean changed = false;
+        for (; row < size && y < bottom; row++) {
+            if (estimated.get(row)) {
+                int height = renderer.heightOf((ChatEntry) list.getModel().getElementAt(row));
+                estimated.clear(row);
+                if (height != cellHeights[row]) {
+                    cellHeights[row] = height;
+                    changed = true;
+                }
+            }
+            y += cellHeights[row];
+        }
+        // Высота списка изменилась — полосе прокрутки нужен новый предпочтительный размер
+        if (changed) list.revalidate();
+    }
+}
@@ -0,0 +1,130 @@
+package com.sanya.client.ui.history;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ChatHistoryModel — модель списка сообщений для виртуализированного {@link JList}.
+ * Хранит только данные ({@link ChatEntry}); компоненты для отрисовки создаются рендерером
+ * лишь для видимых строк.
+ *
+ * Назначение:
+ * - Добавление новых сообщений в конец за O(1).
+ * - Подгрузка старой истории в начало страницами из {@link HistorySource} за O(размер страницы).
+ *
+ * Устройство:
+ * Подгруженная история хранится в списке {@code older} в обратном порядке,
+ * поэтому вставка в начало не сдвигает уже загруженные элементы.
+ * Размер ограничивает владелец списка через {@link #trimOldest(int)}: самые старые строки
+ * вытесняются, подгруженная история при прокрутке к началу загружается снова.
+ *
+ * Потоковая модель:
+ * Все методы вызываются только из EDT.
+ */
+public final class ChatHistoryModel extends AbstractListModel<ChatEntry> {
+
+    /** Подгруженная старая история (от новых к старым). */
+    private final List<ChatEntry> older = new ArrayList<>();
+
+    /** Сообщения текущей сессии и загруженные при старте (от старых к новым). */
+    private final List<ChatEntry> newer = new ArrayList<>();
+
+    /** Источник старой истории. */
+    private HistorySource source = HistorySource.EMPTY;
+
+    /** Признак того, что в источнике ещё есть более старые записи. */
+    private boolean hasMoreOlder = true;
+
+    @Override
+    public int getSize() {
+        return older.size() + newer.size();
+    }
+
+    @Override
+    public ChatEntry getElementAt(int index) {
+        int o = older.size();
+        return index < o ? older.get(o - 1 - index) : newer.get(index - o);
+    }
+
+    /** Назначает источник истории и разрешает дальнейшую подгрузку. */
+    public void setSource(HistorySource source) {
+        this.source = source != null ? source : HistorySource.EMPTY;
+        this.hasMoreOlder = true;
+    }
+
+    /** Проверяет, можно ли ещё подгрузить старые сообщения. */
+    public boolean hasMoreOlder() {
+        return hasMoreOlder;
+    }
+
+    /** Добавляет сообщение в конец истории. */
+    public void append(ChatEntry entry) {
+        newer.add(entry);
+        int index = getSize() - 1;
+        fireIntervalAdded(this, index, index);
+    }
+
+    /**
+     * Подгружает страницу более старых сообщений в начало списка.
+     *
+     * @param limit максимальное количество записей
+     * @return количество добавленных записей
+     */
+    public int loadOlder(int limit) {
+        if (!hasMoreOlder) return 0;
+
+        ChatEntry oldest = getSize() > 0 ? getElementAt(0) : null;
+        List<ChatEntry> page = source.loadBefore(oldest, limit);
+        if (page.isEmpty()) {
+            hasMoreOlder = false;
+            return 0;
+        }
+        for (int i = page.size() - 1; i >= 0; i--) {
+            older.add(page.get(i));
+        }
+        if (page.size() < limit) hasMoreOlder = false;
+        fireIntervalAdded(this, 0, page.size() - 1);
+        return page.size();
+    }
+
+    /**
+     * Вытесняет самые старые строки, оставляя не больше {@code limit}.
+     * Вытесненная подгруженная история снова доступна через {@link #loadOlder(int)}.
+     * Сообщений текущей сессии в источнике по курсору нет, поэтому после их вытеснения подгрузка прекращается.
+     *
+     * @param limit сколько строк оставить
+     * @return количество удалённых строк
+     */
+    public int trimOldest(int limit) {
+        int excess = getSize() - limit;
+        if (excess <= 0) return 0;
+
+        int fromOlder = Math.min(excess, older.size());
+        older.subList(older.size() - fromOlder, older.size()).clear();
+        int fromNewer = excess - fromOlder;
+        if (fromNewer > 0) {
+            newer.subList(0, fromNewer).clear();
+            hasMoreOlder = false;
+        } else {
+            hasMoreOlder = true;
+        }
+        fireIntervalRemoved(this, 0, excess - 1);
+        return excess;
+    }
+
+    /** Сообщает списку, что высоты всех строк нужно пересчитать (например, после изменения ширины). */
+    public void remeasure() {
+        int size = getSize();
+        if (size > 0) fireContentsChanged(this, 0, size - 1);
+    }
+
+    /** Очищает историю. Уже очищенная история из источника повторно не подгружается. */
+    public void clear() {
+        int size = getSize();
+        older.clear();
+        newer.clear();
+        hasMoreOlder = false;
+        if (size > 0) fireIntervalRemoved(this, 0, size - 1);
+    }
+}
@@ -0,0 +1,27 @@
+package com.sanya.client.ui.history;
+
+import java.util.List;
+
+/**
+ * HistorySource — источник старой истории для {@link ChatHistoryModel}.
+ * Позволяет подгружать сообщения страницами при прокрутке к началу списка,
+ * не загружая всю историю в память.
+ *
+ * Использование:
+ * Реализуется поверх локального хранилища сообщений и передаётся в модель.
+ */
+@FunctionalInterface
+public interface HistorySource {
+
+    /** Источник без истории — модель работает только с новыми сообщениями. */
+    HistorySource EMPTY = (before, limit) -> List.of();
+
+    /**
+     * Возвращает до {@code limit} записей, предшествующих {@code before}, в хронологическом порядке.
+     *
+     * @param before самая старая из уже загруженных записей или null, если модель пуста
+     * @param limit  максимальный размер страницы
+     * @return записи от старых к новым; пустой список — истории больше нет
+     */
+    List<ChatEntry> loadBefore(ChatEntry before, int limit);
+}
@@ -0,0 +1,56 @@
+package com.sanya.client.ui.history;
+
+import com.sanya.client.store.LocalMessageStore;
+import com.sanya.client.store.StoredMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MessageStoreHistorySource — источник истории для {@link ChatHistoryModel}
+ * поверх локального хранилища {@link LocalMessageStore}.
+ *
+ * Назначение:
+ * - Читать общий таймлайн ({@link LocalMessageStore#ALL}) страницами назад.
+ * - Форматировать сохранённые сообщения так же, как они отображаются при получении.
+ */
+public final class MessageStoreHistorySource implements HistorySource {
+
+    private final LocalMessageStore store;
+    private final String self;
+
+    /**
+     * @param store хранилище сообщений
+     * @param self  имя текущего пользователя (для подписи «Я:»)
+     */
+    public MessageStoreHistorySource(LocalMessageStore store, String self) {
+        this.store = store;
+        this.self = self;
+    }
+
+    @Override
+    public List<ChatEntry> loadBefore(ChatEntry before, int limit) {
+        // Сообщения текущей сессии уже показаны в списке — продолжаем с границы сессии
+        long beforeSeq = before == null || before.seq() == ChatEntry.NO_SEQ
+                ? store.sessionStartSeq()
+                : before.seq();
+
+        List<StoredMessage> page = store.loadBefore(LocalMessageStore.ALL, beforeSeq, limit);
+        List<ChatEntry> entries = new ArrayList<>(page.size());
+        for (StoredMessage m : page) {
+            entries.add(toEntry(m));
+        }
+        return entries;
+    }
+
+    private ChatEntry toEntry(StoredMessage m) {
+        if (m.system()) {
+            return new ChatEntry(ChatEntry.Kind.SYSTEM, m.from(), "[SYSTEM] " + m.text(), null, m.seq());
+        }
+        String prefix = m.isDirect() ? "[private] " : "";
+        String text = m.from().equals(self)
+                ? "Я: " + prefix + m.text()
+                : m.from() + ": " + prefix + m.text();
+        return new ChatEntry(ChatEntry.Kind.CHAT, m.from(), text, null, m.seq());
+    }
+}
@@ -2,7 +2,7 @@ package com.sanya.client.ui.input;
 
 import com.sanya.client.ApplicationContext;
 import com.sanya.client.service.audio.VoiceService;
-import com.sanya.client.service.files.FileSender;
+import com.sanya.client.service.files.BlobShareService;
 import com.sanya.events.chat.MessageSendEvent;
 import com.sanya.events.system.SystemMessageEvent;
 
@@ -42,9 +42,6 @@ public final class ChatInputPanel extends JPanel {
     /** Кнопка записи голосового сообщения. */
     private final JButton voice = new JButton("🎤");
 
-    /** Сервис управления голосовыми сообщениями. */
-    private final VoiceService voiceService;
-
     /** Контекст приложения, предоставляющий доступ к сервисам и шине событий. */
     private final ApplicationContext ctx;
 
@@ -55,7 +52,6 @@ public final class ChatInputPanel extends JPanel {
      */
     public ChatInputPanel(ApplicationContext ctx) {
         this.ctx = ctx;
-        this.voiceService = ctx.get(VoiceService.class);
 
         setLayout(new BorderLayout());
 
@@ -108,8 +104,8 @@ public final class ChatInputPanel extends JPanel {
     }
 
     /**
-     * Открывает диалог выбора файла и отправляет выбранный файл в отдельном потоке.
-     * Использует {@link FileSender}, доступный через {@link ApplicationContext}.
+     * Открывает диалог выбора файла и делится выбранным файлом в отдельном потоке.
+     * Файл загружается в хранилище сервера через {@link BlobShareService}, в чат уходит ссылка.
      */
     private void doSendFile() {
         File chosen = ctx.getUIFacade().askFileToSend();
@@ -117,12 +113,7 @@ public final class ChatInputPanel extends JPanel {
 
         new Thread(() -> {
             try {
-                String recipient = ctx.getUserSettings().getName();
-                ctx.services().fileSender().sendFile(
-                        recipient,
-                        chosen,
-                        ctx.services().chat()::sendObject
-                );
+                ctx.get(BlobShareService.class).share(chosen, ctx.services().chat()::sendObject);
             } catch (Exception ex) {
                 ctx.getEventBus().publish(
                         new SystemMessageEvent("[ERROR] Отправка файла: " + ex.getMessage())
@@ -136,6 +127,7 @@ public final class ChatInputPanel extends JPanel {
      * Запускает запись голосового сообщения через {@link VoiceService}.
      */
     private void voicePressed() {
+        VoiceService voiceService = voiceService();
         if (voiceService == null) return;
 
         voice.setText("⏺ REC");
@@ -152,6 +144,7 @@ public final class ChatInputPanel extends JPanel {
      * Останавливает запись голосового сообщения.
      */
     private void voiceReleased() {
+        VoiceService voiceService = voiceService();
         if (voiceService == null) return;
 
         SwingUtilities.invokeLater(() -> {
@@ -159,4 +152,9 @@ public final class ChatInputPanel extends JPanel {
             voice.setText("🎤");
         });
     }
+
+    /** Сервис голосовых сообщений; создаётся при первой записи, а не при построении панели. */
+    private VoiceService voiceService() {
+        return ctx.get(VoiceService.class);
+    }
 }
@@ -3,15 +3,23 @@ package com.sanya.client.ui.main;
 import com.sanya.client.ApplicationContext;
 import com.sanya.client.ui.NotificationManager;
 import com.sanya.client.service.audio.VoiceService;
+import com.sanya.client.store.search.SearchIndex;
+import com.sanya.client.ui.dialog.SearchResultsDialog;
+import com.sanya.client.ui.history.ChatEntry;
+import com.sanya.client.ui.history.ChatEntryRenderer;
+import com.sanya.client.ui.history.ChatHistoryListUI;
+import com.sanya.client.ui.history.ChatHistoryModel;
+import com.sanya.client.ui.history.HistorySource;
 import com.sanya.events.system.Theme;
 import com.sanya.events.system.ThemeChangedEvent;
 import com.sanya.events.voice.VoiceLevelEvent;
 
 import javax.swing.*;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.StyleContext;
-import javax.swing.text.StyledDocument;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
 
 /**
@@ -24,10 +32,13 @@ import java.util.List;
  * - Поддерживает интеграцию с {@link com.sanya.client.facade.swing.SwingUIFacade}.
  *
  * Архитектура:
- * - Центральная область: {@link JTextPane} для сообщений.
+ * - Центральная область: виртуализированный {@link JList} истории сообщений
+ *   ({@link ChatHistoryModel} + переиспользуемый {@link ChatEntryRenderer} + {@link ChatHistoryListUI}).
+ *   Текст размечается только для видимых строк, старая история подгружается
+ *   страницами при прокрутке к началу и вытесняется сверх {@link #HISTORY_LIMIT}, смена темы стоит O(видимых строк).
  * - Правая панель: {@link JList} со списком активных пользователей.
  * - Нижняя панель: {@link com.sanya.client.ui.input.ChatInputPanel} и индикатор записи.
- * - Верхняя панель: кнопка смены темы оформления.
+ * - Верхняя панель: поле поиска по локальной истории и кнопка смены темы оформления.
  *
  * Потоковая модель:
  * Все операции с UI выполняются в EDT через {@link SwingUtilities#invokeLater(Runnable)}.
@@ -41,8 +52,43 @@ public final class ChatMainPanel extends JPanel {
     /** Контекст приложения, обеспечивающий доступ к сервисам и шине событий. */
     private final ApplicationContext ctx;
 
-    /** Область чата для отображения сообщений. */
-    private final JTextPane chatPane = new JTextPane();
+    /** Размер страницы при подгрузке старой истории. */
+    private static final int HISTORY_PAGE = 200;
+
+    /** Сколько строк истории держать в памяти, пока пользователь читает последние сообщения. */
+    private static final int HISTORY_LIMIT = 5_000;
+
+    /** Модель истории сообщений. */
+    private final ChatHistoryModel historyModel = new ChatHistoryModel();
+
+    /**
+     * Виртуализированный список сообщений; всегда во всю ширину окна, чтобы текст переносился.
+     * Раскладка — {@link ChatHistoryListUI}: по кэшированным высотам, без разметки всех строк.
+     */
+    private final JList<ChatEntry> historyList = new JList<>(historyModel) {
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public void updateUI() {
+            setUI(new ChatHistoryListUI());
+            if (getCellRenderer() instanceof Component renderer) SwingUtilities.updateComponentTreeUI(renderer);
+        }
+    };
+
+    /** Переиспользуемый рендерер строк истории. */
+    private final ChatEntryRenderer historyRenderer = new ChatEntryRenderer(new Font("Segoe UI", Font.PLAIN, 13));
+
+    /** Высота одной строки текста — шаг прокрутки и допуск «пользователь внизу списка». */
+    private final int lineHeight = historyRenderer.getFontMetrics(historyRenderer.getFont()).getHeight() + 4;
+
+    /** Идёт подгрузка старой истории: позиция прокрутки ещё не восстановлена. */
+    private boolean loadingOlder;
+
+    /** Прокрутка списка сообщений. */
+    private final JScrollPane historyScroll = new JScrollPane(historyList);
 
     /** Модель списка пользователей. */
     private final DefaultListModel<String> userListModel = new DefaultListModel<>();
@@ -50,12 +96,12 @@ public final class ChatMainPanel extends JPanel {
     /** Элемент UI — список активных пользователей. */
     private final JList<String> userList = new JList<>(userListModel);
 
+    /** Поле поиска по локальной истории. */
+    private final JTextField searchField = new JTextField();
+
     /** Метка статуса записи звука. */
     private final JLabel recordStatusLabel = new JLabel(" ");
 
-    /** Документ для форматированного текста. */
-    private final StyledDocument doc = chatPane.getStyledDocument();
-
     /** Таймер мигания индикатора записи. */
     private Timer recTimer;
 
@@ -67,19 +113,6 @@ public final class ChatMainPanel extends JPanel {
         this.ctx = ctx;
         setLayout(new BorderLayout());
 
-        // Настройка базовых стилей текста
-        StyleContext sc = StyleContext.getDefaultStyleContext();
-
-        javax.swing.text.Style def = sc.addStyle("default", null);
-        def.addAttribute(javax.swing.text.StyleConstants.FontFamily, "Segoe UI");
-        def.addAttribute(javax.swing.text.StyleConstants.FontSize, 13);
-        def.addAttribute(javax.swing.text.StyleConstants.Foreground, Color.WHITE);
-        doc.addStyle("default", def);
-
-        javax.swing.text.Style sys = sc.addStyle("system", def);
-        sys.addAttribute(javax.swing.text.StyleConstants.Foreground, new Color(150, 150, 150));
-        doc.addStyle("system", sys);
-
         buildUI();
 
         // Подписка на смену темы
@@ -93,9 +126,8 @@ public final class ChatMainPanel extends JPanel {
 
     /** Строит пользовательский интерфейс панели. */
     private void buildUI() {
-        chatPane.setEditable(false);
-        chatPane.setMargin(new Insets(6, 6, 6, 6));
-        add(new JScrollPane(chatPane), BorderLayout.CENTER);
+        buildHistoryList();
+        add(historyScroll, BorderLayout.CENTER);
 
         JPanel bottomPanel = new JPanel(new BorderLayout());
         recordStatusLabel.setHorizontalAlignment(SwingConstants.CENTER);
@@ -111,22 +143,120 @@ public final class ChatMainPanel extends JPanel {
 
         JButton themeBtn = new JButton("🌓");
         themeBtn.addActionListener(e -> ctx.services().theme().toggle());
-        add(themeBtn, BorderLayout.NORTH);
+
+        searchField.setToolTipText("Поиск: слово, нач*, \"точная фраза\" — Enter");
+        searchField.addActionListener(e -> runSearch());
+
+        JPanel topPanel = new JPanel(new BorderLayout(5, 0));
+        topPanel.add(new JLabel("🔍"), BorderLayout.WEST);
+        topPanel.add(searchField, BorderLayout.CENTER);
+        topPanel.add(themeBtn, BorderLayout.EAST);
+        add(topPanel, BorderLayout.NORTH);
+    }
+
+    /** Запускает поиск по локальной истории; сам запрос выполняется вне EDT. */
+    private void runSearch() {
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) return;
+        if (!ctx.di().isRegistered(SearchIndex.class)) {
+            NotificationManager.showInfo("Search is unavailable: local history is not open");
+            return;
+        }
+        SearchResultsDialog.show(this, ctx.get(SearchIndex.class), query);
+    }
+
+    /**
+     * Настраивает список истории: строки переносятся по ширине списка и имеют разную высоту
+     * (рендерер кэширует её, невидимые строки оцениваются), подгрузка старых сообщений — при прокрутке к началу.
+     */
+    private void buildHistoryList() {
+        historyList.setCellRenderer(historyRenderer);
+        historyList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        historyScroll.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+        historyScroll.getVerticalScrollBar().setUnitIncrement(lineHeight);
+
+        historyScroll.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && e.getValue() == 0 && !loadingOlder && historyModel.hasMoreOlder()) {
+                SwingUtilities.invokeLater(this::loadOlderHistory);
+            }
+        });
+
+        // Перенос зависит от ширины: при её изменении строки перемеряются
+        historyList.addComponentListener(new ComponentAdapter() {
+            private int width;
+
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (historyList.getWidth() != width) {
+                    width = historyList.getWidth();
+                    historyModel.remeasure();
+                }
+            }
+        });
+
+        // Воспроизведение голосового сообщения по клику на строку
+        historyList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = historyList.locationToIndex(e.getPoint());
+                if (index < 0 || !historyList.getCellBounds(index, index).contains(e.getPoint())) return;
+                ChatEntry entry = historyModel.getElementAt(index);
+                if (entry.kind() == ChatEntry.Kind.VOICE) {
+                    ctx.get(VoiceService.class).playTemp(entry.voiceData());
+                }
+            }
+        });
+    }
+
+    /**
+     * Подключает источник старой истории и загружает последнюю страницу.
+     *
+     * @param source источник истории (например, локальное хранилище сообщений)
+     */
+    public void setHistorySource(HistorySource source) {
+        SwingUtilities.invokeLater(() -> {
+            historyModel.setSource(source);
+            loadOlderHistory();
+            scrollToBottom();
+        });
+    }
+
+    /**
+     * Подгружает страницу старых сообщений, сохраняя видимую позицию прокрутки.
+     * Позиция восстановится после раскладки: до неё максимум полосы прокрутки ещё старый,
+     * и новое значение было бы обрезано. Пока позиция не восстановлена, новые подгрузки не запускаются.
+     */
+    private void loadOlderHistory() {
+        if (loadingOlder) return;
+        JViewport viewport = historyScroll.getViewport();
+        int first = historyList.getFirstVisibleIndex();
+        int offset = first >= 0 ? viewport.getViewPosition().y - historyList.getCellBounds(first, first).y : 0;
+        int added = historyModel.loadOlder(HISTORY_PAGE);
+        if (added == 0 || first < 0) return;
+
+        loadingOlder = true;
+        historyList.revalidate();
+        SwingUtilities.invokeLater(() -> {
+            historyScroll.validate();
+            Rectangle anchor = historyList.getCellBounds(first + added, first + added);
+            if (anchor != null) viewport.setViewPosition(new Point(0, anchor.y + offset));
+            loadingOlder = false;
+        });
     }
 
     /** Добавляет сообщение в чат. */
     public void appendChatMessage(String msg) {
-        appendText(msg, "default");
+        appendEntry(ChatEntry.chat(msg));
     }
 
     /** Добавляет системное сообщение в чат. */
     public void appendSystemMessage(String msg) {
-        appendText(msg, "system");
+        appendEntry(ChatEntry.system(msg));
     }
 
     /** Очищает историю сообщений. */
     public void clearChat() {
-        SwingUtilities.invokeLater(() -> chatPane.setText(""));
+        SwingUtilities.invokeLater(historyModel::clear);
     }
 
     /** Обновляет список активных пользователей. */
@@ -147,14 +277,9 @@ public final class ChatMainPanel extends JPanel {
         NotificationManager.showInfo((outgoing ? "File sent: " : "File received: ") + filename);
     }
 
-    /** Добавляет в чат кнопку воспроизведения голосового сообщения. */
+    /** Добавляет в чат строку голосового сообщения, воспроизводимого по клику. */
     public void addVoiceMessage(String username, byte[] data) {
-        JButton playButton = new JButton("▶ " + username);
-        playButton.addActionListener(ev -> ctx.get(VoiceService.class).playTemp(data));
-        chatPane.insertComponent(playButton);
-        try {
-            doc.insertString(doc.getLength(), "\n", null);
-        } catch (BadLocationException ignored) {}
+        appendEntry(ChatEntry.voice(username, data));
     }
 
     /** Применяет выбранную тему оформления. */
@@ -162,33 +287,51 @@ public final class ChatMainPanel extends JPanel {
         SwingUtilities.invokeLater(() -> refreshThemeColors(theme));
     }
 
-    /** Добавляет текст в окно чата с указанным стилем. */
-    private void appendText(String msg, String style) {
+    /** Добавляет строку в историю и прокручивает вниз, если пользователь был внизу списка. */
+    private void appendEntry(ChatEntry entry) {
+        SwingUtilities.invokeLater(() -> {
+            JScrollBar bar = historyScroll.getVerticalScrollBar();
+            boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - lineHeight;
+            historyModel.append(entry);
+            if (atBottom) {
+                // Старые строки вытесняются страницами и только когда пользователь их не читает
+                if (historyModel.getSize() > HISTORY_LIMIT + HISTORY_PAGE) historyModel.trimOldest(HISTORY_LIMIT);
+                scrollToBottom();
+            }
+        });
+    }
+
+    /** Прокручивает историю к последнему сообщению — после раскладки, когда список уже вырос. */
+    private void scrollToBottom() {
+        historyList.revalidate();
         SwingUtilities.invokeLater(() -> {
-            try {
-                if (doc.getLength() > 0) doc.insertString(doc.getLength(), "\n", null);
-                doc.insertString(doc.getLength(), msg, doc.getStyle(style));
-                chatPane.setCaretPosition(doc.getLength());
-            } catch (BadLocationException ignored) {}
+            historyScroll.validate();
+            int last = historyModel.getSize() - 1;
+            if (last >= 0) historyList.ensureIndexIsVisible(last);
         });
     }
 
-    /** Обновляет цвета элементов в зависимости от текущей темы. */
+    /**
+     * Обновляет цвета элементов в зависимости от текущей темы.
+     * История не перестилизуется целиком: рендерер получает новые цвета,
+     * а перерисовываются только видимые строки.
+     */
     private void refreshThemeColors(Theme theme) {
         Color bg = (theme == Theme.DARK) ? Color.BLACK : Color.WHITE;
         Color fg = (theme == Theme.DARK) ? Color.WHITE : Color.BLACK;
 
-        chatPane.setBackground(bg);
-        chatPane.setForeground(fg);
+        historyRenderer.setColors(fg, new Color(150, 150, 150),
+                (theme == Theme.DARK) ? new Color(90, 160, 255) : new Color(0, 90, 200));
+        historyList.setBackground(bg);
+        historyList.setForeground(fg);
         userList.setBackground(bg);
         userList.setForeground(fg);
+        searchField.setBackground(bg);
+        searchField.setForeground(fg);
+        searchField.setCaretColor(fg);
         recordStatusLabel.setForeground(fg);
 
-        chatPane.selectAll();
-        chatPane.setCharacterAttributes(chatPane.getStyle(StyleContext.DEFAULT_STYLE), true);
-        chatPane.setForeground(fg);
-        chatPane.setBackground(bg);
-        chatPane.repaint();
+        historyList.repaint();
     }
 
     /** Обновляет визуальный индикатор уровня громкости записи микрофона. */
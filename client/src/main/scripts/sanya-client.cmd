@@ -0,0 +1,6 @@
+@echo off
+rem Starts client.jar; uses the AppCDS archive client.jsa (mvn -Pappcds package) when present.
+set "DIR=%~dp0"
+set "CDS="
+if exist "%DIR%client.jsa" set "CDS=-XX:SharedArchiveFile=%DIR%client.jsa -Xshare:auto"
+java %CDS% %JAVA_OPTS% -jar "%DIR%client.jar" %*
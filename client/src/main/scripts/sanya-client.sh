@@ -0,0 +1,9 @@
+#!/bin/sh
+# Запуск client.jar; если рядом лежит архив AppCDS (client.jsa, mvn -Pappcds package), классы берутся из него.
+# При несовпадении архива с JVM или jar (-Xshare:auto) JVM молча запускается без него.
+DIR="$(cd "$(dirname "$0")" && pwd)"
+CDS=""
+if [ -f "$DIR/client.jsa" ]; then
+    CDS="-XX:SharedArchiveFile=$DIR/client.jsa -Xshare:auto"
+fi
+exec java $CDS $JAVA_OPTS -jar "$DIR/client.jar" "$@"
@@ -0,0 +1,101 @@
+package com.sanya.client.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupOrchestratorTest {
+
+    @Test
+    void testIndependentStagesOverlapAndDependentsWait() throws Exception {
+        StartupOrchestrator startup = new StartupOrchestrator();
+        CountDownLatch both = new CountDownLatch(2);
+
+        // Каждый из двух этапов ждёт начала другого: последовательный запуск не завершился бы
+        CompletableFuture<String> keys = startup.stage("keys", () -> {
+            both.countDown();
+            assertTrue(both.await(5, TimeUnit.SECONDS));
+            return "k";
+        });
+        CompletableFuture<String> ui = startup.stage("ui", () -> {
+            both.countDown();
+            assertTrue(both.await(5, TimeUnit.SECONDS));
+            return "u";
+        });
+        CompletableFuture<String> wire = startup.stage("wire", () -> keys.join() + ui.join(), keys, ui);
+
+        assertEquals("ku", wire.get(5, TimeUnit.SECONDS));
+        startup.milestone("first-frame");
+        assertEquals(Set.of("keys", "ui", "wire", "first-frame"), startup.timings().keySet());
+        assertTrue(startup.timings().get("wire") >= startup.timings().get("keys"));
+    }
+
+    @Test
+    void testFailurePropagatesToDependentsWithoutRunningThem() {
+        StartupOrchestrator startup = new StartupOrchestrator();
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Object> broken = startup.stage("keystore", () -> {
+            throw new IOException("disk");
+        });
+        CompletableFuture<Object> after = startup.stage("connect", () -> {
+            ran.set(true);
+            return null;
+        }, broken);
+
+        CompletionException e = assertThrows(CompletionException.class, after::join);
+        assertInstanceOf(IOException.class, e.getCause());
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void testStageRunsOnItsExecutorAndStagesMayAddStages() throws Exception {
+        StartupOrchestrator startup = new StartupOrchestrator();
+        ExecutorService edt = Executors.newSingleThreadExecutor(r -> new Thread(r, "Fake-EDT"));
+        try {
+            CompletableFuture<String> keys = startup.stage("keys", () -> Thread.currentThread().getName());
+            CompletableFuture<String> ui = startup.stage("ui", edt, () -> Thread.currentThread().getName(), keys);
+            assertEquals("Fake-EDT", ui.get(5, TimeUnit.SECONDS));
+            assertEquals("Startup-Stage", keys.get());
+
+            // Этап, добавленный из другого этапа после уже завершённой предпосылки, не ждёт освобождения пула
+            CompletableFuture<String> outer = startup.stage("outer",
+                    () -> startup.stage("inner", () -> "inner", keys).get(5, TimeUnit.SECONDS));
+            assertEquals("inner", outer.get(5, TimeUnit.SECONDS));
+            assertEquals(Set.of("keys", "ui", "inner", "outer"), startup.timings().keySet());
+        } finally {
+            edt.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailureReachesTransitiveDependentsButNotSiblings() throws Exception {
+        StartupOrchestrator startup = new StartupOrchestrator();
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Object> keystore = startup.stage("keystore", () -> {
+            throw new IOException("disk");
+        });
+        CompletableFuture<Object> keys = startup.stage("keys", () -> null, keystore);
+        CompletableFuture<String> ui = startup.stage("ui", () -> "ui");
+        CompletableFuture<Object> wire = startup.stage("wire", () -> {
+            ran.set(true);
+            return null;
+        }, keys, ui);
+
+        // Причина доходит через два уровня без вложенных обёрток; независимый этап завершается
+        CompletionException e = assertThrows(CompletionException.class, wire::join);
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals("ui", ui.get(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+        assertEquals(Set.of("ui"), startup.timings().keySet());
+    }
+}
@@ -0,0 +1,275 @@
+package com.sanya.client.ui.history;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatHistoryModelTest {
+
+    /**
+     * Источник из {@code total} записей с seq 0..total-1; запоминает курсоры запросов.
+     * Запись без seq (сообщение текущей сессии) — граница сессии, как в хранилище.
+     */
+    private static final class Source implements HistorySource {
+        final List<Long> cursors = new ArrayList<>();
+        final int total;
+
+        Source(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public List<ChatEntry> loadBefore(ChatEntry before, int limit) {
+            long end = before == null || before.seq() == ChatEntry.NO_SEQ ? total : before.seq();
+            cursors.add(end);
+            List<ChatEntry> page = new ArrayList<>();
+            for (long s = Math.max(0, end - limit); s < end; s++) {
+                page.add(new ChatEntry(ChatEntry.Kind.CHAT, "a", "m" + s, null, s));
+            }
+            return page;
+        }
+    }
+
+    /** Журнал событий модели в виде "тип:от-до". */
+    private static List<String> record(ChatHistoryModel model) {
+        List<String> events = new ArrayList<>();
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                events.add("added:" + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                events.add("removed:" + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                events.add("changed:" + e.getIndex0() + "-" + e.getIndex1());
+            }
+        });
+        return events;
+    }
+
+    @Test
+    void testPagesArePrependedInChronologicalOrderBeforeSessionMessages() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        Source source = new Source(5);
+        model.setSource(source);
+        model.append(ChatEntry.chat("live"));
+        List<String> events = record(model);
+
+        assertEquals(2, model.loadOlder(2));
+        assertEquals(2, model.loadOlder(2));
+
+        // Вторая страница запрошена от самой старой загруженной записи и вставлена перед первой
+        assertEquals(List.of(5L, 3L), source.cursors);
+        assertEquals(5, model.getSize());
+        for (int i = 0; i < 4; i++) assertEquals("m" + (i + 1), model.getElementAt(i).text());
+        assertEquals("live", model.getElementAt(4).text());
+        assertEquals(List.of("added:0-1", "added:0-1"), events);
+    }
+
+    @Test
+    void testFirstCursorIsSessionMessageWhenNothingLoaded() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        List<ChatEntry> seen = new ArrayList<>();
+        ChatEntry live = ChatEntry.chat("live");
+        model.append(live);
+        model.setSource((before, limit) -> {
+            seen.add(before);
+            return List.of();
+        });
+        model.loadOlder(10);
+        assertSame(live, seen.get(0));
+
+        ChatHistoryModel empty = new ChatHistoryModel();
+        empty.setSource((before, limit) -> {
+            seen.add(before);
+            return List.of();
+        });
+        empty.loadOlder(10);
+        assertNull(seen.get(1));
+    }
+
+    @Test
+    void testShortPageEndsHistoryWithoutFurtherQueries() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        Source source = new Source(3);
+        model.setSource(source);
+
+        assertEquals(3, model.loadOlder(10));
+        assertFalse(model.hasMoreOlder());
+        assertEquals(0, model.loadOlder(10));
+        assertEquals(1, source.cursors.size());
+    }
+
+    @Test
+    void testExactPageLeavesOneEmptyQueryThenStops() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        Source source = new Source(4);
+        model.setSource(source);
+        List<String> events = record(model);
+
+        assertEquals(4, model.loadOlder(4));
+        assertTrue(model.hasMoreOlder());
+        assertEquals(0, model.loadOlder(4));
+        assertFalse(model.hasMoreOlder());
+        // Пустая страница не порождает событие с отрицательным интервалом
+        assertEquals(List.of("added:0-3"), events);
+    }
+
+    @Test
+    void testAppendAfterLoadedHistoryReportsLastIndex() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        model.setSource(new Source(3));
+        model.loadOlder(10);
+        List<String> events = record(model);
+
+        model.append(ChatEntry.system("joined"));
+
+        assertEquals(List.of("added:3-3"), events);
+        assertEquals("joined", model.getElementAt(3).text());
+        assertEquals("m0", model.getElementAt(0).text());
+    }
+
+    @Test
+    void testClearStopsPagingUntilNewSource() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        Source source = new Source(10);
+        model.setSource(source);
+        model.loadOlder(2);
+        model.append(ChatEntry.chat("live"));
+        List<String> events = record(model);
+
+        model.clear();
+        assertEquals(0, model.getSize());
+        assertEquals(0, model.loadOlder(2));
+        assertEquals(1, source.cursors.size());
+        assertEquals(List.of("removed:0-2"), events);
+
+        model.clear();
+        assertEquals(1, events.size());
+
+        model.setSource(source);
+        assertTrue(model.hasMoreOlder());
+        assertEquals(2, model.loadOlder(2));
+    }
+
+    @Test
+    void testRemeasureCoversAllRowsAndSkipsEmptyModel() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        List<String> events = record(model);
+        model.remeasure();
+        assertTrue(events.isEmpty());
+
+        model.setSource(new Source(3));
+        model.loadOlder(10);
+        model.append(ChatEntry.chat("live"));
+        events.clear();
+        model.remeasure();
+        assertEquals(List.of("changed:0-3"), events);
+    }
+
+    @Test
+    void testRendererWrapsLongMessagesToTheListWidth() {
+        ChatEntryRenderer renderer = new ChatEntryRenderer(new Font(Font.DIALOG, Font.PLAIN, 13));
+        JList<ChatEntry> list = new JList<>();
+        list.setSize(200, 400);
+
+        ChatEntry shortEntry = ChatEntry.chat("hi");
+        ChatEntry longEntry = ChatEntry.chat("word ".repeat(100));
+        ChatEntry multiLine = ChatEntry.chat("one\ntwo\nthree");
+        int one = renderer.getListCellRendererComponent(list, shortEntry, 0, false, false).getPreferredSize().height;
+        int wrapped = renderer.getListCellRendererComponent(list, longEntry, 1, false, false).getPreferredSize().height;
+        int lines = renderer.getListCellRendererComponent(list, multiLine, 2, false, false).getPreferredSize().height;
+
+        assertTrue(wrapped > 3 * one, "long text wraps: " + one + " vs " + wrapped);
+        assertTrue(lines > 2 * one, "explicit line breaks kept: " + one + " vs " + lines);
+        assertEquals(200, renderer.getPreferredSize().width);
+
+        // Шире список — меньше строк переноса
+        list.setSize(800, 400);
+        int wide = renderer.getListCellRendererComponent(list, longEntry, 1, false, false).getPreferredSize().height;
+        assertTrue(wide < wrapped, "narrower after widening: " + wrapped + " vs " + wide);
+    }
+
+    @Test
+    void testListLaysOutByCachedHeightsAndMeasuresOnlyPaintedRows() {
+        ChatEntryRenderer renderer = new ChatEntryRenderer(new Font(Font.DIALOG, Font.PLAIN, 13));
+        ChatHistoryModel model = new ChatHistoryModel();
+        JList<ChatEntry> list = new JList<>(model);
+        list.setUI(new ChatHistoryListUI());
+        list.setCellRenderer(renderer);
+        list.setSize(300, 200);
+        for (int i = 0; i < 1000; i++) model.append(ChatEntry.chat("message " + i + " " + "word ".repeat(i % 30)));
+
+        // Раскладка всей модели — по оценкам, без разметки текста
+        list.getPreferredSize();
+        assertEquals(0, renderer.measures());
+
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.createGraphics();
+        g.setClip(0, 0, 300, 200);
+        list.getUI().paint(g, list);
+        int painted = renderer.measures();
+        assertTrue(painted > 0 && painted < 50, "measured: " + painted);
+        assertEquals(renderer.cachedHeight(model.getElementAt(0)), list.getCellBounds(0, 0).height);
+
+        // Новое сообщение не перемеряет уже измеренные строки
+        model.append(ChatEntry.chat("new"));
+        list.getPreferredSize();
+        list.getUI().paint(g, list);
+        assertEquals(painted, renderer.measures());
+
+        // Смена ширины: до отрисовки ничего не размечается
+        list.setSize(500, 200);
+        model.remeasure();
+        list.getPreferredSize();
+        assertEquals(painted, renderer.measures());
+        g.dispose();
+    }
+
+    @Test
+    void testTrimDropsLoadedHistoryFirstAndKeepsItReloadable() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        Source source = new Source(10);
+        model.setSource(source);
+        model.loadOlder(4);
+        model.append(ChatEntry.chat("live"));
+        List<String> events = record(model);
+
+        assertEquals(0, model.trimOldest(5));
+        assertEquals(2, model.trimOldest(3));
+        assertEquals(List.of("removed:0-1"), events);
+        assertEquals("m8", model.getElementAt(0).text());
+        assertTrue(model.hasMoreOlder());
+
+        // Подгрузка продолжается от самой старой оставшейся записи
+        assertEquals(4, model.loadOlder(4));
+        assertEquals(8L, (long) source.cursors.get(1));
+        assertEquals("m4", model.getElementAt(0).text());
+    }
+
+    @Test
+    void testTrimIntoSessionMessagesStopsPaging() {
+        ChatHistoryModel model = new ChatHistoryModel();
+        model.setSource(new Source(10));
+        model.loadOlder(2);
+        for (int i = 0; i < 3; i++) model.append(ChatEntry.chat("live" + i));
+
+        assertEquals(3, model.trimOldest(2));
+        assertEquals(List.of("live1", "live2"), List.of(model.getElementAt(0).text(), model.getElementAt(1).text()));
+        assertFalse(model.hasMoreOlder());
+        assertEquals(0, model.loadOlder(10));
+    }
+}
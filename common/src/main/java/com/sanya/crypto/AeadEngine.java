@@ -0,0 +1,227 @@
+package com.sanya.crypto;
+
+import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AeadEngine — общий движок AES-GCM, HMAC, SHA-256, X25519 и Ed25519 без лишних выделений.
+ *
+ * Назначение:
+ *  - {@code Cipher.getInstance}/{@code Mac.getInstance} ищут провайдера и создают объект при каждом вызове;
+ *    здесь экземпляры кешируются на поток ({@link ThreadLocal}) и только переинициализируются ключом.
+ *  - Шифрование и расшифровка из {@link ByteBuffer} в буфер вызывающего (в том числе direct и in-place),
+ *    без промежуточных массивов.
+ *  - Nonce — из DRBG своего потока ({@link #randomNonce()}) или из счётчика сеанса ({@link NonceSequence}).
+ *
+ * Использование:
+ *  byte[] ct = AeadEngine.seal(key, nonce, aad, plain);
+ *  int n = AeadEngine.open(key, nonce, aad, ctBuffer, outBuffer);
+ *
+ * Потокобезопасность:
+ *  Все методы потокобезопасны: каждый поток работает со своими экземплярами JCA.
+ */
+public final class AeadEngine {
+
+    /** Длина nonce AES-GCM. */
+    public static final int NONCE_LEN = AesGcm.IV_LEN;
+
+    /** Длина тега AES-GCM. */
+    public static final int TAG_LEN = AesGcm.TAG_BITS / 8;
+
+    private static final ThreadLocal<Cipher> GCM = ThreadLocal.withInitial(() -> create(() -> Cipher.getInstance("AES/GCM/NoPadding")));
+    private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> create(() -> Mac.getInstance("HmacSHA256")));
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> create(() -> MessageDigest.getInstance("SHA-256")));
+    private static final ThreadLocal<KeyAgreement> XDH = ThreadLocal.withInitial(() -> create(() -> KeyAgreement.getInstance("XDH")));
+    private static final ThreadLocal<Signature> ED25519 = ThreadLocal.withInitial(() -> create(() -> Signature.getInstance("Ed25519")));
+    private static final ThreadLocal<SecureRandom> DRBG = ThreadLocal.withInitial(AeadEngine::newDrbg);
+
+    private AeadEngine() {}
+
+    // === AES-GCM ===
+
+    /** Шифрует массив; возвращает шифротекст с тегом. */
+    public static byte[] seal(SecretKey key, byte[] nonce, byte[] aad, byte[] plain) {
+        Cipher c = gcm(Cipher.ENCRYPT_MODE, key, nonce, aad);
+        try {
+            return c.doFinal(plain);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM encryption failed", e);
+        }
+    }
+
+    /**
+     * Шифрует {@code plain} (от position до limit) в {@code out}; позиции обоих буферов сдвигаются.
+     * Буферы могут совпадать (шифрование на месте), если в {@code out} есть место под тег.
+     *
+     * @return число записанных байт ({@code plain.remaining() + TAG_LEN})
+     */
+    public static int seal(SecretKey key, byte[] nonce, byte[] aad, ByteBuffer plain, ByteBuffer out) {
+        Cipher c = gcm(Cipher.ENCRYPT_MODE, key, nonce, aad);
+        try {
+            return c.doFinal(plain, out);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM encryption failed", e);
+        }
+    }
+
+    /**
+     * Расшифровывает массив.
+     *
+     * @throws AEADBadTagException если данные, nonce или AAD не совпадают с зашифрованными
+     *                             или шифротекст короче тега
+     */
+    public static byte[] open(SecretKey key, byte[] nonce, byte[] aad, byte[] ct) throws AEADBadTagException {
+        if (ct.length < TAG_LEN) throw new AEADBadTagException("Ciphertext shorter than tag");
+        Cipher c = gcm(Cipher.DECRYPT_MODE, key, nonce, aad);
+        try {
+            return c.doFinal(ct);
+        } catch (AEADBadTagException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM decryption failed", e);
+        }
+    }
+
+    /**
+     * Расшифровывает {@code ct} в {@code out}; при ошибке проверки в {@code out} ничего не попадает.
+     *
+     * @return число записанных байт ({@code ct.remaining() - TAG_LEN})
+     */
+    public static int open(SecretKey key, byte[] nonce, byte[] aad, ByteBuffer ct, ByteBuffer out) throws AEADBadTagException {
+        if (ct.remaining() < TAG_LEN) throw new AEADBadTagException("Ciphertext shorter than tag");
+        Cipher c = gcm(Cipher.DECRYPT_MODE, key, nonce, aad);
+        try {
+            return c.doFinal(ct, out);
+        } catch (AEADBadTagException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM decryption failed", e);
+        }
+    }
+
+    private static Cipher gcm(int mode, SecretKey key, byte[] nonce, byte[] aad) {
+        Cipher c = GCM.get();
+        try {
+            try {
+                c.init(mode, key, new GCMParameterSpec(AesGcm.TAG_BITS, nonce));
+            } catch (InvalidAlgorithmParameterException e) {
+                if (mode != Cipher.ENCRYPT_MODE) throw e;
+                // JCE запрещает шифровать подряд с тем же ключом и nonce, но nonce StreamAead детерминирован:
+                // повторная отправка блока при докачке шифрует тот же текст в тот же шифротекст
+                c.init(mode, key, new GCMParameterSpec(AesGcm.TAG_BITS, randomNonce()));
+                c.init(mode, key, new GCMParameterSpec(AesGcm.TAG_BITS, nonce));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM init failed", e);
+        }
+        if (aad != null) c.updateAAD(aad);
+        return c;
+    }
+
+    // === HMAC, SHA-256 ===
+
+    /** HMAC-SHA256 от конкатенации частей. */
+    public static byte[] hmac(byte[] key, byte[]... parts) {
+        Mac mac = HMAC.get();
+        try {
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException("HMAC init failed", e);
+        }
+        for (byte[] part : parts) if (part != null) mac.update(part);
+        return mac.doFinal();
+    }
+
+    /** SHA-256 массива. */
+    public static byte[] sha256(byte[] data) {
+        return SHA256.get().digest(data);
+    }
+
+    // === X25519, Ed25519 ===
+
+    /** Общий секрет X25519 (сырые 32 байта). */
+    public static byte[] agree(PrivateKey mine, PublicKey theirs) throws GeneralSecurityException {
+        KeyAgreement ka = XDH.get();
+        ka.init(mine);
+        ka.doPhase(theirs, true);
+        return ka.generateSecret();
+    }
+
+    /** Подпись Ed25519. */
+    public static byte[] sign(PrivateKey key, byte[] data) throws GeneralSecurityException {
+        Signature s = ED25519.get();
+        s.initSign(key);
+        s.update(data);
+        return s.sign();
+    }
+
+    /** Проверка подписи Ed25519. */
+    public static boolean verify(PublicKey key, byte[] data, byte[] signature) throws GeneralSecurityException {
+        Signature s = ED25519.get();
+        s.initVerify(key);
+        s.update(data);
+        return s.verify(signature);
+    }
+
+    // === Случайные данные и nonce ===
+
+    /** Случайный nonce из DRBG текущего потока. */
+    public static byte[] randomNonce() {
+        byte[] n = new byte[NONCE_LEN];
+        DRBG.get().nextBytes(n);
+        return n;
+    }
+
+    /** Заполняет массив случайными байтами из DRBG текущего потока. */
+    public static void randomBytes(byte[] out) {
+        DRBG.get().nextBytes(out);
+    }
+
+    private static SecureRandom newDrbg() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * Счётчик nonce одного сеанса: случайный префикс (4 байта) || номер (8 байт, big-endian).
+     * В пределах одного ключа nonce не повторяется, пока не исчерпан счётчик; выделяется только сам массив.
+     * Подходит только для ключа, которым шифрует один отправитель и который не переживает этот объект:
+     * для долгоживущих или общих для двух сторон ключей — {@link #randomNonce()}.
+     */
+    public static final class NonceSequence {
+        private final int prefix;
+        private final AtomicLong counter = new AtomicLong();
+
+        public NonceSequence() {
+            byte[] p = new byte[4];
+            randomBytes(p);
+            this.prefix = ByteBuffer.wrap(p).getInt();
+        }
+
+        /** Следующий nonce. */
+        public byte[] next() {
+            long n = counter.getAndIncrement();
+            if (n < 0) throw new IllegalStateException("Nonce sequence exhausted");
+            return ByteBuffer.allocate(NONCE_LEN).putInt(prefix).putLong(n).array();
+        }
+    }
+
+    private interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private static <T> T create(Factory<T> factory) {
+        try {
+            return factory.create();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("JCA algorithm unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.sanya.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+/**
+ * AeadEngineBenchmark — автономный замер без JUnit: операций в секунду у прежнего пути
+ * ({@code getInstance} и {@code new SecureRandom()} на каждый вызов) и у {@link AeadEngine}.
+ *
+ * Запуск:
+ *  java -cp common.jar com.sanya.crypto.AeadEngineBenchmark [payloadBytes] [millisPerCase]
+ */
+public final class AeadEngineBenchmark {
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+
+        byte[] raw = new byte[32];
+        new SecureRandom().nextBytes(raw);
+        SecretKey key = new SecretKeySpec(raw, "AES");
+        byte[] plain = new byte[size];
+        AeadEngine.NonceSequence nonces = new AeadEngine.NonceSequence();
+        ByteBuffer direct = ByteBuffer.allocateDirect(size);
+        direct.put(plain).flip();
+        byte[] frame = new byte[size + AeadEngine.TAG_LEN];
+        ByteBuffer out = ByteBuffer.wrap(frame);
+
+        System.out.println("[AeadEngineBenchmark] payload " + size + " bytes, " + millis + " ms per case");
+        double legacy = run("AES-GCM, getInstance + new SecureRandom", millis, () -> {
+            byte[] n = new byte[12];
+            new SecureRandom().nextBytes(n);
+            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+            c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, n));
+            sink = c.doFinal(plain);
+        });
+        double engine = run("AES-GCM, AeadEngine + DRBG nonce", millis, () ->
+                sink = AeadEngine.seal(key, AeadEngine.randomNonce(), null, plain));
+        // Как в FileSender: из direct-буфера чтения сразу в массив кадра, nonce — счётчик
+        double buffers = run("AES-GCM, AeadEngine direct buffer -> frame + counter", millis, () ->
+                AeadEngine.seal(key, nonces.next(), null, direct.duplicate(), out.clear()));
+        double legacyMac = run("HMAC-SHA256, getInstance", millis, () -> {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(raw, "HmacSHA256"));
+            sink = mac.doFinal(plain);
+        });
+        double engineMac = run("HMAC-SHA256, AeadEngine", millis, () -> sink = AeadEngine.hmac(raw, plain));
+
+        System.out.printf("AES-GCM speedup: %.2fx (byte[]), %.2fx (buffers); HMAC speedup: %.2fx%n",
+                engine / legacy, buffers / legacy, engineMac / legacyMac);
+    }
+
+    private interface Op {
+        void run() throws Exception;
+    }
+
+    /** Прогрев, затем замер в течение {@code millis}; возвращает операций в секунду. */
+    private static double run(String name, long millis, Op op) throws Exception {
+        for (int i = 0; i < 20_000; i++) op.run();
+        long ops = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1_000_000;
+        long now;
+        do {
+            for (int i = 0; i < 256; i++) op.run();
+            ops += 256;
+            now = System.nanoTime();
+        } while (now < end);
+        double perSec = ops * 1e9 / (now - start);
+        System.out.printf("%-56s %,12.0f ops/s%n", name, perSec);
+        return perSec;
+    }
+}
@@ -1,14 +1,10 @@
 package com.sanya.crypto;
 
-import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.GCMParameterSpec;
-import java.security.SecureRandom;
 /**
  AES-GCM шифрование/дешифрование
 */
 public final class AesGcm {
-    private static final SecureRandom RNG = new SecureRandom();
 
     public static final int IV_LEN = 12;     // 96 бит
     public static final int TAG_BITS = 128;  // 16 байт
@@ -20,19 +16,11 @@ public final class AesGcm {
     }
 
     public static Box encrypt(SecretKey key, byte[] plaintext, byte[] aad) throws Exception {
-        byte[] iv = new byte[IV_LEN];
-        RNG.nextBytes(iv);
-        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-        c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
-        if (aad != null) c.updateAAD(aad);
-        byte[] ct = c.doFinal(plaintext);
-        return new Box(iv, ct);
+        byte[] iv = AeadEngine.randomNonce();
+        return new Box(iv, AeadEngine.seal(key, iv, aad, plaintext));
     }
 
     public static byte[] decrypt(SecretKey key, byte[] iv, byte[] ct, byte[] aad) throws Exception {
-        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-        c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
-        if (aad != null) c.updateAAD(aad);
-        return c.doFinal(ct);
+        return AeadEngine.open(key, iv, aad, ct);
     }
 }
\ No newline at end of file
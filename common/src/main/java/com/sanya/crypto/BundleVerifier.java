@@ -0,0 +1,192 @@
+package com.sanya.crypto;
+
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * BundleVerifier — пакетная проверка подписей {@link SignedPreKeyBundle}.
+ *
+ * Назначение:
+ *  - Проверять Ed25519-подпись по (username || x25519Public) у многих пакетов сразу,
+ *    параллельно в {@link ForkJoinPool}: при входе в чат сервер присылает пакеты всех участников.
+ *  - Запоминать результат по (username, SHA-256 содержимого, timestamp), чтобы неизменившийся пакет
+ *    не проверялся повторно, в том числе после переподключения. Кеш ограничен (LRU).
+ *  - Объединять одновременные проверки одного пакета: при входе участника его пакет приходит всем
+ *    клиентам одной JVM (боты, нагрузочные тесты) разом, а подпись проверяется один раз.
+ *  - Отбрасывать пакеты с неверной или повреждённой подписью до того, как ключ попадёт в каталог.
+ *
+ * Использование:
+ *  Map<String, SignedPreKeyBundle> ok = verifier.verifyAll(bundles);
+ *
+ * Потокобезопасность:
+ *  Потокобезопасен; кеш защищён собственным монитором, проверка подписи идёт вне блокировки.
+ */
+public final class BundleVerifier {
+
+    private static final Logger log = Logger.getLogger(BundleVerifier.class.getName());
+
+    /** Размер кеша результатов по умолчанию. */
+    public static final int DEFAULT_CACHE_SIZE = 8192;
+
+    /** Меньше стольких непроверенных пакетов проверяются в потоке вызова. */
+    static final int PARALLEL_THRESHOLD = 8;
+
+    private final ForkJoinPool pool;
+    private final LinkedHashMap<String, Boolean> cache;
+
+    /** Проверки, выполняющиеся сейчас, по ключу кеша. */
+    private final Map<String, CompletableFuture<Boolean>> inflight = new ConcurrentHashMap<>();
+
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public BundleVerifier() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param pool      пул параллельной проверки
+     * @param cacheSize максимум запомненных результатов
+     */
+    public BundleVerifier(ForkJoinPool pool, int cacheSize) {
+        this.pool = pool;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Проверяет пакеты и возвращает прошедшие проверку по имени пользователя.
+     * Если пакетов одного пользователя несколько, остаётся самый свежий.
+     */
+    public Map<String, SignedPreKeyBundle> verifyAll(Collection<SignedPreKeyBundle> bundles) {
+        List<SignedPreKeyBundle> accepted;
+        long uncached = bundles.stream().filter(b -> cachedResult(b) == null).count();
+        if (uncached < PARALLEL_THRESHOLD) {
+            accepted = bundles.stream().filter(this::verify).toList();
+        } else {
+            accepted = pool.submit(() -> bundles.parallelStream().filter(this::verify).toList()).join();
+        }
+
+        Map<String, SignedPreKeyBundle> out = new LinkedHashMap<>();
+        for (SignedPreKeyBundle b : accepted) {
+            out.merge(b.getUsername(), b, (x, y) -> y.getTimestamp() > x.getTimestamp() ? y : x);
+        }
+        if (accepted.size() < bundles.size()) {
+            log.warning("Rejected " + (bundles.size() - accepted.size()) + " of " + bundles.size() + " key bundles");
+        }
+        return out;
+    }
+
+    /** Проверяет один пакет (с учётом кеша). */
+    public boolean verify(SignedPreKeyBundle bundle) {
+        String key = cacheKey(bundle);
+        if (key == null) {
+            rejected.increment();
+            return false;
+        }
+        Boolean known = cached(key);
+        if (known != null) {
+            cacheHits.increment();
+            if (!known) rejected.increment();
+            return known;
+        }
+
+        CompletableFuture<Boolean> mine = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inflight.putIfAbsent(key, mine);
+        if (running != null) {
+            // Тот же пакет уже проверяется другим потоком — ждём его результат
+            boolean ok = running.join();
+            cacheHits.increment();
+            if (!ok) rejected.increment();
+            return ok;
+        }
+
+        try {
+            Boolean done = cached(key); // проверка могла завершиться между промахом кеша и putIfAbsent
+            boolean ok = done != null ? done : check(bundle);
+            if (done == null) {
+                verified.increment();
+                synchronized (cache) {
+                    cache.put(key, ok);
+                }
+            } else {
+                cacheHits.increment();
+            }
+            if (!ok) {
+                rejected.increment();
+                log.fine("Invalid bundle signature from " + bundle.getUsername());
+            }
+            mine.complete(ok);
+            return ok;
+        } finally {
+            mine.complete(false); // на случай исключения: ожидающие не должны зависнуть
+            inflight.remove(key, mine);
+        }
+    }
+
+    /** Число выполненных проверок подписи. */
+    public long verifiedCount() {
+        return verified.sum();
+    }
+
+    /** Число результатов, взятых из кеша. */
+    public long cacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    /** Число отклонённых пакетов. */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /** Результат из кеша; для неполного пакета — false без проверки. */
+    private Boolean cachedResult(SignedPreKeyBundle bundle) {
+        String key = cacheKey(bundle);
+        return key != null ? cached(key) : Boolean.FALSE;
+    }
+
+    private Boolean cached(String key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private static boolean check(SignedPreKeyBundle b) {
+        try {
+            PublicKey pub = KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(b.getEd25519Public()));
+            return SignatureUtils.verifyEd25519(pub,
+                    Bytes.concat(Bytes.utf8(b.getUsername()), b.getX25519Public()), b.getSignature());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /** (username, SHA-256 ключей и подписи, timestamp); null — пакет неполный. */
+    private static String cacheKey(SignedPreKeyBundle b) {
+        if (b == null || b.getUsername() == null || b.getX25519Public() == null
+                || b.getEd25519Public() == null || b.getSignature() == null) {
+            return null;
+        }
+        byte[] digest = AeadEngine.sha256(Bytes.concat(
+                Bytes.u64be(b.getX25519Public().length), b.getX25519Public(),
+                Bytes.u64be(b.getEd25519Public().length), b.getEd25519Public(),
+                b.getSignature()));
+        return b.getUsername() + '\0' + b.getTimestamp() + '\0' + HexFormat.of().formatHex(digest);
+    }
+}
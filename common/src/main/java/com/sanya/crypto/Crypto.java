@@ -1,7 +1,6 @@
 package com.sanya.crypto;
 
 import javax.crypto.*;
-import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.*;
 import java.security.spec.NamedParameterSpec;
@@ -19,35 +18,24 @@ public final class Crypto {
 
     public static SecretKey deriveX25519(PrivateKey myPriv, PublicKey peerPub) {
         try {
-            KeyAgreement ka = KeyAgreement.getInstance("X25519");
-            ka.init(myPriv);
-            ka.doPhase(peerPub, true);
-            byte[] shared = ka.generateSecret();
-            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-            byte[] key = sha256.digest(shared);              // KDF: SHA-256(shared)
+            byte[] shared = AeadEngine.agree(myPriv, peerPub);
+            byte[] key = AeadEngine.sha256(shared);          // KDF: SHA-256(shared)
             return new SecretKeySpec(key, 0, 32, "AES");     // AES-256
         } catch (GeneralSecurityException e) { throw new RuntimeException(e); }
     }
 
+    // Nonce, шифрование и расшифровка — через кешированные экземпляры AeadEngine
     public static byte[] randomNonce12() {
-        byte[] n = new byte[12];
-        new SecureRandom().nextBytes(n);
-        return n;
+        return AeadEngine.randomNonce();
     }
 
     public static byte[] encryptGCM(SecretKey key, byte[] nonce, byte[] plaintext) {
-        try {
-            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-            c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, nonce));
-            return c.doFinal(plaintext);
-        } catch (GeneralSecurityException e) { throw new RuntimeException(e); }
+        return AeadEngine.seal(key, nonce, null, plaintext);
     }
 
     public static byte[] decryptGCM(SecretKey key, byte[] nonce, byte[] ciphertext) {
         try {
-            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-            c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, nonce));
-            return c.doFinal(ciphertext);
+            return AeadEngine.open(key, nonce, null, ciphertext);
         } catch (GeneralSecurityException e) { throw new RuntimeException(e); }
     }
 
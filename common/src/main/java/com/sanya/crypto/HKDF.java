@@ -1,8 +1,6 @@
 package com.sanya.crypto;
 
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
 
 /**
@@ -15,15 +13,11 @@ public final class HKDF {
         if (salt == null || salt.length == 0) {
             salt = new byte[32]; // zero-salt
         }
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(salt, "HmacSHA256"));
-        return mac.doFinal(ikm);
+        return AeadEngine.hmac(salt, ikm);
     }
 
     public static byte[] expand(byte[] prk, byte[] info, int length) throws GeneralSecurityException {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
-        int hashLen = mac.getMacLength();
+        int hashLen = 32;
         int n = (int) Math.ceil((double) length / hashLen);
         if (n > 255) throw new IllegalArgumentException("too long");
 
@@ -31,11 +25,7 @@ public final class HKDF {
         byte[] t = new byte[0];
         int pos = 0;
         for (int i = 1; i <= n; i++) {
-            mac.reset();
-            mac.update(t);
-            if (info != null) mac.update(info);
-            mac.update((byte) i);
-            t = mac.doFinal();
+            t = AeadEngine.hmac(prk, t, info, new byte[]{(byte) i});
             int copy = Math.min(t.length, length - pos);
             System.arraycopy(t, 0, result, pos, copy);
             pos += copy;
@@ -1,6 +1,5 @@
 package com.sanya.crypto;
 
-import javax.crypto.KeyAgreement;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.math.BigInteger;
@@ -28,10 +27,7 @@ public final class KeyUtils {
 
     // ECDH → shared secret (сырой)
     public static byte[] sharedSecret(PrivateKey myPriv, PublicKey theirPub) throws GeneralSecurityException {
-        KeyAgreement ka = KeyAgreement.getInstance("XDH");
-        ka.init(myPriv);
-        ka.doPhase(theirPub, true);
-        return ka.generateSecret();
+        return AeadEngine.agree(myPriv, theirPub);
     }
 
     // HKDF → AES-256 ключ
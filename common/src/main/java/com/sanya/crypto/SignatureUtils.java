@@ -8,16 +8,10 @@ public final class SignatureUtils {
     private SignatureUtils() {}
 
     public static byte[] signEd25519(PrivateKey priv, byte[] data) throws GeneralSecurityException {
-        Signature s = Signature.getInstance("Ed25519");
-        s.initSign(priv);
-        s.update(data);
-        return s.sign();
+        return AeadEngine.sign(priv, data);
     }
 
     public static boolean verifyEd25519(PublicKey pub, byte[] data, byte[] sig) throws GeneralSecurityException {
-        Signature s = Signature.getInstance("Ed25519");
-        s.initVerify(pub);
-        s.update(data);
-        return s.verify(sig);
+        return AeadEngine.verify(pub, data, sig);
     }
 }
@@ -0,0 +1,197 @@
+package com.sanya.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * StreamAead — потоковое AES-GCM шифрование по блокам (конструкция STREAM).
+ *
+ * Назначение:
+ *  Шифровать файлы и голосовые сообщения блок за блоком, не держа всё содержимое в памяти.
+ *  - Ключ потока выводится через {@link HKDF} из секрета и идентификатора потока.
+ *  - Nonce блока детерминирован: префикс потока (7 байт) || номер блока (4 байта) || флаг последнего блока (1 байт),
+ *    поэтому nonce не повторяется внутри потока, а блоки можно расшифровывать в любом порядке.
+ *  - Флаг последнего блока входит в nonce: обрезанный поток или блок, выданный за последний, не пройдёт проверку тега.
+ *
+ * Использование:
+ *  StreamAead.Secret secret = StreamAead.Secret.random();
+ *  StreamAead.Sealer sealer = StreamAead.sealer(secret, streamId);
+ *  byte[] ct = sealer.seal(index, last, plain);
+ *  byte[] plain = StreamAead.opener(secret, streamId).open(index, last, ct);
+ *
+ * Потокобезопасность:
+ *  {@link Sealer} и {@link Opener} неизменяемы и могут использоваться из нескольких потоков
+ *  (шифры берутся из {@link AeadEngine}, у каждого потока свои).
+ */
+public final class StreamAead {
+
+    /** Длина префикса nonce потока. */
+    public static final int PREFIX_LEN = 7;
+
+    /** Длина секрета потока. */
+    public static final int SECRET_LEN = 32;
+
+    /** Прибавка к размеру блока от тега GCM. */
+    public static final int TAG_LEN = AesGcm.TAG_BITS / 8;
+
+    private static final byte[] INFO = "sanya-stream-v1".getBytes(StandardCharsets.US_ASCII);
+
+    private StreamAead() {}
+
+    /**
+     * Секрет потока: исходный материал ключа и префикс nonce.
+     * Передаётся получателям один раз (например, внутри {@code EncryptedDirectMessage}).
+     */
+    public record Secret(byte[] keyMaterial, byte[] noncePrefix) {
+
+        /** Новый случайный секрет. */
+        public static Secret random() {
+            byte[] key = new byte[SECRET_LEN];
+            byte[] prefix = new byte[PREFIX_LEN];
+            AeadEngine.randomBytes(key);
+            AeadEngine.randomBytes(prefix);
+            return new Secret(key, prefix);
+        }
+
+        /** Секрет, ключ которого выводится из уже согласованного ключа (например, сеансового X25519). */
+        public static Secret from(SecretKey sharedKey, byte[] noncePrefix) {
+            return new Secret(sharedKey.getEncoded(), noncePrefix);
+        }
+
+        /** Сериализация: ключ || префикс. */
+        public byte[] encode() {
+            byte[] out = Arrays.copyOf(keyMaterial, SECRET_LEN + PREFIX_LEN);
+            System.arraycopy(noncePrefix, 0, out, SECRET_LEN, PREFIX_LEN);
+            return out;
+        }
+
+        public static Secret decode(byte[] encoded) {
+            if (encoded.length != SECRET_LEN + PREFIX_LEN) throw new IllegalArgumentException("Bad stream secret");
+            return new Secret(Arrays.copyOf(encoded, SECRET_LEN), Arrays.copyOfRange(encoded, SECRET_LEN, encoded.length));
+        }
+    }
+
+    /** Шифратор потока. */
+    public static Sealer sealer(Secret secret, String streamId) {
+        return new Sealer(deriveKey(secret, streamId), secret.noncePrefix(), aad(streamId));
+    }
+
+    /** Дешифратор потока. */
+    public static Opener opener(Secret secret, String streamId) {
+        return new Opener(deriveKey(secret, streamId), secret.noncePrefix(), aad(streamId));
+    }
+
+    /** Nonce блока: префикс || номер (big-endian) || флаг последнего блока. */
+    public static byte[] nonce(byte[] prefix, int index, boolean last) {
+        return ByteBuffer.allocate(AesGcm.IV_LEN).put(prefix, 0, PREFIX_LEN).putInt(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    /** Префикс потока из nonce блока. */
+    public static byte[] prefixOf(byte[] nonce) {
+        return Arrays.copyOf(nonce, PREFIX_LEN);
+    }
+
+    /** Заголовок из 8-байтового числа (смещения блока). */
+    public static byte[] header(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private static SecretKey deriveKey(Secret secret, String streamId) {
+        try {
+            byte[] prk = HKDF.extract(streamId.getBytes(StandardCharsets.UTF_8), secret.keyMaterial());
+            byte[] info = ByteBuffer.allocate(INFO.length + PREFIX_LEN).put(INFO).put(secret.noncePrefix()).array();
+            return new SecretKeySpec(HKDF.expand(prk, info, 32), "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Stream key derivation failed", e);
+        }
+    }
+
+    private static byte[] aad(String streamId) {
+        return streamId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** AAD блока: id потока || заголовок блока. */
+    private static byte[] aad(byte[] streamAad, byte[] header) {
+        if (header == null) return streamAad;
+        byte[] out = Arrays.copyOf(streamAad, streamAad.length + header.length);
+        System.arraycopy(header, 0, out, streamAad.length, header.length);
+        return out;
+    }
+
+    /** Шифрует блоки одного потока. */
+    public static final class Sealer {
+        private final SecretKey key;
+        private final byte[] prefix;
+        private final byte[] aad;
+
+        private Sealer(SecretKey key, byte[] prefix, byte[] aad) {
+            this.key = key;
+            this.prefix = prefix;
+            this.aad = aad;
+        }
+
+        /**
+         * Шифрует блок. Номер блока не должен повторяться в пределах потока.
+         *
+         * @return шифротекст с тегом ({@code plain.length + TAG_LEN} байт)
+         */
+        public byte[] seal(int index, boolean last, byte[] plain) {
+            return seal(index, last, null, plain);
+        }
+
+        /**
+         * Шифрует блок, привязывая к нему открытый заголовок (например, смещение блока в файле):
+         * блок с подменённым заголовком не пройдёт проверку.
+         */
+        public byte[] seal(int index, boolean last, byte[] header, byte[] plain) {
+            return AeadEngine.seal(key, StreamAead.nonce(prefix, index, last), StreamAead.aad(aad, header), plain);
+        }
+
+        /**
+         * Шифрует блок из буфера (например, direct-буфера чтения файла) сразу в буфер вызывающего.
+         *
+         * @return число записанных байт
+         */
+        public int seal(int index, boolean last, byte[] header, ByteBuffer plain, ByteBuffer out) {
+            return AeadEngine.seal(key, StreamAead.nonce(prefix, index, last), StreamAead.aad(aad, header), plain, out);
+        }
+
+        /** Nonce блока (для передачи вместе с шифротекстом). */
+        public byte[] nonce(int index, boolean last) {
+            return StreamAead.nonce(prefix, index, last);
+        }
+    }
+
+    /** Расшифровывает и проверяет блоки одного потока. */
+    public static final class Opener {
+        private final SecretKey key;
+        private final byte[] prefix;
+        private final byte[] aad;
+
+        private Opener(SecretKey key, byte[] prefix, byte[] aad) {
+            this.key = key;
+            this.prefix = prefix;
+            this.aad = aad;
+        }
+
+        /**
+         * Расшифровывает блок.
+         *
+         * @throws AEADBadTagException если блок подделан, перенесён из другого потока,
+         *                             или его номер/признак последнего блока не совпадает с заявленным
+         */
+        public byte[] open(int index, boolean last, byte[] ct) throws AEADBadTagException {
+            return open(index, last, null, ct);
+        }
+
+        /** Расшифровывает блок, зашифрованный с заголовком {@code header}. */
+        public byte[] open(int index, boolean last, byte[] header, byte[] ct) throws AEADBadTagException {
+            return AeadEngine.open(key, StreamAead.nonce(prefix, index, last), StreamAead.aad(aad, header), ct);
+        }
+    }
+}
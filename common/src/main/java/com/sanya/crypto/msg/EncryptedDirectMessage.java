@@ -8,4 +8,30 @@ public record EncryptedDirectMessage(
         byte[] nonce12, byte[] ciphertext,
         String mediaType, // "text/plain", "audio/pcm", "file/chunk"
         Integer chunkIndex, Boolean lastChunk
-) implements Serializable {}
+) implements Serializable {
+
+    /** Текстовое сообщение. */
+    public static final String TEXT = "text/plain";
+
+    /** Блок голосового сообщения (потоковое шифрование, см. {@code StreamAead}). */
+    public static final String AUDIO = "audio/pcm";
+
+    /** Секрет потокового шифрования передачи файла. */
+    public static final String STREAM_KEY = "application/x-stream-key";
+
+    /** Ключ отправителя для групповых сообщений ({@link GroupMessage}). */
+    public static final String SENDER_KEY = "application/x-sender-key";
+
+    /** Ссылка на зашифрованный файл в хранилище сервера вместе с его ключом ({@code BlobReference}). */
+    public static final String BLOB_REF = "application/x-blob-ref";
+
+    /** Служебная ли это доставка ключа. */
+    public boolean isKey() {
+        return STREAM_KEY.equals(mediaType) || SENDER_KEY.equals(mediaType) || BLOB_REF.equals(mediaType);
+    }
+
+    /** Текстовое ли это сообщение (отсутствие типа — текст в старом формате). */
+    public boolean isText() {
+        return mediaType == null || mediaType.startsWith("text/");
+    }
+}
@@ -0,0 +1,16 @@
+package com.sanya.crypto.msg;
+
+import java.io.Serializable;
+
+/**
+ * Групповое сообщение, зашифрованное ключом отправителя (sender key) один раз для всех участников.
+ * Сервер рассылает один и тот же шифротекст; открыты только имя отправителя и номер ключа.
+ *
+ * @param from      отправитель
+ * @param keyId     id цепочки ключей отправителя (меняется при ротации)
+ * @param iteration номер сообщения в цепочке — по нему получатель выводит ключ сообщения
+ */
+public record GroupMessage(
+        String from, int keyId, int iteration,
+        byte[] nonce12, byte[] ciphertext
+) implements Serializable {}
@@ -2,7 +2,5 @@ package com.sanya.events.file;
 
 import com.sanya.files.FileTransferRequest;
 
-import java.io.ObjectInputStream;
-
-public record FileIncomingEvent(FileTransferRequest request, ObjectInputStream input) {
+public record FileIncomingEvent(FileTransferRequest request) {
 }
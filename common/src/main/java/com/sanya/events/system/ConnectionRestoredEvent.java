@@ -0,0 +1,9 @@
+package com.sanya.events.system;
+
+/**
+ * Соединение с сервером восстановлено после разрыва.
+ *
+ * @param attempt номер успешной попытки переподключения
+ */
+public record ConnectionRestoredEvent(int attempt) {
+}
@@ -0,0 +1,118 @@
+package com.sanya.files;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HexFormat;
+
+/**
+ * BlobProtocol — бинарный протокол порта файлового хранилища сервера.
+ *
+ * Назначение:
+ *  Передавать содержимое файлов отдельным соединением без сериализации объектов,
+ *  чтобы сервер мог отдавать файл через {@code FileChannel.transferTo} прямо в сокет.
+ *
+ * Формат:
+ *  Запрос (41 байт): код операции, SHA-256 (32 байта), long-параметр.
+ *   AUTH — первый запрос соединения: на месте SHA-256 токен {@link BlobToken}; ответ {@link #OK}
+ *          или {@link #REJECTED} (токен неизвестен или истёк), после чего соединение закрывается.
+ *   PUT — параметр = размер файла; ответ {@link #OK} (уже есть, загрузка не нужна)
+ *         или {@link #SEND} со смещением, с которого досылать; после данных — итоговый ответ.
+ *   GET — параметр = смещение; ответ {@link #OK} с размером, затем байты от смещения до конца.
+ *  Ответ (9 байт): статус и long-параметр.
+ *  По одному соединению можно выполнить несколько операций подряд.
+ *  Перегруженный сервер отвечает {@link #BUSY} со сроком повтора в мс сразу после подключения.
+ *
+ * Использование:
+ *  BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_GET, sha, 0));
+ *  BlobProtocol.Response r = BlobProtocol.readResponse(ch);
+ */
+public final class BlobProtocol {
+
+    /** Порт хранилища = порт чата + смещение. */
+    public static final int PORT_OFFSET = 1;
+
+    public static final byte OP_AUTH = 'A';
+    public static final byte OP_PUT = 'P';
+    public static final byte OP_GET = 'G';
+
+    /** Операция выполнена (для PUT — содержимое уже в хранилище). */
+    public static final byte OK = 0;
+    /** Сервер ждёт данные с указанного смещения. */
+    public static final byte SEND = 1;
+    /** Содержимое не найдено. */
+    public static final byte NOT_FOUND = 2;
+    /** Данные отклонены: хэш не совпал или размер недопустим. */
+    public static final byte REJECTED = 3;
+    /** Это же содержимое сейчас загружает другой клиент или сервер перегружен (параметр — срок повтора, мс). */
+    public static final byte BUSY = 4;
+    /** Загрузка превысила квоту пользователя (параметр — сколько байт ещё можно загрузить). */
+    public static final byte QUOTA_EXCEEDED = 5;
+
+    private static final int DIGEST_LENGTH = 32;
+    /** Длина запроса, байт. */
+    public static final int REQUEST_LENGTH = 1 + DIGEST_LENGTH + Long.BYTES;
+    private static final int RESPONSE_LENGTH = 1 + Long.BYTES;
+
+    private BlobProtocol() {}
+
+    /** Запрос клиента. */
+    public record Request(byte op, String blobId, long value) {}
+
+    /** Ответ сервера. */
+    public record Response(byte status, long value) {}
+
+    /** Кодирует запрос. */
+    public static ByteBuffer request(byte op, String blobId, long value) {
+        byte[] digest = HexFormat.of().parseHex(blobId);
+        if (digest.length != DIGEST_LENGTH) throw new IllegalArgumentException("Bad blob id: " + blobId);
+        return ByteBuffer.allocate(REQUEST_LENGTH).put(op).put(digest).putLong(value).flip();
+    }
+
+    /** Кодирует ответ. */
+    public static ByteBuffer response(byte status, long value) {
+        return ByteBuffer.allocate(RESPONSE_LENGTH).put(status).putLong(value).flip();
+    }
+
+    /**
+     * Читает запрос.
+     *
+     * @return запрос или {@code null}, если клиент закрыл соединение между операциями
+     */
+    public static Request readRequest(ReadableByteChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(REQUEST_LENGTH);
+        if (ch.read(buf) < 0) return null;
+        readFully(ch, buf);
+        buf.flip();
+        byte op = buf.get();
+        byte[] digest = new byte[DIGEST_LENGTH];
+        buf.get(digest);
+        return new Request(op, HexFormat.of().formatHex(digest), buf.getLong());
+    }
+
+    /** Читает ответ. */
+    public static Response readResponse(ReadableByteChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(RESPONSE_LENGTH);
+        readFully(ch, buf);
+        buf.flip();
+        return new Response(buf.get(), buf.getLong());
+    }
+
+    /** Записывает буфер целиком. */
+    public static void write(WritableByteChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    /** Проверяет, что строка — id содержимого (64 hex-символа в нижнем регистре). */
+    public static boolean isBlobId(String s) {
+        return s != null && s.length() == DIGEST_LENGTH * 2 && s.chars().allMatch(c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'));
+    }
+
+    private static void readFully(ReadableByteChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf) < 0) throw new EOFException("Blob connection closed");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.sanya.files;
+
+import java.io.Serializable;
+
+/**
+ * Ссылка на файл в хранилище сервера: вместо блоков файла клиентам рассылается только она.
+ * Получатель скачивает содержимое по {@code blobId} с порта хранилища, когда захочет.
+ * Ссылка с ключом доставляется каждому собеседнику под его сеансовым ключом, а не рассылается сервером.
+ *
+ * @param blobId   SHA-256 хранимого содержимого в hex (64 символа): шифротекста, если задан {@code key}
+ * @param sender   имя отправителя
+ * @param filename имя файла у отправителя
+ * @param size     размер открытого файла в байтах
+ * @param key      секрет {@code StreamAead.Secret#encode()}, которым зашифрован файл; null — файл хранится открытым
+ */
+public record BlobReference(String blobId, String sender, String filename, long size, byte[] key) implements Serializable {
+
+    /** Ссылка на открытый файл (старые клиенты). */
+    public BlobReference(String blobId, String sender, String filename, long size) {
+        this(blobId, sender, filename, size, null);
+    }
+
+    /** Зашифрован ли файл в хранилище. */
+    public boolean encrypted() {
+        return key != null;
+    }
+
+    /** Короткий префикс id для отображения и команды /get. */
+    public String shortId() {
+        return blobId.substring(0, Math.min(12, blobId.length()));
+    }
+
+    @Override
+    public String toString() {
+        return "[Blob] " + sender + " → " + filename + " (" + size + " bytes, " + shortId() + ")";
+    }
+}
@@ -0,0 +1,19 @@
+package com.sanya.files;
+
+import java.io.Serializable;
+
+/**
+ * Токен доступа к порту хранилища, выданный сервером чата в ответ на {@link BlobTokenRequest}.
+ * Предъявляется первым запросом соединения ({@link BlobProtocol#OP_AUTH}); годен {@code ttlMs}
+ * с момента выдачи и для любого числа соединений за это время.
+ *
+ * @param token 32 случайных байта в hex
+ * @param ttlMs срок годности, мс
+ */
+public record BlobToken(String token, long ttlMs) implements Serializable {
+
+    @Override
+    public String toString() {
+        return "BlobToken[ttlMs=" + ttlMs + "]";
+    }
+}
@@ -0,0 +1,10 @@
+package com.sanya.files;
+
+import java.io.Serializable;
+
+/**
+ * Запрос клиента по соединению чата: выдать токен доступа к порту хранилища ({@link BlobToken}).
+ * Соединение чата уже знает пользователя, поэтому токен привязывается к нему без отдельного входа.
+ */
+public record BlobTokenRequest() implements Serializable {
+}
@@ -1,22 +1,45 @@
 package com.sanya.files;
 
 import java.io.Serializable;
+import java.util.zip.CRC32C;
 
 public class FileChunk implements Serializable {
+    private final String transferId;
     private final String filename;
+    private final long offset;
     private final byte[] data;
     private final int part;
     private final boolean last;
+    private final int crc32c;
 
-    public FileChunk(String filename, byte[] data, int part, boolean last) {
+    public FileChunk(String transferId, String filename, long offset, byte[] data, int part, boolean last) {
+        this.transferId = transferId;
         this.filename = filename;
+        this.offset = offset;
         this.data = data;
         this.part = part;
         this.last = last;
+        this.crc32c = checksum(data);
     }
 
+    public String getTransferId() { return transferId; }
     public String getFilename() { return filename; }
+    /** Смещение блока в файле. */
+    public long getOffset() { return offset; }
     public byte[] getData() { return data; }
     public int getPart() { return part; }
+    /** Последний блок текущего прохода отправки (полного или докачки). */
     public boolean isLast() { return last; }
+    public int getCrc32c() { return crc32c; }
+
+    /** Проверяет, что данные блока совпадают с контрольной суммой отправителя. */
+    public boolean isIntact() {
+        return data != null && checksum(data) == crc32c;
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32C crc = new CRC32C();
+        if (data != null) crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
 }
@@ -0,0 +1,12 @@
+package com.sanya.files;
+
+import java.io.Serializable;
+
+/**
+ * Запрос получателя на докачку: отправитель передаёт только недостающие диапазоны.
+ *
+ * @param transferId    идентификатор передачи
+ * @param missingRanges пары [начало, конец) недостающих байтов, по возрастанию
+ */
+public record FileResumeRequest(String transferId, long[] missingRanges) implements Serializable {
+}
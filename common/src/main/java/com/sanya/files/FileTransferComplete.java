@@ -0,0 +1,11 @@
+package com.sanya.files;
+
+import java.io.Serializable;
+
+/**
+ * Отправитель закончил проход передачи (полный или докачку).
+ * Несёт SHA-256 всего файла для итоговой проверки на стороне получателя;
+ * у зашифрованной передачи — запечатанный ключом потока (32 байта и тег), сервер его не видит.
+ */
+public record FileTransferComplete(String transferId, long size, byte[] sha256) implements Serializable {
+}
@@ -3,19 +3,30 @@ package com.sanya.files;
 import java.io.Serializable;
 
 public class FileTransferRequest implements Serializable {
+    private final String transferId;
     private final String filename;
     private final long size;
     private final String sender;
+    /** Блоки зашифрованы секретом передачи (StreamAead), доставленным получателям отдельно. */
+    private final boolean encrypted;
 
-    public FileTransferRequest(String sender, String filename, long size) {
+    public FileTransferRequest(String transferId, String sender, String filename, long size) {
+        this(transferId, sender, filename, size, false);
+    }
+
+    public FileTransferRequest(String transferId, String sender, String filename, long size, boolean encrypted) {
+        this.transferId = transferId;
         this.sender = sender;
         this.filename = filename;
         this.size = size;
+        this.encrypted = encrypted;
     }
 
+    public String getTransferId() { return transferId; }
     public String getFilename() { return filename; }
     public long getSize() { return size; }
     public String getSender() { return sender; }
+    public boolean isEncrypted() { return encrypted; }
 
     @Override
     public String toString() {
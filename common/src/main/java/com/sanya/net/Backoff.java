@@ -0,0 +1,60 @@
+package com.sanya.net;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Backoff — задержки повторных подключений с «декоррелированным» случайным разбросом.
+ *
+ * Назначение:
+ *  После перезапуска сервера все клиенты теряют соединение одновременно. С задержкой {@code 2^n} они
+ *  и возвращаются одновременно — волнами в 2, 4, 8 с, переполняя очередь приёма сервера.
+ *  Здесь каждая задержка случайна в {@code [base, 3 × предыдущая]} (не больше {@code cap}):
+ *  в среднем она растёт так же, но клиенты быстро расходятся во времени.
+ *  Подсказка сервера ({@link ServerBusy}) задаёт нижнюю границу задержки и может превышать {@code cap}:
+ *  сервер знает, когда освободится, а при волне из тысяч клиентов это дольше обычного предела.
+ *
+ * Использование:
+ *  long delay = backoff.next();           // после обрыва или отказа в подключении
+ *  long delay = backoff.next(busy.retryAfterMs());
+ *  backoff.reset();                        // после успешного подключения
+ *
+ * Потокобезопасность:
+ *  Методы синхронизированы.
+ */
+public final class Backoff {
+
+    /** Предел подсказки сервера, мс: защита от ошибочного срока. */
+    public static final long MAX_HINT_MS = 300_000;
+
+    private final long baseMs;
+    private final long capMs;
+    private long prev;
+
+    public Backoff(long baseMs, long capMs) {
+        if (baseMs <= 0 || capMs < baseMs) throw new IllegalArgumentException("base " + baseMs + ", cap " + capMs);
+        this.baseMs = baseMs;
+        this.capMs = capMs;
+        this.prev = baseMs;
+    }
+
+    /** Следующая задержка, мс. */
+    public synchronized long next() {
+        // prev * 3 переполнил бы long при пределе около Long.MAX_VALUE и сбросил задержку к базе
+        long upper = prev > capMs / 3 ? capMs : prev * 3;
+        prev = upper <= baseMs ? baseMs : ThreadLocalRandom.current().nextLong(baseMs - 1, upper) + 1;
+        return prev;
+    }
+
+    /** Следующая задержка с учётом подсказки сервера: не раньше {@code hintMs}, плюс до 20 % случайно. */
+    public synchronized long next(long hintMs) {
+        if (hintMs <= 0) return next();
+        hintMs = Math.min(hintMs, MAX_HINT_MS);
+        prev = Math.min(MAX_HINT_MS, Math.max(baseMs, hintMs + ThreadLocalRandom.current().nextLong(hintMs / 5 + 1)));
+        return prev;
+    }
+
+    /** Сбрасывает рост задержек после успешного подключения. */
+    public synchronized void reset() {
+        prev = baseMs;
+    }
+}
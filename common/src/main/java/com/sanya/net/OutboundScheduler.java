@@ -0,0 +1,433 @@
+package com.sanya.net;
+
+import com.sanya.files.FileChunk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * OutboundScheduler — мультиплексор исходящих объектов одного соединения по логическим потокам.
+ *
+ * Назначение:
+ *  Чтобы сообщение чата не ждало, пока уйдут мегабайты блоков файла, объекты раскладываются
+ *  по логическим потокам ({@link StreamClass#streamOf}) и пишутся в соединение одним потоком-писателем:
+ *  - {@link StreamClass#CONTROL} — строго первым;
+ *  - CHAT, VOICE и BULK — по весам алгоритмом Deficit Round Robin (по байтам);
+ *  - потоки одного класса (например, несколько передач файлов) — по кругу.
+ *  У каждого потока есть окно: пока в очереди потока больше {@link #WINDOW_BYTES} неотправленных байт,
+ *  отправитель этого потока блокируется, а остальные потоки продолжают работу.
+ *  Сброс буфера соединения выполняется один раз на пачку — когда очередь опустела (или набралось
+ *  {@link #MAX_BATCH} кадров), а не после каждого объекта; результат {@link #submit}/{@link #offer}
+ *  завершается после этого сброса. {@link #offer} не ждёт окна и сообщает о переполнении через результат.
+ *  С общим исполнителем писатель не держит поток: очередь разбирается задачей в пуле, пока не опустеет,
+ *  поэтому тысячи простаивающих соединений в одной JVM обходятся без потоков-писателей.
+ *
+ * Использование:
+ *  OutboundScheduler writer = new OutboundScheduler("Client-alice", sink, this::onWriteError);
+ *  writer.submit(message);   // из любого потока
+ *  writer.offer(message).whenComplete((ok, err) -> ...);   // без блокировки (EDT)
+ *  writer.close();
+ *  new OutboundScheduler("Client-bob", sink, this::onWriteError, sharedPool);   // без своего потока
+ *
+ * Потокобезопасность:
+ *  {@link #submit} и {@link #offer} можно вызывать из любых потоков; порядок сохраняется внутри логического потока.
+ *  Результаты кадров завершаются в потоке-писателе — продолжения должны быть короткими.
+ */
+public final class OutboundScheduler implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(OutboundScheduler.class.getName());
+
+    /** Окно потока: максимум неотправленных байт в очереди одного логического потока. */
+    public static final int WINDOW_BYTES = 4 * 1024 * 1024;
+
+    /** Жёсткий предел очереди потока для неблокирующей {@link #offer}: два окна. */
+    public static final int OFFER_LIMIT_BYTES = 2 * WINDOW_BYTES;
+
+    /** Максимум кадров между сбросами буфера соединения при непрерывной очереди. */
+    static final int MAX_BATCH = 64;
+
+    /** Квант DRR на единицу веса. */
+    private static final int QUANTUM = 64 * 1024;
+
+    /** Запись объектов в соединение. Вызывается только потоком-писателем. */
+    public interface FrameSink {
+        void write(Object frame) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    /**
+     * Запись в {@link ObjectOutputStream}: после блока файла сбрасывается таблица ссылок,
+     * иначе поток удерживает все отправленные блоки.
+     */
+    public static FrameSink objectSink(ObjectOutputStream out) {
+        return new FrameSink() {
+            @Override
+            public void write(Object frame) throws IOException {
+                out.writeObject(frame);
+                if (frame instanceof FileChunk) out.reset();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    private final FrameSink sink;
+    private final Consumer<IOException> onFailure;
+    private final String name;
+
+    /** Общий исполнитель задач разбора очереди (null — свой поток-писатель). */
+    private final Executor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final Condition space = lock.newCondition();
+
+    /** Потоки с данными в очереди по id. */
+    private final Map<String, Stream> streams = new HashMap<>();
+
+    /** Активные потоки каждого класса в порядке обслуживания. */
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Stream>[] active = new ArrayDeque[StreamClass.values().length];
+
+    /** Дефицит DRR каждого класса. */
+    private final long[] deficit = new long[StreamClass.values().length];
+
+    /** Класс, обслуживаемый DRR сейчас, и получил ли он квант в этом визите. */
+    private int cursor = StreamClass.CHAT.ordinal();
+    private boolean credited;
+
+    private int pending;
+    private long queuedBytes;
+
+    /** Задача разбора очереди уже поставлена в исполнитель или работает (режим общего исполнителя). */
+    private boolean draining;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * @param name      имя потока-писателя (для логов и отладки)
+     * @param sink      запись в соединение
+     * @param onFailure вызывается один раз при ошибке записи (из потока-писателя)
+     */
+    public OutboundScheduler(String name, FrameSink sink, Consumer<IOException> onFailure) {
+        this(name, sink, onFailure, null);
+        Thread writer = new Thread(this::writeLoop, name + "-Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Писатель без своего потока: очередь разбирает задача в {@code executor}, запускаемая первым
+     * объектом после опустевшей очереди. Кадры одного соединения по-прежнему пишутся строго по одному.
+     *
+     * @param executor общий для многих соединений исполнитель
+     */
+    public OutboundScheduler(String name, FrameSink sink, Consumer<IOException> onFailure, Executor executor) {
+        this.name = name;
+        this.sink = sink;
+        this.onFailure = onFailure;
+        this.executor = executor;
+        for (int i = 0; i < active.length; i++) active[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * Ставит объект в очередь его логического потока.
+     * Блокируется, пока окно потока заполнено.
+     *
+     * @return завершается, когда объект записан и буфер соединения сброшен
+     * @throws IOException если соединение уже закрыто или запись завершилась ошибкой
+     */
+    public CompletableFuture<Void> submit(Object obj) throws IOException {
+        return enqueue(obj, true);
+    }
+
+    /**
+     * Ставит объект в очередь без ожидания окна — для потоков, которые не должны блокироваться (EDT).
+     * Очередь потока может превысить окно, но не {@link #OFFER_LIMIT_BYTES}: сверх этого отправка
+     * отклоняется, и вызывающий узнаёт о переполнении из результата, а не зависанием.
+     *
+     * @return завершается, когда объект записан; исключением — если очередь потока переполнена,
+     *         соединение закрыто или запись не удалась
+     */
+    public CompletableFuture<Void> offer(Object obj) {
+        try {
+            return enqueue(obj, false);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Object obj, boolean wait) throws IOException {
+        StreamClass cls = StreamClass.of(obj);
+        String id = StreamClass.streamOf(obj);
+        int size = StreamClass.sizeOf(obj);
+        Frame frame = new Frame(obj, size, new CompletableFuture<>());
+        boolean schedule = false;
+        lock.lock();
+        try {
+            Stream s;
+            while (true) {
+                if (closed) throw closedException();
+                s = streams.get(id);
+                // Кадр крупнее окна проходит, только когда очередь потока пуста
+                if (s == null || s.queued == 0 || s.queued + size <= WINDOW_BYTES) break;
+                if (!wait) {
+                    if (s.queued + size <= OFFER_LIMIT_BYTES) break;
+                    throw new IOException("Send queue full: " + s.queued + " bytes queued in stream " + id);
+                }
+                try {
+                    space.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for stream window");
+                }
+            }
+            if (s == null) {
+                s = new Stream(id);
+                streams.put(id, s);
+            }
+            if (s.frames.isEmpty()) active[cls.ordinal()].addLast(s);
+            s.frames.addLast(frame);
+            s.queued += size;
+            pending++;
+            queuedBytes += size;
+            ready.signal();
+            if (executor != null && !draining) {
+                draining = true;
+                schedule = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (schedule) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                fail(new IOException("Writer pool rejected " + name, e));
+                throw new IOException("Connection closed", e);
+            }
+        }
+        return frame.done;
+    }
+
+    /** Число объектов в очереди. */
+    public int pending() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Оценка неотправленных байт во всех потоках (по {@link StreamClass#sizeOf}). */
+    public long queuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Останавливает писателя; неотправленные объекты отбрасываются, их результаты завершаются ошибкой. */
+    @Override
+    public void close() {
+        List<Frame> dropped;
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            dropped = discardAll();
+        } finally {
+            lock.unlock();
+        }
+        IOException e = new IOException("Connection closed");
+        dropped.forEach(f -> f.done.completeExceptionally(e));
+    }
+
+    private void writeLoop() {
+        List<Frame> batch = new ArrayList<>();
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    while (pending == 0 && !closed) ready.awaitUninterruptibly();
+                    if (closed) break;
+                    batch.add(next());
+                } finally {
+                    lock.unlock();
+                }
+                write(batch);
+            }
+        } catch (IOException e) {
+            fail(e);
+            batch.forEach(f -> f.done.completeExceptionally(e));
+            return;
+        }
+        failAll(batch, new IOException("Connection closed"));
+    }
+
+    /**
+     * Разбор очереди в общем исполнителе: пишет кадры, пока очередь не опустеет, и освобождает поток.
+     * Флаг {@code draining} снимается только под замком при пустой очереди, поэтому задача у соединения одна.
+     */
+    private void drain() {
+        List<Frame> batch = new ArrayList<>();
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    if (closed || pending == 0) {
+                        draining = false;
+                        break;
+                    }
+                    batch.add(next());
+                } finally {
+                    lock.unlock();
+                }
+                write(batch);
+            }
+        } catch (IOException e) {
+            fail(e);
+            batch.forEach(f -> f.done.completeExceptionally(e));
+            return;
+        }
+        // Очередь пуста — пачка уже сброшена; остаток возможен только после close()
+        failAll(batch, new IOException("Connection closed"));
+    }
+
+    /**
+     * Пишет последний кадр пачки. Буфер соединения сбрасывается один раз на пачку: когда очередь опустела
+     * или набралось {@link #MAX_BATCH} кадров, — после этого результаты кадров пачки завершаются.
+     */
+    private void write(List<Frame> batch) throws IOException {
+        sink.write(batch.get(batch.size() - 1).obj);
+        if (batch.size() >= MAX_BATCH || pending() == 0) {
+            sink.flush();
+            batch.forEach(f -> f.done.complete(null));
+            batch.clear();
+        }
+    }
+
+    private void fail(IOException e) {
+        boolean first;
+        List<Frame> dropped;
+        lock.lock();
+        try {
+            first = !closed;
+            closed = true;
+            draining = false;
+            failure = e;
+            dropped = discardAll();
+        } finally {
+            lock.unlock();
+        }
+        failAll(dropped, e);
+        if (first) {
+            log.log(Level.FINE, "Writer " + name + " failed", e);
+            onFailure.accept(e);
+        }
+    }
+
+    private static void failAll(List<Frame> frames, IOException e) {
+        frames.forEach(f -> f.done.completeExceptionally(e));
+    }
+
+    private IOException closedException() {
+        return failure != null ? new IOException("Connection failed", failure) : new IOException("Connection closed");
+    }
+
+    /** Выбирает следующий кадр. Вызывается под замком при {@code pending > 0}. */
+    private Frame next() {
+        int control = StreamClass.CONTROL.ordinal();
+        if (!active[control].isEmpty()) return take(control);
+
+        while (true) {
+            ArrayDeque<Stream> queue = active[cursor];
+            if (queue.isEmpty()) {
+                deficit[cursor] = 0;
+                advance();
+                continue;
+            }
+            if (!credited) {
+                deficit[cursor] += (long) QUANTUM * StreamClass.values()[cursor].weight;
+                credited = true;
+            }
+            int size = queue.peekFirst().frames.peekFirst().size;
+            if (size <= deficit[cursor]) {
+                deficit[cursor] -= size;
+                return take(cursor);
+            }
+            advance();
+        }
+    }
+
+    private void advance() {
+        cursor = cursor + 1 < active.length ? cursor + 1 : StreamClass.CHAT.ordinal();
+        credited = false;
+    }
+
+    /** Забирает кадр из первого потока класса; поток с оставшимися кадрами уходит в конец круга. */
+    private Frame take(int cls) {
+        Stream s = active[cls].pollFirst();
+        Frame frame = s.frames.pollFirst();
+        s.queued -= frame.size;
+        pending--;
+        queuedBytes -= frame.size;
+        if (!s.frames.isEmpty()) {
+            active[cls].addLast(s);
+        } else {
+            streams.remove(s.id);
+        }
+        space.signalAll();
+        return frame;
+    }
+
+    /** Очищает очередь под замком; возвращает отброшенные кадры, чтобы завершить их результаты вне замка. */
+    private List<Frame> discardAll() {
+        List<Frame> dropped = new ArrayList<>(pending);
+        for (ArrayDeque<Stream> queue : active) {
+            for (Stream s : queue) dropped.addAll(s.frames);
+            queue.clear();
+        }
+        streams.clear();
+        pending = 0;
+        queuedBytes = 0;
+        ready.signalAll();
+        space.signalAll();
+        return dropped;
+    }
+
+    /** Логический поток: очередь кадров и занятая часть окна. */
+    private static final class Stream {
+        final String id;
+        final ArrayDeque<Frame> frames = new ArrayDeque<>();
+        long queued;
+
+        Stream(String id) {
+            this.id = id;
+        }
+    }
+
+    /** Кадр очереди; {@code done} завершается после сброса буфера соединения. */
+    private record Frame(Object obj, int size, CompletableFuture<Void> done) {}
+}
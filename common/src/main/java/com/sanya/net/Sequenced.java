@@ -0,0 +1,26 @@
+package com.sanya.net;
+
+import java.io.Serializable;
+
+/**
+ * Кадр сервера с номером в сеансе получателя.
+ * Номера идут подряд с 1 для каждого сеанса; по последнему непрерывно полученному номеру клиент
+ * возобновляет сеанс после обрыва ({@link SessionResume}), а сервер досылает пропущенные кадры.
+ * Блоки файлов не нумеруются: у передач файлов своя докачка.
+ *
+ * @param seq     номер кадра в сеансе
+ * @param payload исходный объект протокола
+ */
+public record Sequenced(long seq, Object payload) implements Serializable {
+
+    /** Объект протокола внутри кадра (или сам объект, если он не нумерован). */
+    public static Object unwrap(Object frame) {
+        return frame instanceof Sequenced s ? s.payload() : frame;
+    }
+
+    /** Нумеруется ли объект в сеансе: всё, кроме блоков файлов и служебных кадров сеанса. */
+    public static boolean isSequenced(Object obj) {
+        return StreamClass.of(obj) != StreamClass.BULK
+                && !(obj instanceof SessionGrant) && !(obj instanceof Sequenced);
+    }
+}
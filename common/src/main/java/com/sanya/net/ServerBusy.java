@@ -0,0 +1,11 @@
+package com.sanya.net;
+
+import java.io.Serializable;
+
+/**
+ * Ответ перегруженного сервера вместо {@link SessionGrant}: соединение закрывается, клиенту следует
+ * повторить подключение не раньше чем через {@code retryAfterMs}. Сервер раздаёт отклонённым клиентам
+ * разные сроки, чтобы повторные подключения не пришли одной волной.
+ */
+public record ServerBusy(long retryAfterMs) implements Serializable {
+}
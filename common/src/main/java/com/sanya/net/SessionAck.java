@@ -0,0 +1,10 @@
+package com.sanya.net;
+
+import java.io.Serializable;
+
+/**
+ * Подтверждение клиента: все кадры сеанса до {@code seq} включительно получены,
+ * сервер может освободить их в буфере досылки.
+ */
+public record SessionAck(long seq) implements Serializable {
+}
@@ -0,0 +1,13 @@
+package com.sanya.net;
+
+import java.io.Serializable;
+
+/**
+ * Ответ сервера на HELLO или {@link SessionResume} — первый кадр соединения.
+ *
+ * @param token   токен сеанса для возобновления после обрыва
+ * @param resumed true — сеанс продолжен, пропущенные кадры следуют за ответом; false — сеанс новый,
+ *                нумерация начинается с 1, а ключи и пакет ключей клиент отправляет заново
+ */
+public record SessionGrant(String token, boolean resumed) implements Serializable {
+}
@@ -0,0 +1,7 @@
+package com.sanya.net;
+
+import java.io.Serializable;
+
+/** Явный выход клиента: сервер завершает сеанс сразу, не дожидаясь окончания периода возобновления. */
+public record SessionLeave() implements Serializable {
+}
@@ -0,0 +1,13 @@
+package com.sanya.net;
+
+import java.io.Serializable;
+
+/**
+ * Первый кадр клиента при переподключении вместо HELLO: продолжить сеанс без повторного входа.
+ *
+ * @param username имя пользователя
+ * @param token    токен из {@link SessionGrant}
+ * @param lastSeq  последний номер, до которого клиент получил все кадры ({@link Sequenced})
+ */
+public record SessionResume(String username, String token, long lastSeq) implements Serializable {
+}
@@ -0,0 +1,11 @@
+package com.sanya.net;
+
+import java.io.Serializable;
+
+/**
+ * Предупреждение сервера: клиент превысил допустимый темп отправки кадров класса {@code streamClass}.
+ * Кадры сверх лимита сервер отбрасывает ({@code dropped}); поток чтения соединения он не останавливает,
+ * чтобы не задерживать подтверждения сеанса. Повторять отправку стоит не раньше чем через {@code retryAfterMs}.
+ */
+public record SlowDown(StreamClass streamClass, long retryAfterMs, boolean dropped) implements Serializable {
+}
@@ -0,0 +1,75 @@
+package com.sanya.net;
+
+import com.sanya.Message;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.crypto.msg.GroupMessage;
+import com.sanya.events.voice.VoiceMessageReadyEvent;
+import com.sanya.events.voice.VoicePlayEvent;
+import com.sanya.events.voice.VoiceRecordingEvent;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.messages.VoiceMessage;
+
+/**
+ * Классы приоритета логических потоков одного соединения: control > chat > voice > bulk.
+ *
+ * Назначение:
+ *  Определить по объекту, в какой поток и с каким весом его ставит {@link OutboundScheduler}.
+ *  {@link #CONTROL} обслуживается строго первым, остальные делят канал по весам.
+ *  Нумерованный кадр ({@link Sequenced}) классифицируется по вложенному объекту.
+ */
+public enum StreamClass {
+
+    /** Ключи, списки пользователей, объявления и запросы передач. */
+    CONTROL(0),
+    /** Текстовые сообщения. */
+    CHAT(16),
+    /** Голосовые сообщения и события записи. */
+    VOICE(4),
+    /** Блоки файлов. */
+    BULK(1);
+
+    /** Вес в планировщике (доля канала при конкуренции). */
+    final int weight;
+
+    StreamClass(int weight) {
+        this.weight = weight;
+    }
+
+    /** Класс приоритета объекта. */
+    public static StreamClass of(Object obj) {
+        obj = Sequenced.unwrap(obj);
+        if (obj instanceof FileChunk || obj instanceof FileTransferComplete) return BULK;
+        if (obj instanceof VoiceMessageReadyEvent || obj instanceof VoiceMessage
+                || obj instanceof VoiceRecordingEvent || obj instanceof VoicePlayEvent) return VOICE;
+        if (obj instanceof Message || obj instanceof GroupMessage) return CHAT;
+        if (obj instanceof EncryptedDirectMessage dm) {
+            if (dm.isText()) return CHAT;
+            if (dm.mediaType().startsWith("audio/")) return VOICE;
+            return dm.isKey() ? CONTROL : BULK;
+        }
+        return CONTROL;
+    }
+
+    /**
+     * Логический поток объекта. Блоки файла и итог передачи идут в поток своей передачи,
+     * чтобы итог не обгонял блоки; остальное — в общий поток класса.
+     */
+    public static String streamOf(Object obj) {
+        obj = Sequenced.unwrap(obj);
+        if (obj instanceof FileChunk c) return "file:" + c.getTransferId();
+        if (obj instanceof FileTransferComplete c) return "file:" + c.transferId();
+        return of(obj).name();
+    }
+
+    /** Оценка размера кадра в байтах для планировщика и окон потоков. */
+    public static int sizeOf(Object obj) {
+        obj = Sequenced.unwrap(obj);
+        if (obj instanceof FileChunk c) return c.getData().length + 128;
+        if (obj instanceof VoiceMessageReadyEvent v && v.data() != null) return v.data().length + 128;
+        if (obj instanceof VoiceMessage v && v.data() != null) return v.data().length + 128;
+        if (obj instanceof EncryptedDirectMessage dm && dm.ciphertext() != null) return dm.ciphertext().length + 192;
+        if (obj instanceof GroupMessage gm && gm.ciphertext() != null) return gm.ciphertext().length + 160;
+        return 256;
+    }
+}
@@ -0,0 +1,115 @@
+package com.sanya.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AeadEngineTest {
+
+    @Test
+    void testInPlaceDirectBufferRoundTripMatchesArrayApi() throws Exception {
+        SecretKey key = new SecretKeySpec(new byte[32], "AES");
+        byte[] nonce = AeadEngine.randomNonce();
+        byte[] aad = "aad".getBytes();
+        byte[] plain = "hello, pooled cipher".getBytes();
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(plain.length + AeadEngine.TAG_LEN);
+        buf.put(plain).flip();
+        int n = AeadEngine.seal(key, nonce, aad, buf.duplicate(), buf.duplicate().limit(buf.capacity()));
+        assertEquals(plain.length + AeadEngine.TAG_LEN, n);
+
+        byte[] ct = new byte[n];
+        buf.duplicate().limit(n).get(ct);
+        assertArrayEquals(plain, AeadEngine.open(key, nonce, aad, ct));
+        // Прежний API работает поверх того же движка
+        byte[] other = Crypto.randomNonce12();
+        assertArrayEquals(plain, Crypto.decryptGCM(key, other, Crypto.encryptGCM(key, other, plain)));
+
+        ByteBuffer out = ByteBuffer.allocate(plain.length);
+        assertEquals(plain.length, AeadEngine.open(key, nonce, aad, ByteBuffer.wrap(ct), out));
+        assertArrayEquals(plain, out.array());
+        assertThrows(AEADBadTagException.class, () -> AeadEngine.open(key, nonce, "other".getBytes(), ct));
+    }
+
+    @Test
+    void testNonceSequenceNeverRepeats() {
+        AeadEngine.NonceSequence seq = new AeadEngine.NonceSequence();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) assertTrue(seen.add(HexFormat.of().formatHex(seq.next())));
+    }
+
+    @Test
+    void testShortOrTamperedCiphertextIsABadTagAndLeavesOutputUntouched() throws Exception {
+        SecretKey key = new SecretKeySpec(new byte[32], "AES");
+        byte[] nonce = AeadEngine.randomNonce();
+
+        // Короче тега: не ProviderException от JCE, а обычная ошибка проверки
+        assertThrows(AEADBadTagException.class, () -> AeadEngine.open(key, nonce, null, new byte[AeadEngine.TAG_LEN - 1]));
+        assertThrows(AEADBadTagException.class, () -> AeadEngine.open(key, nonce, null, new byte[0]));
+        assertThrows(AEADBadTagException.class,
+                () -> AeadEngine.open(key, nonce, null, ByteBuffer.allocate(3), ByteBuffer.allocate(16)));
+
+        byte[] ct = AeadEngine.seal(key, nonce, null, new byte[64]);
+        ct[ct.length - 1] ^= 1;
+        ByteBuffer out = ByteBuffer.allocate(64);
+        assertThrows(AEADBadTagException.class, () -> AeadEngine.open(key, nonce, null, ByteBuffer.wrap(ct), out));
+        assertEquals(0, out.position());
+        assertEquals(64, out.remaining());
+    }
+
+    @Test
+    void testResealingTheSameBlockIsDeterministic() throws Exception {
+        SecretKey key = new SecretKeySpec(new byte[32], "AES");
+        byte[] nonce = new byte[AeadEngine.NONCE_LEN];
+        byte[] plain = "chunk 7".getBytes();
+
+        // Повтор блока при докачке: JCE запрещает тот же nonce подряд, движок это обходит
+        byte[] first = AeadEngine.seal(key, nonce, null, plain);
+        byte[] again = AeadEngine.seal(new SecretKeySpec(new byte[32], "AES"), nonce, null, plain);
+        assertArrayEquals(first, again);
+        ByteBuffer out = ByteBuffer.allocate(first.length);
+        AeadEngine.seal(key, nonce, null, ByteBuffer.wrap(plain), out);
+        assertArrayEquals(first, out.array());
+    }
+
+    @Test
+    void testConcurrentThreadsDoNotShareCipherState() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                byte[] raw = new byte[32];
+                raw[0] = (byte) t;
+                SecretKey key = new SecretKeySpec(raw, "AES");
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        byte[] nonce = AeadEngine.randomNonce();
+                        byte[] plain = HexFormat.of().formatHex(nonce).getBytes();
+                        byte[] aad = raw.clone();
+                        if (!Arrays.equals(plain, AeadEngine.open(key, nonce, aad, AeadEngine.seal(key, nonce, aad, plain)))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> r : results) assertTrue(r.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.sanya.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.interfaces.XECPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BundleVerifierTest {
+
+    private static SignedPreKeyBundle bundle(String user, long timestamp) throws Exception {
+        KeyPair x = KeyUtils.generateX25519();
+        KeyPair ed = KeyUtils.generateEd25519();
+        byte[] raw = KeyUtils.x25519Raw((XECPublicKey) x.getPublic());
+        byte[] sig = SignatureUtils.signEd25519(ed.getPrivate(), Bytes.concat(Bytes.utf8(user), raw));
+        return new SignedPreKeyBundle(user, raw, ed.getPublic().getEncoded(), sig, timestamp);
+    }
+
+    @Test
+    void testParallelBatchRejectsForgedBundlesAndCachesResults() throws Exception {
+        List<SignedPreKeyBundle> batch = new ArrayList<>();
+        for (int i = 0; i < 24; i++) batch.add(bundle("user" + i, 1000 + i));
+        // Чужой X25519 под подписью user0
+        SignedPreKeyBundle good = batch.get(0);
+        SignedPreKeyBundle other = batch.get(1);
+        batch.add(new SignedPreKeyBundle("user0", other.getX25519Public(), good.getEd25519Public(),
+                good.getSignature(), good.getTimestamp() + 1));
+
+        BundleVerifier verifier = new BundleVerifier(new ForkJoinPool(4), 64);
+        Map<String, SignedPreKeyBundle> ok = verifier.verifyAll(batch);
+        assertEquals(24, ok.size());
+        assertSame(good, ok.get("user0"));
+        assertEquals(25, verifier.verifiedCount());
+        assertEquals(1, verifier.rejectedCount());
+
+        // Переподключение: те же пакеты не проверяются повторно
+        assertEquals(24, verifier.verifyAll(batch).size());
+        assertEquals(25, verifier.verifiedCount());
+        assertEquals(25, verifier.cacheHitCount());
+    }
+
+    @Test
+    void testChangedBundleIsVerifiedAgain() throws Exception {
+        SignedPreKeyBundle b = bundle("alice", 1);
+        BundleVerifier verifier = new BundleVerifier();
+        assertTrue(verifier.verify(b));
+
+        byte[] sig = b.getSignature().clone();
+        sig[0] ^= 1;
+        assertFalse(verifier.verify(new SignedPreKeyBundle("alice", b.getX25519Public(), b.getEd25519Public(), sig, 1)));
+        assertTrue(verifier.verify(new SignedPreKeyBundle("alice", b.getX25519Public(), b.getEd25519Public(), b.getSignature(), 2)));
+        assertFalse(verifier.verify(new SignedPreKeyBundle("alice", null, b.getEd25519Public(), b.getSignature(), 3)));
+        assertEquals(3, verifier.verifiedCount());
+    }
+
+    @Test
+    void testBundleReplayedUnderAnotherNameOrWithBrokenKeyIsRejected() throws Exception {
+        SignedPreKeyBundle bob = bundle("bob", 5);
+        BundleVerifier verifier = new BundleVerifier();
+
+        // Подпись покрывает имя: чужой подлинный пакет нельзя выдать за свой
+        assertFalse(verifier.verify(new SignedPreKeyBundle("alice", bob.getX25519Public(), bob.getEd25519Public(),
+                bob.getSignature(), bob.getTimestamp())));
+        // Повреждённый ключ Ed25519 и пустой пакет — отказ, а не исключение
+        assertFalse(verifier.verify(new SignedPreKeyBundle("bob", bob.getX25519Public(), new byte[7],
+                bob.getSignature(), bob.getTimestamp())));
+        assertFalse(verifier.verify(null));
+        assertEquals(3, verifier.rejectedCount());
+        assertTrue(verifier.verifyAll(List.of()).isEmpty());
+    }
+
+    @Test
+    void testConcurrentChecksOfOneBundleVerifyOnce() throws Exception {
+        SignedPreKeyBundle b = bundle("alice", 1);
+        BundleVerifier verifier = new BundleVerifier();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return verifier.verify(b);
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> r : results) assertTrue(r.get());
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, verifier.verifiedCount());
+        assertEquals(15, verifier.cacheHitCount());
+    }
+
+    @Test
+    void testEvictedResultIsVerifiedAgain() throws Exception {
+        SignedPreKeyBundle a = bundle("a", 1), b = bundle("b", 1), c = bundle("c", 1);
+        BundleVerifier verifier = new BundleVerifier(new ForkJoinPool(1), 2);
+        verifier.verify(a);
+        verifier.verify(b);
+        verifier.verify(a);
+        verifier.verify(c); // вытесняет b
+
+        assertTrue(verifier.verify(a));
+        assertEquals(3, verifier.verifiedCount());
+        assertTrue(verifier.verify(b));
+        assertEquals(4, verifier.verifiedCount());
+    }
+}
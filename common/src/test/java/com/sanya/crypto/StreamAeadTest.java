@@ -0,0 +1,100 @@
+package com.sanya.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamAeadTest {
+
+    @Test
+    void testChunksRoundTripInAnyOrder() throws Exception {
+        StreamAead.Secret secret = StreamAead.Secret.decode(StreamAead.Secret.random().encode());
+        StreamAead.Sealer sealer = StreamAead.sealer(secret, "t1");
+        byte[] a = sealer.seal(0, false, "first".getBytes());
+        byte[] b = sealer.seal(1, true, StreamAead.header(4096), "second".getBytes());
+        assertEquals(5 + StreamAead.TAG_LEN, a.length);
+
+        StreamAead.Opener opener = StreamAead.opener(secret, "t1");
+        assertArrayEquals("second".getBytes(), opener.open(1, true, StreamAead.header(4096), b));
+        assertArrayEquals("first".getBytes(), opener.open(0, false, a));
+    }
+
+    @Test
+    void testReorderedTruncatedOrForeignChunksAreRejected() {
+        StreamAead.Secret secret = StreamAead.Secret.random();
+        byte[] ct = StreamAead.sealer(secret, "t1").seal(3, false, StreamAead.header(0), new byte[100]);
+        StreamAead.Opener opener = StreamAead.opener(secret, "t1");
+
+        // Блок, выданный за последний (усечение потока), за другой номер или с другим заголовком
+        assertThrows(AEADBadTagException.class, () -> opener.open(3, true, StreamAead.header(0), ct));
+        assertThrows(AEADBadTagException.class, () -> opener.open(2, false, StreamAead.header(0), ct));
+        assertThrows(AEADBadTagException.class, () -> opener.open(3, false, StreamAead.header(65536), ct));
+        // Тот же секрет, другой поток
+        assertThrows(AEADBadTagException.class,
+                () -> StreamAead.opener(secret, "t2").open(3, false, StreamAead.header(0), ct));
+
+        ct[10] ^= 1;
+        assertThrows(AEADBadTagException.class, () -> opener.open(3, false, StreamAead.header(0), ct));
+    }
+
+    @Test
+    void testSwappedTruncatedOrExtendedStreamIsDetected() throws Exception {
+        StreamAead.Secret secret = StreamAead.Secret.random();
+        StreamAead.Sealer sealer = StreamAead.sealer(secret, "v1");
+        StreamAead.Opener opener = StreamAead.opener(secret, "v1");
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) chunks.add(sealer.seal(i, i == 3, new byte[]{(byte) i}));
+
+        // Два блока поменяли местами: ни один не открывается на чужом номере
+        assertThrows(AEADBadTagException.class, () -> opener.open(1, false, chunks.get(2)));
+        assertThrows(AEADBadTagException.class, () -> opener.open(2, false, chunks.get(1)));
+
+        // Поток обрезан после блока 2: получатель, ждущий последний блок, его не находит
+        assertThrows(AEADBadTagException.class, () -> opener.open(2, true, chunks.get(2)));
+        // Настоящий последний блок нельзя выдать за промежуточный и дописать поток после него
+        assertThrows(AEADBadTagException.class, () -> opener.open(3, false, chunks.get(3)));
+        assertArrayEquals(new byte[]{3}, opener.open(3, true, chunks.get(3)));
+    }
+
+    @Test
+    void testEmptyAndShortChunks() throws Exception {
+        StreamAead.Secret secret = StreamAead.Secret.random();
+        StreamAead.Opener opener = StreamAead.opener(secret, "v2");
+
+        // Пустой последний блок всё равно несёт тег: его отсутствие заметно
+        byte[] empty = StreamAead.sealer(secret, "v2").seal(0, true, new byte[0]);
+        assertEquals(StreamAead.TAG_LEN, empty.length);
+        assertEquals(0, opener.open(0, true, empty).length);
+
+        // Блок короче тега — ошибка проверки, а не иное исключение
+        assertThrows(AEADBadTagException.class, () -> opener.open(0, true, new byte[StreamAead.TAG_LEN - 1]));
+        assertThrows(AEADBadTagException.class, () -> opener.open(0, true, new byte[0]));
+    }
+
+    @Test
+    void testNoncePrefixIsBoundToTheKeyAndBufferApiMatches() throws Exception {
+        StreamAead.Secret secret = StreamAead.Secret.random();
+        byte[] plain = new byte[5000];
+        for (int i = 0; i < plain.length; i++) plain[i] = (byte) i;
+        byte[] ct = StreamAead.sealer(secret, "v3").seal(7, false, StreamAead.header(7), plain);
+
+        // Тот же материал ключа с другим префиксом — другой ключ потока
+        byte[] prefix = secret.noncePrefix().clone();
+        prefix[0] ^= 1;
+        StreamAead.Secret other = new StreamAead.Secret(secret.keyMaterial(), prefix);
+        assertThrows(AEADBadTagException.class, () -> StreamAead.opener(other, "v3").open(7, false, StreamAead.header(7), ct));
+
+        // Шифрование из direct-буфера даёт тот же шифротекст, что и из массива
+        ByteBuffer in = ByteBuffer.allocateDirect(plain.length).put(plain).flip();
+        ByteBuffer out = ByteBuffer.allocate(plain.length + StreamAead.TAG_LEN);
+        assertEquals(ct.length, StreamAead.sealer(secret, "v3").seal(7, false, StreamAead.header(7), in, out));
+        assertArrayEquals(ct, out.array());
+
+        assertThrows(IllegalArgumentException.class, () -> StreamAead.Secret.decode(new byte[StreamAead.SECRET_LEN]));
+    }
+}
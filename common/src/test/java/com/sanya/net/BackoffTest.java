@@ -0,0 +1,74 @@
+package com.sanya.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackoffTest {
+
+    @Test
+    void testDelaysStayWithinBoundsAndSpreadClients() {
+        Set<Long> firstDelays = new HashSet<>();
+        for (int client = 0; client < 100; client++) {
+            Backoff b = new Backoff(250, 30_000);
+            long prev = 250;
+            for (int attempt = 0; attempt < 20; attempt++) {
+                long d = b.next();
+                assertTrue(d >= 250 && d <= Math.min(30_000, prev * 3), "delay " + d + " after " + prev);
+                if (attempt == 1) firstDelays.add(d);
+                prev = d;
+            }
+        }
+        // Клиенты, потерявшие соединение одновременно, возвращаются в разное время
+        assertTrue(firstDelays.size() > 50, "distinct delays: " + firstDelays.size());
+    }
+
+    @Test
+    void testServerHintIsALowerBoundAndResetRestarts() {
+        Backoff b = new Backoff(250, 30_000);
+        for (int i = 0; i < 50; i++) {
+            long d = b.next(5_000);
+            assertTrue(d >= 5_000 && d <= 6_000, "hinted delay " + d);
+        }
+        long d = b.next(60_000);
+        assertTrue(d >= 60_000 && d <= 72_000, "hint above cap " + d);
+        assertEquals(Backoff.MAX_HINT_MS, b.next(Long.MAX_VALUE));
+        b.reset();
+        assertTrue(b.next() <= 750);
+    }
+
+    @Test
+    void testEdgeHintsAndDegenerateBounds() {
+        Backoff b = new Backoff(250, 30_000);
+        // Подсказка меньше базы или неположительная — обычный расчёт не короче базы
+        assertEquals(250, b.next(1));
+        long d = b.next(-5);
+        assertTrue(d >= 250 && d <= 750, "negative hint " + d);
+
+        // После подсказки выше предела обычная задержка снова не превышает предел
+        b.next(120_000);
+        for (int i = 0; i < 20; i++) assertTrue(b.next() <= 30_000);
+
+        Backoff fixed = new Backoff(1000, 1000);
+        for (int i = 0; i < 10; i++) assertEquals(1000, fixed.next());
+        assertThrows(IllegalArgumentException.class, () -> new Backoff(0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new Backoff(1000, 999));
+    }
+
+    @Test
+    void testHugeCapDoesNotOverflowBackToBase() {
+        long base = Long.MAX_VALUE / 2;
+        Backoff b = new Backoff(base, Long.MAX_VALUE);
+        boolean grew = false;
+        for (int i = 0; i < 20; i++) {
+            long d = b.next();
+            assertTrue(d >= base, "delay " + d);
+            grew |= d > base;
+        }
+        // 3 × предыдущая переполняет long: задержка должна упираться в предел, а не падать к базе
+        assertTrue(grew);
+    }
+}
@@ -0,0 +1,182 @@
+package com.sanya.net;
+
+import com.sanya.Message;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.files.FileTransferRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboundSchedulerTest {
+
+    /** Соединение, которое пишет кадр за 5 мс и ждёт открытия перед первым кадром. */
+    private static final class SlowSink implements OutboundScheduler.FrameSink {
+        final List<Object> written = new CopyOnWriteArrayList<>();
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void write(Object frame) {
+            try {
+                gate.await();
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.add(frame);
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+        }
+
+        final AtomicInteger flushes = new AtomicInteger();
+    }
+
+    private static FileChunk chunk(String id, int part) {
+        return new FileChunk(id, "big.bin", (long) part * 256 * 1024, new byte[256 * 1024], part, false);
+    }
+
+    @Test
+    void testChatAndControlOvertakeQueuedChunks() throws Exception {
+        SlowSink sink = new SlowSink();
+        OutboundScheduler writer = new OutboundScheduler("test", sink, e -> fail(e));
+        for (int i = 0; i < 12; i++) writer.submit(chunk("t1", i));
+        writer.submit(new FileTransferComplete("t1", 12L * 256 * 1024, new byte[32]));
+        Message chat = new Message("alice", "hi");
+        FileTransferRequest control = new FileTransferRequest("t2", "alice", "other.bin", 1);
+        writer.submit(chat);
+        writer.submit(control);
+        sink.gate.countDown();
+
+        while (writer.pending() > 0) Thread.sleep(5);
+        Thread.sleep(20);
+        writer.close();
+
+        // Первый кадр мог уйти до постановки чата; чат и control — в первых трёх, итог — после всех блоков
+        assertTrue(sink.written.indexOf(control) <= 1);
+        assertTrue(sink.written.indexOf(chat) <= 2);
+        assertEquals(15, sink.written.size());
+        assertInstanceOf(FileTransferComplete.class, sink.written.get(14));
+    }
+
+    @Test
+    void testStreamWindowBlocksOnlyItsOwnSender() throws Exception {
+        SlowSink sink = new SlowSink();
+        OutboundScheduler writer = new OutboundScheduler("test", sink, e -> fail(e));
+        int perWindow = OutboundScheduler.WINDOW_BYTES / StreamClass.sizeOf(chunk("x", 0));
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        Thread bulk = new Thread(() -> {
+            try {
+                for (int i = 0; i < perWindow + 2; i++) {
+                    if (i == perWindow + 1) blocked.countDown();
+                    writer.submit(chunk("t1", i));
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        bulk.start();
+        // Окно заполнено: отправитель блоков ждёт, а другие потоки ставятся в очередь без ожидания
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertTrue(bulk.isAlive());
+        writer.submit(chunk("t2", 0));
+        writer.submit(new Message("alice", "still responsive"));
+
+        sink.gate.countDown();
+        bulk.join(10_000);
+        assertFalse(bulk.isAlive());
+        writer.close();
+    }
+
+    @Test
+    void testSharedExecutorServesManyConnectionsInOrder() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        SlowSink a = new SlowSink();
+        SlowSink b = new SlowSink();
+        a.gate.countDown();
+        b.gate.countDown();
+        OutboundScheduler wa = new OutboundScheduler("a", a, e -> fail(e), pool);
+        OutboundScheduler wb = new OutboundScheduler("b", b, e -> fail(e), pool);
+        for (int i = 0; i < 20; i++) {
+            wa.submit(new Message("alice", "a" + i));
+            wb.submit(new Message("bob", "b" + i));
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while ((a.written.size() < 20 || b.written.size() < 20) && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        // Очередь опустела — задача освободила поток; следующий объект запускает её снова
+        wa.submit(new Message("alice", "later"));
+        while (a.written.size() < 21 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        wa.close();
+        wb.close();
+        pool.shutdown();
+
+        assertEquals(21, a.written.size());
+        assertEquals(20, b.written.size());
+        for (int i = 0; i < 20; i++) assertEquals("b" + i, ((Message) b.written.get(i)).getText());
+        assertEquals("later", ((Message) a.written.get(20)).getText());
+    }
+
+    @Test
+    void testOfferReportsBackpressureWithoutBlocking() throws Exception {
+        SlowSink sink = new SlowSink();
+        OutboundScheduler writer = new OutboundScheduler("test", sink, e -> fail(e));
+        int perLimit = OutboundScheduler.OFFER_LIMIT_BYTES / StreamClass.sizeOf(chunk("x", 0));
+
+        // Писатель стоит: offer не ждёт окна, а сверх предела сразу отдаёт ошибку
+        // (первый кадр может быть уже взят писателем и не занимать очередь)
+        List<CompletableFuture<Void>> accepted = new ArrayList<>();
+        CompletableFuture<Void> rejected = null;
+        for (int i = 0; rejected == null && i < perLimit + 2; i++) {
+            CompletableFuture<Void> f = writer.offer(chunk("t1", i));
+            if (f.isCompletedExceptionally()) rejected = f;
+            else accepted.add(f);
+        }
+        assertNotNull(rejected, "offer beyond the limit must fail");
+        assertTrue(accepted.size() >= perLimit);
+        ExecutionException full = assertThrows(ExecutionException.class, rejected::get);
+        assertTrue(full.getCause().getMessage().startsWith("Send queue full"));
+        assertTrue(writer.queuedBytes() > OutboundScheduler.WINDOW_BYTES);
+
+        // Другие потоки предел не затрагивает; результат завершается после записи
+        CompletableFuture<Void> chat = writer.offer(new Message("alice", "hi"));
+        assertFalse(chat.isDone());
+        sink.gate.countDown();
+        chat.get(5, TimeUnit.SECONDS);
+        CompletableFuture.allOf(accepted.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        assertEquals(accepted.size() + 1, sink.written.size());
+        assertEquals(0, writer.queuedBytes());
+        // Пачки сбрасываются целиком, а не после каждого кадра
+        assertTrue(sink.flushes.get() < sink.written.size(), "flushes: " + sink.flushes.get());
+        writer.close();
+    }
+
+    @Test
+    void testCloseFailsQueuedFrames() throws Exception {
+        SlowSink sink = new SlowSink();
+        OutboundScheduler writer = new OutboundScheduler("test", sink, e -> fail(e));
+        // Первый кадр может оказаться у писателя (он ждёт открытия соединения), второй — точно в очереди
+        writer.offer(new Message("alice", "blocker"));
+        CompletableFuture<Void> queued = writer.offer(new Message("alice", "never"));
+        writer.close();
+        sink.gate.countDown();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertEquals("Connection closed", e.getCause().getMessage());
+        assertTrue(writer.offer(new Message("alice", "late")).isCompletedExceptionally());
+    }
+}
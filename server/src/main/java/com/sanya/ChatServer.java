@@ -2,7 +2,12 @@ package com.sanya;
 
 import com.sanya.events.chat.UserListUpdatedEvent;
 
+import com.sanya.files.BlobProtocol;
+import com.sanya.files.BlobReference;
+import com.sanya.files.BlobTokenRequest;
 import com.sanya.files.FileChunk;
+import com.sanya.files.FileResumeRequest;
+import com.sanya.files.FileTransferComplete;
 import com.sanya.files.FileTransferRequest;
 
 import java.io.*;
@@ -10,33 +15,107 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 import com.sanya.crypto.SignedPreKeyBundle;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.crypto.msg.GroupMessage;
+import com.sanya.crypto.msg.KeyDirectoryUpdate;
+import com.sanya.crypto.msg.KeyHello;
+import com.sanya.events.voice.VoiceMessageReadyEvent;
+import com.sanya.events.voice.VoicePlayEvent;
+import com.sanya.events.voice.VoiceRecordingEvent;
+import com.sanya.net.OutboundScheduler;
+import com.sanya.net.ServerBusy;
+import com.sanya.net.SessionAck;
+import com.sanya.net.SessionLeave;
+import com.sanya.net.SessionResume;
+import com.sanya.net.SlowDown;
+import com.sanya.net.StreamClass;
+import com.sanya.server.admission.ConnectionLimiter;
+import com.sanya.server.admission.FrameGuard;
+import com.sanya.server.admission.HandshakeGate;
+import com.sanya.server.admission.OverloadController;
+import com.sanya.server.pipeline.MessagePipeline;
+import com.sanya.server.pipeline.SenderCheck;
+import com.sanya.server.blob.BlobGrants;
+import com.sanya.server.blob.BlobServer;
+import com.sanya.server.blob.BlobStore;
+import com.sanya.server.session.ServerSession;
+import com.sanya.server.session.SessionRegistry;
 import com.sanya.server.store.InMemoryMessageStore;
 import com.sanya.server.store.MessageStore;
 
 /**
  * Центральный сервер чата Sanya.
  * Поддерживает обмен сообщениями, файлами и голосовыми событиями.
+ * Файлы хранятся в {@link BlobStore} и отдаются с соседнего порта {@link BlobServer}; доступ к нему —
+ * по токену {@link BlobGrants}, который вошедший клиент получает через соединение чата.
+ * Запись каждому клиенту идёт через его {@link OutboundScheduler}: чат не ждёт за блоками файлов,
+ * а рассылки из потоков разных клиентов не перемешиваются в одном потоке.
+ * Кадры клиенту идут через его {@link ServerSession}: после обрыва клиент в течение
+ * {@link ServerSession#GRACE_MS} продолжает сеанс с последнего полученного номера, без повторного входа.
+ * Одновременных входов не больше ёмкости {@link HandshakeGate}: сверх неё подключение получает
+ * {@link ServerBusy} со сроком повтора, чтобы после перезапуска клиенты возвращались равномерно.
+ * Подключения, ещё не приславшие первый кадр, ограничены отдельно — до запуска потока на сокет.
+ * Входящие кадры проходят {@link FrameGuard} (размер и белый список классов до выделения памяти)
+ * и {@link ConnectionLimiter} (темп по классам): сверх лимита клиент получает {@link SlowDown}.
+ * При общей перегрузке {@link OverloadController} сбрасывает сначала индикаторы, затем голос и блоки файлов,
+ * а на критическом уровне притормаживает приём и отказывает новым входам; чат доставляется всегда.
+ * После входа кадры разбирает {@link MessagePipeline}: перехватчики (лимит, отправитель, перегрузка)
+ * и обработчик по типу кадра, с замером времени каждой ступени.
  */
 public class ChatServer {
 
     private static final Logger log = Logger.getLogger(ChatServer.class.getName());
     private static final int DEFAULT_PORT = 12345;
-    private static final Map<ObjectOutputStream, String> clients = new ConcurrentHashMap<>();
+
+    /** Очередь приёма: волна переподключений не должна терять SYN (по умолчанию у ServerSocket — 50). */
+    private static final int BACKLOG = Integer.getInteger("sanya.server.backlog", 1024);
+
+    /** Одновременных входов и сколько ждать первого кадра клиента, мс. */
+    private static final int HANDSHAKE_CAPACITY = Integer.getInteger("sanya.handshake.capacity", 64);
+    private static final int HANDSHAKE_TIMEOUT_MS = 10_000;
+
+    /** Подключений, ждущих первого кадра: у каждого свой поток, поэтому их число ограничено до его запуска. */
+    private static final int ARRIVAL_CAPACITY = Integer.getInteger("sanya.handshake.arrivals", 4 * HANDSHAKE_CAPACITY);
+
+    /** Буфер записи клиенту, байт. */
+    private static final int OUT_BUFFER = 64 * 1024;
+
+    /** Предел входящего кадра, байт. */
+    private static final int MAX_FRAME_BYTES = Integer.getInteger("sanya.frame.maxBytes", FrameGuard.DEFAULT_MAX_FRAME_BYTES);
+    /** Сеансы (в том числе ожидающие возобновления) и ключи их пользователей. */
+    private static final SessionRegistry registry = new SessionRegistry();
+
+    /** Уровень нагрузки по очередям всех клиентов и занятости процессора. */
+    private static final OverloadController overload = new OverloadController(ChatServer::backlogBytes);
+    /** Обновление списка участников было сброшено: разослать заново, когда нагрузка спадёт. */
+    private static volatile boolean presenceStale;
+
+    /** Разбор кадров после входа: лимит темпа, проверка отправителя, сброс при перегрузке и обработчик по типу. */
+    private static final MessagePipeline<ClientHandler> pipeline = buildPipeline();
+
+    /** Отложенные задачи: завершение сеансов, не возобновлённых за период ожидания. */
+    private static final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Server-Timers");
+        t.setDaemon(true);
+        return t;
+    });
 
     private ServerSocket serverSocket;
     private volatile boolean running;
-    private static final Map<String, SignedPreKeyBundle> signedBundles = new ConcurrentHashMap<>();
-    private static final Map<String, ObjectOutputStream> userOut = new ConcurrentHashMap<>();
-    private static final Map<String, String> userPubB64 = new ConcurrentHashMap<>();
     private final MessageStore messageStore = new InMemoryMessageStore();
+    private BlobStore blobStore;
+    private BlobServer blobServer;
+    /** Токены доступа к порту хранилища: выдаются только вошедшим через соединение чата. */
+    private final BlobGrants blobGrants = new BlobGrants();
+    private final HandshakeGate handshakes = new HandshakeGate(HANDSHAKE_CAPACITY);
+    private final HandshakeGate arrivals = new HandshakeGate(ARRIVAL_CAPACITY);
     // === Точка входа ===
     public static void main(String[] args) {
         try {
@@ -81,18 +160,39 @@ public class ChatServer {
             log.warning("Server already running");
             return;
         }
-        serverSocket = new ServerSocket(DEFAULT_PORT);
+        blobStore = BlobStore.open(java.nio.file.Path.of("blobs"));
+        blobServer = new BlobServer(blobStore, DEFAULT_PORT + BlobProtocol.PORT_OFFSET, blobGrants, overload);
+        blobServer.start();
+
+        serverSocket = new ServerSocket(DEFAULT_PORT, BACKLOG);
         running = true;
+        overload.start(() -> {
+            if (presenceStale) ClientHandler.updateUserList();
+        });
+        pipeline.exportMetrics();
 
         log.info("Server listening on port " + DEFAULT_PORT);
 
         while (running) {
             try {
+                long pause = overload.acceptPauseMs();
+                if (pause > 0) {
+                    // Новые подключения ждут в очереди ядра, пока сервер разбирает накопленное
+                    Thread.sleep(pause);
+                    continue;
+                }
                 Socket socket = serverSocket.accept();
+                if (!arrivals.tryEnter()) {
+                    refuse(socket, arrivals.retryAfterMs());
+                    continue;
+                }
                 log.info("Client connected: " + socket.getRemoteSocketAddress());
-                new Thread(new ClientHandler(socket), "Client-" + socket.getPort()).start();
+                new Thread(new ClientHandler(socket, System.nanoTime()), "Client-" + socket.getPort()).start();
             } catch (SocketException e) {
                 if (running) log.log(Level.WARNING, "Socket exception during accept", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
@@ -101,137 +201,164 @@ public class ChatServer {
         if (!running) return;
         running = false;
         log.info("Stopping ChatServer...");
+        overload.stop();
 
-        for (ObjectOutputStream out : clients.keySet()) {
-            try {
-                out.close();
-            } catch (IOException ignored) {
-            }
-        }
+        registry.closeAll();
 
-        clients.clear();
+        if (blobServer != null) blobServer.close();
 
         if (serverSocket != null && !serverSocket.isClosed()) {
             serverSocket.close();
         }
 
+        log.info("Message pipeline stages:" + pipeline.report());
         log.info("ChatServer stopped");
     }
 
+    /**
+     * Отказ без потока на подключение: {@link ServerBusy} укладывается в пустой буфер сокета,
+     * поэтому запись не задерживает приём.
+     */
+    private void refuse(Socket socket, long retryAfter) {
+        try (ObjectOutputStream o = new ObjectOutputStream(socket.getOutputStream())) {
+            o.writeObject(new ServerBusy(retryAfter));
+        } catch (IOException e) {
+            log.fine("Failed to refuse " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+        } finally {
+            ClientHandler.closeQuietly(socket);
+        }
+        log.fine("Refused " + socket.getRemoteSocketAddress() + " before handshake, retry after " + retryAfter + " ms ("
+                + arrivals.rejected() + " refused so far)");
+    }
+
+    /**
+     * Конвейер входящих кадров. Новый тип кадра — ещё одна строка {@code on(...)};
+     * тип, несущий имя отправителя, регистрируется и в проверке отправителя.
+     */
+    private static MessagePipeline<ClientHandler> buildPipeline() {
+        SenderCheck<ClientHandler> auth = new SenderCheck<ClientHandler>(h -> h.clientName)
+                .claim(Message.class, Message::getFrom)
+                .claim(GroupMessage.class, GroupMessage::from)
+                .claim(EncryptedDirectMessage.class, EncryptedDirectMessage::from)
+                .claim(SignedPreKeyBundle.class, SignedPreKeyBundle::getUsername)
+                .claim(KeyHello.class, KeyHello::username)
+                .claim(BlobReference.class, BlobReference::sender)
+                .claim(FileTransferRequest.class, FileTransferRequest::getSender)
+                .claim(VoiceRecordingEvent.class, VoiceRecordingEvent::username)
+                .claim(VoicePlayEvent.class, VoicePlayEvent::username);
+        return MessagePipeline.<ClientHandler>builder()
+                .intercept("rate-limit", ClientHandler::admit)
+                .intercept("auth", auth)
+                .intercept("overload", ClientHandler::shed)
+                // Сеанс: подтверждения получения и явный выход
+                .on(SessionAck.class, (h, ack) -> h.session.ack(ack.seq()))
+                .on(SessionLeave.class, (h, leave) -> h.session.markLeaving())
+                // Криптография: ключи клиентов и личные сообщения
+                .on(SignedPreKeyBundle.class, ClientHandler::onBundle)
+                .on(KeyHello.class, ClientHandler::onKeyHello)
+                .on(EncryptedDirectMessage.class, ClientHandler::onDirect)
+                // Групповое сообщение зашифровано один раз: всем участникам уходит один и тот же шифротекст
+                .on(GroupMessage.class, ClientHandler::relayToOthers)
+                .on(Message.class, ClientHandler::onMessage)
+                // Файлы; итог прохода и запросы докачки адресату определяет transferId
+                .on(FileTransferRequest.class, ClientHandler::relayToAll)
+                .on(BlobReference.class, ClientHandler::onBlobReference)
+                .on(BlobTokenRequest.class, ClientHandler::onBlobTokenRequest)
+                .on(FileChunk.class, ClientHandler::relayToAll)
+                .on(FileTransferComplete.class, ClientHandler::relayToOthers)
+                .on(FileResumeRequest.class, ClientHandler::relayToOthers)
+                // Голос
+                .on(VoiceRecordingEvent.class, ClientHandler::relayToAll)
+                .on(VoiceMessageReadyEvent.class, ClientHandler::relayToAll)
+                .on(VoicePlayEvent.class, ClientHandler::relayToAll)
+                .build();
+    }
+
+    /** Неотправленные байты во всех очередях клиентов. */
+    private static long backlogBytes() {
+        long total = 0;
+        for (ServerSession s : registry.sessions()) total += s.queuedBytes();
+        return total;
+    }
+
     // === Обработка клиента ===
     private  class ClientHandler implements Runnable {
         private final Socket socket;
         private String clientName;
+        private ServerSession session;
         private ObjectOutputStream out;
+        /** Планировщик исходящих объектов клиента: единственный, кто пишет в {@link #out}. */
+        private OutboundScheduler writer;
         private ObjectInputStream in;
 
-        ClientHandler(Socket socket) {
+        /** Место в {@link #arrivals} занято до первого кадра (с момента {@link #arrivedAt}). */
+        private boolean arriving = true;
+        private final long arrivedAt;
+
+        /** Место в {@link #handshakes} занято этим подключением (с момента {@link #enteredAt}). */
+        private boolean handshaking;
+        private long enteredAt;
+
+        private final FrameGuard guard = new FrameGuard(MAX_FRAME_BYTES);
+        private final ConnectionLimiter limiter = new ConnectionLimiter();
+
+        ClientHandler(Socket socket, long arrivedAt) {
             this.socket = socket;
+            this.arrivedAt = arrivedAt;
         }
 
         @Override
         public void run() {
             try {
-                out = new ObjectOutputStream(socket.getOutputStream());
-                in = new ObjectInputStream(socket.getInputStream());
-
-                // Первое сообщение от клиента — приветствие (HELLO)
-                Message hello = (Message) in.readObject();
-                clientName = hello.getFrom();
-                clients.put(out, clientName);
-                userOut.put(clientName, out);
-                log.info("[" + clientName + "] connected");
-
-                for (Object msg : messageStore.retrieve(clientName)) {
-                    out.writeObject(msg);
-                    out.flush();
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+                // Писатель сбрасывает буфер раз на пачку кадров; без задержки Нейгла ответ не ждёт ACK клиента
+                socket.setTcpNoDelay(true);
+                out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), OUT_BUFFER));
+                out.flush();
+                in = new ObjectInputStream(guard.wrap(socket.getInputStream()));
+                in.setObjectInputFilter(guard);
+                writer = new OutboundScheduler("Client-" + socket.getPort(), OutboundScheduler.objectSink(out),
+                        e -> closeQuietly(socket));
+
+                // Первое сообщение от клиента — приветствие (HELLO) или возобновление сеанса
+                guard.startFrame();
+                Object first = in.readObject();
+                arriving = false;
+                arrivals.exit(arrivedAt);
+                String claimed = claimedName(first);
+                if (claimed == null) {
+                    log.warning("Unexpected first frame " + (first == null ? "null" : first.getClass().getName())
+                            + " from " + socket.getRemoteSocketAddress() + ", closing");
+                    return;
                 }
-
-
-                // Оповещаем остальных
-                broadcastExcept(out, new Message("SERVER", clientName + " entered the chat", Message.Type.SYSTEM));
-                updateUserList();
+                // Место во входе занимает работа сервера, а не ожидание первого кадра медленного клиента.
+                // На критическом уровне нагрузки новые входы ждут; возобновление сеанса дешевле и пропускается
+                boolean newcomer = !(first instanceof SessionResume);
+                if ((newcomer && overload.level() == OverloadController.Level.CRITICAL) || !handshakes.tryEnter()) {
+                    rejectBusy();
+                    return;
+                }
+                handshaking = true;
+                enteredAt = System.nanoTime();
+                if (first instanceof SessionResume r && resume(r)) {
+                    log.info("[" + clientName + "] resumed session");
+                } else {
+                    clientName = claimed;
+                    join();
+                }
+                socket.setSoTimeout(0);
+                handshaking = false;
+                handshakes.exit(enteredAt);
 
                 // === Основной цикл приёма объектов ===
                 while (true) {
-                    Object obj = in.readObject();
-
-                    // --- Криптография: публичные ключи клиентов ---
-                    if (obj instanceof com.sanya.crypto.SignedPreKeyBundle bundle) {
-                        signedBundles.put(bundle.getUsername(), bundle);
-                        log.info("Received bundle from " + bundle.getUsername());
-
-                        // Рассылаем остальным
-                        broadcastExcept(out, bundle);
-
-                        // Новому клиенту шлём все известные ключи других
-                        Map<String, com.sanya.crypto.SignedPreKeyBundle> others = new HashMap<>(signedBundles);
-                        others.remove(bundle.getUsername());
-                        out.writeObject(others);
-                        out.flush();
-                        continue;
-                    }
-
-                    // --- Основные типы сообщений ---
-                    if (obj instanceof Message msg) {
-                        if (!"<<<HELLO>>>".equals(msg.getText())) {
-                            broadcast(msg);
-                        }
-                        continue;
-                    }
-
-                    if (obj instanceof FileTransferRequest req) {
-                        broadcast(req);
-                        continue;
-                    }
-
-                    if (obj instanceof FileChunk chunk) {
-                        broadcast(chunk);
-                        continue;
-                    }
-
-                    if (obj instanceof com.sanya.events.voice.VoiceRecordingEvent evt) {
-                        broadcast(evt);
-                        continue;
-                    }
-
-                    if (obj instanceof com.sanya.events.voice.VoiceMessageReadyEvent v) {
-                        broadcast( v);
-                        continue;
-                    }
-
-                    if (obj instanceof com.sanya.events.voice.VoicePlayEvent play) {
-                        broadcast(play);
-                        continue;
-                    }
-                    else if (obj instanceof com.sanya.crypto.msg.KeyHello hk) {
-                        userPubB64.put(hk.username(), hk.x25519PublicKeyB64());
-                        var snap = new com.sanya.crypto.msg.KeyDirectoryUpdate(Map.copyOf(userPubB64));
-                        broadcast(snap);
-                    }
-                    else if (obj instanceof com.sanya.crypto.msg.EncryptedDirectMessage dm) {
-                        ObjectOutputStream dst = userOut.get(dm.to());
-                        ObjectOutputStream self = userOut.get(dm.from());
-                        if (dst != null) {
-                            try {
-                                dst.writeObject(dm);
-                                dst.flush();
-                            } catch (IOException ignore) {}
-                        } else {
-                            messageStore.save(dm.to(), dm);
-                        }
-                        if (self != null && self != dst) {
-                            try {
-                                self.writeObject(dm);
-                                self.flush();
-                            } catch (IOException ignore) {}
-                        }
-                    }
-
-                    // Неизвестный тип
-                    log.fine("Unknown object: " + obj.getClass().getName());
+                    guard.startFrame();
+                    pipeline.dispatch(this, in.readObject());
                 }
 
+            } catch (InvalidClassException | FrameGuard.FrameTooLargeException e) {
+                // После отвергнутого кадра поток объектов не восстановить — соединение закрывается
+                log.warning("[" + clientName + "] rejected frame: " + e.getMessage());
             } catch (EOFException | StreamCorruptedException e) {
                 log.info("Client disconnected: " + clientName);
             } catch (SocketException e) {
@@ -239,7 +366,10 @@ public class ChatServer {
             } catch (Exception e) {
                 log.log(Level.WARNING, "Error handling client " + clientName, e);
             } finally {
+                if (arriving) arrivals.exit(arrivedAt);
+                if (handshaking) handshakes.exit(enteredAt);
                 handleDisconnect();
+                if (writer != null) writer.close();
                 try {
                     if (in != null) in.close();
                 } catch (IOException ignored) {
@@ -254,51 +384,195 @@ public class ChatServer {
                 }
             }
         }
-        // обёртка
+        // === Обработчики кадров (регистрация — в buildPipeline) ===
+
+        /** Связка предключей: рассылается остальным, в ответ — связки всех остальных. */
+        private void onBundle(SignedPreKeyBundle bundle) {
+            // Связка хранится за отправителем: чужую от его имени не подменить
+            registry.putBundle(session.id(), bundle);
+            log.info("Received bundle from " + bundle.getUsername());
+            broadcastExcept(session, bundle);
+            session.deliver(registry.bundlesExcept(session.id()));
+        }
+
+        private void onMessage(Message msg) {
+            if (!"<<<HELLO>>>".equals(msg.getText())) broadcast(msg);
+        }
+
+        /** Ссылка на загруженный файл: рассылается, только если содержимое уже в хранилище. */
+        private void onBlobReference(BlobReference ref) {
+            if (blobStore.contains(ref.blobId())) {
+                broadcastExcept(session, ref);
+            } else {
+                log.warning("[" + clientName + "] shared unknown blob " + ref.blobId());
+            }
+        }
+
+        /** Токен доступа к порту хранилища от имени вошедшего пользователя. */
+        private void onBlobTokenRequest(BlobTokenRequest req) {
+            session.deliver(blobGrants.issue(clientName));
+        }
+
+        private void onKeyHello(KeyHello hk) {
+            registry.putPublicKey(session.id(), hk.x25519PublicKeyB64());
+            broadcast(new KeyDirectoryUpdate(registry.publicKeys()));
+        }
+
+        /** Личное сообщение: отключённому в пределах периода ожидания сеанс дошлёт его после возобновления. */
+        private void onDirect(EncryptedDirectMessage dm) {
+            ServerSession dst = registry.byName(dm.to());
+            if (dst != null) {
+                dst.deliver(dm);
+            } else {
+                messageStore.save(dm.to(), dm);
+            }
+            // Копия отправителю нужна только текстовым сообщениям; блоки голоса и ключи потоков не возвращаются
+            if (session != dst && dm.isText()) session.deliver(dm);
+        }
+
+        private void relayToAll(Object frame) {
+            broadcast(frame);
+        }
+
+        private void relayToOthers(Object frame) {
+            broadcastExcept(session, frame);
+        }
+
+        /** Имя из первого кадра — приветствия или возобновления; null — кадр не открывает сеанс. */
+        private static String claimedName(Object first) {
+            String name = first instanceof SessionResume r ? r.username() : first instanceof Message m ? m.getFrom() : null;
+            return name == null || name.isBlank() ? null : name;
+        }
+
+        /** Отвечает перегруженным: {@link ServerBusy} со сроком повтора вместо сеанса; соединение закрывается. */
+        private void rejectBusy() throws IOException {
+            long retryAfter = handshakes.retryAfterMs();
+            out.writeObject(new ServerBusy(retryAfter));
+            out.flush();
+            log.fine("Rejected " + socket.getRemoteSocketAddress() + ", retry after " + retryAfter + " ms ("
+                    + handshakes.rejected() + " rejected so far)");
+        }
+
+        /** Новый сеанс: токен клиенту, отложенные сообщения и оповещение остальных. */
+        private void join() {
+            session = new ServerSession(clientName);
+            ServerSession previous = registry.register(session);
+            // Повторный вход без возобновления: прежний сеанс заменяется молча
+            if (previous != null) previous.close();
+            session.attach(writer, socket);
+            log.info("[" + clientName + "] connected");
+
+            for (Object msg : messageStore.retrieve(clientName)) {
+                session.deliver(msg);
+            }
+
+            // Оповещаем остальных
+            broadcastExcept(session, new Message("SERVER", clientName + " entered the chat", Message.Type.SYSTEM));
+            updateUserList();
+        }
+
+        /** Продолжает сеанс по токену; false — сеанса нет или пропущенное уже вытеснено, нужен новый вход. */
+        private boolean resume(SessionResume r) {
+            ServerSession s = registry.byToken(r.token());
+            if (s == null || !s.name().equals(r.username()) || !s.resume(writer, socket, r.lastSeq())) {
+                log.info("[" + r.username() + "] session cannot be resumed, starting a new one");
+                return false;
+            }
+            session = s;
+            clientName = s.name();
+            return true;
+        }
+
+        /**
+         * Лимит темпа входящих кадров. Кадры сверх лимита отбрасываются, и клиент узнаёт об этом из {@link SlowDown}.
+         * Поток чтения не ждёт маркеров: пока он спит, не разбираются и подтверждения сеанса.
+         * Потерю восстанавливает клиент: блоки файлов получатель запросит при докачке,
+         * ключ отправителя будет разослан заново со следующим сообщением.
+         *
+         * @return false — кадр отброшен
+         */
+        private boolean admit(Object obj) {
+            if (obj instanceof SessionAck || obj instanceof SessionLeave) return true;
+            StreamClass cls = StreamClass.of(obj);
+            long waitMs = limiter.admit(cls, guard.frameBytes());
+            if (waitMs == 0) return true;
+            if (limiter.shouldNotify(cls, waitMs)) {
+                writer.offer(new SlowDown(cls, waitMs, true));
+                log.warning("[" + clientName + "] " + cls + " rate limit exceeded, dropping for " + waitMs + " ms ("
+                        + limiter.throttled() + " throttled)");
+            }
+            return false;
+        }
+
+        /**
+         * Сброс по уровню нагрузки сервера. Об отброшенных голосе и блоках файлов отправитель узнаёт
+         * из {@link SlowDown}; индикаторы сбрасываются молча.
+         *
+         * @return false — кадр отброшен
+         */
+        private boolean shed(Object obj) {
+            if (overload.admits(obj)) return true;
+            if (OverloadController.priorityOf(obj) == OverloadController.Priority.MEDIA) {
+                StreamClass cls = StreamClass.of(obj);
+                long retryMs = OverloadController.TICK_MS * OverloadController.CALM_TICKS;
+                if (limiter.shouldNotify(cls, retryMs)) {
+                    writer.offer(new SlowDown(cls, retryMs, true));
+                    log.fine("[" + clientName + "] " + cls + " shed at load level " + overload.level());
+                }
+            }
+            return false;
+        }
+
+        /** Обрыв: сеанс ждёт возобновления; явный выход и остановка сервера завершают его сразу. */
         private void handleDisconnect() {
-            if (clientName != null) {
-                clients.remove(out);
-                signedBundles.remove(clientName);
-                broadcast(new Message("SERVER", clientName + " left the chat", Message.Type.SYSTEM));
-                updateUserList();
-                userOut.remove(clientName);
-                userPubB64.remove(clientName);
-                log.info("[" + clientName + "] disconnected");
+            if (session == null) return;
+            ServerSession s = session;
+            long epoch = s.detach(writer);
+            if (epoch < 0) return; // сеанс уже продолжен на новом соединении
+            if (s.isLeaving()) {
+                end(s);
+                return;
             }
+            log.info("[" + clientName + "] connection lost, session kept for " + ServerSession.GRACE_MS + " ms");
+            timers.schedule(() -> {
+                if (s.expireIfDetached(epoch)) end(s);
+            }, ServerSession.GRACE_MS, TimeUnit.MILLISECONDS);
+        }
+
+        /** Завершает сеанс: удаляет ключи пользователя и оповещает остальных. */
+        private static void end(ServerSession s) {
+            s.close();
+            if (!registry.remove(s)) return; // пользователь уже вошёл заново
+            broadcast(new Message("SERVER", s.name() + " left the chat", Message.Type.SYSTEM));
+            updateUserList();
+            log.info("[" + s.name() + "] disconnected");
         }
 
 
         // === Вспомогательные методы ===
         private static void broadcast(Object obj) {
-            clients.keySet().removeIf(out -> {
-                try {
-                    out.writeObject(obj);
-                    out.flush();
-                    return false;
-                } catch (IOException e) {
-                    log.warning("Failed to broadcast to one client: " + e.getMessage());
-                    return true;
-                }
-            });
+            for (ServerSession s : registry.sessions()) s.deliver(obj);
         }
 
-        private static void broadcastExcept(ObjectOutputStream exclude, Object obj) {
-            clients.keySet().removeIf(out -> {
-                if (out == exclude) return false;
-                try {
-                    out.writeObject(obj);
-                    out.flush();
-                    return false;
-                } catch (IOException e) {
-                    log.warning("Failed to broadcast (exclude mode): " + e.getMessage());
-                    return true;
-                }
-            });
+        private static void broadcastExcept(ServerSession exclude, Object obj) {
+            for (ServerSession s : registry.sessions()) {
+                if (s != exclude) s.deliver(obj);
+            }
+        }
+
+        private static void closeQuietly(Socket socket) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
         }
 
         private static void updateUserList() {
-            broadcast(new UserListUpdatedEvent(List.copyOf(clients.values())));
-            log.fine("User list updated, total clients: " + clients.size());
+            UserListUpdatedEvent update = new UserListUpdatedEvent(registry.names());
+            presenceStale = !overload.admits(update);
+            if (presenceStale) return;
+            broadcast(update);
+            log.fine("User list updated, total clients: " + registry.size());
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.sanya;
 
 import com.sanya.crypto.*;
+import com.sanya.net.Sequenced;
 
 import java.io.*;
 import java.net.Socket;
@@ -73,7 +74,7 @@ public final class ChatServerCryptoSelfTest {
         long end = System.currentTimeMillis() + 3000;
         while (System.currentTimeMillis() < end && (receivedA.isEmpty() || receivedB.isEmpty())) {
             try {
-                Object oA = inA.readObject();
+                Object oA = Sequenced.unwrap(inA.readObject());
                 if (oA instanceof SignedPreKeyBundle b) {
                     receivedA.put(b.getUsername(), b);
                 } else if (oA instanceof Map<?, ?> map) {
@@ -85,7 +86,7 @@ public final class ChatServerCryptoSelfTest {
             } catch (EOFException | SocketTimeoutException ignored) {}
 
             try {
-                Object oB = inB.readObject();
+                Object oB = Sequenced.unwrap(inB.readObject());
                 if (oB instanceof SignedPreKeyBundle b) {
                     receivedB.put(b.getUsername(), b);
                 } else if (oB instanceof Map<?, ?> map) {
@@ -101,24 +102,10 @@ public final class ChatServerCryptoSelfTest {
         System.out.println("[Client B] got bundles: " + receivedB.keySet());
 
         // === 6. Проверка подписей ===
-        for (SignedPreKeyBundle bundle : receivedA.values()) {
-            PublicKey pub = KeyFactory.getInstance("Ed25519")
-                    .generatePublic(new java.security.spec.X509EncodedKeySpec(bundle.getEd25519Public()));
-            boolean ok = SignatureUtils.verifyEd25519(
-                    pub,
-                    Bytes.concat(Bytes.utf8(bundle.getUsername()), bundle.getX25519Public()),
-                    bundle.getSignature());
-            if (!ok) throw new RuntimeException("Invalid signature from " + bundle.getUsername());
-        }
-
-        for (SignedPreKeyBundle bundle : receivedB.values()) {
-            PublicKey pub = KeyFactory.getInstance("Ed25519")
-                    .generatePublic(new java.security.spec.X509EncodedKeySpec(bundle.getEd25519Public()));
-            boolean ok = SignatureUtils.verifyEd25519(
-                    pub,
-                    Bytes.concat(Bytes.utf8(bundle.getUsername()), bundle.getX25519Public()),
-                    bundle.getSignature());
-            if (!ok) throw new RuntimeException("Invalid signature from " + bundle.getUsername());
+        BundleVerifier verifier = new BundleVerifier();
+        if (verifier.verifyAll(receivedA.values()).size() != receivedA.size()
+                || verifier.verifyAll(receivedB.values()).size() != receivedB.size()) {
+            throw new RuntimeException("Invalid bundle signature");
         }
 
         System.out.println("All signatures valid — bundles exchanged successfully");
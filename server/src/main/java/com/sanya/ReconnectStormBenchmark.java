@@ -0,0 +1,333 @@
+package com.sanya;
+
+import com.sanya.net.Backoff;
+import com.sanya.net.ServerBusy;
+import com.sanya.net.SessionGrant;
+import com.sanya.server.admission.HandshakeGate;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * ReconnectStormBenchmark — перезапуск сервера под тысячами подключённых клиентов:
+ * сколько времени проходит до переподключения последнего из них.
+ *
+ * Сервер — отдельный процесс (его убивают и запускают заново) с той же схемой приёма, что у {@link ChatServer}:
+ * поток accept с очередью {@code backlog}, поток на подключение, {@link HandshakeGate} после HELLO
+ * и вход фиксированной стоимости ({@code -Dstorm.handshakeMicros}, по умолчанию 200 мкс CPU).
+ * Клиенты — неблокирующие сокеты в одном потоке, ведут себя как {@code ChatConnector}:
+ * HELLO, ожидание {@link SessionGrant} или {@link ServerBusy}, переподключение по политике
+ *  - {@code fixed}  — прежняя задержка {@code 2^n} с (подсказку сервера не понимает);
+ *  - {@code jitter} — {@link Backoff} и срок из {@link ServerBusy}.
+ *
+ * Запуск (порт 12400):
+ *  java -cp server.jar:common.jar com.sanya.ReconnectStormBenchmark [clients] [jitter|fixed] [gate|nogate] [backlog]
+ *  java ... ReconnectStormBenchmark 10000 fixed nogate 50    # как до изменений
+ */
+public final class ReconnectStormBenchmark {
+
+    private static final int PORT = 12400;
+    private static final long DOWN_MS = 1_000;
+    private static final long TIMEOUT_MS = 300_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("server")) {
+            serve(Integer.parseInt(args[1]), Boolean.parseBoolean(args[2]));
+            return;
+        }
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        boolean jitter = args.length <= 1 || !args[1].equals("fixed");
+        boolean gate = args.length <= 2 || !args[2].equals("nogate");
+        int backlog = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+        System.out.printf("%d clients, %s backoff, %s, backlog %d%n",
+                clients, jitter ? "jitter" : "fixed 2^n", gate ? "handshake gate" : "no gate", backlog);
+        Storm storm = new Storm(clients, jitter, gate, backlog);
+        try {
+            storm.run();
+        } finally {
+            if (storm.server != null) storm.server.destroyForcibly();
+        }
+    }
+
+    // === Сервер ===
+
+    private static void serve(int backlog, boolean gated) throws IOException {
+        long costNs = Long.getLong("storm.handshakeMicros", 200) * 1_000;
+        HandshakeGate gate = gated ? new HandshakeGate(Integer.getInteger("sanya.handshake.capacity", 64)) : null;
+        List<Socket> live = Collections.synchronizedList(new ArrayList<>());
+        try (ServerSocket server = new ServerSocket(PORT, backlog)) {
+            System.out.println("listening");
+            System.out.flush();
+            while (true) {
+                Socket s = server.accept();
+                Thread t = new Thread(() -> handshake(s, gate, costNs, live));
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    /** Вход как в {@link ChatServer}: HELLO, место в {@link HandshakeGate} или {@link ServerBusy}, работа входа. */
+    private static void handshake(Socket s, HandshakeGate gate, long costNs, List<Socket> live) {
+        try {
+            s.setSoTimeout(10_000);
+            s.setTcpNoDelay(true);
+            ObjectOutputStream o = new ObjectOutputStream(s.getOutputStream());
+            o.flush();
+            new ObjectInputStream(s.getInputStream()).readObject();
+            if (gate != null && !gate.tryEnter()) {
+                o.writeObject(new ServerBusy(gate.retryAfterMs()));
+                o.flush();
+                s.close();
+                return;
+            }
+            long enteredAt = System.nanoTime();
+            try {
+                long until = enteredAt + costNs;
+                while (System.nanoTime() < until) Thread.onSpinWait();
+                o.writeObject(new SessionGrant("t", false));
+                o.flush();
+                live.add(s);
+            } finally {
+                if (gate != null) gate.exit(enteredAt);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            closeQuietly(s);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // === Клиенты ===
+
+    /** Клиент: неблокирующий сокет, накопленный ответ и собственная задержка переподключения. */
+    private static final class Client {
+        final Backoff backoff = new Backoff(250, 30_000);
+        int attempt;
+        long dueAt;
+        SocketChannel channel;
+        ByteBuffer hello;
+        byte[] reply = new byte[0];
+        boolean connected;
+    }
+
+    private static final class Storm {
+        final int n;
+        final boolean jitter;
+        final boolean gate;
+        final int backlog;
+        final byte[] helloBytes;
+        final InetSocketAddress address = new InetSocketAddress("localhost", PORT);
+        final PriorityQueue<Client> due = new PriorityQueue<>((a, b) -> Long.compare(a.dueAt, b.dueAt));
+        final ByteBuffer readBuf = ByteBuffer.allocate(4096);
+        Selector selector;
+        Process server;
+        volatile long listeningAt;
+
+        int connected;
+        long attempts, refused, busy, dropped;
+        /** Попытки подключения по интервалам 100 мс после перезапуска. */
+        final int[] burst = new int[(int) (TIMEOUT_MS / 100)];
+        long restartedAt;
+
+        Storm(int n, boolean jitter, boolean gate, int backlog) throws IOException {
+            this.n = n;
+            this.jitter = jitter;
+            this.gate = gate;
+            this.backlog = backlog;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream o = new ObjectOutputStream(bytes)) {
+                o.writeObject(new Message("storm", "<<<HELLO>>>"));
+            }
+            helloBytes = bytes.toByteArray();
+        }
+
+        void run() throws Exception {
+            selector = Selector.open();
+            startServer();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                Client c = new Client();
+                c.dueAt = t0 + i * 100_000L; // первичный вход — ровным потоком
+                due.add(c);
+            }
+            loopUntilAllConnected(t0);
+            System.out.printf("Initial: %d clients connected in %d ms (attempts %d, refused %d, busy %d, dropped %d)%n",
+                    n, (System.nanoTime() - t0) / 1_000_000, attempts, refused, busy, dropped);
+
+            attempts = refused = busy = dropped = 0;
+            long killedAt = System.nanoTime();
+            server.destroyForcibly().waitFor();
+            restartedAt = killedAt;
+            Thread restart = new Thread(() -> {
+                try {
+                    Thread.sleep(DOWN_MS);
+                    startServer();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, "Storm-Restart");
+            restart.start();
+            loopUntilAllConnected(killedAt);
+            long total = (System.nanoTime() - killedAt) / 1_000_000;
+
+            int peak = Arrays.stream(burst).max().orElse(0);
+            System.out.printf("Restart: all %d reconnected %d ms after kill, %d ms after the new server listened%n",
+                    n, total, (System.nanoTime() - listeningAt) / 1_000_000);
+            System.out.printf("  attempts %d (refused %d, busy %d, dropped before reply %d), peak %d attempts per 100 ms%n",
+                    attempts, refused, busy, dropped - n, peak);
+            server.destroyForcibly();
+            System.exit(0);
+        }
+
+        void startServer() throws IOException {
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            Process p = new ProcessBuilder(java, "-Xss256k", "-cp", System.getProperty("java.class.path"),
+                    ReconnectStormBenchmark.class.getName(), "server", String.valueOf(backlog), String.valueOf(gate))
+                    .redirectErrorStream(true).start();
+            BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()));
+            String line;
+            while ((line = r.readLine()) != null && !line.equals("listening")) System.err.println("[server] " + line);
+            listeningAt = System.nanoTime();
+            server = p;
+            Thread drain = new Thread(() -> {
+                try {
+                    while (r.readLine() != null) { /* вывод сервера не нужен */ }
+                } catch (IOException ignored) {
+                }
+            });
+            drain.setDaemon(true);
+            drain.start();
+        }
+
+        void loopUntilAllConnected(long since) throws IOException {
+            long deadline = since + TIMEOUT_MS * 1_000_000;
+            // Ждём и обрыва всех соединений (после перезапуска), и их восстановления
+            boolean sawDrop = connected < n;
+            long reportAt = since + 10_000_000_000L;
+            while (!(sawDrop && connected == n)) {
+                long now = System.nanoTime();
+                if (now > deadline) throw new IllegalStateException("Timed out: " + connected + " of " + n + " connected");
+                if (now > reportAt) {
+                    System.out.printf("  ... %d s: %d of %d connected, %d attempts, %d busy%n",
+                            (now - since) / 1_000_000_000L, connected, n, attempts, busy);
+                    reportAt += 10_000_000_000L;
+                }
+                while (!due.isEmpty() && due.peek().dueAt <= now) connect(due.poll(), now);
+                long waitMs = due.isEmpty() ? 50 : Math.max(1, (due.peek().dueAt - now) / 1_000_000);
+                selector.select(Math.min(waitMs, 50));
+                for (SelectionKey key : selector.selectedKeys()) handle(key);
+                selector.selectedKeys().clear();
+                if (connected < n) sawDrop = true;
+            }
+        }
+
+        void connect(Client c, long now) {
+            attempts++;
+            int bucket = (int) ((now - restartedAt) / 100_000_000L);
+            if (restartedAt > 0 && bucket >= 0 && bucket < burst.length) burst[bucket]++;
+            try {
+                c.channel = SocketChannel.open();
+                c.channel.configureBlocking(false);
+                c.channel.socket().setTcpNoDelay(true);
+                c.hello = ByteBuffer.wrap(helloBytes);
+                c.reply = new byte[0];
+                if (c.channel.connect(address)) {
+                    c.channel.register(selector, SelectionKey.OP_WRITE, c);
+                } else {
+                    c.channel.register(selector, SelectionKey.OP_CONNECT, c);
+                }
+            } catch (IOException e) {
+                refused++;
+                fail(c, 0);
+            }
+        }
+
+        void handle(SelectionKey key) {
+            Client c = (Client) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    c.channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else if (key.isWritable()) {
+                    c.channel.write(c.hello);
+                    if (!c.hello.hasRemaining()) key.interestOps(SelectionKey.OP_READ);
+                } else if (key.isReadable()) {
+                    readBuf.clear();
+                    int r = c.channel.read(readBuf);
+                    if (r < 0) {
+                        dropped++;
+                        fail(c, 0);
+                        return;
+                    }
+                    if (c.connected) return; // кадры после входа не нужны
+                    int old = c.reply.length;
+                    c.reply = Arrays.copyOf(c.reply, old + r);
+                    System.arraycopy(readBuf.array(), 0, c.reply, old, r);
+                    onReply(c);
+                }
+            } catch (IOException e) {
+                if (c.connected) dropped++;
+                else refused++;
+                fail(c, 0);
+            }
+        }
+
+        void onReply(Client c) {
+            Object reply;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(c.reply))) {
+                reply = in.readObject();
+            } catch (EOFException partial) {
+                return;
+            } catch (IOException | ClassNotFoundException e) {
+                fail(c, 0);
+                return;
+            }
+            if (reply instanceof ServerBusy b) {
+                busy++;
+                fail(c, b.retryAfterMs());
+                return;
+            }
+            c.connected = true;
+            c.attempt = 0;
+            c.backoff.reset();
+            connected++;
+        }
+
+        /** Обрыв или отказ: закрыть сокет и назначить следующую попытку по политике. */
+        void fail(Client c, long hintMs) {
+            if (c.channel != null) {
+                SelectionKey key = c.channel.keyFor(selector);
+                if (key != null) key.cancel();
+                closeQuietly(c.channel);
+                c.channel = null;
+            }
+            if (c.connected) {
+                c.connected = false;
+                connected--;
+            }
+            long delayMs = jitter
+                    ? c.backoff.next(hintMs)
+                    : Math.min(30, 1L << Math.min(5, ++c.attempt)) * 1_000;
+            c.dueAt = System.nanoTime() + delayMs * 1_000_000;
+            due.add(c);
+        }
+    }
+}
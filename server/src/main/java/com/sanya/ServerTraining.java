@@ -0,0 +1,126 @@
+package com.sanya;
+
+import com.sanya.crypto.*;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.crypto.msg.GroupMessage;
+import com.sanya.crypto.msg.KeyHello;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.files.FileTransferRequest;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.KeyPair;
+import java.security.interfaces.XECPublicKey;
+
+/**
+ * ServerTraining — обучающая нагрузка сервера для архива AppCDS (профиль {@code appcds}).
+ * Поднимает {@link ChatServer}, проводит сценарий двух клиентов (HELLO, ключи, пакеты ключей, чат,
+ * личное и групповое сообщение, передача файла) и завершает JVM, чтобы {@code -XX:ArchiveClassesAtExit}
+ * записал загруженные классы.
+ *
+ * Запуск:
+ *  java -XX:ArchiveClassesAtExit=server.jsa -cp server.jar com.sanya.ServerTraining
+ */
+public final class ServerTraining {
+
+    private static final int PORT = 12345;
+
+    private ServerTraining() {}
+
+    public static void main(String[] args) throws Exception {
+        ChatServer server = new ChatServer();
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.err.println("[ServerTraining] server stopped: " + e.getMessage());
+            }
+        }, "ServerThread");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try (Session alice = Session.open("Alice"); Session bob = Session.open("Bob")) {
+            alice.send(new Message("Alice", "hello from training"));
+            alice.send(new EncryptedDirectMessage("Alice", "Bob", AeadEngine.randomNonce(), new byte[32],
+                    EncryptedDirectMessage.TEXT, null, null));
+            bob.send(new GroupMessage("Bob", 1, 0, AeadEngine.randomNonce(), new byte[48]));
+
+            byte[] data = new byte[64 * 1024];
+            alice.send(new FileTransferRequest("training-transfer", "Alice", "training.bin", data.length));
+            alice.send(new FileChunk("training-transfer", "training.bin", 0, data, 0, true));
+            alice.send(new FileTransferComplete("training-transfer", data.length, AeadEngine.sha256(data)));
+
+            alice.drain();
+            bob.drain();
+        }
+
+        server.stop();
+        System.out.println("[ServerTraining] done");
+        System.exit(0);
+    }
+
+    /** Клиент сценария. */
+    private static final class Session implements Closeable {
+        private final Socket socket;
+        private final ObjectOutputStream out;
+        private final ObjectInputStream in;
+
+        private Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new ObjectOutputStream(socket.getOutputStream());
+            this.in = new ObjectInputStream(socket.getInputStream());
+        }
+
+        static Session open(String name) throws Exception {
+            Socket socket = connect();
+            socket.setSoTimeout(300);
+            Session s = new Session(socket);
+            s.send(new Message(name, "<<<HELLO>>>"));
+
+            KeyPair x = KeyUtils.generateX25519();
+            KeyPair ed = KeyUtils.generateEd25519();
+            s.send(new KeyHello(name, Crypto.encodePub(x.getPublic())));
+            byte[] raw = KeyUtils.x25519Raw((XECPublicKey) x.getPublic());
+            byte[] sig = SignatureUtils.signEd25519(ed.getPrivate(), Bytes.concat(Bytes.utf8(name), raw));
+            s.send(new SignedPreKeyBundle(name, raw, ed.getPublic().getEncoded(), sig, System.currentTimeMillis()));
+            return s;
+        }
+
+        /** Ждёт, пока сервер начнёт принимать подключения. */
+        private static Socket connect() throws Exception {
+            for (int i = 0; ; i++) {
+                try {
+                    return new Socket("localhost", PORT);
+                } catch (IOException e) {
+                    if (i >= 500) throw e;
+                    Thread.sleep(10);
+                }
+            }
+        }
+
+        void send(Object obj) throws IOException {
+            out.writeObject(obj);
+            out.flush();
+        }
+
+        /** Читает всё, что сервер успел прислать, до паузы. */
+        void drain() throws IOException, ClassNotFoundException {
+            int received = 0;
+            try {
+                while (true) {
+                    in.readObject();
+                    received++;
+                }
+            } catch (SocketTimeoutException | EOFException e) {
+                System.out.println("[ServerTraining] received " + received + " objects");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
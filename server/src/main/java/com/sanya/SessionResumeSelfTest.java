@@ -0,0 +1,158 @@
+package com.sanya;
+
+import com.sanya.events.chat.UserListUpdatedEvent;
+import com.sanya.net.Sequenced;
+import com.sanya.net.ServerBusy;
+import com.sanya.net.SessionGrant;
+import com.sanya.net.SessionLeave;
+import com.sanya.net.SessionResume;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Проверка возобновления сеанса на живом сервере: клиент обрывает соединение, собеседник пишет ему,
+ * клиент возвращается по токену и получает пропущенное; собеседник не видит ни выхода, ни повторного входа.
+ * Заодно — отказ подключениям с неверным первым кадром и сверх числа ждущих первого кадра.
+ *
+ * Запуск (порт 12345 должен быть свободен):
+ *  java -cp server.jar:common.jar com.sanya.SessionResumeSelfTest
+ */
+public final class SessionResumeSelfTest {
+
+    /** Подключений без первого кадра, которые сервер держит одновременно (на время проверки). */
+    private static final int ARRIVALS = 4;
+
+    /** Клиент без коннектора: свои кадры пишет напрямую, входящие разворачивает из {@link Sequenced}. */
+    private static final class Peer implements Closeable {
+        final Socket socket;
+        final ObjectOutputStream out;
+        final ObjectInputStream in;
+        long lastSeq;
+
+        Peer(Object first) throws IOException {
+            socket = new Socket("localhost", 12345);
+            socket.setSoTimeout(300);
+            out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            in = new ObjectInputStream(socket.getInputStream());
+            send(first);
+        }
+
+        void send(Object obj) throws IOException {
+            out.writeObject(obj);
+            out.flush();
+        }
+
+        /** Читает кадры, пока сервер молчит 300 мс. */
+        List<Object> drain() throws IOException, ClassNotFoundException {
+            List<Object> got = new ArrayList<>();
+            try {
+                while (true) {
+                    Object obj = in.readObject();
+                    if (obj instanceof Sequenced s) lastSeq = Math.max(lastSeq, s.seq());
+                    got.add(Sequenced.unwrap(obj));
+                }
+            } catch (SocketTimeoutException idle) {
+                return got;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== SessionResumeSelfTest ===");
+        System.setProperty("sanya.handshake.arrivals", String.valueOf(ARRIVALS));
+        Thread serverThread = new Thread(() -> {
+            try {
+                new ChatServer().start();
+            } catch (IOException e) {
+                System.err.println("[Server] stopped: " + e.getMessage());
+            }
+        }, "ServerThread");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(500);
+
+        Peer bob = new Peer(new Message("Bob", "<<<HELLO>>>"));
+        long t0 = System.nanoTime();
+        Peer alice = new Peer(new Message("Alice", "<<<HELLO>>>"));
+        List<Object> joined = alice.drain();
+        long joinMs = (System.nanoTime() - t0) / 1_000_000;
+        SessionGrant grant = (SessionGrant) joined.get(0);
+        check(!grant.resumed(), "first login starts a new session");
+        bob.drain();
+
+        // Обрыв без SessionLeave: сервер держит сеанс, собеседник продолжает писать
+        alice.close();
+        Thread.sleep(200);
+        for (int i = 0; i < 3; i++) bob.send(new Message("Bob", "while away " + i));
+        List<Object> seenByBob = bob.drain();
+        check(seenByBob.stream().noneMatch(SessionResumeSelfTest::isPresence), "no leave broadcast during grace period");
+
+        t0 = System.nanoTime();
+        Peer back = new Peer(new SessionResume("Alice", grant.token(), alice.lastSeq));
+        List<Object> replay = back.drain();
+        long resumeMs = (System.nanoTime() - t0) / 1_000_000;
+        check(replay.get(0) instanceof SessionGrant g && g.resumed(), "session resumed");
+        long missed = replay.stream().filter(o -> o instanceof Message m && m.getText().startsWith("while away")).count();
+        check(missed == 3, "missed messages replayed (" + missed + ")");
+        check(bob.drain().stream().noneMatch(SessionResumeSelfTest::isPresence), "no join broadcast on resume");
+
+        // Явный выход завершает сеанс сразу
+        back.send(new SessionLeave());
+        back.close();
+        Thread.sleep(200);
+        check(bob.drain().stream().anyMatch(o -> o instanceof Message m && m.getText().contains("left")), "leave ends session");
+
+        // Кадр, не открывающий сеанс, закрывает соединение; сеанс не создаётся
+        Peer junk = new Peer(new SessionLeave());
+        check(closedByServer(junk), "unexpected first frame closes the connection");
+        check(bob.drain().stream().noneMatch(SessionResumeSelfTest::isPresence), "no session for unexpected first frame");
+
+        // Молчащие подключения занимают места до первого кадра; сверх них — отказ без потока на сокет
+        List<Socket> silent = new ArrayList<>();
+        for (int i = 0; i < ARRIVALS; i++) silent.add(new Socket("localhost", 12345));
+        Thread.sleep(200);
+        Peer refused = new Peer(new Message("Carol", "<<<HELLO>>>"));
+        check(refused.in.readObject() instanceof ServerBusy, "connections beyond waiting arrivals refused");
+        refused.close();
+        for (Socket s : silent) s.close();
+        Thread.sleep(200);
+        Peer carol = new Peer(new Message("Carol", "<<<HELLO>>>"));
+        check(carol.drain().get(0) instanceof SessionGrant, "arrival places freed by closed connections");
+        carol.close();
+
+        System.out.printf("Full join: %d frames; resume: %d frames (times include 300 ms idle detection: %d / %d ms)%n",
+                joined.size(), replay.size(), joinMs, resumeMs);
+        bob.close();
+        System.exit(0);
+    }
+
+    /** Сервер закрыл соединение, ничего не ответив. */
+    private static boolean closedByServer(Peer peer) throws ClassNotFoundException {
+        try {
+            peer.drain(); // вернулся по таймауту — соединение живо
+            return false;
+        } catch (IOException closed) {
+            return true;
+        }
+    }
+
+    private static boolean isPresence(Object o) {
+        return o instanceof UserListUpdatedEvent
+                || o instanceof Message m && m.getType() == Message.Type.SYSTEM;
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "PASS " : "FAIL ") + what);
+        if (!ok) System.exit(1);
+    }
+}
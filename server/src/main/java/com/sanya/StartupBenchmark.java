@@ -0,0 +1,148 @@
+package com.sanya;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StartupBenchmark — замер холодного запуска с архивом AppCDS и без него.
+ *
+ * Назначение:
+ *  - Сервер: время от запуска JVM ({@code -jar server.jar}) до первого успешного подключения к порту.
+ *  - Клиент: время от запуска JVM до строки {@code connected-ms=} у {@code ClientTraining},
+ *    подключающегося к уже запущенному серверу.
+ *  Каждый вариант запускается {@code runs} раз в отдельной JVM; печатаются медиана и минимум.
+ *
+ * Запуск (после {@code mvn -Pappcds package}):
+ *  java -cp server/target/server.jar com.sanya.StartupBenchmark \
+ *       server/target/server.jar server/target/server.jsa client/target/client.jar client/target/client.jsa [runs]
+ */
+public final class StartupBenchmark {
+
+    private static final int PORT = 12345;
+    private static final String JAVA = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+    private StartupBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: StartupBenchmark <server.jar> <server.jsa> <client.jar> <client.jsa> [runs]");
+            System.exit(1);
+        }
+        Path serverJar = Path.of(args[0]).toAbsolutePath();
+        Path serverJsa = Path.of(args[1]).toAbsolutePath();
+        Path clientJar = Path.of(args[2]).toAbsolutePath();
+        Path clientJsa = Path.of(args[3]).toAbsolutePath();
+        int runs = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+        Path work = Files.createTempDirectory("sanya-startup");
+
+        System.out.println("[StartupBenchmark] " + runs + " runs per case, working dir " + work);
+        double plainServer = report("server time-to-listening, no archive", serverRuns(serverJar, null, work, runs));
+        double cdsServer = report("server time-to-listening, AppCDS", serverRuns(serverJar, serverJsa, work, runs));
+
+        Process server = launch(work, null, "-jar", serverJar.toString());
+        try {
+            awaitListening(server);
+            double plainClient = report("client time-to-connected, no archive", clientRuns(clientJar, null, work, runs));
+            double cdsClient = report("client time-to-connected, AppCDS", clientRuns(clientJar, clientJsa, work, runs));
+            System.out.printf("Speedup (median): server %.2fx, client %.2fx%n",
+                    plainServer / cdsServer, plainClient / cdsClient);
+        } finally {
+            stop(server);
+        }
+    }
+
+    private static List<Long> serverRuns(Path jar, Path jsa, Path work, int runs) throws Exception {
+        List<Long> out = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            Process p = launch(work, jsa, "-jar", jar.toString());
+            try {
+                awaitListening(p);
+                out.add((System.nanoTime() - t0) / 1_000_000);
+            } finally {
+                stop(p);
+            }
+        }
+        return out;
+    }
+
+    private static List<Long> clientRuns(Path jar, Path jsa, Path work, int runs) throws Exception {
+        List<Long> out = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            Process p = launch(work, jsa, "-cp", jar.toString(), "com.sanya.client.ClientTraining", "localhost", String.valueOf(PORT));
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String line;
+                while ((line = r.readLine()) != null && !line.startsWith("connected-ms=")) {
+                    // пропускаем вывод до отметки подключения
+                }
+                if (line == null) throw new IOException("Client exited before connecting");
+                out.add((System.nanoTime() - t0) / 1_000_000);
+            } finally {
+                p.waitFor(10, TimeUnit.SECONDS);
+                stop(p);
+            }
+        }
+        return out;
+    }
+
+    private static Process launch(Path work, Path jsa, String... command) throws IOException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(JAVA);
+        cmd.add("-Djava.awt.headless=true");
+        if (jsa != null) {
+            if (!Files.exists(jsa)) throw new IOException("Archive not found: " + jsa + " (build with -Pappcds)");
+            cmd.add("-XX:SharedArchiveFile=" + jsa);
+            cmd.add("-Xshare:auto");
+        }
+        Collections.addAll(cmd, command);
+        return new ProcessBuilder(cmd)
+                .directory(work.toFile())
+                .redirectError(ProcessBuilder.Redirect.to(new File(work.toFile(), "stderr.log")))
+                .start();
+    }
+
+    private static void awaitListening(Process p) throws Exception {
+        // Вывод сервера не нужен, но буфер канала не должен переполниться
+        Thread drain = new Thread(() -> {
+            try {
+                p.getInputStream().transferTo(java.io.OutputStream.nullOutputStream());
+            } catch (IOException ignored) {}
+        }, "StartupBenchmark-Drain");
+        drain.setDaemon(true);
+        drain.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            if (!p.isAlive()) throw new IOException("Server exited with code " + p.exitValue());
+            try {
+                new Socket("localhost", PORT).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(2);
+            }
+        }
+        throw new IOException("Server did not start listening within 30 s");
+    }
+
+    private static void stop(Process p) throws InterruptedException {
+        p.destroy();
+        if (!p.waitFor(10, TimeUnit.SECONDS)) p.destroyForcibly().waitFor();
+    }
+
+    private static double report(String name, List<Long> millis) {
+        List<Long> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        long median = sorted.get(sorted.size() / 2);
+        System.out.printf("%-40s median %5d ms, min %5d ms  %s%n", name, median, sorted.get(0), millis);
+        return median;
+    }
+}
@@ -0,0 +1,137 @@
+package com.sanya.server.admission;
+
+import com.sanya.Message;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileResumeRequest;
+import com.sanya.net.StreamClass;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Автономная проверка защиты входа без JUnit: белый список классов, предел кадра до выделения памяти
+ * и лимиты темпа по классам кадров.
+ *
+ * Запуск:
+ *  java -cp sanya-server.jar com.sanya.server.admission.AdmissionSelfTest
+ */
+public final class AdmissionSelfTest {
+
+    private static final int MAX = 4 * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== AdmissionSelfTest ===");
+
+        // 1. Кадры протокола проходят, счёт байт начинается заново с каждым кадром
+        List<Object> read = readAll(serialize(
+                new Message("alice", "hi"),
+                new EncryptedDirectMessage("alice", "bob", new byte[12], new byte[64], EncryptedDirectMessage.AUDIO, 3, true),
+                new FileResumeRequest("t1", new long[]{0, 1024}),
+                new FileChunk("t1", "a.bin", 0, new byte[3 * 1024 * 1024], 0, false),
+                new FileChunk("t1", "a.bin", 0, new byte[3 * 1024 * 1024], 1, true)));
+        check(read.size() == 5, "protocol frames pass, two 3 MiB chunks in a row fit a 4 MiB limit");
+
+        // 2. Класс вне протокола отклоняется, даже вложенный
+        Message withList = new Message("alice", "x");
+        withList.setAttachment(new ArrayList<>(List.of("a")));
+        check(rejected(serialize(withList), InvalidClassException.class), "java.util.ArrayList inside a message rejected");
+
+        // 3. Объявленная длина массива больше остатка кадра — отказ до выделения памяти
+        byte[] stream = serialize(new FileChunk("t2", "b.bin", 0, marked(), 0, true));
+        patchArrayLength(stream, Integer.MAX_VALUE - 8);
+        long before = usedHeap();
+        check(rejected(stream, InvalidClassException.class), "2 GiB array declaration rejected");
+        check(usedHeap() - before < 64 * 1024 * 1024, "no large allocation");
+
+        // 4. Длинная строка без массива обрывается по счётчику байт
+        check(rejected(serialize(new Message("alice", "z".repeat(MAX + 1))), FrameGuard.FrameTooLargeException.class),
+                "5 MiB string rejected by the byte count");
+
+        // 5. Темп: всплеск чата проходит, дальше отказ со сроком, а предупреждение — одно на срок
+        ConnectionLimiter limiter = new ConnectionLimiter(Map.of(
+                StreamClass.CHAT, new ConnectionLimiter.Limit(10, 5, 1024 * 1024, 1024 * 1024),
+                StreamClass.BULK, new ConnectionLimiter.Limit(1000, 1000, 1024 * 1024, 2 * 1024 * 1024)));
+        int passed = 0;
+        for (int i = 0; i < 5; i++) if (limiter.admit(StreamClass.CHAT, 200) == 0) passed++;
+        long wait = limiter.admit(StreamClass.CHAT, 200);
+        check(passed == 5 && wait > 0 && wait <= 100, "burst of 5 passes, 6th waits " + wait + " ms");
+        check(limiter.shouldNotify(StreamClass.CHAT, wait) && !limiter.shouldNotify(StreamClass.CHAT, wait),
+                "one slow-down notice per retry period");
+        Thread.sleep(wait);
+        check(limiter.admit(StreamClass.CHAT, 200) == 0, "frame passes after the advised wait");
+        check(limiter.admit(StreamClass.CONTROL, 1 << 20) == 0, "class without a limit is not throttled");
+
+        // 6. Байты: кадр крупнее всплеска проходит при полной корзине и уводит её в долг
+        check(limiter.admit(StreamClass.BULK, 3 * 1024 * 1024) == 0, "3 MiB frame passes a 2 MiB burst once");
+        wait = limiter.admit(StreamClass.BULK, 1024);
+        check(wait >= 900 && wait <= 1100, "next bulk frame waits for the debt: " + wait + " ms");
+        check(limiter.throttled() == 2, "throttled frames counted");
+
+        System.out.println("=== OK ===");
+    }
+
+    private static byte[] serialize(Object... frames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (Object f : frames) out.writeObject(f);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Читает кадры как сервер: через {@link FrameGuard}, с отсчётом байт на каждый кадр. */
+    private static List<Object> readAll(byte[] stream) throws IOException, ClassNotFoundException {
+        FrameGuard guard = new FrameGuard(MAX);
+        ByteArrayInputStream src = new ByteArrayInputStream(stream);
+        ObjectInputStream in = new ObjectInputStream(guard.wrap(src));
+        in.setObjectInputFilter(guard);
+        List<Object> frames = new ArrayList<>();
+        while (src.available() > 0) {
+            guard.startFrame();
+            frames.add(in.readObject());
+        }
+        return frames;
+    }
+
+    private static boolean rejected(byte[] stream, Class<? extends Exception> expected) {
+        try {
+            readAll(stream);
+            return false;
+        } catch (Exception e) {
+            return expected.isInstance(e);
+        }
+    }
+
+    private static final byte[] MARK = {'M', 'A', 'R', 'K', 'M', 'A', 'R', 'K'};
+
+    private static byte[] marked() {
+        return Arrays.copyOf(MARK, 16);
+    }
+
+    /** Подменяет длину массива, данные которого начинаются с {@link #MARK}. */
+    private static void patchArrayLength(byte[] stream, int length) {
+        for (int i = 4; i + MARK.length <= stream.length; i++) {
+            if (Arrays.equals(stream, i, i + MARK.length, MARK, 0, MARK.length)) {
+                stream[i - 4] = (byte) (length >>> 24);
+                stream[i - 3] = (byte) (length >>> 16);
+                stream[i - 2] = (byte) (length >>> 8);
+                stream[i - 1] = (byte) length;
+                return;
+            }
+        }
+        throw new IllegalStateException("marker not found");
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "[OK]   " : "[FAIL] ") + what);
+        if (!ok) throw new AssertionError(what);
+    }
+}
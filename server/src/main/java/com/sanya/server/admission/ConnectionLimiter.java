@@ -0,0 +1,101 @@
+package com.sanya.server.admission;
+
+import com.sanya.net.StreamClass;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * ConnectionLimiter — лимиты темпа входящих кадров одного соединения по классам {@link StreamClass}.
+ *
+ * Назначение:
+ *  Один клиент не должен заваливать сервер сообщениями или голосовыми записями: каждый такой кадр
+ *  рассылается всем участникам. У каждого класса две {@link TokenBucket} — кадров в секунду и байт в секунду;
+ *  кадр проходит, только если хватает обеих.
+ *  О превышении клиенту сообщают не чаще раза за срок повтора, чтобы предупреждения сами не стали потоком.
+ *
+ * Использование:
+ *  long waitMs = limiter.admit(StreamClass.of(obj), frameBytes);
+ *  if (waitMs > 0 && limiter.shouldNotify(cls, waitMs)) writer.offer(new SlowDown(cls, waitMs, true));
+ *
+ * Потокобезопасность:
+ *  Не потокобезопасен: принадлежит потоку чтения соединения.
+ */
+public final class ConnectionLimiter {
+
+    /**
+     * Лимит класса кадров.
+     *
+     * @param framesPerSecond средний темп кадров
+     * @param frameBurst      сколько кадров можно отправить разом
+     * @param bytesPerSecond  средний темп байт
+     * @param byteBurst       сколько байт можно отправить разом
+     */
+    public record Limit(double framesPerSecond, int frameBurst, double bytesPerSecond, long byteBurst) {
+    }
+
+    /**
+     * Лимиты по умолчанию: с запасом для живого человека в чате и для передачи файла на скорости локальной сети.
+     * Голос — целой записью до нескольких мегабайт, поэтому всплеск байт у него большой, а кадров — мало.
+     * Служебным кадрам нужен большой всплеск: новый ключ отправителя уходит каждому участнику отдельным кадром.
+     */
+    public static final Map<StreamClass, Limit> DEFAULTS = Map.of(
+            StreamClass.CONTROL, new Limit(200, 1000, 1024 * 1024, 4 * 1024 * 1024),
+            StreamClass.CHAT, new Limit(10, 30, 64 * 1024, 256 * 1024),
+            StreamClass.VOICE, new Limit(10, 20, 512 * 1024, 4 * 1024 * 1024),
+            StreamClass.BULK, new Limit(200, 400, 16 * 1024 * 1024, 32 * 1024 * 1024));
+
+    private final Map<StreamClass, TokenBucket> frames = new EnumMap<>(StreamClass.class);
+    private final Map<StreamClass, TokenBucket> bytes = new EnumMap<>(StreamClass.class);
+    /** До какого момента (System.nanoTime) клиент уже предупреждён о классе. */
+    private final Map<StreamClass, Long> notifiedUntil = new EnumMap<>(StreamClass.class);
+
+    private long throttled;
+
+    public ConnectionLimiter() {
+        this(DEFAULTS);
+    }
+
+    /** @param limits лимиты по классам; класс без лимита не ограничивается */
+    public ConnectionLimiter(Map<StreamClass, Limit> limits) {
+        limits.forEach((cls, l) -> {
+            frames.put(cls, new TokenBucket(l.framesPerSecond(), l.frameBurst()));
+            bytes.put(cls, new TokenBucket(l.bytesPerSecond(), l.byteBurst()));
+        });
+    }
+
+    /**
+     * Пропускает кадр, если у класса хватает маркеров, и списывает их.
+     *
+     * @return 0 — кадр пропущен; иначе через сколько миллисекунд класс снова примет такой кадр
+     */
+    public long admit(StreamClass cls, long frameBytes) {
+        TokenBucket f = frames.get(cls);
+        if (f == null) return 0;
+        TokenBucket b = bytes.get(cls);
+        long now = System.nanoTime();
+        // Маркеры списываются, только если хватает обеих корзин: отказ не должен расходовать другую
+        long wait = Math.max(f.waitNanos(1, now), b.waitNanos(frameBytes, now));
+        if (wait == 0) {
+            f.take(1);
+            b.take(frameBytes);
+            return 0;
+        }
+        throttled++;
+        return Math.max(1, (wait + 999_999) / 1_000_000);
+    }
+
+    /** Сообщать ли клиенту о превышении: не чаще раза за {@code retryAfterMs}. */
+    public boolean shouldNotify(StreamClass cls, long retryAfterMs) {
+        long now = System.nanoTime();
+        Long until = notifiedUntil.get(cls);
+        if (until != null && now - until < 0) return false;
+        notifiedUntil.put(cls, now + retryAfterMs * 1_000_000);
+        return true;
+    }
+
+    /** Сколько кадров не прошло лимит с открытия соединения. */
+    public long throttled() {
+        return throttled;
+    }
+}
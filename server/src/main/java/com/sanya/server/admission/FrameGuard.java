@@ -0,0 +1,119 @@
+package com.sanya.server.admission;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+
+/**
+ * FrameGuard — предел размера входящего кадра и белый список классов для {@link java.io.ObjectInputStream}.
+ *
+ * Назначение:
+ *  Кадр протокола — один объект {@code readObject()}. Поток Java-сериализации сам выделяет массив той длины,
+ *  которую объявил отправитель, и создаёт объект любого доступного класса.
+ *  Guard считает байты текущего кадра под потоком объектов и обрывает чтение сверх {@code maxFrameBytes};
+ *  как фильтр он отклоняет массив, объявленная длина которого не помещается в остаток кадра, — до выделения памяти,
+ *  а также классы вне протокола, слишком глубокую вложенность и слишком много ссылок.
+ *  Нарушение — {@link java.io.InvalidClassException} или {@link FrameTooLargeException}: поток объектов
+ *  после него не восстановить, соединение закрывается.
+ *
+ * Использование:
+ *  FrameGuard guard = new FrameGuard(FrameGuard.DEFAULT_MAX_FRAME_BYTES);
+ *  ObjectInputStream in = new ObjectInputStream(guard.wrap(socket.getInputStream()));
+ *  in.setObjectInputFilter(guard);
+ *  guard.startFrame(); Object obj = in.readObject(); long size = guard.frameBytes();
+ *
+ * Потокобезопасность:
+ *  Не потокобезопасен: принадлежит потоку чтения соединения.
+ */
+public final class FrameGuard implements ObjectInputFilter {
+
+    /** Предел кадра по умолчанию: блок файла (до 1 МиБ) или голосовое сообщение с запасом. */
+    public static final int DEFAULT_MAX_FRAME_BYTES = 4 * 1024 * 1024;
+
+    /** Классы протокола, их поля и суперклассы; остальное отклоняется. */
+    private static final ObjectInputFilter ALLOWED = ObjectInputFilter.Config.createFilter(
+            "maxdepth=8;maxrefs=1024;"
+                    + "com.sanya.**;java.lang.String;java.lang.Enum;java.lang.Number;"
+                    + "java.lang.Integer;java.lang.Long;java.lang.Boolean;!*");
+
+    private final int maxFrameBytes;
+    private long frameBytes;
+
+    public FrameGuard(int maxFrameBytes) {
+        if (maxFrameBytes <= 0) throw new IllegalArgumentException("maxFrameBytes " + maxFrameBytes);
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    /** Поток байт, из которого читает {@link java.io.ObjectInputStream}; считает байты текущего кадра. */
+    public InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) count(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, (int) Math.min(len, maxFrameBytes - frameBytes + 1));
+                if (n > 0) count(n);
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(Math.min(n, maxFrameBytes - frameBytes + 1));
+                if (skipped > 0) count(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    /** Начинает отсчёт нового кадра; вызывается перед каждым {@code readObject()}. */
+    public void startFrame() {
+        frameBytes = 0;
+    }
+
+    /** Байт прочитано в текущем кадре. */
+    public long frameBytes() {
+        return frameBytes;
+    }
+
+    public int maxFrameBytes() {
+        return maxFrameBytes;
+    }
+
+    @Override
+    public Status checkInput(FilterInfo info) {
+        long length = info.arrayLength();
+        if (length >= 0 && info.serialClass() != null) {
+            long declared = length * elementBytes(info.serialClass().getComponentType());
+            if (declared > maxFrameBytes - frameBytes) return Status.REJECTED;
+        }
+        return ALLOWED.checkInput(info);
+    }
+
+    private void count(long n) throws FrameTooLargeException {
+        frameBytes += n;
+        if (frameBytes > maxFrameBytes) throw new FrameTooLargeException(maxFrameBytes);
+    }
+
+    /** Наименьший размер элемента массива в потоке: примитив — его ширина, ссылка — хотя бы байт. */
+    private static int elementBytes(Class<?> component) {
+        if (component == long.class || component == double.class) return 8;
+        if (component == int.class || component == float.class) return 4;
+        if (component == short.class || component == char.class) return 2;
+        return 1;
+    }
+
+    /** Кадр длиннее допустимого. */
+    public static final class FrameTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FrameTooLargeException(int max) {
+            super("Frame exceeds " + max + " bytes");
+        }
+    }
+}
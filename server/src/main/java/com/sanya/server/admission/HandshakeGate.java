@@ -0,0 +1,103 @@
+package com.sanya.server.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HandshakeGate — ограничение числа одновременных входов (от первого кадра клиента до выдачи сеанса).
+ *
+ * Назначение:
+ *  После перезапуска сервера тысячи клиентов подключаются разом. Без ограничения каждый получает поток,
+ *  все входы идут одновременно и медленно, а очередь приёма переполняется.
+ *  Ожидание первого кадра во вход не входит: медленный клиент не занимает место, и время входа — работа сервера.
+ *  Сверх {@code capacity} входов подключение сразу получает {@link com.sanya.net.ServerBusy}
+ *  со сроком повтора. Сроки раздаются по очереди с шагом по измеренной пропускной способности входов,
+ *  поэтому отклонённые клиенты возвращаются равномерно, а не новой волной.
+ *
+ * Использование:
+ *  if (!gate.tryEnter()) { reply(new ServerBusy(gate.retryAfterMs())); close(); return; }
+ *  try { handshake(); } finally { gate.exit(); }
+ *
+ * Потокобезопасность:
+ *  Все методы можно вызывать из любых потоков.
+ */
+public final class HandshakeGate {
+
+    /**
+     * Границы срока повтора, мс. Верхняя — с запасом на волну из десятков тысяч клиентов:
+     * срок, урезанный до меньшего предела, вернул бы всех, кому не хватило интервалов, одновременно.
+     */
+    public static final long MIN_RETRY_MS = 500;
+    public static final long MAX_RETRY_MS = 120_000;
+
+    /** Интервалы раздаются чаще измеренного темпа: время входа в волне завышено самой волной. */
+    private static final double OVERBOOK = 2;
+
+    private final int capacity;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Средняя длительность входа, нс (сглаженно); 0 — ещё не измерено. */
+    private double meanNs;
+
+    /** Последний выданный срок повтора (System.nanoTime). */
+    private long nextSlot;
+
+    public HandshakeGate(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity " + capacity);
+        this.capacity = capacity;
+    }
+
+    /** Занимает место для входа; false — сервер перегружен. */
+    public boolean tryEnter() {
+        while (true) {
+            int n = inFlight.get();
+            if (n >= capacity) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    /**
+     * Освобождает место после входа (успешного или нет).
+     *
+     * @param enteredAt System.nanoTime() в момент успешного {@link #tryEnter()}
+     */
+    public void exit(long enteredAt) {
+        inFlight.decrementAndGet();
+        long took = System.nanoTime() - enteredAt;
+        synchronized (this) {
+            meanNs = meanNs == 0 ? took : meanNs + (took - meanNs) / 8;
+        }
+    }
+
+    /**
+     * Срок повтора для отклонённого клиента: следующий свободный интервал при текущей пропускной способности.
+     * Каждый вызов бронирует свой интервал.
+     * Пропускная способность — {@code capacity / среднее время входа} (закон Литтла): считается по длительности,
+     * а не по числу входов за интервал, иначе растянутые повторы занижали бы её и растягивали следующие ещё сильнее.
+     */
+    public synchronized long retryAfterMs() {
+        long now = System.nanoTime();
+        double perSecond = OVERBOOK * (meanNs > 0 ? capacity * 1e9 / meanNs : capacity * 10.0);
+        long spacing = (long) (1e9 / perSecond);
+        nextSlot = Math.max(nextSlot, now + MIN_RETRY_MS * 1_000_000) + spacing;
+        return Math.min(MAX_RETRY_MS, (nextSlot - now) / 1_000_000);
+    }
+
+    /** Входов в процессе. */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /** Отклонено подключений с запуска. */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
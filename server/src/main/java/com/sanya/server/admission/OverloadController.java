@@ -0,0 +1,243 @@
+package com.sanya.server.admission;
+
+import com.sanya.events.chat.UserListUpdatedEvent;
+import com.sanya.events.voice.VoicePlayEvent;
+import com.sanya.events.voice.VoiceRecordingEvent;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.net.Sequenced;
+import com.sanya.net.StreamClass;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * OverloadController — уровень нагрузки сервера и сброс малоценного трафика по приоритетам.
+ *
+ * Назначение:
+ *  При перегрузке сервер должен деградировать управляемо, а не одинаково тормозить всем.
+ *  Монитор раз в {@link #TICK_MS} замеряет два сигнала:
+ *   - очередь: неотправленные байты во всех очередях клиентов (клиенты не успевают читать);
+ *   - опоздание такта: насколько позже срока проснулся сам монитор (процессор занят).
+ *  По худшему из них выбирается {@link Level}, а по уровню — что сбрасывать ({@link #admits}):
+ *   ELEVATED — индикаторы (запись голоса, воспроизведение, обновления списка участников);
+ *   HIGH     — ещё голосовые сообщения и пересылка блоков файлов;
+ *   CRITICAL — то же, и приём новых подключений притормаживается ({@link #acceptPauseMs}).
+ *  Чат и служебные кадры не сбрасываются никогда. Итог передачи файла тоже: по нему получатели
+ *  запросят докачку сброшенных блоков.
+ *  Вверх уровень меняется сразу, вниз — на ступень после {@link #CALM_TICKS} спокойных тактов подряд.
+ *  Состояние экспортируется в JMX ({@link OverloadControllerMXBean}).
+ *
+ * Использование:
+ *  OverloadController overload = new OverloadController(() -> totalQueuedBytes());
+ *  overload.start(() -> resendPresence());      // вызовется при возврате к NORMAL
+ *  if (!overload.admits(frame)) return;         // перед рассылкой
+ *
+ * Потокобезопасность:
+ *  {@link #admits}, {@link #level} и метрики можно вызывать из любых потоков; замеры — только поток монитора.
+ */
+public final class OverloadController implements OverloadControllerMXBean {
+
+    private static final Logger log = Logger.getLogger(OverloadController.class.getName());
+
+    /** Уровни нагрузки по возрастанию. */
+    public enum Level { NORMAL, ELEVATED, HIGH, CRITICAL }
+
+    /** Ценность кадра: чем ниже, тем раньше он сбрасывается. */
+    public enum Priority { INDICATOR, MEDIA, ESSENTIAL }
+
+    /**
+     * Пороги уровней: очередь в байтах и опоздание такта в мс для ELEVATED, HIGH и CRITICAL.
+     */
+    public record Thresholds(long elevatedBytes, long highBytes, long criticalBytes,
+                             long elevatedLagMs, long highLagMs, long criticalLagMs) {
+    }
+
+    public static final Thresholds DEFAULTS = new Thresholds(
+            32L << 20, 128L << 20, 256L << 20,
+            20, 50, 200);
+
+    public static final long TICK_MS = 100;
+    public static final int CALM_TICKS = 10;
+
+    /** Пауза между accept на уровне CRITICAL, мс: остальные ждут в очереди приёма ядра. */
+    public static final long CRITICAL_ACCEPT_PAUSE_MS = 50;
+
+    private final LongSupplier backlogBytes;
+    private final Thresholds limits;
+
+    private volatile Level level = Level.NORMAL;
+    private volatile long backlog;
+    private volatile double lagMs;
+    private int calmTicks;
+
+    private final LongAdder shedIndicators = new LongAdder();
+    private final LongAdder shedMedia = new LongAdder();
+    private final AtomicLong escalations = new AtomicLong();
+
+    private Runnable onRecovered = () -> {};
+    private volatile Thread monitor;
+
+    public OverloadController(LongSupplier backlogBytes) {
+        this(backlogBytes, DEFAULTS);
+    }
+
+    public OverloadController(LongSupplier backlogBytes, Thresholds limits) {
+        this.backlogBytes = backlogBytes;
+        this.limits = limits;
+    }
+
+    /**
+     * Запускает монитор и регистрирует метрики в JMX.
+     *
+     * @param onRecovered вызывается в потоке монитора при возврате к NORMAL — например, чтобы разослать
+     *                    актуальный список участников вместо сброшенных обновлений
+     */
+    public synchronized void start(Runnable onRecovered) {
+        if (monitor != null) return;
+        this.onRecovered = onRecovered;
+        Thread t = new Thread(this::monitorLoop, "Overload-Monitor");
+        t.setDaemon(true);
+        monitor = t;
+        t.start();
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.sanya:type=OverloadController");
+            if (!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch (Exception e) {
+            log.warning("Overload metrics not exported: " + e.getMessage());
+        }
+    }
+
+    public synchronized void stop() {
+        Thread t = monitor;
+        monitor = null;
+        if (t != null) t.interrupt();
+    }
+
+    private void monitorLoop() {
+        long tickNs = TICK_MS * 1_000_000;
+        while (monitor == Thread.currentThread()) {
+            long before = System.nanoTime();
+            try {
+                Thread.sleep(TICK_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            update(backlogBytes.getAsLong(), System.nanoTime() - before - tickNs);
+        }
+    }
+
+    /** Один замер: очередь в байтах и опоздание такта в нс. */
+    void update(long backlogBytes, long lateNs) {
+        backlog = backlogBytes;
+        double late = Math.max(0, lateNs) / 1e6;
+        lagMs = lagMs + (late - lagMs) / 4;
+
+        Level target = max(levelFor(backlogBytes, limits.elevatedBytes(), limits.highBytes(), limits.criticalBytes()),
+                levelFor((long) lagMs, limits.elevatedLagMs(), limits.highLagMs(), limits.criticalLagMs()));
+        Level current = level;
+        if (target.compareTo(current) > 0) {
+            calmTicks = 0;
+            escalations.incrementAndGet();
+            setLevel(target);
+        } else if (target.compareTo(current) < 0 && ++calmTicks >= CALM_TICKS) {
+            calmTicks = 0;
+            setLevel(Level.values()[current.ordinal() - 1]);
+        } else if (target == current) {
+            calmTicks = 0;
+        }
+    }
+
+    private void setLevel(Level next) {
+        Level prev = level;
+        level = next;
+        String state = " (backlog " + (backlog >> 10) + " KiB, lag " + Math.round(lagMs) + " ms)";
+        if (next.compareTo(prev) > 0) log.warning("Load level " + prev + " -> " + next + state);
+        else log.info("Load level " + prev + " -> " + next + state);
+        if (next == Level.NORMAL) onRecovered.run();
+    }
+
+    private static Level levelFor(long value, long elevated, long high, long critical) {
+        if (value >= critical) return Level.CRITICAL;
+        if (value >= high) return Level.HIGH;
+        if (value >= elevated) return Level.ELEVATED;
+        return Level.NORMAL;
+    }
+
+    private static Level max(Level a, Level b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /** Ценность кадра для сброса. */
+    public static Priority priorityOf(Object frame) {
+        frame = Sequenced.unwrap(frame);
+        if (frame instanceof VoiceRecordingEvent || frame instanceof VoicePlayEvent
+                || frame instanceof UserListUpdatedEvent) return Priority.INDICATOR;
+        if (frame instanceof FileTransferComplete) return Priority.ESSENTIAL;
+        StreamClass cls = StreamClass.of(frame);
+        return cls == StreamClass.VOICE || cls == StreamClass.BULK ? Priority.MEDIA : Priority.ESSENTIAL;
+    }
+
+    /**
+     * Пропускать ли кадр при текущем уровне; отказ учитывается в метриках.
+     */
+    public boolean admits(Object frame) {
+        Level l = level;
+        if (l == Level.NORMAL) return true;
+        Priority p = priorityOf(frame);
+        if (p == Priority.INDICATOR) {
+            shedIndicators.increment();
+            return false;
+        }
+        if (p == Priority.MEDIA && l.compareTo(Level.HIGH) >= 0) {
+            shedMedia.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public Level level() {
+        return level;
+    }
+
+    /** Пауза перед следующим accept, мс; 0 — не тормозить. */
+    public long acceptPauseMs() {
+        return level == Level.CRITICAL ? CRITICAL_ACCEPT_PAUSE_MS : 0;
+    }
+
+    // === JMX ===
+
+    @Override
+    public String getLevel() {
+        return level.name();
+    }
+
+    @Override
+    public long getBacklogBytes() {
+        return backlog;
+    }
+
+    @Override
+    public double getLagMillis() {
+        return lagMs;
+    }
+
+    @Override
+    public long getShedIndicators() {
+        return shedIndicators.sum();
+    }
+
+    @Override
+    public long getShedMedia() {
+        return shedMedia.sum();
+    }
+
+    @Override
+    public long getEscalations() {
+        return escalations.get();
+    }
+}
@@ -0,0 +1,26 @@
+package com.sanya.server.admission;
+
+/**
+ * Метрики {@link OverloadController} в JMX ({@code com.sanya:type=OverloadController}):
+ * видны в JConsole/VisualVM и доступны любому JMX-сборщику.
+ */
+public interface OverloadControllerMXBean {
+
+    /** Текущий уровень нагрузки: NORMAL, ELEVATED, HIGH или CRITICAL. */
+    String getLevel();
+
+    /** Неотправленные байты во всех очередях клиентов при последнем замере. */
+    long getBacklogBytes();
+
+    /** Сглаженное опоздание такта монитора, мс: насколько занят процессор. */
+    double getLagMillis();
+
+    /** Отброшено индикаторов (запись голоса, воспроизведение, списки участников). */
+    long getShedIndicators();
+
+    /** Отброшено голосовых сообщений и блоков файлов. */
+    long getShedMedia();
+
+    /** Сколько раз уровень повышался с запуска. */
+    long getEscalations();
+}
@@ -0,0 +1,85 @@
+package com.sanya.server.admission;
+
+import com.sanya.Message;
+import com.sanya.crypto.msg.EncryptedDirectMessage;
+import com.sanya.events.chat.UserListUpdatedEvent;
+import com.sanya.events.voice.VoiceRecordingEvent;
+import com.sanya.files.FileChunk;
+import com.sanya.files.FileTransferComplete;
+import com.sanya.net.Sequenced;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Автономная проверка {@link OverloadController} без JUnit: уровни по очереди и опозданию такта,
+ * порядок сброса по приоритетам, плавный спуск и оповещение о восстановлении.
+ * Такты подаются вручную, без потока монитора.
+ *
+ * Запуск:
+ *  java -cp sanya-server.jar com.sanya.server.admission.OverloadSelfTest
+ */
+public final class OverloadSelfTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    public static void main(String[] args) {
+        System.out.println("=== OverloadSelfTest ===");
+
+        Object chat = new Sequenced(1, new Message("alice", "hi"));
+        Object indicator = new VoiceRecordingEvent("alice", true);
+        Object presence = new UserListUpdatedEvent(List.of("alice", "bob"));
+        Object chunk = new FileChunk("t1", "a.bin", 0, new byte[16], 0, false);
+        Object complete = new FileTransferComplete("t1", 16, new byte[32]);
+        Object keyDm = new EncryptedDirectMessage("alice", "bob", new byte[12], new byte[32], EncryptedDirectMessage.STREAM_KEY, 0, true);
+
+        OverloadController c = new OverloadController(() -> 0);
+        check(c.level() == OverloadController.Level.NORMAL && c.admits(indicator) && c.admits(chunk),
+                "everything passes at NORMAL");
+
+        // 1. Очередь растёт — уровень поднимается сразу
+        c.update(40 * MIB, 0);
+        check(c.level() == OverloadController.Level.ELEVATED, "40 MiB backlog -> ELEVATED");
+        check(!c.admits(indicator) && !c.admits(presence), "indicators shed at ELEVATED");
+        check(c.admits(chunk) && c.admits(chat), "media and chat still pass at ELEVATED");
+
+        c.update(300 * MIB, 0);
+        check(c.level() == OverloadController.Level.CRITICAL, "300 MiB backlog -> CRITICAL");
+        check(!c.admits(chunk), "file chunks shed at CRITICAL");
+        check(c.admits(chat) && c.admits(complete) && c.admits(keyDm),
+                "chat, transfer completion and key delivery never shed");
+        check(c.acceptPauseMs() > 0, "accept paused at CRITICAL");
+        check(c.getShedIndicators() == 2 && c.getShedMedia() == 1 && c.getEscalations() == 2,
+                "shed frames and escalations counted");
+
+        // 2. Спуск — по ступени после серии спокойных тактов
+        AtomicInteger recovered = new AtomicInteger();
+        OverloadController d = new OverloadController(() -> 0);
+        d.start(recovered::incrementAndGet);
+        d.stop();
+        d.update(300 * MIB, 0);
+        for (int i = 0; i < OverloadController.CALM_TICKS - 1; i++) d.update(0, 0);
+        check(d.level() == OverloadController.Level.CRITICAL, "stays CRITICAL for " + (OverloadController.CALM_TICKS - 1) + " calm ticks");
+        d.update(0, 0);
+        check(d.level() == OverloadController.Level.HIGH && d.acceptPauseMs() == 0, "one step down after a calm run");
+        d.update(200 * MIB, 0);
+        for (int i = 0; i < OverloadController.CALM_TICKS - 1; i++) d.update(0, 0);
+        check(d.level() == OverloadController.Level.HIGH, "a busy tick restarts the calm run");
+        for (int i = 0; i < 2 * OverloadController.CALM_TICKS; i++) d.update(0, 0);
+        check(d.level() == OverloadController.Level.NORMAL && recovered.get() == 1, "back to NORMAL, recovery reported once");
+
+        // 3. Опоздание такта сглаживается: один длинный сбор мусора не поднимает уровень до критического
+        OverloadController e = new OverloadController(() -> 0);
+        e.update(0, 300_000_000);
+        check(e.level() == OverloadController.Level.HIGH, "single 300 ms stall -> HIGH, not CRITICAL");
+        for (int i = 0; i < 5; i++) e.update(0, 300_000_000);
+        check(e.level() == OverloadController.Level.CRITICAL, "sustained 300 ms lag -> CRITICAL");
+
+        System.out.println("=== OK ===");
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "[OK]   " : "[FAIL] ") + what);
+        if (!ok) throw new AssertionError(what);
+    }
+}
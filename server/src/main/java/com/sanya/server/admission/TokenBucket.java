@@ -0,0 +1,72 @@
+package com.sanya.server.admission;
+
+/**
+ * TokenBucket — маркерная корзина: {@code rate} маркеров в секунду, не больше {@code burst} про запас.
+ *
+ * Назначение:
+ *  Ограничить средний темп (сообщений или байт в секунду), допуская короткие всплески до {@code burst}.
+ *  Кадр крупнее {@code burst} проходит при полной корзине и уводит её в долг: иначе он не прошёл бы никогда,
+ *  а следующий кадр ждёт, пока долг не погасится.
+ *
+ * Использование:
+ *  TokenBucket bytes = new TokenBucket(64 * 1024, 256 * 1024);
+ *  long waitNs = bytes.tryTake(frameBytes, System.nanoTime());
+ *  if (waitNs > 0) { ... кадр не пропущен, маркеры появятся через waitNs ... }
+ *
+ * Потокобезопасность:
+ *  Не потокобезопасен: корзина принадлежит одному соединению и используется его потоком чтения.
+ */
+public final class TokenBucket {
+
+    private final double perNano;
+    private final double burst;
+
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param ratePerSecond маркеров в секунду
+     * @param burst         ёмкость корзины; в начале она полная
+     */
+    public TokenBucket(double ratePerSecond, double burst) {
+        if (ratePerSecond <= 0 || burst <= 0) throw new IllegalArgumentException("rate " + ratePerSecond + ", burst " + burst);
+        this.perNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Через сколько наносекунд будет {@code n} маркеров (для {@code n > burst} — полная корзина).
+     *
+     * @return 0 — маркеров уже достаточно
+     */
+    public long waitNanos(double n, long now) {
+        refill(now);
+        double need = Math.min(n, burst);
+        return tokens >= need ? 0 : Math.max(1, (long) Math.ceil((need - tokens) / perNano));
+    }
+
+    /** Списывает {@code n} маркеров; после {@link #waitNanos} == 0, иначе корзина уходит в долг. */
+    public void take(double n) {
+        tokens -= n;
+    }
+
+    /**
+     * Забирает {@code n} маркеров, если их хватает.
+     *
+     * @return 0 — маркеры взяты; иначе через сколько наносекунд их станет достаточно (ничего не взято)
+     */
+    public long tryTake(double n, long now) {
+        long wait = waitNanos(n, now);
+        if (wait == 0) take(n);
+        return wait;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - refilledAt;
+        if (elapsed <= 0) return;
+        tokens = Math.min(burst, tokens + elapsed * perNano);
+        refilledAt = now;
+    }
+}
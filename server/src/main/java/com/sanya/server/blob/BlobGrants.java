@@ -0,0 +1,76 @@
+package com.sanya.server.blob;
+
+import com.sanya.files.BlobToken;
+
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BlobGrants — токены доступа к порту хранилища.
+ *
+ * Назначение:
+ *  Порт хранилища не знает пользователей: вход есть только у соединения чата. Сервер чата по
+ *  {@link com.sanya.files.BlobTokenRequest} выдаёт вошедшему пользователю короткоживущий токен,
+ *  соединение хранилища предъявляет его первым запросом и работает от имени этого пользователя
+ *  (квоты, лимит соединений).
+ *
+ * Использование:
+ *  session.deliver(grants.issue(clientName));   // в обработчике кадра чата
+ *  String user = grants.redeem(token);           // null — токен неизвестен или истёк
+ *
+ * Потокобезопасность:
+ *  Все методы можно вызывать из любых потоков.
+ */
+public final class BlobGrants {
+
+    /** Срок годности токена по умолчанию, мс. */
+    public static final long DEFAULT_TTL_MS = Long.getLong("sanya.blob.tokenTtlMs", 5 * 60_000L);
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMs;
+
+    /** Выданные токены: пользователь и момент истечения (System.nanoTime). */
+    private final Map<String, Grant> grants = new ConcurrentHashMap<>();
+
+    private record Grant(String user, long expiresAt) {
+    }
+
+    public BlobGrants() {
+        this(DEFAULT_TTL_MS);
+    }
+
+    public BlobGrants(long ttlMs) {
+        if (ttlMs <= 0) throw new IllegalArgumentException("ttlMs " + ttlMs);
+        this.ttlMs = ttlMs;
+    }
+
+    /** Выдаёт пользователю новый токен; истёкшие токены при этом забываются. */
+    public BlobToken issue(String user) {
+        long now = System.nanoTime();
+        grants.values().removeIf(g -> now - g.expiresAt() >= 0);
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+        grants.put(token, new Grant(user, now + ttlMs * 1_000_000));
+        return new BlobToken(token, ttlMs);
+    }
+
+    /**
+     * Пользователь, которому выдан токен.
+     *
+     * @return имя или null, если токен неизвестен или истёк
+     */
+    public String redeem(String token) {
+        Grant g = token != null ? grants.get(token) : null;
+        if (g == null) return null;
+        if (System.nanoTime() - g.expiresAt() >= 0) {
+            grants.remove(token, g);
+            return null;
+        }
+        return g.user();
+    }
+}
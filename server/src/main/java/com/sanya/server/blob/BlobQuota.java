@@ -0,0 +1,80 @@
+package com.sanya.server.blob;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BlobQuota — суточная квота загрузок в хранилище на пользователя.
+ *
+ * Назначение:
+ *  Один пользователь не должен заполнить диск сервера. Перед загрузкой под неё бронируется
+ *  недостающий объём; после загрузки неполученная часть брони возвращается, поэтому прерванная
+ *  загрузка расходует квоту только на принятые байты. Окно — сутки с первой загрузки в нём.
+ *
+ * Использование:
+ *  if (!quota.reserve(user, need)) reply(QUOTA_EXCEEDED, quota.remaining(user));
+ *  try { receive(); } finally { quota.release(user, need - received); }
+ *
+ * Потокобезопасность:
+ *  Методы синхронизированы.
+ */
+public final class BlobQuota {
+
+    /** Квота по умолчанию, байт в сутки. */
+    public static final long DEFAULT_BYTES_PER_DAY = Long.getLong("sanya.blob.quotaBytes", 4L * 1024 * 1024 * 1024);
+
+    private static final long WINDOW_NANOS = 24L * 60 * 60 * 1_000_000_000;
+
+    private final long bytesPerWindow;
+    private final long windowNanos;
+
+    /** Расход пользователей в текущем окне. */
+    private final Map<String, Usage> usage = new HashMap<>();
+
+    private static final class Usage {
+        long windowStart;
+        long bytes;
+    }
+
+    public BlobQuota() {
+        this(DEFAULT_BYTES_PER_DAY, WINDOW_NANOS);
+    }
+
+    /**
+     * @param bytesPerWindow сколько байт пользователь может загрузить за окно
+     * @param windowNanos    длительность окна, нс
+     */
+    public BlobQuota(long bytesPerWindow, long windowNanos) {
+        this.bytesPerWindow = bytesPerWindow;
+        this.windowNanos = windowNanos;
+    }
+
+    /** Бронирует {@code bytes}; false — квота пользователя исчерпана, ничего не забронировано. */
+    public synchronized boolean reserve(String user, long bytes) {
+        Usage u = current(user);
+        if (bytes > bytesPerWindow - u.bytes) return false;
+        u.bytes += bytes;
+        return true;
+    }
+
+    /** Возвращает неиспользованную часть брони. */
+    public synchronized void release(String user, long bytes) {
+        if (bytes <= 0) return;
+        Usage u = usage.get(user);
+        if (u != null) u.bytes = Math.max(0, u.bytes - bytes);
+    }
+
+    /** Сколько байт пользователь ещё может загрузить в текущем окне. */
+    public synchronized long remaining(String user) {
+        return bytesPerWindow - current(user).bytes;
+    }
+
+    private Usage current(String user) {
+        long now = System.nanoTime();
+        // Окна истёкших пользователей убираются, чтобы карта не росла с числом когда-либо загружавших
+        usage.values().removeIf(u -> now - u.windowStart >= windowNanos);
+        Usage u = usage.computeIfAbsent(user, k -> new Usage());
+        if (u.bytes == 0) u.windowStart = now;
+        return u;
+    }
+}
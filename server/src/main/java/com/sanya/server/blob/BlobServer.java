@@ -0,0 +1,340 @@
+package com.sanya.server.blob;
+
+import com.sanya.files.BlobProtocol;
+import com.sanya.net.StreamClass;
+import com.sanya.server.admission.ConnectionLimiter;
+import com.sanya.server.admission.HandshakeGate;
+import com.sanya.server.admission.OverloadController;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BlobServer — порт файлового хранилища: загрузка и скачивание содержимого по {@link BlobProtocol}.
+ *
+ * Назначение:
+ *  Принимать загрузку один раз (или сразу отвечать, что содержимое уже есть)
+ *  и отдавать файлы получателям через {@link FileChannel#transferTo} прямо в сокет, минуя heap.
+ *
+ * Допуск:
+ *  - Соединение работает от имени пользователя, которому сервер чата выдал токен ({@link BlobGrants});
+ *    первый запрос — {@link BlobProtocol#OP_AUTH}, без него соединение закрывается.
+ *  - Одновременных соединений не больше {@code capacity} и {@link #MAX_PER_USER} на пользователя:
+ *    сверх них подключение сразу получает {@link BlobProtocol#BUSY} со сроком повтора от {@link HandshakeGate}.
+ *  - Передачи файлов сбрасываются первыми при перегрузке: на уровне HIGH {@link OverloadController}
+ *    новые соединения отклоняются, на CRITICAL приём ещё и притормаживается, как у порта чата.
+ *  - Темп запросов и загружаемых байт ограничивает {@link ConnectionLimiter} соединения (классы CONTROL и BULK).
+ *  - Загрузки расходуют суточную квоту пользователя ({@link BlobQuota}); размер одного файла ограничен.
+ *  - Соединение, молчащее дольше {@link #IDLE_TIMEOUT_MS}, закрывается; брошенные part-файлы
+ *    удаляются через {@link #PART_TTL_MS}.
+ *
+ * Использование:
+ *  BlobServer blobs = new BlobServer(store, 12346, grants, overload);
+ *  blobs.start();
+ *  ...
+ *  blobs.close();
+ *
+ * Потокобезопасность:
+ *  Поток на соединение, как у основного порта чата; общее состояние — {@link BlobStore}, квоты и счётчики.
+ */
+public final class BlobServer implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(BlobServer.class.getName());
+
+    /** Максимальный размер загружаемого содержимого. */
+    private static final long MAX_BLOB_SIZE = Long.getLong("sanya.blob.maxBytes", 2L * 1024 * 1024 * 1024);
+
+    /** Одновременных соединений всего и на одного пользователя. */
+    private static final int CAPACITY = Integer.getInteger("sanya.blob.connections", 64);
+    static final int MAX_PER_USER = 4;
+
+    /** Сколько соединение может молчать (в том числе до предъявления токена), мс. */
+    static final long IDLE_TIMEOUT_MS = 30_000;
+
+    /** Через сколько брошенная загрузка удаляется, мс. */
+    static final long PART_TTL_MS = 24L * 60 * 60 * 1000;
+
+    /** Срок повтора для пользователя, исчерпавшего свои соединения, мс. */
+    private static final long PER_USER_RETRY_MS = 1_000;
+
+    /** Загрузка принимается отрезками: после каждого списываются байты из {@link ConnectionLimiter}. */
+    private static final long SLICE = 1024 * 1024;
+
+    private final BlobStore store;
+    private final int port;
+    private final BlobGrants grants;
+    private final OverloadController overload;
+    private final BlobQuota quota;
+    private final HandshakeGate connections;
+
+    /** Открытые соединения по пользователю. */
+    private final Map<String, Integer> perUser = new ConcurrentHashMap<>();
+
+    /** Открытые соединения: проверяются на простой. */
+    private final Set<Connection> open = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "BlobServer-Timers");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ServerSocketChannel server;
+    private volatile boolean running;
+
+    public BlobServer(BlobStore store, int port, BlobGrants grants, OverloadController overload) {
+        this(store, port, grants, overload, new BlobQuota(), CAPACITY);
+    }
+
+    BlobServer(BlobStore store, int port, BlobGrants grants, OverloadController overload, BlobQuota quota, int capacity) {
+        this.store = store;
+        this.port = port;
+        this.grants = grants;
+        this.overload = overload;
+        this.quota = quota;
+        this.connections = new HandshakeGate(capacity);
+    }
+
+    /** Открывает порт и запускает приём соединений в фоне. */
+    public void start() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "BlobServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        timers.scheduleWithFixedDelay(this::closeIdle, IDLE_TIMEOUT_MS / 6, IDLE_TIMEOUT_MS / 6, TimeUnit.MILLISECONDS);
+        timers.scheduleWithFixedDelay(this::expireParts, 0, 1, TimeUnit.HOURS);
+        log.info("Blob server listening on port " + port);
+    }
+
+    /** Фактический порт (если передан 0 — выбранный системой). */
+    public int port() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                long pause = overload.acceptPauseMs();
+                if (pause > 0) {
+                    Thread.sleep(pause);
+                    continue;
+                }
+                SocketChannel ch = server.accept();
+                // Передачи файлов при высокой нагрузке сбрасываются первыми: новые соединения ждут
+                if (overload.level().compareTo(OverloadController.Level.HIGH) >= 0 || !connections.tryEnter()) {
+                    refuse(ch, connections.retryAfterMs());
+                    continue;
+                }
+                Connection c = new Connection(ch, System.nanoTime());
+                Thread t = new Thread(() -> serve(c), "Blob-" + ch.socket().getPort());
+                t.setDaemon(true);
+                t.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) log.log(Level.WARNING, "Blob accept failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Отказ без потока на подключение: ответ укладывается в пустой буфер сокета. */
+    private void refuse(SocketChannel ch, long retryAfterMs) {
+        try (ch) {
+            BlobProtocol.write(ch, BlobProtocol.response(BlobProtocol.BUSY, retryAfterMs));
+        } catch (IOException e) {
+            log.fine("Failed to refuse blob connection: " + e.getMessage());
+        }
+        log.fine("Refused blob connection, retry after " + retryAfterMs + " ms (" + connections.rejected() + " refused so far)");
+    }
+
+    private void serve(Connection c) {
+        open.add(c);
+        String user = null;
+        try (SocketChannel ch = c.channel) {
+            user = authenticate(c);
+            if (user == null) return;
+            BlobProtocol.Request req;
+            while ((req = BlobProtocol.readRequest(ch)) != null) {
+                c.touch();
+                throttle(c, StreamClass.CONTROL, BlobProtocol.REQUEST_LENGTH);
+                switch (req.op()) {
+                    case BlobProtocol.OP_PUT -> put(c, user, req.blobId(), req.value());
+                    case BlobProtocol.OP_GET -> get(c, req.blobId(), req.value());
+                    default -> {
+                        log.warning("Unknown blob op from " + user + ": " + req.op());
+                        return;
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            log.fine("Blob client disconnected mid-operation");
+        } catch (IOException e) {
+            log.log(Level.FINE, "Blob connection failed", e);
+        } finally {
+            open.remove(c);
+            if (user != null) perUser.computeIfPresent(user, (u, n) -> n > 1 ? n - 1 : null);
+            connections.exit(c.enteredAt);
+        }
+    }
+
+    /**
+     * Первый запрос — токен; заодно занимает место пользователя в лимите его соединений.
+     *
+     * @return пользователь или null, если соединение нужно закрыть
+     */
+    private String authenticate(Connection c) throws IOException {
+        BlobProtocol.Request auth = BlobProtocol.readRequest(c.channel);
+        if (auth == null) return null;
+        c.touch();
+        String user = auth.op() == BlobProtocol.OP_AUTH ? grants.redeem(auth.blobId()) : null;
+        if (user == null) {
+            BlobProtocol.write(c.channel, BlobProtocol.response(BlobProtocol.REJECTED, 0));
+            log.warning("Blob connection without a valid token from " + c.channel.socket().getRemoteSocketAddress());
+            return null;
+        }
+        if (perUser.merge(user, 1, Integer::sum) > MAX_PER_USER) {
+            perUser.computeIfPresent(user, (u, n) -> n > 1 ? n - 1 : null);
+            BlobProtocol.write(c.channel, BlobProtocol.response(BlobProtocol.BUSY, PER_USER_RETRY_MS));
+            log.fine("[" + user + "] too many blob connections");
+            return null;
+        }
+        BlobProtocol.write(c.channel, BlobProtocol.response(BlobProtocol.OK, 0));
+        return user;
+    }
+
+    private void put(Connection c, String user, String blobId, long size) throws IOException {
+        SocketChannel ch = c.channel;
+        if (store.contains(blobId)) {
+            BlobProtocol.write(ch, BlobProtocol.response(BlobProtocol.OK, size));
+            log.fine("Blob " + blobId + " already stored, upload skipped");
+            return;
+        }
+        if (size < 0 || size > MAX_BLOB_SIZE) {
+            BlobProtocol.write(ch, BlobProtocol.response(BlobProtocol.REJECTED, 0));
+            return;
+        }
+        try (BlobStore.Upload up = store.beginUpload(blobId, size)) {
+            if (up == null) {
+                BlobProtocol.write(ch, BlobProtocol.response(BlobProtocol.BUSY, 0));
+                return;
+            }
+            long start = up.offset();
+            long reserved = size - start;
+            if (!quota.reserve(user, reserved)) {
+                BlobProtocol.write(ch, BlobProtocol.response(BlobProtocol.QUOTA_EXCEEDED, quota.remaining(user)));
+                log.info("[" + user + "] blob quota exceeded by " + blobId + " (" + reserved + " bytes)");
+                return;
+            }
+            long pos = start;
+            try {
+                BlobProtocol.write(ch, BlobProtocol.response(BlobProtocol.SEND, pos));
+                while (pos < size) {
+                    long n = up.channel().transferFrom(ch, pos, Math.min(SLICE, size - pos));
+                    if (n <= 0) throw new EOFException("Upload of " + blobId + " interrupted at " + pos);
+                    pos += n;
+                    c.touch();
+                    throttle(c, StreamClass.BULK, n);
+                }
+            } finally {
+                // Квота расходуется только на принятые байты
+                quota.release(user, reserved - (pos - start));
+            }
+            boolean ok = up.commit();
+            BlobProtocol.write(ch, BlobProtocol.response(ok ? BlobProtocol.OK : BlobProtocol.REJECTED, size));
+        }
+    }
+
+    private void get(Connection c, String blobId, long offset) throws IOException {
+        SocketChannel ch = c.channel;
+        if (!store.contains(blobId)) {
+            BlobProtocol.write(ch, BlobProtocol.response(BlobProtocol.NOT_FOUND, 0));
+            return;
+        }
+        try (FileChannel file = store.openRead(blobId)) {
+            long size = file.size();
+            BlobProtocol.write(ch, BlobProtocol.response(BlobProtocol.OK, size));
+            for (long pos = Math.max(0, Math.min(offset, size)); pos < size; ) {
+                pos += file.transferTo(pos, size - pos, ch);
+                c.touch();
+            }
+        }
+    }
+
+    /** Ждёт, пока лимит соединения примет {@code bytes} класса {@code cls}: медленнее читаем — медленнее шлёт клиент. */
+    private static void throttle(Connection c, StreamClass cls, long bytes) throws IOException {
+        try {
+            for (long wait; (wait = c.limiter.admit(cls, bytes)) > 0; ) Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Blob transfer interrupted");
+        }
+        c.touch();
+    }
+
+    /** Закрывает соединения, молчащие дольше {@link #IDLE_TIMEOUT_MS}: их потоки выйдут с ошибкой чтения. */
+    private void closeIdle() {
+        long cutoff = System.nanoTime() - IDLE_TIMEOUT_MS * 1_000_000;
+        for (Connection c : open) {
+            if (c.lastActive - cutoff < 0) {
+                log.fine("Closing idle blob connection " + c.channel.socket().getRemoteSocketAddress());
+                try {
+                    c.channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void expireParts() {
+        try {
+            store.expireParts(PART_TTL_MS);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to expire abandoned blob uploads", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        timers.shutdownNow();
+        if (server != null) server.close();
+        for (Connection c : open) c.channel.close();
+    }
+
+    /** Соединение хранилища: канал, собственный лимит темпа и момент последней активности. */
+    private static final class Connection {
+        final SocketChannel channel;
+        final long enteredAt;
+        final ConnectionLimiter limiter = new ConnectionLimiter();
+        volatile long lastActive;
+
+        Connection(SocketChannel channel, long enteredAt) {
+            this.channel = channel;
+            this.enteredAt = enteredAt;
+            this.lastActive = enteredAt;
+        }
+
+        void touch() {
+            lastActive = System.nanoTime();
+        }
+    }
+}
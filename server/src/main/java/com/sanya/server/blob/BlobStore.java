@@ -0,0 +1,205 @@
+package com.sanya.server.blob;
+
+import com.sanya.files.BlobProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * BlobStore — хранилище файлов на диске сервера с адресацией по SHA-256 содержимого.
+ *
+ * Назначение:
+ *  Хранить каждое содержимое один раз, сколько бы раз и кому бы его ни отправляли.
+ *  Файл лежит в {@code <root>/<первые 2 символа id>/<id>}, незавершённые загрузки —
+ *  в {@code <root>/tmp/<id>.part} и переживают разрыв соединения (загрузка продолжается со смещения).
+ *  Брошенные загрузки удаляет {@link #expireParts}, иначе они занимали бы диск навсегда.
+ *
+ * Использование:
+ *  BlobStore store = BlobStore.open(Path.of("blobs"));
+ *  BlobStore.Upload up = store.beginUpload(id, size); ... up.commit();
+ *  try (FileChannel ch = store.openRead(id)) { ch.transferTo(...); }
+ *
+ * Потокобезопасность:
+ *  Одно содержимое одновременно загружает только один клиент ({@link #beginUpload} вернёт {@code null}).
+ *  Готовые файлы неизменяемы и появляются атомарным переименованием, поэтому читаются без блокировок.
+ */
+public final class BlobStore {
+
+    private static final Logger log = Logger.getLogger(BlobStore.class.getName());
+
+    private final Path root;
+    private final Path tmp;
+
+    /** id содержимого, загрузка которого сейчас идёт. */
+    private final Set<String> uploading = ConcurrentHashMap.newKeySet();
+
+    private BlobStore(Path root) {
+        this.root = root;
+        this.tmp = root.resolve("tmp");
+    }
+
+    /** Открывает (создаёт) хранилище в каталоге. */
+    public static BlobStore open(Path root) throws IOException {
+        BlobStore store = new BlobStore(root);
+        Files.createDirectories(store.tmp);
+        log.info("Blob store opened at " + root.toAbsolutePath());
+        return store;
+    }
+
+    /** Есть ли готовое содержимое с таким id. */
+    public boolean contains(String blobId) {
+        return BlobProtocol.isBlobId(blobId) && Files.isRegularFile(pathOf(blobId));
+    }
+
+    /** Размер содержимого или -1, если его нет. */
+    public long size(String blobId) throws IOException {
+        return contains(blobId) ? Files.size(pathOf(blobId)) : -1;
+    }
+
+    /** Открывает готовое содержимое на чтение. */
+    public FileChannel openRead(String blobId) throws IOException {
+        return FileChannel.open(pathOf(blobId), StandardOpenOption.READ);
+    }
+
+    /**
+     * Начинает (или продолжает) загрузку содержимого.
+     *
+     * @return загрузка или {@code null}, если это содержимое уже загружает другой клиент
+     */
+    public Upload beginUpload(String blobId, long size) throws IOException {
+        if (!BlobProtocol.isBlobId(blobId)) throw new IllegalArgumentException("Bad blob id: " + blobId);
+        if (!uploading.add(blobId)) return null;
+        try {
+            Path part = tmp.resolve(blobId + ".part");
+            FileChannel ch = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            // Хвост длиннее объявленного размера не может быть нашим — начинаем заново
+            if (ch.size() > size) ch.truncate(0);
+            return new Upload(blobId, size, part, ch);
+        } catch (IOException | RuntimeException e) {
+            uploading.remove(blobId);
+            throw e;
+        }
+    }
+
+    /**
+     * Удаляет незавершённые загрузки, которые не продолжались дольше {@code maxAgeMs}.
+     * Идущая загрузка не удаляется: на время проверки part-файл занимается так же, как {@link #beginUpload}.
+     *
+     * @return число удалённых part-файлов
+     */
+    public int expireParts(long maxAgeMs) throws IOException {
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        int removed = 0;
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(tmp, "*.part")) {
+            for (Path part : parts) {
+                String blobId = part.getFileName().toString().replace(".part", "");
+                if (!uploading.add(blobId)) continue;
+                try {
+                    if (Files.getLastModifiedTime(part).toMillis() < cutoff && Files.deleteIfExists(part)) removed++;
+                } catch (NoSuchFileException ignored) {
+                    // Загрузку успели завершить
+                } finally {
+                    uploading.remove(blobId);
+                }
+            }
+        }
+        if (removed > 0) log.info("Expired " + removed + " abandoned blob uploads");
+        return removed;
+    }
+
+    private Path pathOf(String blobId) {
+        return root.resolve(blobId.substring(0, 2)).resolve(blobId);
+    }
+
+    /**
+     * Незавершённая загрузка: данные дописываются в part-файл, затем {@link #commit()}
+     * сверяет SHA-256 и переносит файл в хранилище.
+     */
+    public final class Upload implements AutoCloseable {
+        private final String blobId;
+        private final long size;
+        private final Path part;
+        private final FileChannel channel;
+        private boolean done;
+
+        private Upload(String blobId, long size, Path part, FileChannel channel) {
+            this.blobId = blobId;
+            this.size = size;
+            this.part = part;
+            this.channel = channel;
+        }
+
+        /** Канал part-файла для записи. */
+        public FileChannel channel() {
+            return channel;
+        }
+
+        /** Сколько байт уже загружено. */
+        public long offset() throws IOException {
+            return channel.size();
+        }
+
+        /** Объявленный размер. */
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Сверяет хэш и публикует содержимое.
+         *
+         * @return {@code true}, если хэш совпал и содержимое доступно; иначе part-файл удаляется
+         */
+        public boolean commit() throws IOException {
+            done = true;
+            channel.force(false);
+            if (channel.size() != size || !blobId.equals(digest(channel))) {
+                channel.close();
+                Files.deleteIfExists(part);
+                log.warning("Blob " + blobId + " rejected: content does not match id");
+                return false;
+            }
+            channel.close();
+            Path target = pathOf(blobId);
+            Files.createDirectories(target.getParent());
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.info("Blob " + blobId + " stored (" + size + " bytes)");
+            return true;
+        }
+
+        /** Освобождает загрузку; незавершённый part-файл остаётся для продолжения. */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!done) channel.close();
+            } finally {
+                uploading.remove(blobId);
+            }
+        }
+    }
+
+    private static String digest(FileChannel ch) throws IOException {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+        for (long pos = 0; ; ) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n < 0) break;
+            pos += n;
+            sha.update(buf.flip());
+        }
+        return HexFormat.of().formatHex(sha.digest());
+    }
+}
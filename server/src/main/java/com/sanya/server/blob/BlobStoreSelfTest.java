@@ -0,0 +1,140 @@
+package com.sanya.server.blob;
+
+import com.sanya.files.BlobProtocol;
+import com.sanya.server.admission.OverloadController;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Автономная проверка хранилища файлов без JUnit: загрузка, дедупликация, докачка загрузки,
+ * отклонение подменённых данных и скачивание через transferTo; допуск по токену, лимит соединений
+ * пользователя, квота и удаление брошенных загрузок.
+ *
+ * Запуск:
+ *  java -cp sanya-server.jar com.sanya.server.blob.BlobStoreSelfTest
+ */
+public final class BlobStoreSelfTest {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== BlobStoreSelfTest ===");
+        Path root = Files.createTempDirectory("sanya-blobs");
+        BlobGrants grants = new BlobGrants();
+        BlobQuota quota = new BlobQuota(8 * 1024 * 1024, 60_000_000_000L);
+        BlobStore store = BlobStore.open(root);
+        BlobServer server = new BlobServer(store, 0, grants, new OverloadController(() -> 0), quota, 16);
+        server.start();
+        InetSocketAddress addr = new InetSocketAddress("localhost", server.port());
+        String token = grants.issue("alice").token();
+
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(7).nextBytes(data);
+        String id = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+
+        try (SocketChannel ch = SocketChannel.open(addr)) {
+            // 0. Без токена соединение не обслуживается
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_GET, id, 0));
+            check(BlobProtocol.readResponse(ch).status() == BlobProtocol.REJECTED, "request without token rejected");
+            check(ch.read(ByteBuffer.allocate(1)) < 0, "connection without token closed");
+        }
+        try (SocketChannel ch = SocketChannel.open(addr)) {
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_AUTH, "ab".repeat(32), 0));
+            check(BlobProtocol.readResponse(ch).status() == BlobProtocol.REJECTED, "unknown token rejected");
+        }
+
+        try (SocketChannel ch = connect(addr, token)) {
+            // 1. Прерванная загрузка: половина данных и разрыв
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_PUT, id, data.length));
+            check(BlobProtocol.readResponse(ch).status() == BlobProtocol.SEND, "first PUT asks for data");
+            BlobProtocol.write(ch, ByteBuffer.wrap(data, 0, data.length / 2));
+        }
+        Thread.sleep(200);
+
+        try (SocketChannel ch = connect(addr, token)) {
+            // 2. Продолжение со смещения
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_PUT, id, data.length));
+            BlobProtocol.Response r = BlobProtocol.readResponse(ch);
+            check(r.status() == BlobProtocol.SEND && r.value() == data.length / 2, "PUT resumes at " + r.value());
+            BlobProtocol.write(ch, ByteBuffer.wrap(data, (int) r.value(), data.length - (int) r.value()));
+            check(BlobProtocol.readResponse(ch).status() == BlobProtocol.OK, "upload committed");
+
+            // 3. Повторная загрузка того же содержимого пропускается
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_PUT, id, data.length));
+            check(BlobProtocol.readResponse(ch).status() == BlobProtocol.OK, "duplicate PUT skipped");
+
+            // 4. Скачивание с середины
+            int from = 1000;
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_GET, id, from));
+            r = BlobProtocol.readResponse(ch);
+            check(r.status() == BlobProtocol.OK && r.value() == data.length, "GET returns size");
+            ByteBuffer got = ByteBuffer.allocate(data.length - from);
+            while (got.hasRemaining()) if (ch.read(got) < 0) throw new IOException("EOF");
+            check(Arrays.equals(got.array(), Arrays.copyOfRange(data, from, data.length)), "GET content matches");
+
+            // 5. Данные, не совпадающие с id, отклоняются
+            byte[] fake = new byte[4096];
+            String wrongId = id.replace(id.charAt(0), id.charAt(0) == 'a' ? 'b' : 'a');
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_PUT, wrongId, fake.length));
+            check(BlobProtocol.readResponse(ch).status() == BlobProtocol.SEND, "fake PUT asks for data");
+            BlobProtocol.write(ch, ByteBuffer.wrap(fake));
+            check(BlobProtocol.readResponse(ch).status() == BlobProtocol.REJECTED, "fake content rejected");
+
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_GET, wrongId, 0));
+            check(BlobProtocol.readResponse(ch).status() == BlobProtocol.NOT_FOUND, "rejected blob not stored");
+
+            // 6. Квота: принятые байты (3 МБ + 4 КБ) расходуют её, загрузка сверх остатка отклоняется до передачи
+            String bigId = "cd".repeat(32);
+            BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_PUT, bigId, 6 * 1024 * 1024));
+            BlobProtocol.Response q = BlobProtocol.readResponse(ch);
+            check(q.status() == BlobProtocol.QUOTA_EXCEEDED && q.value() == quota.remaining("alice"),
+                    "upload over quota refused, " + q.value() + " bytes left");
+
+            // 7. Лимит соединений пользователя: это соединение и ещё MAX_PER_USER - 1, следующее отклоняется
+            List<SocketChannel> extra = new ArrayList<>();
+            try {
+                for (int i = 1; i < BlobServer.MAX_PER_USER; i++) extra.add(connect(addr, token));
+                try (SocketChannel over = SocketChannel.open(addr)) {
+                    BlobProtocol.write(over, BlobProtocol.request(BlobProtocol.OP_AUTH, token, 0));
+                    BlobProtocol.Response busy = BlobProtocol.readResponse(over);
+                    check(busy.status() == BlobProtocol.BUSY && busy.value() > 0, "connection over per-user limit is busy");
+                }
+            } finally {
+                for (SocketChannel c : extra) c.close();
+            }
+        } finally {
+            server.close();
+        }
+
+        // 8. Брошенная загрузка удаляется по сроку, свежая остаётся
+        Path stale = Files.write(root.resolve("tmp").resolve("ef".repeat(32) + ".part"), new byte[10]);
+        Path fresh = Files.write(root.resolve("tmp").resolve("01".repeat(32) + ".part"), new byte[10]);
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 2 * BlobServer.PART_TTL_MS));
+        check(store.expireParts(BlobServer.PART_TTL_MS) == 1 && !Files.exists(stale) && Files.exists(fresh),
+                "abandoned part expired");
+        System.out.println("=== OK ===");
+    }
+
+    /** Открывает соединение и предъявляет токен. */
+    private static SocketChannel connect(InetSocketAddress addr, String token) throws IOException {
+        SocketChannel ch = SocketChannel.open(addr);
+        BlobProtocol.write(ch, BlobProtocol.request(BlobProtocol.OP_AUTH, token, 0));
+        check(BlobProtocol.readResponse(ch).status() == BlobProtocol.OK, "token accepted");
+        return ch;
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "[OK]   " : "[FAIL] ") + what);
+        if (!ok) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,15 @@
+package com.sanya.server.pipeline;
+
+/**
+ * Ступень перед обработчиком: проверка, лимит, сброс. Видит каждый кадр, включая кадры неизвестных типов.
+ *
+ * @param <C> соединение, с которого пришёл кадр
+ */
+@FunctionalInterface
+public interface Interceptor<C> {
+
+    /**
+     * @return true — передать кадр дальше; false — кадр отброшен или уже обработан
+     */
+    boolean intercept(C connection, Object frame) throws Exception;
+}
@@ -0,0 +1,13 @@
+package com.sanya.server.pipeline;
+
+/**
+ * Обработчик входящих кадров одного типа.
+ *
+ * @param <C> соединение, с которого пришёл кадр
+ * @param <T> тип кадра
+ */
+@FunctionalInterface
+public interface MessageHandler<C, T> {
+
+    void handle(C connection, T frame) throws Exception;
+}
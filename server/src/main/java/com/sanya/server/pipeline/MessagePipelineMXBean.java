@@ -0,0 +1,19 @@
+package com.sanya.server.pipeline;
+
+import java.util.Map;
+
+/**
+ * Время ступеней {@link MessagePipeline} в JMX ({@code com.sanya:type=MessagePipeline}).
+ * Ступени перехватчиков названы при регистрации, обработчики — {@code route:<тип кадра>}.
+ */
+public interface MessagePipelineMXBean {
+
+    /** Сколько кадров прошло через ступень. */
+    Map<String, Long> getCalls();
+
+    /** Суммарное время ступени, мкс. */
+    Map<String, Long> getTotalMicros();
+
+    /** Кадров, для типа которых нет обработчика. */
+    long getUnknownFrames();
+}
@@ -0,0 +1,104 @@
+package com.sanya.server.pipeline;
+
+import com.sanya.Message;
+import com.sanya.crypto.msg.KeyHello;
+import com.sanya.files.FileChunk;
+import com.sanya.net.SessionAck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Автономная проверка {@link MessagePipeline} и {@link SenderCheck} без JUnit: выбор обработчика по тегу,
+ * порядок перехватчиков и их отказ, неизвестные кадры и счётчики ступеней.
+ *
+ * Запуск:
+ *  java -cp sanya-server.jar com.sanya.server.pipeline.PipelineSelfTest
+ */
+public final class PipelineSelfTest {
+
+    /** Соединение для проверки: имя пользователя и журнал пройденных ступеней. */
+    private static final class Conn {
+        final String user;
+        final List<String> trace = new ArrayList<>();
+
+        Conn(String user) {
+            this.user = user;
+        }
+    }
+
+    /** Подкласс зарегистрированного типа, которого обработчик не знает. */
+    private static final class LoudMessage extends Message {
+        private static final long serialVersionUID = 1L;
+
+        LoudMessage(String from, String text) {
+            super(from, text);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== PipelineSelfTest ===");
+
+        SenderCheck<Conn> auth = new SenderCheck<Conn>(c -> c.user)
+                .claim(Message.class, Message::getFrom)
+                .claim(KeyHello.class, KeyHello::username);
+        MessagePipeline<Conn> pipeline = MessagePipeline.<Conn>builder()
+                .intercept("first", (c, f) -> c.trace.add("first"))
+                .intercept("auth", auth)
+                .intercept("drop-acks", (c, f) -> !(f instanceof SessionAck))
+                .on(Message.class, (c, m) -> c.trace.add("message:" + m.getText()))
+                .on(KeyHello.class, (c, k) -> c.trace.add("key"))
+                .on(SessionAck.class, (c, a) -> c.trace.add("ack"))
+                .build();
+
+        // 1. Теги по порядку регистрации, неизвестный тип — UNKNOWN
+        check(pipeline.tagOf(new Message("a", "x")) == 0 && pipeline.tagOf(new KeyHello("a", "k")) == 1
+                && pipeline.tagOf(new SessionAck(1)) == 2, "tags follow registration order");
+        check(pipeline.tagOf(new LoudMessage("a", "x")) == 0, "subclass dispatched to its registered parent");
+        check(pipeline.tagOf("text") == MessagePipeline.UNKNOWN, "unregistered type is UNKNOWN");
+
+        // 2. Кадр проходит перехватчики по порядку и попадает в свой обработчик ровно один раз
+        Conn alice = new Conn("alice");
+        check(pipeline.dispatch(alice, new Message("alice", "hi")) && alice.trace.equals(List.of("first", "message:hi")),
+                "interceptors then handler: " + alice.trace);
+
+        // 3. Чужой отправитель отбрасывается до обработчика; кадры без имени проходят
+        alice.trace.clear();
+        check(!pipeline.dispatch(alice, new Message("bob", "spoof")) && alice.trace.equals(List.of("first")),
+                "spoofed sender dropped before the handler");
+        check(!pipeline.dispatch(alice, new KeyHello("bob", "k")) && auth.rejected() == 2, "spoofed key announcement dropped");
+
+        // 4. Отказ перехватчика останавливает кадр
+        alice.trace.clear();
+        check(!pipeline.dispatch(alice, new SessionAck(5)) && alice.trace.equals(List.of("first")),
+                "interceptor veto stops the frame");
+
+        // 5. Неизвестный кадр проходит перехватчики (лимиты считают и его) и учитывается один раз
+        alice.trace.clear();
+        FileChunk chunk = new FileChunk("t", "f", 0, new byte[1], 0, true);
+        check(!pipeline.dispatch(alice, chunk) && alice.trace.equals(List.of("first")) && pipeline.getUnknownFrames() == 1,
+                "unknown frame counted once, no handler runs");
+
+        // 6. Счётчики ступеней
+        check(pipeline.getCalls().get("first") == 5 && pipeline.getCalls().get("auth") == 5
+                && pipeline.getCalls().get("drop-acks") == 3 && pipeline.getCalls().get("route:Message") == 1
+                && pipeline.getCalls().get("route:SessionAck") == 0, "per-stage calls: " + pipeline.getCalls());
+        check(pipeline.report().contains("route:Message"), "report lists used stages");
+
+        // 7. Повторная регистрация типа — ошибка сборки
+        boolean duplicate = false;
+        try {
+            MessagePipeline.<Conn>builder().on(Message.class, (c, m) -> {}).on(Message.class, (c, m) -> {});
+        } catch (IllegalArgumentException e) {
+            duplicate = true;
+        }
+        check(duplicate, "duplicate handler rejected");
+
+        System.out.println("=== OK ===");
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "[OK]   " : "[FAIL] ") + what);
+        if (!ok) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,74 @@
+package com.sanya.server.pipeline;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * SenderCheck — перехватчик, сверяющий отправителя, указанный в кадре, с пользователем соединения.
+ *
+ * Назначение:
+ *  Многие кадры несут имя отправителя (сообщение, ключи, события голоса); сервер пересылает их как есть,
+ *  и без проверки клиент мог бы писать от чужого имени. Для каждого такого типа регистрируется
+ *  извлечение имени; кадр с чужим именем отбрасывается с предупреждением в логе. Чтобы клиент не мог
+ *  завалить лог, проверка ставится после лимита темпа. Кадры без зарегистрированного извлечения проходят.
+ *
+ * Использование:
+ *  SenderCheck<Conn> auth = new SenderCheck<Conn>(Conn::userName)
+ *          .claim(Message.class, Message::getFrom);
+ *  builder.intercept("auth", auth);
+ *
+ * Потокобезопасность:
+ *  Регистрация — до первого кадра; проверка — из потоков всех соединений.
+ */
+public final class SenderCheck<C> implements Interceptor<C> {
+
+    private static final Logger log = Logger.getLogger(SenderCheck.class.getName());
+
+    private final Function<C, String> user;
+    private final Map<Class<?>, Function<Object, String>> claims = new HashMap<>();
+    private final ClassValue<Function<Object, String>> byType = new ClassValue<>() {
+        @Override
+        protected Function<Object, String> computeValue(Class<?> type) {
+            // Как и в конвейере, подкласс проверяется по правилу ближайшего предка
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                Function<Object, String> claim = claims.get(c);
+                if (claim != null) return claim;
+            }
+            return null;
+        }
+    };
+    private final LongAdder rejected = new LongAdder();
+
+    /** @param user имя пользователя соединения */
+    public SenderCheck(Function<C, String> user) {
+        this.user = user;
+    }
+
+    /** Регистрирует извлечение имени отправителя из кадров типа {@code type}. */
+    @SuppressWarnings("unchecked")
+    public <T> SenderCheck<C> claim(Class<T> type, Function<? super T, String> sender) {
+        claims.put(type, (Function<Object, String>) sender);
+        return this;
+    }
+
+    @Override
+    public boolean intercept(C connection, Object frame) {
+        Function<Object, String> claim = byType.get(frame.getClass());
+        if (claim == null) return true;
+        String claimed = claim.apply(frame);
+        String actual = user.apply(connection);
+        if (actual.equals(claimed)) return true;
+        rejected.increment();
+        log.warning("[" + actual + "] " + frame.getClass().getSimpleName() + " claims sender " + claimed
+                + ", dropped (" + rejected.sum() + " spoofed frames so far)");
+        return false;
+    }
+
+    /** Отброшено кадров с чужим отправителем. */
+    public long rejected() {
+        return rejected.sum();
+    }
+}
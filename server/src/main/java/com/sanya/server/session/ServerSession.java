@@ -0,0 +1,260 @@
+package com.sanya.server.session;
+
+import com.sanya.net.OutboundScheduler;
+import com.sanya.net.Sequenced;
+import com.sanya.net.SessionGrant;
+import com.sanya.net.StreamClass;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.logging.Logger;
+
+/**
+ * ServerSession — сеанс пользователя на сервере, переживающий обрыв соединения.
+ *
+ * Назначение:
+ *  - Нумеровать кадры к клиенту ({@link Sequenced}) и хранить последние из них в кольцевом буфере
+ *    (не более {@link #RING_FRAMES} кадров и {@link #RING_BYTES} байт).
+ *  - После обрыва сеанс ждёт клиента {@link #GRACE_MS}: кадры, адресованные ему, копятся в буфере,
+ *    а переподключившийся клиент получает пропущенное, начиная со своего последнего номера, —
+ *    без повторного входа, рассылки списка участников и каталога ключей.
+ *  - Подтверждения клиента ({@link #ack}) освобождают буфер раньше вытеснения.
+ *
+ * Использование:
+ *  session.attach(writer, socket);        // новый сеанс: SessionGrant первым кадром
+ *  session.deliver(message);               // рассылки и личные сообщения — всегда через сеанс
+ *  long epoch = session.detach(writer);    // обрыв; через GRACE_MS — expireIfDetached(epoch)
+ *  session.resume(newWriter, socket, lastSeq);
+ *
+ * Потокобезопасность:
+ *  Методы синхронизированы, но под монитором ничего не ждёт: кадры ставятся в очередь соединения
+ *  без ожидания окна ({@link OutboundScheduler#offer}). Рассылка идёт из потоков чужих соединений,
+ *  и клиент, переставший читать, не должен их останавливать. Если клиент не подтвердил целый буфер
+ *  или нумерованный кадр не помещается в очередь, отстающее соединение закрывается: клиент
+ *  переподключится и получит пропущенное из буфера.
+ *  Блок файла при переполнении отбрасывается — получатель запросит его при докачке.
+ */
+public final class ServerSession {
+
+    private static final Logger log = Logger.getLogger(ServerSession.class.getName());
+
+    /** Сколько отключённый сеанс ждёт возобновления, мс. */
+    public static final long GRACE_MS = Long.getLong("sanya.session.graceMs", 30_000);
+
+    /** Предел буфера досылки: кадров и оценочных байт. */
+    static final int RING_FRAMES = 1024;
+    static final long RING_BYTES = 2L * 1024 * 1024;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final String name;
+    private final String token;
+
+    /** Номер пользователя в {@link SessionRegistry}; -1 — сеанс не зарегистрирован. Меняется под монитором реестра. */
+    int id = -1;
+
+    /** Неподтверждённые кадры по возрастанию номера. */
+    private final ArrayDeque<Sequenced> ring = new ArrayDeque<>();
+    private long ringBytes;
+    private long lastSeq;
+
+    /** Текущее соединение; null — клиент отключён. */
+    private OutboundScheduler writer;
+    private Closeable connection;
+
+    /** Соединение, закрытое из-за переполнения очереди; его обрыв ещё не обработан. */
+    private OutboundScheduler lagging;
+
+    /** Меняется при каждом подключении и отключении: по нему отложенное завершение узнаёт свой обрыв. */
+    private long epoch;
+    private boolean leaving;
+    private boolean closed;
+
+    public ServerSession(String name) {
+        this.name = name;
+        byte[] raw = new byte[16];
+        random.nextBytes(raw);
+        this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String token() {
+        return token;
+    }
+
+    /** Номер пользователя, выданный {@link SessionRegistry#register}. */
+    public int id() {
+        return id;
+    }
+
+    /** Неотправленные байты в очереди текущего соединения; 0, если клиент отключён. */
+    public long queuedBytes() {
+        OutboundScheduler w;
+        synchronized (this) {
+            w = writer;
+        }
+        return w == null ? 0 : w.queuedBytes();
+    }
+
+    /** Подключает соединение нового сеанса и отправляет клиенту токен. */
+    public synchronized void attach(OutboundScheduler w, Closeable conn) {
+        writer = w;
+        connection = conn;
+        epoch++;
+        send(w, new SessionGrant(token, false));
+    }
+
+    /**
+     * Продолжает сеанс на новом соединении: отправляет подтверждение и все кадры после {@code lastSeq}.
+     * Прежнее соединение, если оно ещё не обнаружило обрыв, закрывается.
+     *
+     * @return false, если сеанс завершён или нужные кадры уже вытеснены из буфера — клиенту нужен новый сеанс
+     */
+    public synchronized boolean resume(OutboundScheduler w, Closeable conn, long lastSeq) {
+        long first = ring.isEmpty() ? this.lastSeq + 1 : ring.peekFirst().seq();
+        if (closed || lastSeq > this.lastSeq || lastSeq + 1 < first) return false;
+        if (writer != null) {
+            writer.close();
+            closeQuietly(connection);
+        }
+        writer = w;
+        connection = conn;
+        epoch++;
+        leaving = false;
+        trim(lastSeq);
+        send(w, new SessionGrant(token, true));
+        for (Sequenced frame : ring) {
+            if (!send(w, frame)) {
+                drop(w);
+                break;
+            }
+        }
+        log.fine("Session " + name + " resumed from " + lastSeq + ", replaying " + ring.size() + " frames");
+        return true;
+    }
+
+    /**
+     * Отправляет объект клиенту, не блокируясь. Нумеруемые объекты сохраняются в буфере и при отключённом
+     * или отстающем клиенте будут досланы после возобновления; блоки файлов без соединения
+     * или сверх очереди отбрасываются.
+     */
+    public void deliver(Object obj) {
+        OutboundScheduler w;
+        Object frame = obj;
+        synchronized (this) {
+            if (closed) return;
+            w = writer;
+            if (Sequenced.isSequenced(obj)) {
+                Sequenced s = new Sequenced(++lastSeq, obj);
+                ring.addLast(s);
+                ringBytes += StreamClass.sizeOf(obj);
+                boolean full = ring.size() > RING_FRAMES || ringBytes > RING_BYTES;
+                // Подключённый клиент, не подтвердивший целый буфер, не читает: закрываем его,
+                // пока пропущенное ещё можно дослать при возобновлении
+                if (full && w != null) drop(w);
+                while (ring.size() > RING_FRAMES || ringBytes > RING_BYTES) evict();
+                frame = s;
+                // Нумерованные кадры ставятся в очередь под монитором — в порядке номеров
+                if (w != null && !send(w, frame)) drop(w);
+                return;
+            }
+        }
+        if (w != null && !send(w, frame)) {
+            log.fine("Session " + name + ": send queue full, " + frame.getClass().getSimpleName() + " dropped");
+        }
+    }
+
+    /** Клиент получил все кадры до {@code seq} включительно. */
+    public synchronized void ack(long seq) {
+        trim(Math.min(seq, lastSeq));
+    }
+
+    /**
+     * Отключает соединение после обрыва.
+     *
+     * @return номер обрыва для {@link #expireIfDetached}; -1, если сеанс уже продолжен на другом соединении
+     */
+    public synchronized long detach(OutboundScheduler w) {
+        if (writer != w || closed) return -1;
+        writer = null;
+        connection = null;
+        return ++epoch;
+    }
+
+    /** Завершает сеанс, если с обрыва {@code epoch} клиент не вернулся; после этого возобновление невозможно. */
+    public synchronized boolean expireIfDetached(long epoch) {
+        if (closed || writer != null || this.epoch != epoch) return false;
+        closed = true;
+        ring.clear();
+        ringBytes = 0;
+        return true;
+    }
+
+    /** Клиент сообщил о выходе ({@link com.sanya.net.SessionLeave}): ждать возобновления не нужно. */
+    public synchronized void markLeaving() {
+        leaving = true;
+    }
+
+    public synchronized boolean isLeaving() {
+        return leaving;
+    }
+
+    /** Неподтверждённых кадров в буфере. */
+    public synchronized int buffered() {
+        return ring.size();
+    }
+
+    /** Закрывает сеанс и его соединение. */
+    public synchronized void close() {
+        closed = true;
+        if (writer != null) writer.close();
+        closeQuietly(connection);
+        writer = null;
+        connection = null;
+        ring.clear();
+        ringBytes = 0;
+    }
+
+    private void trim(long seq) {
+        while (!ring.isEmpty() && ring.peekFirst().seq() <= seq) evict();
+    }
+
+    private void evict() {
+        ringBytes -= StreamClass.sizeOf(ring.pollFirst().payload());
+    }
+
+    /**
+     * Ставит кадр в очередь соединения без ожидания окна.
+     *
+     * @return false — очередь потока переполнена или соединение закрыто; нумерованный кадр остаётся в буфере
+     */
+    private static boolean send(OutboundScheduler w, Object frame) {
+        return !w.offer(frame).isCompletedExceptionally();
+    }
+
+    /**
+     * Закрывает отстающее соединение. Сеанс остаётся за ним: обрыв обработает поток соединения
+     * ({@link #detach}), и клиент продолжит сеанс с последнего полученного кадра.
+     */
+    private void drop(OutboundScheduler w) {
+        if (writer != w || lagging == w) return;
+        lagging = w;
+        log.warning("Session " + name + " is not reading (" + w.queuedBytes() + " bytes queued), closing its connection");
+        w.close();
+        closeQuietly(connection);
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.sanya.server.session;
+
+import com.sanya.Message;
+import com.sanya.files.FileChunk;
+import com.sanya.net.OutboundScheduler;
+import com.sanya.net.Sequenced;
+import com.sanya.net.SessionGrant;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Автономная проверка {@link ServerSession} без JUnit: рассылка клиенту, переставшему читать,
+ * не блокирует отправителя, отстающее соединение закрывается, а клиент продолжает сеанс из буфера.
+ *
+ * Запуск:
+ *  java -cp sanya-server.jar com.sanya.server.session.ServerSessionSelfTest
+ */
+public final class ServerSessionSelfTest {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== ServerSessionSelfTest ===");
+
+        // 1. Клиент не читает: запись в соединение висит, рассылка из чужого потока не ждёт
+        CountDownLatch stuck = new CountDownLatch(1);
+        OutboundScheduler slow = new OutboundScheduler("slow", new OutboundScheduler.FrameSink() {
+            @Override
+            public void write(Object frame) throws InterruptedIOException {
+                try {
+                    stuck.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, e -> {});
+        AtomicBoolean closed = new AtomicBoolean();
+        Closeable socket = () -> closed.set(true);
+        ServerSession alice = new ServerSession("alice");
+        alice.attach(slow, socket);
+
+        // Блоки файла сверх очереди отбрасываются — их запросят при докачке, соединение остаётся
+        Thread chunks = fanOut(() -> {
+            for (int i = 0; i < 40; i++) alice.deliver(new FileChunk("t1", "a.bin", i * 1_048_576L, new byte[1_048_576], i, false));
+        });
+        check(!chunks.isAlive() && !closed.get(), "40 MB of file chunks to a stalled client do not block the sender");
+
+        int frames = ServerSession.RING_FRAMES + 1;
+        Thread messages = fanOut(() -> {
+            for (int i = 1; i <= frames; i++) alice.deliver(new Message("bob", "m" + i));
+        });
+        check(!messages.isAlive(), frames + " messages fanned out without waiting");
+        check(closed.get(), "connection that left the whole buffer unacknowledged is closed");
+        check(alice.buffered() == ServerSession.RING_FRAMES, "buffer stays bounded");
+
+        // 2. Сеанс остаётся за отстающим соединением до обрыва, затем продолжается из буфера
+        long epoch = alice.detach(slow);
+        check(epoch > 0 && !alice.expireIfDetached(epoch - 1), "reader thread detaches the dropped connection");
+        List<Object> replayed = new CopyOnWriteArrayList<>();
+        OutboundScheduler fresh = collecting("fresh", replayed);
+        check(alice.resume(fresh, () -> {}, 100), "client that read 100 frames resumes");
+        for (int i = 0; i < 100 && replayed.size() < frames - 99; i++) Thread.sleep(20);
+        check(replayed.get(0) instanceof SessionGrant g && g.resumed(), "resume grant first");
+        check(replayed.size() == frames - 99 && ((Sequenced) replayed.get(1)).seq() == 101
+                && ((Sequenced) replayed.get(replayed.size() - 1)).seq() == frames, "frames 101.." + frames + " replayed");
+        check(!alice.resume(fresh, () -> {}, 0), "frames already evicted cannot be resumed");
+
+        // 3. Читающий клиент с подтверждениями соединение не теряет
+        AtomicBoolean closedFast = new AtomicBoolean();
+        ServerSession carol = new ServerSession("carol");
+        OutboundScheduler reading = collecting("reading", new CopyOnWriteArrayList<>());
+        carol.attach(reading, () -> closedFast.set(true));
+        for (int i = 1; i <= 10 * ServerSession.RING_FRAMES; i++) {
+            carol.deliver(new Message("bob", "m" + i));
+            if (i % 32 == 0) carol.ack(i);
+        }
+        check(!closedFast.get() && carol.buffered() < 32, "acknowledging client stays connected");
+
+        stuck.countDown();
+        slow.close();
+        fresh.close();
+        reading.close();
+        System.out.println("=== OK ===");
+    }
+
+    /** Рассылка из потока чужого соединения; ждёт её не дольше 5 с. */
+    private static Thread fanOut(Runnable work) throws InterruptedException {
+        Thread t = new Thread(work, "Bob-Reader");
+        t.start();
+        t.join(5_000);
+        return t;
+    }
+
+    /** Писатель, складывающий кадры в список, — клиент, который читает. */
+    private static OutboundScheduler collecting(String name, List<Object> out) {
+        return new OutboundScheduler(name, new OutboundScheduler.FrameSink() {
+            @Override
+            public void write(Object frame) {
+                out.add(frame);
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, e -> {});
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "[OK]   " : "[FAIL] ") + what);
+        if (!ok) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,263 @@
+package com.sanya.server.session;
+
+import com.sanya.crypto.SignedPreKeyBundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * SessionRegistry — все сеансы сервера и ключи их пользователей в одном месте.
+ *
+ * Назначение:
+ *  При входе пользователь получает компактный номер — наименьший свободный. Состояние пользователя
+ *  (сеанс, связка предключей, открытый ключ X25519) лежит в массивах по этому номеру, занятые номера —
+ *  в битовой карте. Имя и токен переводятся в номер одним поиском в таблице int с открытой адресацией
+ *  (ключи не хранятся отдельно, а берутся из сеанса по номеру); дальше — индекс в массиве.
+ *  Вход, замена сеанса и выход меняют все таблицы разом под одним монитором: рассылка ключей
+ *  не увидит пользователя, который наполовину ушёл.
+ *  Для рассылок хранится готовый массив сеансов: он пересобирается при первом чтении после входа или выхода,
+ *  а не на каждый кадр.
+ *
+ * Использование:
+ *  ServerSession previous = registry.register(session);   // previous — заменённый сеанс того же имени
+ *  ServerSession dst = registry.byName(dm.to());
+ *  for (ServerSession s : registry.sessions()) s.deliver(frame);
+ *  registry.remove(session);                               // false — пользователь уже вошёл заново
+ *
+ * Потокобезопасность:
+ *  Потокобезопасен. Изменения и поиск — под монитором реестра; {@link #sessions()} читается без блокировки.
+ */
+public final class SessionRegistry {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Index byName = new Index(ServerSession::name);
+    private final Index byToken = new Index(ServerSession::token);
+    private final BitSet used = new BitSet();
+
+    private ServerSession[] sessions = new ServerSession[INITIAL_CAPACITY];
+    private SignedPreKeyBundle[] bundles = new SignedPreKeyBundle[INITIAL_CAPACITY];
+    private String[] publicKeys = new String[INITIAL_CAPACITY];
+
+    /** Сеансы по возрастанию номера, без пропусков; null — устарел после входа или выхода. */
+    private volatile ServerSession[] snapshot = new ServerSession[0];
+
+    /**
+     * Регистрирует новый сеанс. Пользователь с тем же именем сохраняет номер и ключи,
+     * прежний сеанс теряет токен и возвращается вызывающему для закрытия.
+     *
+     * @return заменённый сеанс или null
+     */
+    public synchronized ServerSession register(ServerSession session) {
+        int id = byName.find(session.name());
+        ServerSession previous = null;
+        if (id >= 0) {
+            previous = sessions[id];
+            byToken.remove(previous.token());
+            sessions[id] = session;
+        } else {
+            id = used.nextClearBit(0);
+            ensureCapacity(id + 1);
+            used.set(id);
+            sessions[id] = session;
+            byName.add(id);
+        }
+        session.id = id;
+        byToken.add(id);
+        snapshot = null;
+        return previous;
+    }
+
+    /**
+     * Снимает сеанс: токен — всегда, номер и ключи пользователя — если сеанс не был заменён новым входом.
+     *
+     * @return true — пользователь ушёл; false — его номер уже занят новым сеансом
+     */
+    public synchronized boolean remove(ServerSession session) {
+        int id = session.id;
+        if (id < 0 || !used.get(id) || sessions[id] != session) return false;
+        byToken.remove(session.token());
+        byName.remove(session.name());
+        used.clear(id);
+        sessions[id] = null;
+        bundles[id] = null;
+        publicKeys[id] = null;
+        snapshot = null;
+        return true;
+    }
+
+    public synchronized ServerSession byToken(String token) {
+        int id = byToken.find(token);
+        return id < 0 ? null : sessions[id];
+    }
+
+    public synchronized ServerSession byName(String name) {
+        int id = byName.find(name);
+        return id < 0 ? null : sessions[id];
+    }
+
+    /** Сеанс по номеру; null — номер свободен. */
+    public synchronized ServerSession get(int id) {
+        return id >= 0 && id < sessions.length ? sessions[id] : null;
+    }
+
+    /** Все сеансы, включая ожидающие возобновления; массив не изменяется. */
+    public ServerSession[] sessions() {
+        ServerSession[] all = snapshot;
+        return all != null ? all : rebuildSnapshot();
+    }
+
+    public int size() {
+        return sessions().length;
+    }
+
+    /** Имена пользователей по возрастанию номера. */
+    public List<String> names() {
+        ServerSession[] all = sessions();
+        List<String> names = new ArrayList<>(all.length);
+        for (ServerSession s : all) names.add(s.name());
+        return names;
+    }
+
+    /** Сохраняет связку предключей пользователя с номером {@code id}. */
+    public synchronized void putBundle(int id, SignedPreKeyBundle bundle) {
+        if (sessions[id] != null) bundles[id] = bundle;
+    }
+
+    /** Связки всех пользователей, кроме {@code id}. */
+    public synchronized Map<String, SignedPreKeyBundle> bundlesExcept(int id) {
+        Map<String, SignedPreKeyBundle> result = new HashMap<>();
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+            if (i != id && bundles[i] != null) result.put(sessions[i].name(), bundles[i]);
+        }
+        return result;
+    }
+
+    /** Сохраняет открытый ключ X25519 пользователя с номером {@code id}. */
+    public synchronized void putPublicKey(int id, String keyB64) {
+        if (sessions[id] != null) publicKeys[id] = keyB64;
+    }
+
+    /** Каталог открытых ключей: имя → ключ. */
+    public synchronized Map<String, String> publicKeys() {
+        Map<String, String> directory = new HashMap<>();
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+            if (publicKeys[i] != null) directory.put(sessions[i].name(), publicKeys[i]);
+        }
+        return Map.copyOf(directory);
+    }
+
+    /** Закрывает и снимает все сеансы (остановка сервера). */
+    public synchronized void closeAll() {
+        for (ServerSession s : sessions()) s.close();
+        byName.clear();
+        byToken.clear();
+        used.clear();
+        Arrays.fill(sessions, null);
+        Arrays.fill(bundles, null);
+        Arrays.fill(publicKeys, null);
+        snapshot = new ServerSession[0];
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= sessions.length) return;
+        int capacity = Math.max(n, sessions.length * 2);
+        sessions = Arrays.copyOf(sessions, capacity);
+        bundles = Arrays.copyOf(bundles, capacity);
+        publicKeys = Arrays.copyOf(publicKeys, capacity);
+    }
+
+    private synchronized ServerSession[] rebuildSnapshot() {
+        if (snapshot != null) return snapshot;
+        ServerSession[] next = new ServerSession[used.cardinality()];
+        int n = 0;
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) next[n++] = sessions[i];
+        snapshot = next;
+        return next;
+    }
+
+    /**
+     * Строковый ключ сеанса → номер: линейное пробирование по парам ячеек {номер + 1, хеш ключа} (0 — пусто).
+     * Хеш рядом с номером отсеивает чужие ячейки без обращения к сеансу; таблица заполнена не больше
+     * чем наполовину, удаление сдвигает следующие ячейки цепочки назад.
+     */
+    private final class Index {
+        private final Function<ServerSession, String> key;
+        /** Пары ячеек; число пар — степень двойки. */
+        private int[] cells = new int[INITIAL_CAPACITY * 4];
+        /** 32 − log2(числа пар): пара — старшие биты произведения хеша. */
+        private int shift = 32 - Integer.numberOfTrailingZeros(INITIAL_CAPACITY * 2);
+        private int size;
+
+        Index(Function<ServerSession, String> key) {
+            this.key = key;
+        }
+
+        int find(String k) {
+            int i = indexOf(k);
+            return i < 0 ? -1 : cells[i] - 1;
+        }
+
+        /** Добавляет номер под ключом сеанса {@code sessions[id]}; ключа в таблице быть не должно. */
+        void add(int id) {
+            if (++size * 4 > cells.length) {
+                int[] old = cells;
+                cells = new int[old.length * 2];
+                shift--;
+                for (int i = 0; i < old.length; i += 2) if (old[i] != 0) insert(old[i], old[i + 1]);
+            }
+            insert(id + 1, key.apply(sessions[id]).hashCode());
+        }
+
+        void remove(String k) {
+            int i = indexOf(k);
+            if (i < 0) return;
+            size--;
+            int mask = cells.length - 1;
+            // Сдвиг назад: ячейки за удалённой, чьё место до дыры, переезжают в неё
+            for (int j = (i + 2) & mask; cells[j] != 0; j = (j + 2) & mask) {
+                int home = home(cells[j + 1]);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    cells[i] = cells[j];
+                    cells[i + 1] = cells[j + 1];
+                    i = j;
+                }
+            }
+            cells[i] = 0;
+            cells[i + 1] = 0;
+        }
+
+        void clear() {
+            Arrays.fill(cells, 0);
+            size = 0;
+        }
+
+        /** Позиция пары с ключом {@code k}; -1 — нет. */
+        private int indexOf(String k) {
+            int h = k.hashCode();
+            int mask = cells.length - 1;
+            for (int i = home(h); cells[i] != 0; i = (i + 2) & mask) {
+                if (cells[i + 1] == h && key.apply(sessions[cells[i] - 1]).equals(k)) return i;
+            }
+            return -1;
+        }
+
+        private void insert(int slot, int hash) {
+            int mask = cells.length - 1;
+            int i = home(hash);
+            while (cells[i] != 0) i = (i + 2) & mask;
+            cells[i] = slot;
+            cells[i + 1] = hash;
+        }
+
+        /** Мультипликативное хеширование: соседние хеши строк вида "user-N" не выстраиваются в одну цепочку. */
+        private int home(int hash) {
+            return ((hash * 0x9E3779B9) >>> shift) << 1;
+        }
+    }
+}
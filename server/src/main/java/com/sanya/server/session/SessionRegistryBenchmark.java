@@ -0,0 +1,128 @@
+package com.sanya.server.session;
+
+import com.sanya.crypto.SignedPreKeyBundle;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SessionRegistryBenchmark — память на пользователя и поиск адресата личного сообщения:
+ * четыре {@link ConcurrentHashMap} по имени и токену (прежняя раскладка сервера) против {@link SessionRegistry}.
+ *
+ * Назначение:
+ *  Сеансы, связки и ключи создаются заранее и в замер не входят: считается только то, что добавляют индексы.
+ *  Поиск — как при пересылке личного сообщения: адресат по имени и отправитель
+ *  (в реестре отправитель известен потоку соединения, искать его не нужно).
+ *
+ * Запуск:
+ *  java -cp sanya-server.jar com.sanya.server.session.SessionRegistryBenchmark [users]
+ */
+public final class SessionRegistryBenchmark {
+
+    private static final int LOOKUPS = 5_000_000;
+
+    private SessionRegistryBenchmark() {}
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        ServerSession[] sessions = new ServerSession[users];
+        SignedPreKeyBundle[] bundles = new SignedPreKeyBundle[users];
+        String[] keys = new String[users];
+        String[] names = new String[users];
+        for (int i = 0; i < users; i++) {
+            names[i] = "user-" + i;
+            sessions[i] = new ServerSession(names[i]);
+            bundles[i] = new SignedPreKeyBundle(names[i], new byte[32], new byte[44], new byte[64], i);
+            keys[i] = "k" + i;
+        }
+        // Адресаты — копии имён (как после десериализации кадра) в случайном порядке: соседние имена
+        // не должны попадать в соседние ячейки таблиц и подогревать кэш друг другу
+        String[] targets = new String[users];
+        String[] senders = new String[users];
+        for (int i = 0; i < users; i++) {
+            targets[i] = new String(names[i]);
+            senders[i] = new String(names[i]);
+        }
+        Collections.shuffle(Arrays.asList(targets), new Random(1));
+        Collections.shuffle(Arrays.asList(senders), new Random(2));
+        System.out.println("[SessionRegistryBenchmark] " + users + " users");
+
+        // Обе раскладки строятся подряд и живут до конца: замер памяти не зависит от того,
+        // когда сборщик доберётся до выброшенных таблиц
+        long base = usedHeap();
+        Map<String, ServerSession> byName = new ConcurrentHashMap<>();
+        Map<String, ServerSession> byToken = new ConcurrentHashMap<>();
+        Map<String, SignedPreKeyBundle> signedBundles = new ConcurrentHashMap<>();
+        Map<String, String> userPubB64 = new ConcurrentHashMap<>();
+        for (int i = 0; i < users; i++) {
+            byName.put(names[i], sessions[i]);
+            byToken.put(sessions[i].token(), sessions[i]);
+            signedBundles.put(names[i], bundles[i]);
+            userPubB64.put(names[i], keys[i]);
+        }
+        long withMaps = usedHeap();
+        SessionRegistry registry = new SessionRegistry();
+        for (int i = 0; i < users; i++) registry.register(sessions[i]);
+        for (int i = 0; i < users; i++) {
+            registry.putBundle(i, bundles[i]);
+            registry.putPublicKey(i, keys[i]);
+        }
+        registry.sessions();
+        long withRegistry = usedHeap();
+        System.out.printf("heap per user: maps %.0f B, registry %.0f B%n",
+                (double) (withMaps - base) / users, (double) (withRegistry - withMaps) / users);
+
+        for (int round = 0; round < 3; round++) {
+            long mapsNs = time(() -> {
+                long hits = 0;
+                for (int i = 0; i < LOOKUPS; i++) {
+                    int k = i % users;
+                    if (byName.get(targets[k]) != null && byName.get(senders[k]) != null) hits++;
+                }
+                return hits;
+            });
+            long registryNs = time(() -> {
+                long hits = 0;
+                for (int i = 0; i < LOOKUPS; i++) {
+                    if (registry.byName(targets[i % users]) != null) hits++;
+                }
+                return hits;
+            });
+            System.out.printf("round %d: DM routing maps %.1f ns, registry %.1f ns%n",
+                    round, (double) mapsNs / LOOKUPS, (double) registryNs / LOOKUPS);
+        }
+        if (byToken.size() + signedBundles.size() + userPubB64.size() != 3 * registry.size()) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private interface Run {
+        long run();
+    }
+
+    private static long time(Run r) {
+        long t0 = System.nanoTime();
+        if (r.run() < 0) throw new IllegalStateException();
+        return System.nanoTime() - t0;
+    }
+
+    /**
+     * Занятая куча сразу после полной сборки мусора, без того, что выделено уже после неё.
+     */
+    private static long usedHeap() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                used += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return used;
+    }
+}
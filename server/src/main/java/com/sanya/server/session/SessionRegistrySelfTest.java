@@ -0,0 +1,85 @@
+package com.sanya.server.session;
+
+import com.sanya.crypto.SignedPreKeyBundle;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Автономная проверка {@link SessionRegistry} без JUnit: выдача и повторное использование номеров,
+ * замена сеанса при повторном входе, ключи пользователя и случайная последовательность входов и выходов
+ * против эталонных {@link HashMap}.
+ *
+ * Запуск:
+ *  java -cp sanya-server.jar com.sanya.server.session.SessionRegistrySelfTest
+ */
+public final class SessionRegistrySelfTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== SessionRegistrySelfTest ===");
+
+        // 1. Номера — наименьшие свободные, освобождённый выдаётся снова
+        SessionRegistry r = new SessionRegistry();
+        ServerSession alice = new ServerSession("alice");
+        ServerSession bob = new ServerSession("bob");
+        ServerSession carol = new ServerSession("carol");
+        r.register(alice);
+        r.register(bob);
+        r.register(carol);
+        check(alice.id() == 0 && bob.id() == 1 && carol.id() == 2, "ids 0, 1, 2 in login order");
+        check(r.byName("bob") == bob && r.byToken(carol.token()) == carol && r.get(0) == alice, "lookup by name, token and id");
+        check(r.remove(bob) && r.byName("bob") == null && r.byToken(bob.token()) == null, "logout frees name and token");
+        ServerSession dave = new ServerSession("dave");
+        r.register(dave);
+        check(dave.id() == 1 && r.names().equals(List.of("alice", "dave", "carol")), "freed id reused");
+
+        // 2. Повторный вход: номер и ключи остаются, прежний токен недействителен, старый сеанс не снимает новый
+        r.putBundle(alice.id(), new SignedPreKeyBundle("alice", new byte[32], new byte[44], new byte[64], 1));
+        r.putPublicKey(alice.id(), "A");
+        ServerSession alice2 = new ServerSession("alice");
+        check(r.register(alice2) == alice && alice2.id() == 0, "re-login replaces the session under the same id");
+        check(r.byToken(alice.token()) == null && r.byToken(alice2.token()) == alice2, "old token revoked");
+        check(!r.remove(alice) && r.byName("alice") == alice2, "stale session cannot remove its replacement");
+        check(r.publicKeys().equals(Map.of("alice", "A")) && r.bundlesExcept(dave.id()).containsKey("alice")
+                && r.bundlesExcept(alice2.id()).isEmpty(), "keys survive re-login");
+        r.remove(alice2);
+        check(r.publicKeys().isEmpty() && r.size() == 2, "logout drops the user's keys");
+
+        // 3. Случайные входы и выходы: таблицы с открытой адресацией совпадают с эталоном
+        SessionRegistry fuzz = new SessionRegistry();
+        Map<String, ServerSession> byName = new HashMap<>();
+        Map<String, ServerSession> byToken = new HashMap<>();
+        Random random = new Random(42);
+        boolean consistent = true;
+        for (int step = 0; step < 200_000 && consistent; step++) {
+            String name = "u" + random.nextInt(2_000);
+            ServerSession current = byName.get(name);
+            if (current != null && random.nextBoolean()) {
+                fuzz.remove(current);
+                byName.remove(name);
+                byToken.remove(current.token());
+            } else {
+                ServerSession s = new ServerSession(name);
+                fuzz.register(s);
+                if (current != null) byToken.remove(current.token());
+                byName.put(name, s);
+                byToken.put(s.token(), s);
+            }
+            if (step % 1_000 == 0) {
+                for (Map.Entry<String, ServerSession> e : byName.entrySet()) consistent &= fuzz.byName(e.getKey()) == e.getValue();
+                for (Map.Entry<String, ServerSession> e : byToken.entrySet()) consistent &= fuzz.byToken(e.getKey()) == e.getValue();
+                consistent &= fuzz.size() == byName.size() && fuzz.byName("absent") == null;
+            }
+        }
+        check(consistent, "200k random logins and logouts match HashMap reference (" + fuzz.size() + " users left)");
+
+        System.out.println("=== OK ===");
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "[OK]   " : "[FAIL] ") + what);
+        if (!ok) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,6 @@
+@echo off
+rem Starts server.jar; uses the AppCDS archive server.jsa (mvn -Pappcds package) when present.
+set "DIR=%~dp0"
+set "CDS="
+if exist "%DIR%server.jsa" set "CDS=-XX:SharedArchiveFile=%DIR%server.jsa -Xshare:auto"
+java %CDS% %JAVA_OPTS% -jar "%DIR%server.jar" %*
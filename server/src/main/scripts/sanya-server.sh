@@ -0,0 +1,9 @@
+#!/bin/sh
+# Запуск server.jar; если рядом лежит архив AppCDS (server.jsa, mvn -Pappcds package), классы берутся из него.
+# При несовпадении архива с JVM или jar (-Xshare:auto) JVM молча запускается без него.
+DIR="$(cd "$(dirname "$0")" && pwd)"
+CDS=""
+if [ -f "$DIR/server.jsa" ]; then
+    CDS="-XX:SharedArchiveFile=$DIR/server.jsa -Xshare:auto"
+fi
+exec java $CDS $JAVA_OPTS -jar "$DIR/server.jar" "$@"